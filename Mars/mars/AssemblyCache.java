@@ -0,0 +1,644 @@
+   package mars;
+   import mars.assembler.*;
+   import mars.mips.hardware.*;
+   import mars.mips.instructions.*;
+   import mars.util.*;
+   import java.io.*;
+   import java.security.*;
+   import java.util.*;
+   import java.util.zip.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * On-disk cache of assembled programs, so that running the same program again,
+ * for example against many Lua extensions or in many MARS processes, does not
+ * tokenize and assemble it every time.  An entry holds what the assembler leaves
+ * behind: the text segment statements (binary, operands, source line and source
+ * text), the writes the data directives made to memory, in order, the global and
+ * local symbol tables, and any assembler warnings.  Loading an entry writes data
+ * and text to <code>Memory</code> just as assembling does, so memory observers and
+ * the write trace see the same thing either way.
+ * <p>
+ * Entries are keyed by a SHA-256 hash of the source files, their names and order,
+ * and everything else assembly depends on: whether pseudo-instructions are allowed
+ * and warnings are errors, delayed branching, self-modifying code, the memory
+ * configuration and the instruction set, including instructions added by Lua
+ * extensions.  Files brought in by <tt>.include</tt> are checked by their own hash
+ * when an entry is loaded.  A Lua extension that changes only what an instruction
+ * does, not its syntax or encoding, leaves the key as it was, and the cached
+ * statements run its new code.
+ * <p>
+ * Only programs that assemble without errors are stored.  An entry that cannot be
+ * read, or is out of date, is ignored and replaced.  Entries are written to a
+ * temporary file then renamed, so MARS processes or batch workers sharing a
+ * directory never see half an entry.
+ *
+ * @version October 2017
+ */
+
+    public class AssemblyCache {
+   
+      private static final int MAGIC = 0x4d415253; // "MARS"
+      private static final int FORMAT_VERSION = 1;
+      private static final String EXTENSION = ".cache";
+      private static final BasicInstructionFormat[] FORMATS = {
+         BasicInstructionFormat.R_FORMAT, BasicInstructionFormat.I_FORMAT,
+         BasicInstructionFormat.I_BRANCH_FORMAT, BasicInstructionFormat.J_FORMAT };
+   
+      private File directory;
+   
+   	/**
+   	 * Use the given directory for the cache.  It is created when the first entry
+   	 * is stored, if need be.
+   	 *
+   	 * @param directory directory holding the cache entries
+   	 */
+       public AssemblyCache(File directory) {
+         this.directory = directory;
+      }
+   
+   	/**
+   	 * Prepare and assemble the given files into the given program, as
+   	 * <code>MIPSprogram.prepareFilesForAssembly</code> followed by
+   	 * <code>MIPSprogram.assemble</code> do, except that if the cache holds the
+   	 * result of assembling the same files with the same settings, it is loaded
+   	 * from there instead.  Otherwise the result is stored in the cache.
+   	 *
+   	 * @param program MIPSprogram representing the lead file
+   	 * @param filenames ArrayList containing the source file name(s)
+   	 * @param leadFilename name of the source file that goes first
+   	 * @param exceptionHandler name of exception handler file to assemble ahead of the
+   	 * others, or null for none
+   	 * @param extendedAssemblerEnabled true if pseudo-instructions are allowed
+   	 * @param warningsAreErrors true if assembler warnings are to be errors
+   	 * @return ErrorList containing nothing or only warnings
+   	 * @throws ProcessingException if the files cannot be read or do not assemble
+   	 */
+       public ErrorList assemble(MIPSprogram program, ArrayList filenames, String leadFilename,
+              String exceptionHandler, boolean extendedAssemblerEnabled, boolean warningsAreErrors) 
+              throws ProcessingException {
+         ArrayList files = orderFiles(filenames, leadFilename, exceptionHandler);
+         String key = null;
+         try {
+            key = computeKey(files, extendedAssemblerEnabled, warningsAreErrors);
+         } 
+             catch (IOException e) {
+               // unreadable source; let prepareFilesForAssembly report it
+            }
+         if (key != null) {
+            Entry entry = read(key);
+            if (entry != null) {
+               try {
+                  ErrorList warnings = entry.install(program, leadFilename);
+                  if (Globals.debug)
+                     System.out.println("Assembled program loaded from cache entry " + key);
+                  return warnings;
+               } 
+                   catch (IOException e) {
+                     // damaged entry; assemble and replace it
+                  }
+            }
+         }
+         DataWriteRecorder recorder = new DataWriteRecorder();
+         Memory.getInstance().addObserver(recorder);
+         ArrayList programs;
+         ErrorList warnings;
+         try {
+            programs = program.prepareFilesForAssembly(filenames, leadFilename, exceptionHandler);
+            warnings = program.assemble(programs, extendedAssemblerEnabled, warningsAreErrors);
+         } 
+         finally {
+            Memory.getInstance().deleteObserver(recorder);
+         }
+         if (key != null) {
+            try {
+               write(key, new Entry(programs, program, recorder, warnings));
+            } 
+                catch (IOException e) {
+                  // not cacheable, or the cache cannot be written; no harm done
+                  if (Globals.debug)
+                     System.out.println("Assembled program not cached: " + e);
+               }
+         }
+         return warnings;
+      }
+   
+   	/**
+   	 * Write a string that may be null.
+   	 *
+   	 * @param out stream to write to
+   	 * @param string the string, or null
+   	 * @throws IOException if it cannot be written
+   	 */
+       static void writeString(DataOutputStream out, String string) throws IOException {
+         out.writeBoolean(string != null);
+         if (string != null) {
+            out.writeUTF(string);
+         }
+      }
+   
+   	/**
+   	 * Read a string written by <code>writeString</code>.
+   	 *
+   	 * @param in stream to read from
+   	 * @return the string, or null
+   	 * @throws IOException if it cannot be read
+   	 */
+       static String readString(DataInputStream in) throws IOException {
+         return in.readBoolean() ? in.readUTF() : null;
+      }
+   
+      // The files in the order prepareFilesForAssembly puts them: exception handler,
+   	// lead file, then the others.
+       private static ArrayList orderFiles(ArrayList filenames, String leadFilename, String exceptionHandler) {
+         ArrayList files = new ArrayList();
+         if (exceptionHandler != null && exceptionHandler.length() > 0) {
+            files.add(exceptionHandler);
+         }
+         int leadPosition = files.size();
+         for (int i = 0; i < filenames.size(); i++) {
+            if (filenames.get(i).equals(leadFilename)) {
+               files.add(leadPosition, filenames.get(i));
+            } 
+            else {
+               files.add(filenames.get(i));
+            }
+         }
+         return files;
+      }
+   
+       private String computeKey(ArrayList files, boolean extendedAssemblerEnabled, boolean warningsAreErrors) 
+              throws IOException {
+         MessageDigest digest = newDigest();
+         DataOutputStream key = new DataOutputStream(new DigestOutputStream(new NullOutputStream(), digest));
+         key.writeInt(FORMAT_VERSION);
+         key.writeInt(files.size());
+         for (int i = 0; i < files.size(); i++) {
+            String filename = (String) files.get(i);
+            key.writeUTF(filename);
+            key.write(hashFile(filename));
+         }
+         key.writeBoolean(extendedAssemblerEnabled);
+         key.writeBoolean(warningsAreErrors);
+         key.writeBoolean(Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED));
+         key.writeBoolean(Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED));
+         MemoryConfiguration configuration = MemoryConfigurations.getCurrentConfiguration();
+         key.writeUTF(configuration.getConfigurationIdentifier());
+         int[] addresses = configuration.getConfigurationItemValues();
+         for (int i = 0; i < addresses.length; i++) {
+            key.writeInt(addresses[i]);
+         }
+         ArrayList instructions = Globals.instructionSet.getInstructionList();
+         key.writeInt(instructions.size());
+         for (int i = 0; i < instructions.size(); i++) {
+            Instruction instruction = (Instruction) instructions.get(i);
+            key.writeUTF(instruction.getClass().getName());
+            key.writeUTF(instruction.getExampleFormat());
+            if (instruction instanceof BasicInstruction) {
+               BasicInstruction basic = (BasicInstruction) instruction;
+               key.writeUTF(basic.getOperationMask());
+               key.writeInt(Arrays.asList(FORMATS).indexOf(basic.getInstructionFormat()));
+            } 
+            else if (instruction instanceof ExtendedInstruction) {
+               ExtendedInstruction extended = (ExtendedInstruction) instruction;
+               writeStrings(key, extended.getBasicIntructionTemplateList());
+               writeStrings(key, extended.getCompactBasicIntructionTemplateList());
+            }
+         }
+         key.flush();
+         byte[] hash = digest.digest();
+         StringBuffer hex = new StringBuffer();
+         for (int i = 0; i < hash.length; i++) {
+            hex.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(hash[i] & 0xF, 16));
+         }
+         return hex.toString();
+      }
+   
+       private static void writeStrings(DataOutputStream out, ArrayList strings) throws IOException {
+         out.writeInt((strings == null) ? -1 : strings.size());
+         for (int i = 0; strings != null && i < strings.size(); i++) {
+            out.writeUTF((String) strings.get(i));
+         }
+      }
+   
+       private static byte[] hashFile(String filename) throws IOException {
+         MessageDigest digest = newDigest();
+         InputStream in = new FileInputStream(filename);
+         try {
+            byte[] buffer = new byte[1 << 16];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+               digest.update(buffer, 0, count);
+            }
+         } 
+         finally {
+            in.close();
+         }
+         return digest.digest();
+      }
+   
+       private static MessageDigest newDigest() {
+         try {
+            return MessageDigest.getInstance("SHA-256");
+         } 
+             catch (NoSuchAlgorithmException e) {
+               throw new RuntimeException("SHA-256 not available: " + e);
+            }
+      }
+   
+       private File entryFile(String key) {
+         return new File(directory, key + EXTENSION);
+      }
+   
+      // The entry stored under the given key, or null if there is none or it cannot
+   	// be used.  Read completely before anything is installed.
+       private Entry read(String key) {
+         File file = entryFile(key);
+         if (!file.isFile()) {
+            return null;
+         }
+         try {
+            // read it whole, which is a lot quicker than reading it through a stream
+            byte[] bytes = new byte[(int) file.length()];
+            InputStream input = new FileInputStream(file);
+            try {
+               new DataInputStream(input).readFully(bytes);
+            } 
+            finally {
+               input.close();
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(key)) {
+               return null;
+            }
+            long checksum = in.readLong();
+            int length = in.readInt();
+            int start = bytes.length - in.available();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, start, Math.min(length, bytes.length - start));
+            if (length != bytes.length - start || crc.getValue() != checksum) {
+               return null;
+            }
+            return new Entry(in);
+         } 
+             catch (IOException e) {
+               return null;
+            }
+      }
+   
+       private void write(String key, Entry entry) throws IOException {
+         if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("cannot create cache directory " + directory);
+         }
+         ByteArrayOutputStream body = new ByteArrayOutputStream();
+         DataOutputStream bodyOut = new DataOutputStream(body);
+         entry.write(bodyOut);
+         bodyOut.flush();
+         CRC32 crc = new CRC32();
+         crc.update(body.toByteArray());
+         File temporary = File.createTempFile("entry", ".tmp", directory);
+         try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16));
+            try {
+               out.writeInt(MAGIC);
+               out.writeInt(FORMAT_VERSION);
+               out.writeUTF(key);
+               out.writeLong(crc.getValue());
+               out.writeInt(body.size());
+               body.writeTo(out);
+            } 
+            finally {
+               out.close();
+            }
+            File file = entryFile(key);
+            if (!temporary.renameTo(file)) {
+               file.delete(); // some platforms will not rename over an existing file
+               if (!temporary.renameTo(file)) {
+                  throw new IOException("cannot rename " + temporary + " to " + file);
+               }
+            }
+         } 
+         finally {
+            temporary.delete(); // does nothing once renamed
+         }
+      }
+   
+      // Everything one assembly leaves behind.
+       private static class Entry {
+         private String[] files;            // source files, one MIPSprogram each
+         private String[] includes;         // other files read through .include
+         private byte[][] includeHashes;
+         private ErrorMessage[] warnings;
+         private String[] symbolNames;      // global symbols, then local ones file by file
+         private int[] symbolAddresses;
+         private boolean[] symbolData;
+         private int[] symbolCounts;        // number of global symbols, then local per file
+         private int[] writes;              // address, value, length of each data write
+         private int[] statementFiles;      // index into files, -1 for none
+         private int[] statementInstructions; // index into instruction list, -1 for none
+         private byte[] statements;         // the statements, as written by writeAssembled
+      
+      	// Capture the result of assembling the given programs, led by the given one.
+          Entry(ArrayList programs, MIPSprogram lead, DataWriteRecorder recorder, ErrorList errors) throws IOException {
+            files = new String[programs.size()];
+            HashMap programIndex = new HashMap();
+            for (int i = 0; i < files.length; i++) {
+               MIPSprogram program = (MIPSprogram) programs.get(i);
+               files[i] = program.getFilename();
+               programIndex.put(program, new Integer(i));
+            }
+            HashSet included = new HashSet();
+            List sourceFiles = Arrays.asList(files);
+            for (int i = 0; i < files.length; i++) {
+               ArrayList lines = ((MIPSprogram) programs.get(i)).getSourceLineList();
+               for (int j = 0; lines != null && j < lines.size(); j++) {
+                  String filename = ((SourceLine) lines.get(j)).getFilename();
+                  if (filename != null && !sourceFiles.contains(filename)) {
+                     included.add(filename);
+                  }
+               }
+            }
+            includes = (String[]) included.toArray(new String[0]);
+            includeHashes = new byte[includes.length][];
+            for (int i = 0; i < includes.length; i++) {
+               includeHashes[i] = hashFile(includes[i]);
+            }
+            ArrayList messages = (errors == null) ? new ArrayList() : errors.getErrorMessages();
+            warnings = (ErrorMessage[]) messages.toArray(new ErrorMessage[0]);
+         
+            ArrayList symbols = new ArrayList();
+            symbolCounts = new int[files.length + 1];
+            symbolCounts[0] = addSymbols(symbols, MachineContext.getCurrent().getSymbolTable());
+            for (int i = 0; i < files.length; i++) {
+               symbolCounts[i + 1] = addSymbols(symbols, ((MIPSprogram) programs.get(i)).getLocalSymbolTable());
+            }
+            symbolNames = new String[symbols.size()];
+            symbolAddresses = new int[symbols.size()];
+            symbolData = new boolean[symbols.size()];
+            for (int i = 0; i < symbolNames.length; i++) {
+               Symbol symbol = (Symbol) symbols.get(i);
+               symbolNames[i] = symbol.getName();
+               symbolAddresses[i] = symbol.getAddress();
+               symbolData[i] = symbol.getType();
+            }
+            writes = recorder.getWrites();
+         
+            ArrayList machineList = lead.getMachineList();
+            if (machineList == null) {
+               throw new IOException("nothing was assembled");
+            }
+            ArrayList instructions = Globals.instructionSet.getInstructionList();
+            statementFiles = new int[machineList.size()];
+            statementInstructions = new int[machineList.size()];
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (int i = 0; i < machineList.size(); i++) {
+               ProgramStatement statement = (ProgramStatement) machineList.get(i);
+               statementFiles[i] = -1;
+               if (statement.getSourceMIPSprogram() != null) {
+                  Integer index = (Integer) programIndex.get(statement.getSourceMIPSprogram());
+                  if (index == null) {
+                     throw new IOException("statement at " + Binary.intToHexString(statement.getAddress())
+                                           + " is from a file that was not assembled");
+                  }
+                  statementFiles[i] = index.intValue();
+               }
+               statementInstructions[i] = (statement.getInstruction() == null) ? -1 
+                                          : instructions.indexOf(statement.getInstruction());
+               if (statement.getInstruction() != null && statementInstructions[i] < 0) {
+                  throw new IOException("statement at " + Binary.intToHexString(statement.getAddress())
+                                        + " is not from the instruction set");
+               }
+               statement.writeAssembled(out);
+            }
+            out.flush();
+            statements = bytes.toByteArray();
+         }
+      
+          private static int addSymbols(ArrayList symbols, SymbolTable table) {
+            ArrayList all = (table == null) ? new ArrayList() : table.getAllSymbols();
+            symbols.addAll(all);
+            return all.size();
+         }
+      
+      	// Read an entry.  Throws IOException if it is damaged or an included file
+      	// has changed.
+          Entry(DataInputStream in) throws IOException {
+            files = new String[in.readInt()];
+            for (int i = 0; i < files.length; i++) {
+               files[i] = in.readUTF();
+            }
+            includes = new String[in.readInt()];
+            includeHashes = new byte[includes.length][];
+            for (int i = 0; i < includes.length; i++) {
+               includes[i] = in.readUTF();
+               includeHashes[i] = new byte[in.readInt()];
+               in.readFully(includeHashes[i]);
+               if (!new File(includes[i]).isFile() || !Arrays.equals(includeHashes[i], hashFile(includes[i]))) {
+                  throw new IOException("included file " + includes[i] + " has changed");
+               }
+            }
+            warnings = new ErrorMessage[in.readInt()];
+            for (int i = 0; i < warnings.length; i++) {
+               warnings[i] = new ErrorMessage(in.readBoolean(), readString(in), in.readInt(), in.readInt(),
+                                              readString(in), readString(in));
+            }
+            symbolCounts = new int[files.length + 1];
+            for (int i = 0; i < symbolCounts.length; i++) {
+               symbolCounts[i] = in.readInt();
+            }
+            symbolNames = new String[in.readInt()];
+            symbolAddresses = new int[symbolNames.length];
+            symbolData = new boolean[symbolNames.length];
+            for (int i = 0; i < symbolNames.length; i++) {
+               symbolNames[i] = in.readUTF();
+               symbolAddresses[i] = in.readInt();
+               symbolData[i] = in.readBoolean();
+            }
+            writes = readInts(in);
+            statementFiles = readInts(in);
+            statementInstructions = readInts(in);
+            statements = new byte[in.readInt()];
+            in.readFully(statements);
+         }
+      
+          void write(DataOutputStream out) throws IOException {
+            out.writeInt(files.length);
+            for (int i = 0; i < files.length; i++) {
+               out.writeUTF(files[i]);
+            }
+            out.writeInt(includes.length);
+            for (int i = 0; i < includes.length; i++) {
+               out.writeUTF(includes[i]);
+               out.writeInt(includeHashes[i].length);
+               out.write(includeHashes[i]);
+            }
+            out.writeInt(warnings.length);
+            for (int i = 0; i < warnings.length; i++) {
+               ErrorMessage warning = warnings[i];
+               out.writeBoolean(warning.isWarning());
+               writeString(out, warning.getFilename());
+               out.writeInt(warning.getLine());
+               out.writeInt(warning.getPosition());
+               writeString(out, warning.getMessage());
+               writeString(out, warning.getMacroExpansionHistory());
+            }
+            for (int i = 0; i < symbolCounts.length; i++) {
+               out.writeInt(symbolCounts[i]);
+            }
+            out.writeInt(symbolNames.length);
+            for (int i = 0; i < symbolNames.length; i++) {
+               out.writeUTF(symbolNames[i]);
+               out.writeInt(symbolAddresses[i]);
+               out.writeBoolean(symbolData[i]);
+            }
+            writeInts(out, writes);
+            writeInts(out, statementFiles);
+            writeInts(out, statementInstructions);
+            out.writeInt(statements.length);
+            out.write(statements);
+         }
+      
+          private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+            out.writeInt(values.length);
+            for (int i = 0; i < values.length; i++) {
+               out.writeInt(values[i]);
+            }
+         }
+      
+          private static int[] readInts(DataInputStream in) throws IOException {
+            int[] values = new int[in.readInt()];
+            for (int i = 0; i < values.length; i++) {
+               values[i] = in.readInt();
+            }
+            return values;
+         }
+      
+      	// Put the assembled program into memory and the symbol tables, in the same
+      	// order the assembler does, and hand it to the lead program.  Throws
+      	// IOException, before changing anything, if the statements cannot be read.
+          ErrorList install(MIPSprogram lead, String leadFilename) throws ProcessingException, IOException {
+            MIPSprogram[] programs = new MIPSprogram[files.length];
+            for (int i = 0; i < files.length; i++) {
+               programs[i] = (files[i].equals(leadFilename)) ? lead : new MIPSprogram();
+               programs[i].readSource(files[i]);
+            }
+            ArrayList instructions = Globals.instructionSet.getInstructionList();
+            ArrayList machineList = new ArrayList(statementFiles.length);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(statements));
+            for (int i = 0; i < statementFiles.length; i++) {
+               if (statementInstructions[i] >= instructions.size() || statementFiles[i] >= files.length) {
+                  throw new IOException("statement " + i + " does not match the instruction set or files");
+               }
+               machineList.add(new ProgramStatement(in,
+                     (statementFiles[i] < 0) ? null : programs[statementFiles[i]],
+                     (statementInstructions[i] < 0) ? null : (Instruction) instructions.get(statementInstructions[i])));
+            }
+         
+            SymbolTable globals = MachineContext.getCurrent().getSymbolTable();
+            globals.clear();
+            Memory memory = Memory.getInstance();
+            memory.clear();
+            ErrorList errors = new ErrorList();
+            int symbol = addSymbols(globals, 0, symbolCounts[0], null, errors);
+            SymbolTable[] locals = new SymbolTable[files.length];
+            for (int i = 0; i < files.length; i++) {
+               locals[i] = new SymbolTable(files[i]);
+               symbol = addSymbols(locals[i], symbol, symbolCounts[i + 1], programs[i], errors);
+            }
+            try {
+               for (int i = 0; i < writes.length; i += 3) {
+                  memory.set(writes[i], writes[i + 1], writes[i + 2]);
+               }
+               for (int i = 0; i < machineList.size(); i++) {
+                  ProgramStatement statement = (ProgramStatement) machineList.get(i);
+                  memory.setStatement(statement.getAddress(), statement);
+               }
+            } 
+                catch (AddressErrorException e) {
+                  errors.add(new ErrorMessage((MIPSprogram) null, 0, 0,
+                     "Invalid address for cached program: " + Binary.intToHexString(e.getAddress())));
+                  throw new ProcessingException(errors);
+               } 
+            for (int i = 0; i < files.length; i++) {
+               programs[i].setAssembled((programs[i] == lead) ? machineList : null, locals[i]);
+            }
+            SystemIO.resetFiles();
+            for (int i = 0; i < warnings.length; i++) {
+               errors.add(warnings[i]);
+            }
+            return errors;
+         }
+      
+          private int addSymbols(SymbolTable table, int first, int count, MIPSprogram program, ErrorList errors) {
+            for (int i = first; i < first + count; i++) {
+               table.addSymbol(new Token(TokenTypes.IDENTIFIER, symbolNames[i], program, 0, 0),
+                               symbolAddresses[i], symbolData[i], errors);
+            }
+            return first + count;
+         }
+      }
+   
+      // Records the writes made to memory while a program is assembled.
+       private static class DataWriteRecorder implements Observer {
+         private int[] writes = new int[3 * 256];
+         private int size = 0;
+      
+          public void update(Observable memory, Object notice) {
+            MemoryAccessNotice access = (MemoryAccessNotice) notice;
+            if (access.getAccessType() != AccessNotice.WRITE) {
+               return;
+            }
+            if (size + 3 > writes.length) {
+               int[] larger = new int[writes.length * 2];
+               System.arraycopy(writes, 0, larger, 0, size);
+               writes = larger;
+            }
+            writes[size++] = access.getAddress();
+            writes[size++] = access.getValue();
+            writes[size++] = access.getLength();
+         }
+      
+          int[] getWrites() {
+            int[] result = new int[size];
+            System.arraycopy(writes, 0, result, 0, size);
+            return result;
+         }
+      }
+   
+       private static class NullOutputStream extends OutputStream {
+          public void write(int b) {
+         }
+      
+          public void write(byte[] b, int off, int len) {
+         }
+      }
+   }
@@ -0,0 +1,518 @@
+   package mars;
+   import mars.lua.LuaBinding;
+   import mars.mips.hardware.*;
+   import mars.mips.instructions.*;
+   import mars.mips.trace.*;
+   import mars.simulator.*;
+   import mars.venus.RunSpeedPanel;
+   import org.luaj.vm2.LuaError;
+   import java.io.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Runs a batch of MIPS programs in one MARS process, for grading or regression
+ * testing.  The instruction set, syscalls and pseudo-instructions are loaded once,
+ * and the jobs are assembled and simulated by a pool of worker threads, each job
+ * in its own <code>MachineContext</code>.  Used by the <tt>batch</tt> command
+ * mode option.
+ * <p>
+ * The manifest is a text file with one job per line.  Blank lines and lines
+ * starting with # are ignored.  A job is up to four fields separated by spaces
+ * or tabs, of which all but the first may be omitted or given as "-":
+ * <pre>
+ *    program  [lua-extension]  [max-steps]  [expected-trace]
+ * </pre>
+ * <tt>program</tt> is a MIPS source file or hex machine code file.
+ * <tt>lua-extension</tt> is a Lua file whose instructions are added to the
+ * instruction set for this job, as with the <tt>ll</tt> option.
+ * <tt>max-steps</tt> limits the number of instructions executed.
+ * <tt>expected-trace</tt> is a write trace to compare the job's trace against; its
+ * format is chosen by file extension (for example <tt>.trc</tt> for binary), ISE
+ * text if the extension matches no format.  Relative file names are relative to
+ * the directory containing the manifest.
+ * <p>
+ * Results are written as JSON Lines, one object per job in the order the jobs
+ * finish, for example:
+ * <pre>
+ * {"job":3,"program":"t/sum.asm","pass":false,"status":"trace mismatch","instructions":1042,"exit":0,"ms":12,
+ *  "divergence":{"record":17,"expected":"@0040:$ 9 <= 00000005","actual":"@0040:$ 9 <= 00000006"}}
+ * </pre>
+ * <tt>job</tt> is the manifest line number.  <tt>status</tt> is one of "ok",
+ * "assemble error", "runtime error", "step limit", "trace mismatch" or "error"
+ * (anything else that stopped the job, such as a missing file), and there is an
+ * <tt>error</tt> member describing it for all but "ok" and "trace mismatch".  A
+ * job passes if its status is "ok".  <tt>divergence</tt> is there if the job's trace
+ * differs from the expected one, also for a job that failed some other way, and
+ * gives the zero-based number of the first record (line, for text traces) that
+ * differs.
+ * <p>
+ * Lua extensions add to the one shared instruction set, so jobs are run in groups
+ * by extension: the jobs of a group run in parallel, and the extension is loaded
+ * before the group starts and removed after it ends.  Standard input of every job
+ * is empty and its standard output is discarded.
+ *
+ * @version October 2017
+ */
+
+    public class BatchRunner {
+   
+      private static final String NONE = "-";
+   
+      private File manifest;
+      private PrintStream out;
+      private int defaultMaxSteps;
+      private boolean pseudo;
+      private boolean warningsAreErrors;
+      private boolean startAtMain;
+      private boolean turbo;
+      private boolean compiling = true;
+      private ArrayList traceFormats;
+      private TraceFormat defaultTraceFormat;
+      private AssemblyCache assemblyCache;
+      private ArrayList jobs;   // jobs of the group now running
+      private int nextJob;      // index into jobs of the next one to start
+      private int failures;
+   
+   	/**
+   	 *  Set up to run the jobs in the given manifest.
+   	 *
+   	 *  @param manifest manifest file, one job per line
+   	 *  @param out where the results go
+   	 *  @param defaultMaxSteps step limit for jobs that do not give one, -1 for none
+   	 *  @param pseudo true if pseudo-instructions are allowed
+   	 *  @param warningsAreErrors true if assembler warnings are errors
+   	 *  @param startAtMain true to start each program at the global label main
+   	 *  @param turbo true to let the simulator use its fast interpreter
+   	 */
+       public BatchRunner(File manifest, PrintStream out, int defaultMaxSteps, boolean pseudo,
+                          boolean warningsAreErrors, boolean startAtMain, boolean turbo) {
+         this.manifest = manifest;
+         this.out = out;
+         this.defaultMaxSteps = defaultMaxSteps;
+         this.pseudo = pseudo;
+         this.warningsAreErrors = warningsAreErrors;
+         this.startAtMain = startAtMain;
+         this.turbo = turbo;
+      }
+   
+   	/**
+   	 *  Load assembled programs from the given cache, and store them there, instead
+   	 *  of assembling every job from source.
+   	 *
+   	 *  @param assemblyCache the cache to use, or null to always assemble
+   	 */
+       public void setAssemblyCache(AssemblyCache assemblyCache) {
+         this.assemblyCache = assemblyCache;
+      }
+   
+   	/**
+   	 *  Allow or disallow compiling hot blocks of statements in the fast interpreter.
+   	 *  Allowed unless this is called.
+   	 *
+   	 *  @param compiling true to let the fast interpreter compile hot blocks
+   	 */
+       public void setCompilationEnabled(boolean compiling) {
+         this.compiling = compiling;
+      }
+   
+   	/**
+   	 *  Run all the jobs in the manifest and write their results.
+   	 *
+   	 *  @param workers number of jobs to run at the same time
+   	 *  @return number of jobs that did not pass
+   	 *  @throws IOException if the manifest cannot be read
+   	 */
+       public int run(int workers) throws IOException {
+         LinkedHashMap groups = readManifest();
+         // Shared things that are created on first use, created here before the
+      	// workers can race to do it.
+         traceFormats = new TraceFormatLoader().loadTraceFormats();
+         defaultTraceFormat = TraceFormatLoader.findTraceFormatGivenCommandDescriptor(traceFormats, "Text");
+         RunSpeedPanel.getInstance();
+         failures = 0;
+         InstructionSet instructionSet = Globals.instructionSet;
+         int baseInstructions = instructionSet.getInstructionList().size();
+         for (Iterator it = groups.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry group = (Map.Entry) it.next();
+            String luaFile = (String) group.getKey();
+            jobs = (ArrayList) group.getValue();
+            nextJob = 0;
+            if (luaFile != null) {
+               String problem = loadExtension(luaFile);
+               if (problem != null) {
+                  for (int i = 0; i < jobs.size(); i++) {
+                     Job job = (Job) jobs.get(i);
+                     job.status = "error";
+                     job.error = problem;
+                     report(job);
+                  }
+                  instructionSet.removeInstructionsFrom(baseInstructions);
+                  continue;
+               }
+            }
+            Thread[] threads = new Thread[Math.max(1, Math.min(workers, jobs.size()))];
+            for (int i = 0; i < threads.length; i++) {
+               threads[i] = new Thread(
+                     new Runnable() {
+                        public void run() {
+                           for (Job job = takeJob(); job != null; job = takeJob()) {
+                              runJob(job);
+                              report(job);
+                           }
+                        }
+                     }, "MARS batch worker " + (i + 1));
+               threads[i].start();
+            }
+            for (int i = 0; i < threads.length; i++) {
+               try {
+                  threads[i].join();
+               } 
+                   catch (InterruptedException e) {
+                     i--; // keep waiting
+                  }
+            }
+            if (luaFile != null) {
+               instructionSet.removeInstructionsFrom(baseInstructions);
+            }
+         }
+         return failures;
+      }
+   
+      // Read the manifest into groups of jobs keyed by Lua extension file (null for
+   	// none), in order of first appearance.
+       private LinkedHashMap readManifest() throws IOException {
+         LinkedHashMap groups = new LinkedHashMap();
+         File directory = manifest.getAbsoluteFile().getParentFile();
+         BufferedReader in = new BufferedReader(new FileReader(manifest));
+         try {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+               lineNumber++;
+               StringTokenizer fields = new StringTokenizer(line);
+               if (!fields.hasMoreTokens() || line.trim().startsWith("#")) {
+                  continue;
+               }
+               Job job = new Job();
+               job.number = lineNumber;
+               job.program = fields.nextToken();
+               String luaFile = resolve(directory, fields.hasMoreTokens() ? fields.nextToken() : NONE);
+               String steps = fields.hasMoreTokens() ? fields.nextToken() : NONE;
+               job.expectedTrace = resolve(directory, fields.hasMoreTokens() ? fields.nextToken() : NONE);
+               job.maxSteps = defaultMaxSteps;
+               if (!steps.equals(NONE)) {
+                  try {
+                     job.maxSteps = Integer.decode(steps).intValue();
+                  } 
+                      catch (NumberFormatException e) {
+                        job.status = "error";
+                        job.error = "invalid step limit " + steps;
+                     }
+               }
+               ArrayList group = (ArrayList) groups.get(luaFile);
+               if (group == null) {
+                  group = new ArrayList();
+                  groups.put(luaFile, group);
+               }
+               group.add(job);
+               job.programFile = resolve(directory, job.program);
+            }
+         } 
+         finally {
+            in.close();
+         }
+         return groups;
+      }
+   
+       private static String resolve(File directory, String name) {
+         if (name.equals(NONE)) {
+            return null;
+         }
+         File file = new File(name);
+         if (!file.isAbsolute()) {
+            file = new File(directory, name);
+         }
+         return file.getPath();
+      }
+   
+      // Add the instructions of a Lua extension to the instruction set.  Returns
+   	// null if all went well, otherwise what went wrong.
+       private String loadExtension(String luaFile) {
+         if (!new File(luaFile).exists()) {
+            return "Lua extension " + luaFile + " not found";
+         }
+         try {
+            new LuaBinding().getGlobals().loadfile(luaFile).call();
+         } 
+             catch (LuaError e) {
+               return "Lua extension " + luaFile + ": " + e.getMessage();
+            }
+         Globals.instructionSet.generateMatchMaps();
+         return null;
+      }
+   
+       private synchronized Job takeJob() {
+         return (nextJob < jobs.size()) ? (Job) jobs.get(nextJob++) : null;
+      }
+   
+      // Assemble and run one job in a context of its own, and fill in its results.
+       private void runJob(Job job) {
+         if (job.status != null) {
+            return; // manifest error
+         }
+         long start = System.currentTimeMillis();
+         MachineContext context = new MachineContext();
+         context.setStandardStreams(new ByteArrayInputStream(new byte[0]),
+                                    new PrintStream(new DiscardOutputStream()),
+                                    new PrintStream(new DiscardOutputStream()));
+         MachineContext.setCurrent(context);
+         File actualTrace = null;
+         try {
+            TraceSink trace = context.getTraceSink();
+            TraceFormat format = null;
+            if (job.expectedTrace == null) {
+               trace.setEnabled(false);
+            } 
+            else {
+               format = traceFormatFor(job.expectedTrace);
+               actualTrace = File.createTempFile("mars", ".trace");
+               trace.setDestination(format, actualTrace);
+            }
+            if (!new File(job.programFile).exists()) {
+               throw new FileNotFoundException("program " + job.programFile + " not found");
+            }
+            MIPSprogram program = new MIPSprogram();
+            ArrayList files = new ArrayList();
+            files.add(job.programFile);
+            if (assemblyCache != null) {
+               assemblyCache.assemble(program, files, job.programFile, null, pseudo, warningsAreErrors);
+            } 
+            else {
+               ArrayList programs = program.prepareFilesForAssembly(files, job.programFile, null);
+               program.assemble(programs, pseudo, warningsAreErrors);
+            }
+            RegisterFile.initializeProgramCounter(startAtMain);
+            Simulator simulator = context.getSimulator();
+            simulator.setTurboEnabled(turbo);
+            simulator.setCompilationEnabled(compiling);
+            try {
+               job.status = program.simulate(job.maxSteps) ? "ok" : "step limit";
+               if (!job.status.equals("ok")) {
+                  job.error = "step limit " + job.maxSteps + " reached";
+               }
+            } 
+                catch (ProcessingException e) {
+                  job.status = "runtime error";
+                  job.error = errorReport(e);
+               } 
+            finally {
+               job.instructions = simulator.getInstructionCount();
+               job.exitCode = context.getExitCode();
+            }
+            trace.close();
+            if (format != null) {
+               compareTraces(job, format, new File(job.expectedTrace), actualTrace);
+            }
+         } 
+             catch (ProcessingException e) {
+               job.status = "assemble error";
+               job.error = errorReport(e);
+            } 
+             catch (Exception e) {
+               job.status = "error";
+               job.error = (e.getMessage() == null) ? e.toString() : e.getMessage();
+            } 
+         finally {
+            context.getTraceSink().close();
+            MachineContext.setCurrent(null);
+            if (actualTrace != null) {
+               actualTrace.delete();
+            }
+            job.milliseconds = System.currentTimeMillis() - start;
+         }
+      }
+   
+      // Error messages of the exception, for the error member of a result.
+       private static String errorReport(ProcessingException e) {
+         return (e.errors() == null) ? "" : e.errors().generateErrorReport().trim();
+      }
+   
+      // The format whose file extension matches the given file name, or ISE text.
+       private TraceFormat traceFormatFor(String fileName) {
+         int dot = fileName.lastIndexOf('.');
+         if (dot >= 0) {
+            String extension = fileName.substring(dot + 1);
+            for (int i = 0; i < traceFormats.size(); i++) {
+               TraceFormat format = (TraceFormat) traceFormats.get(i);
+               if (extension.equalsIgnoreCase(format.getFileExtension())) {
+                  return format;
+               }
+            }
+         }
+         return defaultTraceFormat;
+      }
+   
+      // Compare the traces and record the first difference, if any, in the job.
+   	// The trace of a job that did not run to completion is compared as far as
+   	// it goes, but a mismatch does not replace its status.
+       private static void compareTraces(Job job, TraceFormat format, File expected, File actual) 
+                                        throws IOException {
+         if (format instanceof BinaryTraceFormat) {
+            BinaryTraceReader expectedReader = new BinaryTraceReader(expected);
+            BinaryTraceReader actualReader = new BinaryTraceReader(actual);
+            try {
+               if (BinaryTraceDiff.findNextDifference(expectedReader, actualReader)) {
+                  job.divergenceRecord = Math.max(expectedReader.getRecordNumber(), actualReader.getRecordNumber());
+                  job.divergenceExpected = expectedReader.toString();
+                  job.divergenceActual = actualReader.toString();
+               }
+            } 
+            finally {
+               expectedReader.close();
+               actualReader.close();
+            }
+         } 
+         else {
+            BufferedReader expectedReader = new BufferedReader(new FileReader(expected));
+            BufferedReader actualReader = new BufferedReader(new FileReader(actual));
+            try {
+               for (long record = 0; ; record++) {
+                  String expectedLine = nextLine(expectedReader);
+                  String actualLine = nextLine(actualReader);
+                  if (expectedLine == null && actualLine == null) {
+                     break;
+                  }
+                  if (expectedLine == null || actualLine == null || !expectedLine.equals(actualLine)) {
+                     job.divergenceRecord = record;
+                     job.divergenceExpected = (expectedLine == null) ? "end of trace" : expectedLine;
+                     job.divergenceActual = (actualLine == null) ? "end of trace" : actualLine;
+                     break;
+                  }
+               }
+            } 
+            finally {
+               expectedReader.close();
+               actualReader.close();
+            }
+         }
+         if (job.divergenceExpected != null && job.status.equals("ok")) {
+            job.status = "trace mismatch";
+         }
+      }
+   
+      // Next non-blank line of a text trace, null at the end.  Blank lines are
+   	// skipped so that traces captured along with program output still compare.
+       private static String nextLine(BufferedReader reader) throws IOException {
+         String line;
+         do {
+            line = reader.readLine();
+         } while (line != null && line.trim().length() == 0);
+         return line;
+      }
+   
+      // Write the result of a job as one line of JSON.
+       private synchronized void report(Job job) {
+         boolean pass = job.status.equals("ok");
+         if (!pass) {
+            failures++;
+         }
+         StringBuffer line = new StringBuffer(200);
+         line.append("{\"job\":").append(job.number);
+         line.append(",\"program\":").append(quote(job.program));
+         line.append(",\"pass\":").append(pass);
+         line.append(",\"status\":").append(quote(job.status));
+         if (job.error != null) {
+            line.append(",\"error\":").append(quote(job.error));
+         }
+         line.append(",\"instructions\":").append(job.instructions);
+         line.append(",\"exit\":").append(job.exitCode);
+         line.append(",\"ms\":").append(job.milliseconds);
+         if (job.divergenceExpected != null) {
+            line.append(",\"divergence\":{\"record\":").append(job.divergenceRecord);
+            line.append(",\"expected\":").append(quote(job.divergenceExpected));
+            line.append(",\"actual\":").append(quote(job.divergenceActual)).append('}');
+         }
+         line.append('}');
+         out.println(line);
+         out.flush();
+      }
+   
+      // The given string as a JSON string literal.
+       private static String quote(String s) {
+         StringBuffer quoted = new StringBuffer(s.length() + 2);
+         quoted.append('"');
+         for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+               case '"':  quoted.append("\\\""); 
+                  break;
+               case '\\': quoted.append("\\\\"); 
+                  break;
+               case '\n': quoted.append("\\n"); 
+                  break;
+               case '\r': quoted.append("\\r"); 
+                  break;
+               case '\t': quoted.append("\\t"); 
+                  break;
+               default:
+                  if (c < ' ') {
+                     String hex = Integer.toHexString(c);
+                     quoted.append("\\u0000".substring(0, 6 - hex.length())).append(hex);
+                  } 
+                  else {
+                     quoted.append(c);
+                  }
+            }
+         }
+         return quoted.append('"').toString();
+      }
+   
+      // One line of the manifest and, once run, its results.
+       private static class Job {
+         int number;
+         String program, programFile, expectedTrace;
+         int maxSteps;
+         String status, error;
+         int instructions, exitCode;
+         long milliseconds;
+         long divergenceRecord;
+         String divergenceExpected, divergenceActual;
+      }
+   
+      // Standard output and error of the jobs.
+       private static class DiscardOutputStream extends OutputStream {
+          public void write(int b) {
+         }
+      
+          public void write(byte[] b, int off, int len) {
+         }
+      }
+   }
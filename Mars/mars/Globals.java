@@ -82,8 +82,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public static final int maximumMessageCharacters = getMessageLimit();
     /** Maximum number of assembler errors produced by one assemble operation */
       public static final int maximumErrorMessages = getErrorLimit();
-    /** Maximum number of back-step operations to buffer */
+    /** Maximum number of back-step operations to buffer in memory */
       public static final int maximumBacksteps = getBackstepLimit();
+    /** Maximum size in megabytes of the file holding older back-step operations, 0 for none */
+      public static final int maximumBackstepFileMegabytes = getBackstepFileLimit();
     /** Object that contains Lua Object. Modified by DEPCTG, 2016, 12 **/
       static LuaBinding luaBinding;
    	/** MARS copyright years */
@@ -155,6 +157,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        private static int getBackstepLimit() {
          return getIntegerProperty(configPropertiesFile, "BackstepLimit", 1000);
       } 
+   
+   	// Read limit on the size of the back-step file (megabytes) from properties file.
+       private static int getBackstepFileLimit() {
+         return getIntegerProperty(configPropertiesFile, "BackstepFileLimit", 64);
+      } 
 		
    	// Read ASCII default display character for non-printing characters, from properties file.
        public static String getAsciiNonPrint() {
@@ -0,0 +1,220 @@
+   package mars;
+   import mars.assembler.*;
+   import mars.mips.hardware.*;
+   import mars.util.*;
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Loads machine code images, text files of hexadecimal words such as our Verilog
+ * toolchain writes for <tt>$readmemh</tt>, straight into memory in place of
+ * assembling them.  The assembler can take a file of hexadecimal machine code too,
+ * but it tokenizes every line and makes a <code>ProgramStatement</code> for every
+ * word up front, which is far too slow for images of several megabytes.  Here the
+ * file is memory-mapped and scanned byte by byte.  Text image words go into the
+ * text segment as they are, and a statement is only made for a word when it is
+ * first read (see <code>Memory.setStatementWords</code>).  Data image words go
+ * straight into the data segment.
+ * <p>
+ * An image holds hexadecimal words of up to 8 digits, with or without
+ * <tt>0x</tt>, separated by white space.  <tt>_</tt> may be used within a word to
+ * group digits.  <tt>#</tt> and <tt>//</tt> start comments that run to the end of
+ * the line.  <tt>@</tt> followed by a hexadecimal number, as in <tt>$readmemh</tt>,
+ * moves to that word of the segment, counting from 0.  The text image starts at
+ * the text segment base address and the data image at the <tt>.data</tt> base
+ * address.  There are no labels, so the program's symbol tables are empty, and
+ * its list of machine statements is empty too.
+ *
+ * @version October 2017
+ */
+
+    public class HexImageLoader {
+   
+      private static final int CHUNK_WORDS = 1 << 16; // words parsed before storing them
+   
+   	/**
+   	 * Load a text segment image, and optionally a data segment image, in place of
+   	 * assembling a program.  Memory and the global symbol table are cleared first,
+   	 * as for assembly.
+   	 *
+   	 * @param program the program to load, in place of assembling it.  It has no source.
+   	 * @param textImage name of the text segment image file
+   	 * @param dataImage name of the data segment image file, or null for none
+   	 * @return ErrorList with nothing in it; loading has no warnings
+   	 * @throws ProcessingException if an image cannot be read, contains something
+   	 * other than words, comments and addresses, or does not fit its segment
+   	 */
+       public static ErrorList load(MIPSprogram program, String textImage, String dataImage) 
+              throws ProcessingException {
+         ErrorList errors = new ErrorList();
+         MachineContext.getCurrent().getSymbolTable().clear();
+         Memory memory = Memory.getInstance();
+         memory.clear();
+         loadImage(textImage, Memory.textBaseAddress, true, memory, errors);
+         if (dataImage != null) {
+            loadImage(dataImage, Memory.dataBaseAddress, false, memory, errors);
+         }
+         program.setAssembled(new ArrayList(), new SymbolTable(textImage));
+         SystemIO.resetFiles();
+         return errors;
+      }
+   
+   	// Scan one image and store its words, a chunk at a time, from the base address
+   	// on: as statement words if it is a text image, else as data.
+       private static void loadImage(String filename, int baseAddress, boolean text, Memory memory, ErrorList errors) 
+              throws ProcessingException {
+         ByteBuffer bytes = map(filename, errors);
+         int[] words = new int[CHUNK_WORDS];
+         int[] lines = new int[CHUNK_WORDS];
+         int count = 0;
+         int address = baseAddress;   // where words[0] goes
+         int line = 1;
+         int lineStart = 0;
+         int limit = bytes.limit();
+         int i = 0;
+         while (i < limit) {
+            int c = bytes.get(i);
+            if (c == '\n') {
+               line++;
+               lineStart = ++i;
+               continue;
+            }
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+               i++;
+               continue;
+            }
+            if (c == '#' || (c == '/' && i + 1 < limit && bytes.get(i + 1) == '/')) {
+               while (i < limit && bytes.get(i) != '\n') {
+                  i++;
+               }
+               continue;
+            }
+            int start = i;
+            boolean isAddress = (c == '@');
+            if (isAddress) {
+               i++;
+            }
+            if (i + 1 < limit && bytes.get(i) == '0' && (bytes.get(i + 1) | 0x20) == 'x') {
+               i += 2;
+            }
+            int value = 0;
+            int digits = 0;
+            for (; i < limit; i++) {
+               c = bytes.get(i);
+               int digit = Character.digit((char) c, 16);
+               if (digit >= 0) {
+                  value = (value << 4) | digit;
+                  digits++;
+               } 
+               else if (c != '_') {
+                  break;
+               }
+            }
+            if (digits == 0 || digits > 8 || (i < limit && !endsWord(bytes, i))) {
+               while (i < limit && !endsWord(bytes, i)) {
+                  i++;
+               }
+               errors.add(new ErrorMessage(filename, line, start - lineStart + 1, "\"" + text(bytes, start, i) 
+                     + "\" is not " + ((isAddress) ? "an address" : "a word") + " of up to 8 hexadecimal digits"));
+               throw new ProcessingException(errors);
+            }
+            if (isAddress || count == CHUNK_WORDS) {
+               store(filename, lines[0], address, words, lines, count, text, memory, errors);
+               address += count * Memory.WORD_LENGTH_BYTES;
+               count = 0;
+            }
+            if (isAddress) {
+               address = baseAddress + value * Memory.WORD_LENGTH_BYTES;
+            } 
+            else {
+               words[count] = value;
+               lines[count] = line;
+               count++;
+            }
+         }
+         store(filename, lines[0], address, words, lines, count, text, memory, errors);
+      }
+   
+   	// Store a chunk of words of an image.
+       private static void store(String filename, int line, int address, int[] words, int[] lines, int count, 
+                                 boolean text, Memory memory, ErrorList errors) throws ProcessingException {
+         if (count == 0) {
+            return;
+         }
+         try {
+            if (text) {
+               memory.setStatementWords(address, words, lines, count);
+            } 
+            else {
+               memory.setRawWords(address, words, count);
+            }
+         } 
+             catch (AddressErrorException e) {
+               errors.add(new ErrorMessage(filename, line, 0, "Words from this line on do not fit in the " 
+                     + ((text) ? "text" : "data") + " segment: " + Binary.intToHexString(e.getAddress()) 
+                     + " is out of range"));
+               throw new ProcessingException(errors);
+            }
+      }
+   
+   	// True if the byte at i ends a word: white space or the start of a comment.
+       private static boolean endsWord(ByteBuffer bytes, int i) {
+         int c = bytes.get(i);
+         return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f' || c == '#' || c == '/';
+      }
+   
+       private static String text(ByteBuffer bytes, int start, int end) {
+         byte[] chars = new byte[end - start];
+         for (int i = start; i < end; i++) {
+            chars[i - start] = bytes.get(i);
+         }
+         return new String(chars);
+      }
+   
+   	// The whole file, mapped into memory.
+       private static ByteBuffer map(String filename, ErrorList errors) throws ProcessingException {
+         try {
+            FileChannel channel = new FileInputStream(filename).getChannel();
+            try {
+               return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } 
+            finally {
+               channel.close();
+            }
+         } 
+             catch (IOException e) {
+               errors.add(new ErrorMessage((MIPSprogram) null, 0, 0, e.toString()));
+               throw new ProcessingException(errors);
+            }
+      }
+   }
@@ -169,6 +169,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return backStepper;
       }
    
+   /**
+    * Discards the BackStepper associated with this program, if any, closing it so that
+    * any temporary file it holds goes.  Call this before replacing the program.
+    **/
+    
+       public void closeBackStepper() {
+         if (backStepper != null) {
+            backStepper.close();
+            backStepper = null;
+         }
+      }
+   
    /**
     * Returns SymbolTable associated with this program.  It is created at assembly time,
     * and stores local labels (those not declared using .globl directive).
@@ -248,7 +260,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
    /**
     * Prepares the given list of files for assembly.  This involves
-    * reading and tokenizing all the source files.  There may be only one.
+    * reading and tokenizing all the source files.  There may be only one.  When there
+    * are several, they are read and tokenized in parallel.
     * @param filenames  ArrayList containing the source file name(s) in no particular order
     * @param leadFilename String containing name of source file that needs to go first and 
     * will be represented by "this" MIPSprogram object.
@@ -268,11 +281,29 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             filenames.add(0, exceptionHandler);
             leadFilePosition = 1;
          }
+      // Files are read and tokenized in parallel; each has its own Tokenizer.
+         final MIPSprogram[] preparees = new MIPSprogram[filenames.size()];
+         final String[] names = new String[filenames.size()];
+         final boolean[] repeated = new boolean[filenames.size()]; // lead file listed again
+         boolean leadSeen = false;
          for (int i=0; i<filenames.size(); i++) {
-            String filename = (String) filenames.get(i);  
-            MIPSprogram preparee = (filename.equals(leadFilename)) ? this : new MIPSprogram();
-            preparee.readSource(filename);
-            preparee.tokenize();
+            names[i] = (String) filenames.get(i);
+            preparees[i] = (names[i].equals(leadFilename)) ? this : new MIPSprogram();
+            repeated[i] = preparees[i] == this && leadSeen;
+            leadSeen = leadSeen || preparees[i] == this;
+         }
+         SourceFileTasks.runAll(preparees.length, 
+               new SourceFileTasks.Task() {
+                   public void run(int fileIndex) throws ProcessingException {
+                     if (repeated[fileIndex]) {
+                        return;
+                     }
+                     preparees[fileIndex].readSource(names[fileIndex]);
+                     preparees[fileIndex].tokenize();
+                  }
+               });
+         for (int i=0; i<preparees.length; i++) {
+            MIPSprogram preparee = preparees[i];
          	// I want "this" MIPSprogram to be the first in the list...except for exception handler
             if (preparee == this && MIPSprogramsToAssemble.size()>0) {
                MIPSprogramsToAssemble.add(leadFilePosition,preparee);
@@ -313,7 +344,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     
        public ErrorList assemble(ArrayList MIPSprogramsToAssemble, boolean extendedAssemblerEnabled,
               boolean warningsAreErrors) throws ProcessingException {
-         this.backStepper = null;
+         closeBackStepper();
          Assembler asm = new Assembler();
          this.machineList = asm.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
          this.backStepper = new BackStepper();
@@ -321,6 +352,24 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    
    
+   /**
+    * Takes the result of an assembly loaded by <code>AssemblyCache</code>, or a machine
+    * code image loaded by <code>HexImageLoader</code>, in place of tokenizing and
+    * assembling the source.  Memory and the global symbol table must already have
+    * been loaded.
+    * @param machineList ArrayList of ProgramStatement, sorted by address.  Null for
+    * source files other than the lead file, as when assembling.
+    * @param localSymbolTable symbol table of labels local to this source file.
+    **/
+   
+       void setAssembled(ArrayList machineList, SymbolTable localSymbolTable) {
+         this.machineList = machineList;
+         this.localSymbolTable = localSymbolTable;
+         closeBackStepper();
+         this.backStepper = (machineList == null) ? null : new BackStepper();
+      }
+   
+   
    /**
     * Simulates execution of the MIPS program. Program must have already been assembled.
     * Begins simulation at beginning of text segment and continues to completion.
@@ -0,0 +1,273 @@
+   package mars;
+   import mars.assembler.*;
+   import mars.mips.hardware.*;
+   import mars.mips.trace.*;
+   import mars.simulator.*;
+   import mars.util.*;
+   import java.io.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * All the state of one simulated MIPS machine: general purpose, coprocessor 0 and
+ * coprocessor 1 registers, delayed branch, memory, symbol table, open files and
+ * standard streams, random number streams, write trace and the Simulator that runs
+ * it.  The static APIs of <code>RegisterFile</code>, <code>Coprocessor0</code>,
+ * <code>Coprocessor1</code>, <code>Memory</code>, <code>SystemIO</code>,
+ * <code>TraceSink</code> and <code>Simulator</code> all work on the <i>current</i>
+ * context.
+ * <p>
+ * Each thread has a current context.  Unless a thread is given one with
+ * <code>setCurrent</code>, it is the default context, which is the one the IDE and
+ * ordinary command mode use, and whose memory and symbol table are
+ * <code>Globals.memory</code> and <code>Globals.symbolTable</code>.  To run several
+ * programs at once, give each its own context, make it current in the thread that
+ * assembles and simulates the program, and everything the program does stays in
+ * its context.  The simulator's own thread inherits the context of the thread that
+ * started it.
+ * <p>
+ * Not everything is per context.  The instruction set, settings (such as delayed
+ * branching), the memory configuration and anything involving the IDE, back
+ * stepping or MARS tools are shared, and only make sense in the default context.
+ *
+ * @version October 2017
+ */
+
+    public class MachineContext {
+   
+      private static final MachineContext defaultContext = new MachineContext();
+      private static final ThreadLocal current = new ThreadLocal();
+      // False until some thread is given a context other than the default, so
+   	// that ordinary single-program runs never look at the ThreadLocal.
+      private static volatile boolean othersInUse = false;
+   
+      private final RegisterFile registerFile = new RegisterFile();
+      private final Coprocessor0 coprocessor0 = new Coprocessor0();
+      private final Coprocessor1 coprocessor1 = new Coprocessor1();
+      private final DelayedBranch delayedBranch = new DelayedBranch();
+      private final Memory memory = new Memory();
+      private final SystemIO systemIO = new SystemIO();
+      private final HashMap randomStreams = new HashMap();
+      private final Object lock = new Object();
+      private SymbolTable symbolTable = null;
+      private Simulator simulator = null;
+      private TraceSink traceSink = null;
+      private InputStream standardInput = System.in;
+      private PrintStream standardOutput = System.out;
+      private PrintStream standardError = System.err;
+      private int exitCode = 0;
+   
+   	/**
+   	 * Create a new machine, with registers and memory in their reset state and
+   	 * System.in, System.out and System.err as its standard streams.
+   	 */
+       public MachineContext() {
+      }
+   
+   	/**
+   	 * Returns the context used by threads that have not been given one.
+   	 *
+   	 * @return the default context
+   	 */
+       public static MachineContext getDefault() {
+         return defaultContext;
+      }
+   
+   	/**
+   	 * Returns the calling thread's current context.
+   	 *
+   	 * @return the current context
+   	 */
+       public static MachineContext getCurrent() {
+         if (othersInUse) {
+            MachineContext context = (MachineContext) current.get();
+            if (context != null) {
+               return context;
+            }
+         }
+         return defaultContext;
+      }
+   
+   	/**
+   	 * Make the given context the calling thread's current context.
+   	 *
+   	 * @param context the context, or null to go back to the default context
+   	 */
+       public static void setCurrent(MachineContext context) {
+         if (context == null || context == defaultContext) {
+            current.set(null);
+         } 
+         else {
+            othersInUse = true;
+            current.set(context);
+         }
+      }
+   
+   	/**
+   	 * Send this machine's standard input and output (syscalls and, unless a trace file
+   	 * is given, the write trace) to the given streams.  Must be done before anything
+   	 * reads or writes them.
+   	 *
+   	 * @param in standard input
+   	 * @param out standard output
+   	 * @param err standard error
+   	 */
+       public void setStandardStreams(InputStream in, PrintStream out, PrintStream err) {
+         standardInput = in;
+         standardOutput = out;
+         standardError = err;
+      }
+   
+   	/** @return standard input of this machine */
+       public InputStream getStandardInput() {
+         return standardInput;
+      }
+   
+   	/** @return standard output of this machine */
+       public PrintStream getStandardOutput() {
+         return standardOutput;
+      }
+   
+   	/** @return standard error of this machine */
+       public PrintStream getStandardError() {
+         return standardError;
+      }
+   
+   	/** @return the general purpose registers, HI, LO and PC of this machine */
+       public RegisterFile getRegisterFile() {
+         return registerFile;
+      }
+   
+   	/** @return the coprocessor 0 registers of this machine */
+       public Coprocessor0 getCoprocessor0() {
+         return coprocessor0;
+      }
+   
+   	/** @return the coprocessor 1 registers of this machine */
+       public Coprocessor1 getCoprocessor1() {
+         return coprocessor1;
+      }
+   
+   	/** @return the pending delayed branch of this machine */
+       public DelayedBranch getDelayedBranch() {
+         return delayedBranch;
+      }
+   
+   	/** @return the memory of this machine */
+       public Memory getMemory() {
+         return memory;
+      }
+   
+   	/** @return the open files of this machine */
+       public SystemIO getSystemIO() {
+         return systemIO;
+      }
+   
+   	/** @return the random number streams used by the Rand syscalls */
+       public HashMap getRandomStreams() {
+         return randomStreams;
+      }
+   
+   	/**
+   	 * Returns the object the simulator holds while executing an instruction.  Anything
+   	 * outside the simulator that touches registers or memory should hold it too.
+   	 * For the default context this is <code>Globals.memoryAndRegistersLock</code>.
+   	 *
+   	 * @return the lock object
+   	 */
+       public Object getLock() {
+         return (this == defaultContext) ? Globals.memoryAndRegistersLock : lock;
+      }
+   
+   	/**
+   	 * Returns the global symbol table of the program being assembled or run.  For the
+   	 * default context this is <code>Globals.symbolTable</code>.
+   	 *
+   	 * @return the symbol table
+   	 */
+       public synchronized SymbolTable getSymbolTable() {
+         if (this == defaultContext) {
+            return Globals.symbolTable;
+         }
+         if (symbolTable == null) {
+            symbolTable = new SymbolTable("global");
+         }
+         return symbolTable;
+      }
+   
+   	/**
+   	 * Returns the simulator of this machine, creating it the first time through.
+   	 *
+   	 * @return the simulator
+   	 */
+       public synchronized Simulator getSimulator() {
+         if (simulator == null) {
+            simulator = new Simulator();
+         }
+         return simulator;
+      }
+   
+   	/**
+   	 * Returns the write trace of this machine, creating it the first time through.
+   	 *
+   	 * @return the trace sink
+   	 */
+       public synchronized TraceSink getTraceSink() {
+         if (traceSink == null) {
+            traceSink = new TraceSink(standardOutput);
+            if (this == defaultContext) {
+               traceSink.flushAtExit();
+            }
+         }
+         return traceSink;
+      }
+   
+   	/**
+   	 * Returns the exit code the MIPS program gave to the Exit2 syscall, 0 if none.
+   	 *
+   	 * @return the exit code
+   	 */
+       public int getExitCode() {
+         return exitCode;
+      }
+   
+   	/**
+   	 * Record the exit code given by the MIPS program.  For the default context this
+   	 * is also the MARS exit code, <code>Globals.exitCode</code>.
+   	 *
+   	 * @param exitCode the exit code
+   	 */
+       public void setExitCode(int exitCode) {
+         this.exitCode = exitCode;
+         if (this == defaultContext) {
+            Globals.exitCode = exitCode;
+         }
+      }
+   }
@@ -2,6 +2,10 @@
    import mars.venus.*;
    import mars.util.*;
    import mars.mips.dump.*;
+   import mars.mips.trace.*;
+   import mars.mips.cache.*;
+   import mars.mips.branch.BranchPredictorLab;
+   import mars.mips.pipeline.PipelineModel;
    import mars.mips.hardware.*;
    import mars.simulator.*;
    import java.io.*;
@@ -57,7 +61,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
            ad  -- both a and d<br>
    	  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.<br>
    	  ascii  -- display memory or register contents interpreted as ASCII
+     asmcache  -- keep assembled programs in the given directory and load them from there<br>
+                  when the same files are assembled again with the same settings.  Option<br>
+                  has 1 argument, e.g. <tt>asmcache &lt;dir&gt;</tt>.  See AssemblyCache.<br>
    		   b  -- brief - do not display register/memory address along with contents<br>
+        batch  -- run the jobs listed in a manifest file and report results as JSON Lines.<br>
+                  Option has 1 argument, e.g. <tt>batch &lt;manifest&gt;</tt>.  See BatchRunner.<br>
+        bpred  -- evaluate the listed branch predictors side by side on every branch and<br>
+                  jump of the run and write their accuracy, overall and per branch, to a<br>
+                  file or standard output (-) as csv or json.  Option has 3 arguments, e.g.<br>
+                  <tt>bpred &lt;predictors&gt; &lt;format&gt; &lt;file&gt;</tt>.  See BranchPredictorLab.<br>
+        bw<n>  -- run <n> batch jobs at a time (default: one per processor).<br>
+        cache  -- simulate the cache configurations listed in a file over the run's memory<br>
+                  accesses and write their hit/miss counts to a file or standard output (-)<br>
+                  as csv or json.  Option has 3 arguments, e.g.<br>
+                  <tt>cache &lt;configs&gt; &lt;format&gt; &lt;file&gt;</tt>.  See CacheSweep.<br>
+   checkpoint  -- take a checkpoint of the machine every <n> instructions.  Option has 1<br>
+                  argument, e.g. <tt>checkpoint &lt;n&gt;</tt>.  See <tt>resume</tt>.<br>
+        cosim  -- compare each register/memory write, as it happens, with a reference trace<br>
+                  read from a file, named pipe or standard input (-), and stop at the first<br>
+                  difference.  Option has 2 arguments, e.g. <tt>cosim &lt;format&gt; &lt;file&gt;</tt>.<br>
+                  See TraceChecker.<br>
    		   d  -- print debugging statements<br>
            da  -- both a and d<br>
            db  -- MIPS delayed branching is enabled.<br>
@@ -66,22 +90,34 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   <tt>dump &lt;segment&gt; &lt;format&gt; &lt;file&gt;</tt>.  Also supports<br>
                   an address range (see <i>m-n</i> below).  Current supported <br>
                   segments are <tt>.text</tt> and <tt>.data</tt>.  Current supported dump formats <br>
-                  are <tt>Binary</tt>, <tt>HexText</tt>, <tt>BinaryText</tt>.<br>
+                  are <tt>Binary</tt>, <tt>HexText</tt>, <tt>BinaryText</tt>, <tt>SparseBinary</tt>.<br>
+                  Several dumps are written at the same time.<br>
             h  -- display help.  Use by itself and with no filename</br>
           hex  -- display memory or register contents in hexadecimal (default)<br>
+      hexdata  -- load the given file as a hexadecimal image of the .data segment.  Option<br>
+                  has 1 argument, e.g. <tt>hexdata &lt;file&gt;</tt>.  Implies <tt>hexload</tt>.<br>
+      hexload  -- load the program file as a hexadecimal machine code image of the text<br>
+                  segment instead of assembling it.  See HexImageLoader.<br>
            ic  -- display count of MIPS basic instructions 'executed'");
            mc  -- set memory configuration.  Option has 1 argument, e.g.<br>
                   <tt>mc &lt;config$gt;</tt>, where &lt;config$gt; is <tt>Default</tt><br>
                   for the MARS default 32-bit address space, <tt>CompactDataAtZero</tt> for<br>
-                  a 32KB address space with data segment at address 0, or <tt>CompactTextAtZero</tt><br>
-                  for a 32KB address space with text segment at address 0.<br>
+                  a 32KB address space with data segment at address 0, <tt>CompactTextAtZero</tt><br>
+                  for a 32KB address space with text segment at address 0, or <tt>Flat</tt> for<br>
+                  the default address space in paged flat memory, stack stored ascending like data.<br>
            me  -- display MARS messages to standard err instead of standard out. Can separate via redirection.</br>
            nc  -- do not display copyright notice (for cleaner redirected/piped output).</br>
    		  np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
    		   p  -- Project mode - assemble all files in the same directory as given file.<br>
+     pipeline  -- count the cycles the run takes on a 5-stage pipeline with the given settings<br>
+                  and write the total, stalls by cause and timing per statement to a file or<br>
+                  standard output (-) as csv or json.  Option has 3 arguments, e.g.<br>
+                  <tt>pipeline &lt;settings&gt; &lt;format&gt; &lt;file&gt;</tt>.  See PipelineModel.<br>
    	  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.<br>
            sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
           smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
+        stats  -- display execution counters at end of run.  Option has 1 argument, the output<br>
+                  format, e.g. <tt>stats json</tt>.  See SimulationStats.<br>
            we  -- assembler Warnings will be considered Errors<br>
           <n>  -- where <n> is an integer maximum count of steps to simulate.<br>
                   If 0, negative or not specified, there is no maximum.<br>
@@ -92,6 +128,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       <m>-<n>  -- memory address range from <m> to <n> whose contents to<br>
                   display at end of run. <m> and <n> may be hex or decimal,<br>
                   <m> <= <n>, both must be on word boundary.  Option may be repeated.<br>
+       resume  -- run the program once without output, then run it again from checkpoint<br>
+                  &lt;k&gt; with output and trace.  Option has 1 argument, e.g. <tt>resume &lt;k&gt;</tt>.<br>
+                  Requires <tt>checkpoint</tt>.  See Checkpoint.<br>
            pa  -- Program Arguments follow in a space-separated list.  This<br>
                   option must be placed AFTER ALL FILE NAMES, because everything<br>
                   that follows it is interpreted as a program argument to be<br>
@@ -109,10 +148,36 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private boolean warningsAreErrors; // Whether assembler warnings should be considered errors.
       private boolean startAtMain; // Whether to start execution at statement labeled 'main' 
       private boolean countInstructions; // Whether to count and report number of instructions executed 
+      private boolean displayStats; // Whether to report execution counters (as JSON) at end of run
+      private int checkpointInterval; // instructions between checkpoints, 0 for no checkpoints
+      private int resumeCheckpoint; // checkpoint to run again from, -1 to run only once
       private boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
+      private boolean turbo; // Whether to use the fast interpreter when nothing is observing the run
+      private boolean compileBlocks; // Whether the fast interpreter may compile hot blocks to JVM code
+      private String batchManifest; // manifest of jobs to run in batch mode, null if not batch mode
+      private int batchWorkers; // number of batch jobs to run at a time
+      private AssemblyCache assemblyCache; // cache of assembled programs, null for none
+      private boolean hexImage; // load the program file as a machine code image, not source
+      private String hexDataImage; // data segment image to load with it, null for none
+      private TraceFormat cosimFormat; // format of the reference trace to check writes against
+      private String cosimFile; // file, pipe or "-" to read the reference trace from, null for none
+      private boolean traceToFile; // whether the trace option was given
+      private String cacheConfigurations; // file listing cache configurations to simulate, null for none
+      private String cacheFormat; // csv or json
+      private String cacheReport; // file or "-" to write the cache counts to
+      private CacheSweep cacheSweep; // configurations being simulated, while the program runs
+      private String branchPredictorList; // predictors to evaluate, comma separated, null for none
+      private BranchPredictorLab branchPredictors; // predictors being evaluated, while the program runs
+      private String branchFormat; // csv or json
+      private String branchReport; // file or "-" to write the predictor accuracy to
+      private String pipelineSettings; // settings of the pipeline timing model, null for none
+      private PipelineModel pipelineModel; // timing model following the run, while the program runs
+      private String pipelineFormat; // csv or json
+      private String pipelineReport; // file or "-" to write the timing to
       private static final String rangeSeparator = "-";
       private static final int splashDuration = 2000; // time in MS to show splash screen
       private static final int memoryWordsPerLine = 4; // display 4 memory words, tab separated, per line
+      private static final int coSimulationHistory = 16; // matching writes shown before a divergence
       private static final int DECIMAL = 0; // memory and register display format
       private static final int HEXADECIMAL = 1;// memory and register display format
       private static final int ASCII = 2;// memory and register display format
@@ -121,7 +186,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private ArrayList filenameList;
       private MIPSprogram code;
       private int maxSteps;
-      private int instructionCount;
       private PrintStream out; // stream for display of command line output
       private ArrayList dumpTriples = null; // each element holds 3 arguments for dump option
       private ArrayList programArgumentList; // optional program args for MIPS program (becomes argc, argv)
@@ -146,8 +210,28 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             warningsAreErrors = false;
             startAtMain = false;
             countInstructions = false;
+            checkpointInterval = 0;
+            resumeCheckpoint = -1;
 				selfModifyingCode = false;
-            instructionCount = 0;
+            turbo = true;
+            compileBlocks = true;
+            batchManifest = null;
+            batchWorkers = Runtime.getRuntime().availableProcessors();
+            assemblyCache = null;
+            hexImage = false;
+            hexDataImage = null;
+            cosimFormat = null;
+            cosimFile = null;
+            traceToFile = false;
+            cacheConfigurations = null;
+            cacheFormat = null;
+            cacheReport = null;
+            branchPredictorList = null;
+            branchFormat = null;
+            branchReport = null;
+            pipelineSettings = null;
+            pipelineFormat = null;
+            pipelineReport = null;
             assembleErrorExitCode = 0;
             simulateErrorExitCode = 0;
             registerDisplayList = new ArrayList();
@@ -159,26 +243,38 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             maxSteps = -1;
             out = System.out;  
             if (parseCommandArgs(args)) {
-               if (runCommand()) {
-                  displayMiscellaneousPostMortem();
-                  displayRegistersPostMortem();
-                  displayMemoryPostMortem();
+               if (batchManifest != null) {
+                  runBatch();
+               } 
+               else {
+                  if (runCommand()) {
+                     displayMiscellaneousPostMortem();
+                     displayRegistersPostMortem();
+                     displayMemoryPostMortem();
+                  }
+                  dumpSegments();
                }
-               dumpSegments();
             }
+            TraceSink.getInstance().close();
             System.exit(Globals.exitCode);
          }
       }   		
    	
       /////////////////////////////////////////////////////////////
    	// Perform any specified dump operations.  See "dump" option.
-   	//
+   	// Every dump is checked first, in order, then the files are written.
+   	// Dumps only read memory, so when there are several files they are all
+   	// written at the same time, one thread each.  Dumps to the same file are
+   	// written by the same thread in the order given, so the last one wins.
+   	// Messages come out in the order the dumps were given either way.
    
       private void dumpSegments() {
        
          if (dumpTriples == null) 
             return;
          
+         final String[] messages = new String[dumpTriples.size()];
+         final Object[][] dumps = new Object[dumpTriples.size()][];
          for (int i=0; i<dumpTriples.size(); i++) {
             String[] triple = (String[])dumpTriples.get(i);
             File file = new File(triple[2]);
@@ -199,38 +295,103 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   }
             }
             if (segInfo == null) {
-               out.println("Error while attempting to save dump, segment/address-range " + triple[0] + " is invalid!");
+               messages[i] = "Error while attempting to save dump, segment/address-range " + triple[0] + " is invalid!";
                continue;
             }
-            DumpFormatLoader loader = new DumpFormatLoader();
-            ArrayList dumpFormats = loader.loadDumpFormats();
-            DumpFormat format = DumpFormatLoader.findDumpFormatGivenCommandDescriptor(dumpFormats, triple[1]);
+            DumpFormat format = new DumpFormatLoader().loadDumpFormat(triple[1]);
             if (format == null) {
-               out.println("Error while attempting to save dump, format " + triple[1] + " was not found!");
+               messages[i] = "Error while attempting to save dump, format " + triple[1] + " was not found!";
                continue;
             }
             try {
                int highAddress = Globals.memory.getAddressOfFirstNull(segInfo[0].intValue(), segInfo[1].intValue())- Memory.WORD_LENGTH_BYTES;
                if (highAddress < segInfo[0].intValue()) {
-                  out.println("This segment has not been written to, there is nothing to dump.");
+                  messages[i] = "This segment has not been written to, there is nothing to dump.";
                   continue;
                } 
-               format.dumpMemoryRange(file, segInfo[0].intValue(), highAddress); 
+               if (format instanceof SparseBinaryDumpFormat) {
+                  // goes on past unwritten memory, to the end of the range
+                  highAddress = segInfo[1].intValue() - Memory.WORD_LENGTH_BYTES;
+               }
+               dumps[i] = new Object[] {format, file, segInfo[0], new Integer(highAddress)};
             } 
-               catch (FileNotFoundException e) {
-                  out.println("Error while attempting to save dump, file " + file + " was not found!");
-                  continue;
-               } 
                catch (AddressErrorException e) {
-                  out.println("Error while attempting to save dump, file " + file + "!  Could not access address: " + e.getAddress() + "!");
+                  messages[i] = "Error while attempting to save dump, file " + file + "!  Could not access address: " + e.getAddress() + "!";
                   continue;
                } 
+         }
+         // Group the dumps by file, keeping the order they were given in.
+         LinkedHashMap files = new LinkedHashMap();
+         for (int i=0; i<dumps.length; i++) {
+            if (dumps[i] == null) 
+               continue;
+            File file = (File) dumps[i][1];
+            String path;
+            try {
+               path = file.getCanonicalPath();
+            } 
                catch (IOException e) {
-                  out.println("Error while attempting to save dump, file " + file + "!  Disk IO failed!");
-                  continue;
+                  path = file.getAbsolutePath();
                }
+            ArrayList group = (ArrayList) files.get(path);
+            if (group == null) {
+               group = new ArrayList();
+               files.put(path, group);
+            }
+            group.add(new Integer(i));
+         }
+         final MachineContext context = MachineContext.getCurrent();
+         ArrayList threads = new ArrayList();
+         Iterator groups = files.values().iterator();
+         while (groups.hasNext()) {
+            final ArrayList group = (ArrayList) groups.next();
+            Runnable writer = 
+               new Runnable() {
+                  public void run() {
+                     MachineContext.setCurrent(context);
+                     for (int j=0; j<group.size(); j++) {
+                        int dump = ((Integer) group.get(j)).intValue();
+                        messages[dump] = writeDump((DumpFormat) dumps[dump][0], (File) dumps[dump][1],
+                                 ((Integer) dumps[dump][2]).intValue(), ((Integer) dumps[dump][3]).intValue());
+                     }
+                  }
+               };
+            Thread thread = new Thread(writer, "MARS dump " + (((Integer) group.get(0)).intValue() + 1));
+            thread.start();
+            threads.add(thread);
+         }
+         for (int i=0; i<threads.size(); i++) {
+            try {
+               ((Thread) threads.get(i)).join();
+            } 
+                catch (InterruptedException e) {
+                  i--; // keep waiting
+               }
+         }
+         for (int i=0; i<messages.length; i++) {
+            if (messages[i] != null) {
+               out.println(messages[i]);
+            }
          }
       } 	
+   
+      // Write one dump, returning the message to report if it fails, else null.
+   
+      private String writeDump(DumpFormat format, File file, int firstAddress, int lastAddress) {
+         try {
+            format.dumpMemoryRange(file, firstAddress, lastAddress); 
+         } 
+            catch (FileNotFoundException e) {
+               return "Error while attempting to save dump, file " + file + " was not found!";
+            } 
+            catch (AddressErrorException e) {
+               return "Error while attempting to save dump, file " + file + "!  Could not access address: " + e.getAddress() + "!";
+            } 
+            catch (IOException e) {
+               return "Error while attempting to save dump, file " + file + "!  Disk IO failed!";
+            }
+         return null;
+      }
    	
    		
    	/////////////////////////////////////////////////////////////////
@@ -334,6 +495,156 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                }
                continue;
             } 
+            if (args[i].toLowerCase().equals("trace")) {
+               if (args.length <= (i+2)) {
+                  out.println("Trace command line argument requires a format and file name.");
+                  argsOK = false;
+               } 
+               else {
+                  String formatName = args[++i];
+                  String file = args[++i];
+                  TraceFormat format = (new TraceFormatLoader()).loadTraceFormat(formatName);
+                  if (format == null) {
+                     out.println("Invalid trace format: "+formatName);
+                     argsOK = false;
+                  } 
+                  else {
+                     try {
+                        TraceSink.getInstance().setDestination(format, new File(file));
+                        traceToFile = true;
+                     } 
+                         catch (IOException e) {
+                           out.println("Could not create trace file " + file + ": " + e.getMessage());
+                           argsOK = false;
+                        }
+                  }
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("cosim")) {
+               if (args.length <= (i+2)) {
+                  out.println("Cosim command line argument requires a format and file name.");
+                  argsOK = false;
+               } 
+               else {
+                  String formatName = args[++i];
+                  cosimFile = args[++i];
+                  cosimFormat = (new TraceFormatLoader()).loadTraceFormat(formatName);
+                  if (!(cosimFormat instanceof IseTextTraceFormat || cosimFormat instanceof BinaryTraceFormat)) {
+                     out.println("Invalid co-simulation trace format: "+formatName);
+                     argsOK = false;
+                  } 
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("cache")) {
+               if (args.length <= (i+3)) {
+                  out.println("Cache command line argument requires a configuration file, format and file name.");
+                  argsOK = false;
+               } 
+               else {
+                  cacheConfigurations = args[++i];
+                  cacheFormat = args[++i].toLowerCase();
+                  cacheReport = args[++i];
+                  if (!cacheFormat.equals("csv") && !cacheFormat.equals("json")) {
+                     out.println("Invalid cache report format: "+cacheFormat+" (csv or json)");
+                     argsOK = false;
+                  } 
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("bpred")) {
+               if (args.length <= (i+3)) {
+                  out.println("Bpred command line argument requires a predictor list, format and file name.");
+                  argsOK = false;
+               } 
+               else {
+                  branchPredictorList = args[++i];
+                  branchFormat = args[++i].toLowerCase();
+                  branchReport = args[++i];
+                  try {
+                     BranchPredictorLab.create(branchPredictorList);
+                  } 
+                      catch (IllegalArgumentException e) {
+                        out.println("Invalid branch predictors "+branchPredictorList+": "+e.getMessage());
+                        argsOK = false;
+                     }
+                  if (!branchFormat.equals("csv") && !branchFormat.equals("json")) {
+                     out.println("Invalid branch predictor report format: "+branchFormat+" (csv or json)");
+                     argsOK = false;
+                  } 
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("pipeline")) {
+               if (args.length <= (i+3)) {
+                  out.println("Pipeline command line argument requires settings, a format and file name.");
+                  argsOK = false;
+               } 
+               else {
+                  pipelineSettings = args[++i];
+                  pipelineFormat = args[++i].toLowerCase();
+                  pipelineReport = args[++i];
+                  try {
+                     PipelineModel.create(pipelineSettings, false);
+                  } 
+                      catch (IllegalArgumentException e) {
+                        out.println("Invalid pipeline settings "+pipelineSettings+": "+e.getMessage());
+                        argsOK = false;
+                     }
+                  if (!pipelineFormat.equals("csv") && !pipelineFormat.equals("json")) {
+                     out.println("Invalid pipeline report format: "+pipelineFormat+" (csv or json)");
+                     argsOK = false;
+                  } 
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("asmcache")) {
+               if (args.length <= (i+1)) {
+                  out.println("Asmcache command line argument requires a directory name.");
+                  argsOK = false;
+               } 
+               else {
+                  assemblyCache = new AssemblyCache(new File(args[++i]));
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("hexload")) {
+               hexImage = true;
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("hexdata")) {
+               if (args.length <= (i+1)) {
+                  out.println("Hexdata command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  hexImage = true;
+                  hexDataImage = args[++i];
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("batch")) {
+               if (args.length <= (i+1)) {
+                  out.println("Batch command line argument requires a manifest file name.");
+                  argsOK = false;
+               } 
+               else {
+                  batchManifest = args[++i];
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().indexOf("bw")==0) {
+               try {
+                  batchWorkers = Integer.decode(args[i].substring(2)).intValue();
+                  if (batchWorkers > 0) {
+                     continue;
+                  }
+               }              
+                  catch (NumberFormatException nfe) {
+                   // Let it fall thru and get handled by catch-all
+                  }
+            }
             if (args[i].toLowerCase().equals("mc")) {
                String configName = args[++i];
                MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(configName);
@@ -426,6 +737,44 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                countInstructions = true;
                continue;
             }
+            if (args[i].toLowerCase().equals("stats")) {
+               if (args.length <= (i+1)) {
+                  out.println("Stats command line argument requires an output format.");
+                  argsOK = false;
+               } 
+               else if (!args[++i].toLowerCase().equals("json")) {
+                  out.println("Invalid stats format: "+args[i]+" (only json is supported)");
+                  argsOK = false;
+               } 
+               else {
+                  displayStats = true;
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("checkpoint")) {
+               checkpointInterval = decodeCount(args, ++i, 1);
+               if (checkpointInterval < 0) {
+                  out.println("Checkpoint command line argument requires a positive instruction count.");
+                  argsOK = false;
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("resume")) {
+               resumeCheckpoint = decodeCount(args, ++i, 0);
+               if (resumeCheckpoint < 0) {
+                  out.println("Resume command line argument requires a checkpoint number.");
+                  argsOK = false;
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("nt")) {
+               turbo = false;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("nj")) {
+               compileBlocks = false;
+               continue;
+            }
          
          
             if (args[i].indexOf("$") == 0) {
@@ -474,9 +823,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             out.println("Invalid Command Argument: "+args[i]);
             argsOK = false;
          }
+         if (resumeCheckpoint >= 0 && checkpointInterval == 0) {
+            out.println("Resume command line argument requires the checkpoint argument.");
+            argsOK = false;
+         }
          return argsOK;
       }
       
+      // Value of args[i] as an integer, or -1 if it is missing, not an integer or below minimum.
+      private int decodeCount(String[] args, int i, int minimum) {
+         if (i >= args.length) {
+            return -1;
+         }
+         try {
+            int value = Integer.decode(args[i]).intValue();
+            return (value < minimum) ? -1 : value;
+         } 
+             catch (NumberFormatException nfe) {
+               return -1;
+            }
+      }
+      
    	
    	//////////////////////////////////////////////////////////////////////
    	// Carry out the mars command: assemble then optionally run     
@@ -490,6 +857,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          try {
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode);
+            if ((cosimFile != null || cacheConfigurations != null || branchPredictorList != null ||
+                 pipelineSettings != null) && !traceToFile) {
+               TraceSink.getInstance().setEnabled(false); // only the reports asked for, unless the trace is too
+            }
             File mainFile = new File((String) filenameList.get(0)).getAbsoluteFile();// First file is "main" file
             ArrayList filesToAssemble;
             if (assembleProject) { 
@@ -515,16 +886,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             else {
                filesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
             }
-            if (Globals.debug) {
-               out.println("--------  TOKENIZING BEGINS  -----------");
-            }
-            ArrayList MIPSprogramsToAssemble = 
-                      code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);		
-            if (Globals.debug) {
-               out.println("--------  ASSEMBLY BEGINS  -----------");
+            ErrorList warnings;
+            if (hexImage) {
+               warnings = HexImageLoader.load(code, mainFile.getPath(), hexDataImage);
+            } 
+            else if (assemblyCache != null) {
+               warnings = assemblyCache.assemble(code, filesToAssemble, mainFile.getAbsolutePath(), null,
+                                                 pseudo, warningsAreErrors);
+            } 
+            else {
+               if (Globals.debug) {
+                  out.println("--------  TOKENIZING BEGINS  -----------");
+               }
+               ArrayList MIPSprogramsToAssemble = 
+                         code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);		
+               if (Globals.debug) {
+                  out.println("--------  ASSEMBLY BEGINS  -----------");
+               }
+               warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
             }
          	// Added logic to check for warnings and print if any. DPS 11/28/06
-            ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
+            TraceSink.getInstance().flush(); // data directive writes are traced too
             if (warnings != null && warnings.warningsOccurred()) {
                out.println(warnings.generateWarningReport());
             }
@@ -532,14 +914,46 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             if (simulate) {
                // store program args (if any) in MIPS memory
                new ProgramArgumentList(programArgumentList).storeProgramArguments();
-            	// establish observer if specified  
-               establishObserver();
+            	// turn on execution counters if instruction count or stats were asked for
+               Simulator.getInstance().setStatsEnabled(countInstructions || displayStats);
                if (Globals.debug) {
                   out.println("--------  SIMULATION BEGINS  -----------");
                }
                programRan = true;
-               boolean done = code.simulate(maxSteps);
-               if (!done) {
+               Simulator.getInstance().setTurboEnabled(turbo);
+               Simulator.getInstance().setCompilationEnabled(compileBlocks);
+               Simulator.getInstance().setCheckpointInterval(checkpointInterval);
+               int steps = maxSteps;
+               if (resumeCheckpoint >= 0) {
+                  Checkpoint checkpoint = runToCheckpoint();
+                  if (checkpoint == null) {
+                     out.println("Checkpoint "+resumeCheckpoint+" was not reached; "+
+                                 Simulator.getInstance().getCheckpoints().size()+" checkpoints were taken.");
+                     return false;
+                  }
+                  if (maxSteps > 0) {
+                     steps = maxSteps - checkpoint.getSteps();
+                  }
+               }
+               if (cosimFile != null && !startCoSimulation()) {
+                  return false;
+               }
+               if (cacheConfigurations != null && !startCacheSweep()) {
+                  return false;
+               }
+               if (branchPredictorList != null) {
+                  branchPredictors = BranchPredictorLab.create(branchPredictorList);
+                  Simulator.getInstance().setBranchPredictors(branchPredictors);
+               }
+               if (pipelineSettings != null) {
+                  pipelineModel = PipelineModel.create(pipelineSettings, delayedBranching);
+                  Simulator.getInstance().setPipelineModel(pipelineModel);
+               }
+               boolean done = code.simulate(steps);
+               finishCacheSweep();
+               finishBranchPredictors();
+               finishPipelineModel();
+               if (!finishCoSimulation(done) && !done) {
                   out.println("\nProgram terminated when maximum step limit "+maxSteps+" reached.");
                }
             }
@@ -549,13 +963,257 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
             catch (ProcessingException e) {
                Globals.exitCode = (programRan) ? simulateErrorExitCode : assembleErrorExitCode;
+               TraceSink.getInstance().flush();
                out.println(e.errors().generateErrorAndWarningReport());
                out.println("Processing terminated due to errors.");
+               finishCoSimulation(true);
+               finishCacheSweep();
+               finishBranchPredictors();
+               finishPipelineModel();
             } 
          return programRan;
       }
    
    
+   	//////////////////////////////////////////////////////////////////////
+   	// Open the reference trace and have every write of the run checked
+   	// against it, one instruction at a time.  Returns false if the reference
+   	// trace cannot be opened.  See "cosim" option.
+   	
+      private boolean startCoSimulation() {
+         TraceReader reader;
+         try {
+            boolean binary = cosimFormat instanceof BinaryTraceFormat;
+            if (cosimFile.equals("-")) {
+               reader = binary ? (TraceReader) new BinaryTraceReader(System.in)
+                               : (TraceReader) new IseTextTraceReader(System.in);
+            } 
+            else {
+               reader = binary ? (TraceReader) new BinaryTraceReader(new File(cosimFile))
+                               : (TraceReader) new IseTextTraceReader(new File(cosimFile));
+            }
+         } 
+             catch (IOException e) {
+               out.println("Could not open co-simulation trace " + cosimFile + ": " + e.getMessage());
+               return false;
+            }
+         TraceSink.getInstance().setChecker(new TraceChecker(reader, coSimulationHistory));
+         // The fast interpreter only looks at the stop request between runs.
+         Simulator.getInstance().setTurboEnabled(false);
+         return true;
+      }
+   
+   
+   	//////////////////////////////////////////////////////////////////////
+   	// Once the run is over, report whether it matched the reference trace.
+   	// Leftover reference writes only count if the program ran to its end.
+   	// Returns true if the traces diverged; MARS exit code is then 1.
+   	
+      private boolean finishCoSimulation(boolean ended) {
+         TraceChecker checker = TraceSink.getInstance().getChecker();
+         if (checker == null) {
+            return false;
+         }
+         TraceSink.getInstance().setChecker(null);
+         if (ended) {
+            checker.finish();
+         }
+         TraceSink.getInstance().flush();
+         if (checker.hasDiverged() || ended) {
+            checker.writeReport(out);
+         }
+         try {
+            checker.close();
+         } 
+             catch (IOException e) {
+               // done reading it anyway
+            }
+         if (checker.hasDiverged()) {
+            Globals.exitCode = 1;
+            return true;
+         }
+         return false;
+      }
+   
+   
+   	//////////////////////////////////////////////////////////////////////
+   	// Read the cache configurations and have them see every memory access
+   	// of the run.  Returns false if the configurations cannot be read.
+   	// See "cache" option.
+   	
+      private boolean startCacheSweep() {
+         try {
+            cacheSweep = CacheSweep.load(new File(cacheConfigurations));
+         } 
+             catch (IOException e) {
+               out.println("Could not read cache configurations " + e.getMessage());
+               return false;
+            }
+         Memory.getInstance().addObserver(cacheSweep);
+         return true;
+      }
+   
+   
+   	//////////////////////////////////////////////////////////////////////
+   	// Stop watching memory and write the counts of each cache configuration,
+   	// if a sweep was started.  See "cache" option.
+   	
+      private void finishCacheSweep() {
+         if (cacheSweep == null) {
+            return;
+         }
+         Memory.getInstance().deleteObserver(cacheSweep);
+         TraceSink.getInstance().flush();
+         PrintStream report = out;
+         try {
+            if (!cacheReport.equals("-")) {
+               report = new PrintStream(new FileOutputStream(cacheReport));
+            }
+            if (cacheFormat.equals("json")) {
+               cacheSweep.writeJSON(report);
+            } 
+            else {
+               cacheSweep.writeCSV(report);
+            }
+            if (report != out) {
+               report.close();
+            }
+         } 
+             catch (IOException e) {
+               out.println("Could not write cache report " + cacheReport + ": " + e.getMessage());
+            }
+         cacheSweep = null;
+      }
+   
+   
+   	//////////////////////////////////////////////////////////////////////
+   	// Stop predicting branches and write the accuracy of each predictor,
+   	// if they were evaluated.  See "bpred" option.
+   	
+      private void finishBranchPredictors() {
+         if (branchPredictors == null) {
+            return;
+         }
+         Simulator.getInstance().setBranchPredictors(null);
+         TraceSink.getInstance().flush();
+         PrintStream report = out;
+         try {
+            if (!branchReport.equals("-")) {
+               report = new PrintStream(new FileOutputStream(branchReport));
+            }
+            if (branchFormat.equals("json")) {
+               branchPredictors.writeJSON(report);
+            } 
+            else {
+               branchPredictors.writeCSV(report);
+            }
+            if (report != out) {
+               report.close();
+            }
+         } 
+             catch (IOException e) {
+               out.println("Could not write branch predictor report " + branchReport + ": " + e.getMessage());
+            }
+         branchPredictors = null;
+      }
+   
+   
+   	//////////////////////////////////////////////////////////////////////
+   	// Stop following the run with the pipeline model and write the timing,
+   	// if it was followed.  See "pipeline" option.
+   	
+      private void finishPipelineModel() {
+         if (pipelineModel == null) {
+            return;
+         }
+         Simulator.getInstance().setPipelineModel(null);
+         TraceSink.getInstance().flush();
+         PrintStream report = out;
+         try {
+            if (!pipelineReport.equals("-")) {
+               report = new PrintStream(new FileOutputStream(pipelineReport));
+            }
+            if (pipelineFormat.equals("json")) {
+               pipelineModel.writeJSON(report);
+            } 
+            else {
+               pipelineModel.writeCSV(report);
+            }
+            if (report != out) {
+               report.close();
+            }
+         } 
+             catch (IOException e) {
+               out.println("Could not write pipeline report " + pipelineReport + ": " + e.getMessage());
+            }
+         pipelineModel = null;
+      }
+   
+   
+   	//////////////////////////////////////////////////////////////////////
+   	// Run the program once with its output discarded, no trace and no execution
+   	// counters, taking checkpoints.  Then put the machine back the way it was at
+   	// the checkpoint to resume from.  Returns that checkpoint, or null if the run
+   	// ended before it was taken.  See "resume" option.
+   	
+      private Checkpoint runToCheckpoint() throws ProcessingException {
+         MachineContext context = MachineContext.getCurrent();
+         Simulator simulator = Simulator.getInstance();
+         PrintStream programOutput = context.getStandardOutput();
+         boolean counting = countInstructions || displayStats;
+         context.setStandardStreams(context.getStandardInput(),
+               new PrintStream(
+                  new OutputStream() {
+                     public void write(int b) {
+                     }
+                  }), 
+               context.getStandardError());
+         SystemIO.resetFiles(); // so file descriptor 1 is discarded too
+         TraceSink.getInstance().setEnabled(false);
+         simulator.setStatsEnabled(false);
+         try {
+            code.simulate(maxSteps);
+         } 
+             catch (ProcessingException e) {
+               // it will happen again after resuming, with output
+            }
+         finally {
+            context.setStandardStreams(context.getStandardInput(), programOutput, context.getStandardError());
+            TraceSink.getInstance().setEnabled(true);
+            simulator.setStatsEnabled(counting);
+            simulator.setCheckpointInterval(0);
+         }
+         ArrayList checkpoints = simulator.getCheckpoints();
+         if (resumeCheckpoint >= checkpoints.size()) {
+            return null;
+         }
+         Checkpoint checkpoint = (Checkpoint) checkpoints.get(resumeCheckpoint);
+         checkpoint.restore();
+         return checkpoint;
+      }
+   
+   
+   	//////////////////////////////////////////////////////////////////////
+   	// Run the jobs in the batch manifest.  MARS exit code is 0 if every
+   	// job passed, 1 otherwise.
+   	
+      private void runBatch() {
+         Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
+         Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode);
+         try {
+            BatchRunner runner = new BatchRunner(new File(batchManifest), out, maxSteps, pseudo,
+                                                 warningsAreErrors, startAtMain, turbo);
+            runner.setAssemblyCache(assemblyCache);
+            runner.setCompilationEnabled(compileBlocks);
+            Globals.exitCode = (runner.run(batchWorkers) == 0) ? 0 : 1;
+         } 
+             catch (IOException e) {
+               out.println("Could not read batch manifest " + batchManifest + ": " + e.getMessage());
+               Globals.exitCode = 1;
+            }
+      }
+   
+   
    	//////////////////////////////////////////////////////////////////////
       // Check for memory address subrange.  Has to be two integers separated
       // by "-"; no embedded spaces.  e.g. 0x00400000-0x00400010
@@ -581,45 +1239,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return memoryRange;
       }
    
-      /////////////////////////////////////////////////////////////////
-   	// Required for counting instructions executed, if that option is specified.
-   	// DPS 19 July 2012
-      private void establishObserver() { 
-         if (countInstructions) {
-            Observer instructionCounter = 
-               new Observer() {
-                  private int lastAddress = 0;
-                  public void update(Observable o, Object obj) { 
-                     if (obj instanceof AccessNotice) {
-                        AccessNotice notice = (AccessNotice) obj;
-                        if (!notice.accessIsFromMIPS()) 
-                           return;
-                        if (notice.getAccessType() != AccessNotice.READ) 
-                           return;
-                        MemoryAccessNotice m = (MemoryAccessNotice) notice;
-                        int a = m.getAddress();
-                        if (a == lastAddress) 
-                           return;
-                        lastAddress = a;
-                        instructionCount++;				  
-                     }
-                  }
-               };
-            try {
-               Globals.memory.addObserver(instructionCounter, Memory.textBaseAddress, Memory.textLimitAddress);
-            } 
-               catch (AddressErrorException aee) {
-                  out.println("Internal error: MarsLaunch uses incorrect text segment address for instruction observer");
-               }
-         }		
-      }
-   	     		   	
    	//////////////////////////////////////////////////////////////////////
    	// Displays any specified runtime properties. Initially just instruction count 
    	// DPS 19 July 2012  	
       private void displayMiscellaneousPostMortem() {
+         SimulationStats stats = Simulator.getInstance().getStats();
          if (countInstructions) {
-            out.println("\n"+instructionCount);
+            out.println("\n"+stats.getInstructionCount());
+         }
+         if (displayStats) {
+            out.println(stats.toJSON());
          }
       }
    
@@ -801,45 +1430,109 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                segments += ", ";
             }
          }
-         ArrayList dumpFormats = (new DumpFormatLoader()).loadDumpFormats();
+         ArrayList dumpFormats = (new DumpFormatLoader()).getCommandDescriptors();
          String formats = "";
          for (int i=0; i<dumpFormats.size(); i++) {
-            formats += ((DumpFormat) dumpFormats.get(i)).getCommandDescriptor();
+            formats += (String) dumpFormats.get(i);
             if (i<dumpFormats.size()-1) {
                formats += ", ";
             }
          }
+         ArrayList traceFormatList = (new TraceFormatLoader()).getCommandDescriptors();
+         String traceFormats = "";
+         for (int i=0; i<traceFormatList.size(); i++) {
+            traceFormats += (String) traceFormatList.get(i);
+            if (i<traceFormatList.size()-1) {
+               traceFormats += ", ";
+            }
+         }
          out.println("Usage:  Mars  [options] filename [additional filenames]");
          out.println("  Valid options (not case sensitive, separate by spaces) are:");
          out.println("      a  -- assemble only, do not simulate");
          out.println("  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.");
          out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
+         out.println("  asmcache <dir>  -- keep assembled programs in directory <dir> and load them from");
+         out.println("            there when the same files are assembled with the same settings.");
          out.println("      b  -- brief - do not display register/memory address along with contents");
+         out.println("  batch <manifest>  -- run each job listed in the manifest file and write one line");
+         out.println("            of JSON per job with its result.  Each line of the manifest is");
+         out.println("            <program> [<lua file>] [<max steps>] [<expected trace>], where");
+         out.println("            omitted fields may be given as -.  Other options apply to all jobs.");
+         out.println("  bpred <predictors> <format> <file>  -- predict every branch and jump of the");
+         out.println("            run with each of a comma-separated list of predictors, side by side,");
+         out.println("            and write their accuracy, overall and per branch, to <file>, or -");
+         out.println("            for standard output.  <format> is csv or json.  Predictors are");
+         out.println("            bimodal[:<entries>], gshare[:<entries>:<history bits>],");
+         out.println("            local[:<entries>:<history bits>], tournament[:<entries>:<history bits>");
+         out.println("            :<local entries>:<local bits>] and btb[:<entries>:<stack depth>].");
+         out.println("            Implies nt.");
+         out.println("  bw<n>  -- run <n> batch jobs at a time (default: one per processor).");
+         out.println("  cache <configs> <format> <file>  -- simulate every cache hierarchy listed in");
+         out.println("            file <configs> over the memory accesses of the run, in one pass, and");
+         out.println("            write the hit/miss counts of each to <file>, or - for standard output.");
+         out.println("            <format> is csv or json.  Each line of <configs> is a name followed");
+         out.println("            by l1i=<size>:<block>:<ways>[:<policy>], l1d=..., optionally l2=...");
+         out.println("            and write=wb|wt; policy is lru, fifo, random or plru.  Values may be");
+         out.println("            comma-separated lists, meaning every combination.  Implies nt.");
+         out.println("  checkpoint <n>  -- take a checkpoint of the machine every <n> instructions.");
+         out.println("  cosim <format> <file>  -- compare each register/memory write, as it happens,");
+         out.println("            with a reference trace in <format> (Text or Binary) read from <file>,");
+         out.println("            a named pipe for instance, or - for standard input.  Stops at the");
+         out.println("            first difference and reports it, with the last writes, the code");
+         out.println("            around it and the registers; exit code is then 1.  Writes of one");
+         out.println("            instruction may come in any order.  Implies nt.");
          out.println("      d  -- display MARS debugging statements");
          out.println("     db  -- MIPS delayed branching is enabled");
          out.println("    dec  -- display memory or register contents in decimal.");
          out.println("   dump <segment> <format> <file> -- memory dump of specified memory segment");
          out.println("            in specified format to specified file.  Option may be repeated."); 
          out.println("            Dump occurs at the end of simulation unless 'a' option is used.");
+         out.println("            SparseBinary records only memory that was written, to the end of the segment.");
          out.println("            Segment and format are case-sensitive and possible values are:");
          out.println("            <segment> = "+segments);
          out.println("            <format> = "+formats);
          out.println("      h  -- display this help.  Use by itself with no filename.");
          out.println("    hex  -- display memory or register contents in hexadecimal (default)");
+         out.println("  hexdata <file>  -- load <file> as a hexadecimal image of the .data segment,");
+         out.println("            one word per line or separated by spaces.  Implies hexload.");
+         out.println("  hexload  -- load the program file as a hexadecimal machine code image of the");
+         out.println("            text segment instead of assembling it.  Much faster for large images.");
          out.println("     ic  -- display count of MIPS basic instructions 'executed'");
          out.println("     mc <config>  -- set memory configuration.  Argument <config> is");
          out.println("            case-sensitive and possible values are: Default for the default");
          out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with");
-         out.println("            data segment at address 0, or CompactTextAtZero for a 32KB");
-         out.println("            memory with text segment at address 0.");
+         out.println("            data segment at address 0, CompactTextAtZero for a 32KB");
+         out.println("            memory with text segment at address 0, or Flat for the default");
+         out.println("            address space in paged flat memory, stack stored ascending like data.");
          out.println("     me  -- display MARS messages to standard err instead of standard out. ");
          out.println("            Can separate messages from program output using redirection");
          out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
+         out.println("     nj  -- do not compile frequently executed code to JVM bytecode; the fast");
+         out.println("            interpreter runs every instruction itself (output is identical)");
          out.println("     np  -- use of pseudo instructions and formats not permitted");
+         out.println("     nt  -- do not use the fast interpreter; simulate every instruction the way");
+         out.println("            the IDE does (slower, output is identical)");
          out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
+         out.println("  pipeline <settings> <format> <file>  -- count the cycles the run takes on a");
+         out.println("            5-stage pipeline and write the total, stalls by cause and cycles per");
+         out.println("            statement to <file>, or - for standard output.  <format> is csv or");
+         out.println("            json.  <settings> is default or a comma-separated list of");
+         out.println("            forward=none|ex|mem|full, branch=id|ex|mem (stage branches are");
+         out.println("            resolved in) and mul=<n>, div=<n> (cycles until HI/LO are ready).");
+         out.println("            Implies nt.");
+         out.println("  resume <k>  -- run the program to the end without output, then run it again");
+         out.println("            from checkpoint <k> (0 is the start) with output, trace and 'ic' or");
+         out.println("            'stats' counting from there.  Requires checkpoint.  Input already");
+         out.println("            read from standard input is not read again.");
          out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.");
          out.println("     sm  -- start execution at statement with global label main, if defined");
          out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+         out.println("  stats json  -- display execution counters at end of run as one line of JSON:");
+         out.println("            instruction count, counts per mnemonic and per format, branches");
+         out.println("            taken and not taken, loads and stores.");
+         out.println("  trace <format> <file> -- write the register/memory write trace to the");
+         out.println("            specified file in the specified format instead of to standard out.");
+         out.println("            Format is case-sensitive and possible values are: "+traceFormats);
          out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
          out.println("            If 0, negative or not specified, there is no maximum.");
          out.println(" $<reg>  -- where <reg> is number or name (e.g. 5, t3, f10) of register whose ");
@@ -4,6 +4,7 @@
    import mars.mips.hardware.*;
    import mars.util.*;
    import java.util.*;
+   import java.io.*;
 
 /*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -56,6 +57,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private int binaryStatement;
       private boolean altered;
       private boolean binary;
+      private Object simulationData;
       private static final String invalidOperator = "<INVALID>";
     
     //////////////////////////////////////////////////////////////////////////////////
@@ -170,6 +172,69 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    	
    
+    //////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Constructor for ProgramStatement read back from the assembled program cache, as
+     * written by <code>writeAssembled</code>.  There are no token lists.
+     * @param in stream positioned at the statement
+     * @param sourceMIPSprogram The MIPSprogram object that contains this statement, or null
+     * @param inst The Instruction object for this statement's operator, or null
+     * @throws IOException if the statement cannot be read
+     * @see AssemblyCache
+     **/
+       ProgramStatement(DataInputStream in, MIPSprogram sourceMIPSprogram, Instruction inst) throws IOException {
+         this.sourceMIPSprogram = sourceMIPSprogram;
+         this.instruction = inst;
+         this.originalTokenList = this.strippedTokenList = null;
+         this.textAddress = in.readInt();
+         this.sourceLine = in.readInt();
+         this.binaryStatement = in.readInt();
+         this.binary = in.readBoolean();
+         this.altered = in.readBoolean();
+         this.source = AssemblyCache.readString(in);
+         this.basicAssemblyStatement = AssemblyCache.readString(in);
+         // machine statement is usually just the binary statement, so not stored
+         this.machineStatement = in.readBoolean() ? Binary.intToBinaryString(this.binaryStatement, 32) 
+                                                  : AssemblyCache.readString(in);
+         int length = in.readInt();
+         this.operands = (length < 0) ? null : new int[length];
+         for (int i = 0; i < length; i++) {
+            this.operands[i] = in.readInt();
+         }
+         this.numOperands = in.readInt();
+         this.basicStatementList = new BasicStatementList();
+         this.basicStatementList.read(in);
+      }
+   
+    /**
+     * Write this statement as assembled, for the assembled program cache.  The source
+     * program and instruction are not written; the cache records those itself.
+     * @param out stream to write to
+     * @throws IOException if the statement cannot be written
+     * @see AssemblyCache
+     **/
+       void writeAssembled(DataOutputStream out) throws IOException {
+         out.writeInt(this.textAddress);
+         out.writeInt(this.sourceLine);
+         out.writeInt(this.binaryStatement);
+         out.writeBoolean(this.binary);
+         out.writeBoolean(this.altered);
+         AssemblyCache.writeString(out, this.source);
+         AssemblyCache.writeString(out, this.basicAssemblyStatement);
+         boolean derived = this.machineStatement != null 
+                           && this.machineStatement.equals(Binary.intToBinaryString(this.binaryStatement, 32));
+         out.writeBoolean(derived);
+         if (!derived) {
+            AssemblyCache.writeString(out, this.machineStatement);
+         }
+         out.writeInt((this.operands == null) ? -1 : this.operands.length);
+         for (int i = 0; this.operands != null && i < this.operands.length; i++) {
+            out.writeInt(this.operands[i]);
+         }
+         out.writeInt(this.numOperands);
+         this.basicStatementList.write(out);
+      }
+   
     /////////////////////////////////////////////////////////////////////////////
     /**
      * Given specification of BasicInstruction for this operator, build the
@@ -584,6 +649,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     * @return boolean , true if the Statement is created as binary
     **/
        public boolean getBinary() { return binary; }
+   /**
+    * Data the instruction's simulation code keeps with this statement, such as its
+    * operands converted to some other form, so it need not be worked out every time
+    * the statement executes.
+    * @return whatever was last given to setSimulationData, null if nothing
+    **/
+       public Object getSimulationData() { return simulationData; }
+   /**
+    * Keep data with this statement for the instruction's simulation code.
+    * @param data data derived from this statement alone
+    **/
+       public void setSimulationData(Object data) { simulationData = data; }
     /**
      * Produces operand value from given array position (first operand is position 0).
      * 
@@ -717,6 +794,25 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             list.add(new ListElement(2, null, value));
          }
       
+          void write(DataOutputStream out) throws IOException {
+            out.writeInt(list.size());
+            for (int i=0; i<list.size(); i++) {
+               ListElement e = (ListElement) list.get(i);
+               out.writeByte(e.type);
+               AssemblyCache.writeString(out, e.sValue);
+               out.writeInt(e.iValue);
+            }
+         }
+      
+          void read(DataInputStream in) throws IOException {
+            int size = in.readInt();
+            for (int i=0; i<size; i++) {
+               int type = in.readByte();
+               String sValue = AssemblyCache.readString(in);
+               list.add(new ListElement(type, sValue, in.readInt()));
+            }
+         }
+      
           public String toString() {
             int addressBase =  (Globals.getSettings().getBooleanSetting(Settings.DISPLAY_ADDRESSES_IN_HEX)) ? mars.venus.NumberDisplayBaseChooser.HEXADECIMAL : mars.venus.NumberDisplayBaseChooser.DECIMAL;
             int valueBase =  (Globals.getSettings().getBooleanSetting(Settings.DISPLAY_VALUES_IN_HEX)) ? mars.venus.NumberDisplayBaseChooser.HEXADECIMAL : mars.venus.NumberDisplayBaseChooser.DECIMAL;
@@ -8,6 +8,7 @@
    import mars.ErrorMessage;
    import mars.Globals;
    import mars.MIPSprogram;
+   import mars.MachineContext;
    import mars.ProcessingException;
    import mars.ProgramStatement;
    import mars.mips.hardware.AddressErrorException;
@@ -191,10 +192,13 @@
          externAddress = Memory.externBaseAddress;
          currentFileDataSegmentForwardReferences = new DataSegmentForwardReferences();
          accumulatedDataSegmentForwardReferences = new DataSegmentForwardReferences();
-         Globals.symbolTable.clear();
-         Globals.memory.clear();
+         MachineContext.getCurrent().getSymbolTable().clear();
+         Memory.getInstance().clear();
          this.machineList = new ArrayList();
          this.errors = new ErrorList(); 
+      // Work of the first pass that needs neither addresses nor anything from other
+      // files is done for all files at once, in parallel. See prepareFirstPass().
+         Instruction[][] operatorMatches = this.prepareFirstPass(tokenizedProgramFiles);
          if (Globals.debug)
             System.out.println("Assembler first pass begins:");
       // PROCESS THE FIRST ASSEMBLY PASS FOR ALL SOURCE FILES BEFORE PROCEEDING
@@ -233,15 +237,10 @@
             for (int i = 0; i < tokenList.size(); i++) {
                if (errors.errorLimitExceeded())
                   break; 
-               for (int z=0; z<((TokenList)tokenList.get(i)).size(); z++) { 
-                  Token t = ((TokenList) tokenList.get(i)).get(z);
-               	// record this token's original source program and line #. Differs from final, if .include used
-                  t.setOriginal(sourceLineList.get(i).getMIPSprogram(),sourceLineList.get(i).getLineNumber());
-               }           	
                statements = this.parseLine((TokenList) tokenList.get(i),
                   sourceLineList.get(i).getSource(), 
                   sourceLineList.get(i).getLineNumber(), 
-                  extendedAssemblerEnabled);
+                  extendedAssemblerEnabled, operatorMatches[fileIndex][i]);
                if (statements != null) {
                   parsedList.addAll(statements);
                }
@@ -269,7 +268,7 @@
       // Have processed all source files. Attempt to resolve any remaining forward label
       // references from global symbol table. Those that remain unresolved are undefined
       // and require error message.
-         accumulatedDataSegmentForwardReferences.resolve(Globals.symbolTable);
+         accumulatedDataSegmentForwardReferences.resolve(MachineContext.getCurrent().getSymbolTable());
          accumulatedDataSegmentForwardReferences.generateErrorMessages(errors);
       
       // Throw collection of errors accumulated through the first pass.
@@ -388,7 +387,7 @@
             if (Globals.debug)
                System.out.println(statement);
             try {
-               Globals.memory.setStatement(statement.getAddress(), statement);
+               Memory.getInstance().setStatement(statement.getAddress(), statement);
             } 
                catch (AddressErrorException e) {
                   Token t = statement.getOriginalTokenList().get(0);
@@ -417,6 +416,55 @@
          return this.machineList;
       } // assemble()
    
+   // //////////////////////////////////////////////////////////////////////
+   // Does, for each source file in parallel, the part of the first pass that depends
+   // only on that file's own tokens: recording each token's original source program
+   // and line, and matching the operator of each statement to the instruction it will
+   // assemble to.  Labels, directives, macros and anything else that needs addresses
+   // or other files are left to the first pass proper, which takes the files in order,
+   // so addresses and the global symbol table come out the same as ever. Returns, for
+   // each file, the matched instruction of each source line, or null where there is none.
+      private Instruction[][] prepareFirstPass(final ArrayList programFiles) throws ProcessingException {
+         final Instruction[][] operatorMatches = new Instruction[programFiles.size()][];
+         SourceFileTasks.runAll(programFiles.size(), 
+               new SourceFileTasks.Task() {
+                  public void run(int fileIndex) {
+                     MIPSprogram program = (MIPSprogram) programFiles.get(fileIndex);
+                     ArrayList<SourceLine> sourceLineList = program.getSourceLineList();
+                     ArrayList tokenList = program.getTokenList();
+                     Instruction[] matches = new Instruction[tokenList.size()];
+                     for (int i = 0; i < tokenList.size(); i++) {
+                        TokenList tokens = (TokenList) tokenList.get(i);
+                        for (int z = 0; z < tokens.size(); z++) {
+                        // record this token's original source program and line #. Differs from final, if .include used
+                           tokens.get(z).setOriginal(sourceLineList.get(i).getMIPSprogram(), 
+                              sourceLineList.get(i).getLineNumber());
+                        }
+                        matches[i] = matchOperatorAhead(tokens);
+                     }
+                     operatorMatches[fileIndex] = matches;
+                  }
+               });
+         return operatorMatches;
+      }
+   
+   // The instruction parseLine() will pick for this line if it turns out to be an
+   // instruction statement in the text segment: the best operand match for the
+   // operator that follows the label, if any.  Null if the line does not begin with
+   // an operator.  Does not touch the token list.
+      private Instruction matchOperatorAhead(TokenList tokenList) {
+         TokenList tokens = this.stripComment(tokenList);
+         int first = tokenListBeginsWithLabel(tokens) ? 2 : 0;
+         if (tokens.size() <= first || tokens.get(first).getType() != TokenTypes.OPERATOR)
+            return null;
+         if (first > 0) { // tokens is a copy
+            tokens.remove(0);
+            tokens.remove(0);
+         }
+         return OperandFormat.bestOperandMatch(tokens,
+            Globals.instructionSet.matchOperator(tokens.get(0).getValue()));
+      }
+   
    // //////////////////////////////////////////////////////////////////////
    // Will check for duplicate text addresses, which can happen inadvertantly when using
    // operand on .text directive. Will generate error message for each one that occurs.
@@ -453,6 +501,15 @@
     */
       private ArrayList<ProgramStatement> parseLine(TokenList tokenList, String source,
        	int sourceLineNumber, boolean extendedAssemblerEnabled) { 
+         return parseLine(tokenList, source, sourceLineNumber, extendedAssemblerEnabled, null);
+      }
+   
+   /**
+    * As above, with the instruction for the line already matched by
+    * prepareFirstPass(), or null if it has not been.
+    */
+      private ArrayList<ProgramStatement> parseLine(TokenList tokenList, String source,
+       	int sourceLineNumber, boolean extendedAssemblerEnabled, Instruction operatorMatch) { 
       	
          ArrayList<ProgramStatement> ret = new ArrayList<ProgramStatement>();
       
@@ -592,11 +649,14 @@
                return ret;
             }
             // MODIfIED END
-            ArrayList instrMatches = this.matchInstruction(token);
-            if (instrMatches == null)
-               return ret;
-         // OK, we've got an operator match, let's check the operands.
-            Instruction inst = OperandFormat.bestOperandMatch(tokens, instrMatches);
+            Instruction inst = operatorMatch;
+            if (inst == null) {
+               ArrayList instrMatches = this.matchInstruction(token);
+               if (instrMatches == null)
+                  return ret;
+            // OK, we've got an operator match, let's check the operands.
+               inst = OperandFormat.bestOperandMatch(tokens, instrMatches);
+            }
          // Here's the place to flag use of extended (pseudo) instructions
          // when setting disabled.
             if (inst instanceof ExtendedInstruction && !extendedAssemblerEnabled) {
@@ -635,7 +695,7 @@
    // alternate compact translation.
       private boolean compactTranslationCanBeApplied(ProgramStatement statement) {
          return (statement.getInstruction() instanceof ExtendedInstruction
-            && Globals.memory.usingCompactMemoryConfiguration() && ((ExtendedInstruction) statement
+            && Memory.getInstance().usingCompactMemoryConfiguration() && ((ExtendedInstruction) statement
             	.getInstruction()).hasCompactTranslation());
       }
    
@@ -862,8 +922,8 @@
             }
             int size = Binary.stringToInt(tokens.get(2).getValue());
          // If label already in global symtab, do nothing. If not, add it right now.
-            if (Globals.symbolTable.getAddress(tokens.get(1).getValue()) == SymbolTable.NOT_FOUND) {
-               Globals.symbolTable.addSymbol(tokens.get(1), this.externAddress,
+            if (MachineContext.getCurrent().getSymbolTable().getAddress(tokens.get(1).getValue()) == SymbolTable.NOT_FOUND) {
+               MachineContext.getCurrent().getSymbolTable().addSymbol(tokens.get(1), this.externAddress,
                   Symbol.DATA_SYMBOL, errors);
                this.externAddress += size;
             }
@@ -918,14 +978,14 @@
                   		+ "\" declared global label but not defined."));
             } 
             else {
-               if (Globals.symbolTable.getAddress(label.getValue()) != SymbolTable.NOT_FOUND) {
+               if (MachineContext.getCurrent().getSymbolTable().getAddress(label.getValue()) != SymbolTable.NOT_FOUND) {
                   errors.add(new ErrorMessage(fileCurrentlyBeingAssembled, label.getSourceLine(),
                      label.getStartPos(), "\"" + label.getValue()
                      		+ "\" already defined as global in a different file."));
                } 
                else {
                   fileCurrentlyBeingAssembled.getLocalSymbolTable().removeSymbol(label);
-                  Globals.symbolTable.addSymbol(label, symtabEntry.getAddress(),
+                  MachineContext.getCurrent().getSymbolTable().addSymbol(label, symtabEntry.getAddress(),
                      symtabEntry.getType(), errors);
                }
             }
@@ -1047,7 +1107,7 @@
           * 
           * else { // not in data segment...which we assume to mean in text
           * segment. try { for (int i=0; i < repetitions; i++) {
-          * Globals.memory.set(this.textAddress.get(),
+          * Memory.getInstance().set(this.textAddress.get(),
           * Binary.stringToInt(valueToken.getValue()), lengthInBytes);
           * this.textAddress.increment(lengthInBytes); } } catch
           * (AddressErrorException e) { errors.add(new
@@ -1112,7 +1172,7 @@
             ********/
             else {
                try {
-                  Globals.memory.set(this.textAddress.get(), value, lengthInBytes);
+                  Memory.getInstance().set(this.textAddress.get(), value, lengthInBytes);
                } 
                   catch (AddressErrorException e) {
                      errors.add(new ErrorMessage(token.getSourceMIPSprogram(),
@@ -1255,7 +1315,7 @@
                      }
                   }
                   try {
-                     Globals.memory.set(this.dataAddress.get(), (int) theChar,
+                     Memory.getInstance().set(this.dataAddress.get(), (int) theChar,
                         DataTypes.CHAR_SIZE);
                   } 
                      catch (AddressErrorException e) {
@@ -1267,7 +1327,7 @@
                }
                if (direct == Directives.ASCIIZ) {
                   try {
-                     Globals.memory.set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
+                     Memory.getInstance().set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
                   } 
                      catch (AddressErrorException e) {
                         errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token
@@ -1303,7 +1363,7 @@
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
          }
          try {
-            Globals.memory.set(this.dataAddress.get(), value, lengthInBytes);
+            Memory.getInstance().set(this.dataAddress.get(), value, lengthInBytes);
          } 
             catch (AddressErrorException e) {
                errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(), token
@@ -1327,7 +1387,7 @@
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
          }
          try {
-            Globals.memory.setDouble(this.dataAddress.get(), value);
+            Memory.getInstance().setDouble(this.dataAddress.get(), value);
          } 
             catch (AddressErrorException e) {
                errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(), token
@@ -1487,7 +1547,7 @@
                if (labelAddress != SymbolTable.NOT_FOUND) {
                // patch address has to be valid b/c we already stored there...
                   try {
-                     Globals.memory.set(entry.patchAddress, labelAddress, entry.length);
+                     Memory.getInstance().set(entry.patchAddress, labelAddress, entry.length);
                   } 
                      catch (AddressErrorException aee) {
                      }
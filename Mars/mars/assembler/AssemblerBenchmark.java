@@ -0,0 +1,151 @@
+   package mars.assembler;
+   import mars.*;
+   import mars.mips.trace.*;
+   import java.io.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Benchmark for the assembler on large generated programs, like the ones our
+ * random test generator produces.  Writes a synthetic program of the requested
+ * number of lines to a temporary file, with a label every few lines, data labels,
+ * branches and jumps to nearby labels and <code>la</code> of data labels, then
+ * assembles it several times and reports the time each assembly took.  The program
+ * can be split into several source files of the same size, assembled together as a
+ * project, to measure how well their tokenizing and first pass go in parallel.
+ * <p>
+ * Usage: <code>java mars.assembler.AssemblerBenchmark [lines] [repeats] [files]</code>,
+ * 200000 lines, 3 repeats and 1 file by default.
+ *
+ * @version October 2017
+ */
+
+    public class AssemblerBenchmark {
+   
+      private static final String[] OPERATIONS = {
+         "addiu", "ori", "lui", "addu", "subu", "and", "or", "xor", "lw", "sw", "sll", "srl" };
+      private static final int LINES_PER_LABEL = 8;
+      private static final int LINES_PER_DATA_LABEL = 64;
+   
+       public static void main(String[] args) throws Exception {
+         int lines = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+         int repeats = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+         int fileCount = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+         ArrayList sources = new ArrayList();
+         Random random = new Random(42);
+         int labels = 0;
+         for (int i = 0; i < fileCount; i++) {
+            File source = File.createTempFile("mars-benchmark", ".asm");
+            source.deleteOnExit();
+            labels += writeProgram(source, lines / fileCount, random, i);
+            sources.add(source.getPath());
+         }
+         System.out.println(lines + " lines in " + fileCount + " file(s), " + labels + " labels");
+      
+         Globals.initialize(false);
+         TraceSink.getInstance().setEnabled(false);
+         for (int i = 1; i <= repeats; i++) {
+            long start = System.currentTimeMillis();
+            MIPSprogram program = new MIPSprogram();
+            Globals.program = program;
+            ArrayList files = new ArrayList(sources);
+            try {
+               program.assemble(program.prepareFilesForAssembly(files, (String) sources.get(0), null), true, false);
+            } 
+                catch (ProcessingException e) {
+                  System.out.println(e.errors().generateErrorAndWarningReport());
+                  System.exit(1);
+               }
+            System.out.println("assembly " + i + ": " + program.getMachineList().size() + " statements in "
+                  + (System.currentTimeMillis() - start) + " ms");
+         }
+      }
+   
+   	// Write one file of the program, returning the number of labels defined in it.
+	// Labels are local to the file; the first file has main.
+       private static int writeProgram(File file, int lines, Random random, int fileNumber) throws IOException {
+         PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+         int dataLabels = Math.max(1, lines / LINES_PER_DATA_LABEL);
+         int textLines = lines - dataLabels - 3;
+         int textLabels = Math.max(1, textLines / LINES_PER_LABEL);
+         out.println(".data");
+         for (int i = 0; i < dataLabels; i++) {
+            out.println("d" + fileNumber + "_" + i + ": .word " + random.nextInt(0x10000) + ", " + i);
+         }
+         out.println(".text");
+         if (fileNumber == 0) {
+            out.println(".globl main");
+            out.println("main:");
+         }
+         for (int i = 0; i < textLines; i++) {
+            int label = i / LINES_PER_LABEL;
+            String prefix = (i % LINES_PER_LABEL == 0) ? "L" + fileNumber + "_" + label + ": " : "";
+            out.println(prefix + instruction(random, label, textLabels, dataLabels, fileNumber));
+         }
+         out.close();
+         return dataLabels + textLabels + ((fileNumber == 0) ? 1 : 0);
+      }
+   
+   	// One random instruction.  Branch targets stay within a few labels, so the
+   	// offsets fit in 16 bits; forward references are made on purpose.
+       private static String instruction(Random random, int label, int textLabels, int dataLabels, int fileNumber) {
+         int target = Math.min(textLabels - 1, Math.max(0, label + random.nextInt(17) - 8));
+         String prefix = fileNumber + "_";
+         switch (random.nextInt(16)) {
+            case 12:
+               return "beq " + register(random) + ", " + register(random) + ", L" + prefix + target;
+            case 13:
+               return "bne " + register(random) + ", " + register(random) + ", L" + prefix + target;
+            case 14:
+               return "j L" + prefix + random.nextInt(textLabels);
+            case 15:
+               return "la " + register(random) + ", d" + prefix + random.nextInt(dataLabels);
+            default:
+               String op = OPERATIONS[random.nextInt(OPERATIONS.length)];
+               if (op.equals("lui")) {
+                  return op + " " + register(random) + ", " + random.nextInt(0x10000);
+               }
+               if (op.equals("lw") || op.equals("sw")) {
+                  return op + " " + register(random) + ", " + (random.nextInt(1024) * 4) + "($gp)";
+               }
+               if (op.equals("sll") || op.equals("srl")) {
+                  return op + " " + register(random) + ", " + register(random) + ", " + random.nextInt(32);
+               }
+               if (op.equals("addiu") || op.equals("ori")) {
+                  return op + " " + register(random) + ", " + register(random) + ", " + random.nextInt(0x8000);
+               }
+               return op + " " + register(random) + ", " + register(random) + ", " + register(random);
+         }
+      }
+   
+       private static String register(Random random) {
+         return "$" + random.nextInt(32);
+      }
+   }
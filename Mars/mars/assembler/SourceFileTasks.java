@@ -0,0 +1,127 @@
+   package mars.assembler;
+   import mars.*;
+   import java.util.concurrent.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Runs a piece of work once for each source file of a program, on a fork-join pool,
+ * for the parts of assembly that do not depend on other files: reading and
+ * tokenizing, and the per-file preparation for the assembler's first pass.  Each
+ * task runs in the <code>MachineContext</code> of the thread that asked for the work,
+ * and the caller waits until all of them are done.
+ * <p>
+ * Errors are reported as if the files had been done one after another: if several
+ * tasks throw, the caller gets the exception of the first file in the list, and the
+ * others are dropped.
+ *
+ * @version October 2017
+ */
+
+    public class SourceFileTasks {
+   
+   	/**
+   	 * The work to be done for one file.
+   	 */
+       public interface Task {
+      	/**
+      	 * Do the work for one file.  Called once for each file, from any thread.
+      	 *
+      	 * @param fileIndex position of the file in the list of source files
+      	 * @throws ProcessingException if errors were found in the file
+      	 */
+          void run(int fileIndex) throws ProcessingException;
+      }
+   
+      private static ForkJoinPool pool = null;
+   
+   	/**
+   	 * Run the task for files 0 to count-1 and wait for all of them to finish.  A
+   	 * single file is done in the calling thread.
+   	 *
+   	 * @param count number of files
+   	 * @param task work to do for each file
+   	 * @throws ProcessingException the exception thrown by the task for the first
+   	 * file, in list order, that had errors
+   	 */
+       public static void runAll(int count, final Task task) throws ProcessingException {
+         if (count < 2) {
+            for (int i = 0; i < count; i++) {
+               task.run(i);
+            }
+            return;
+         }
+         final MachineContext context = MachineContext.getCurrent();
+         final Throwable[] failures = new Throwable[count];
+         final RecursiveAction[] actions = new RecursiveAction[count];
+         for (int i = 0; i < count; i++) {
+            final int fileIndex = i;
+            actions[i] = 
+               new RecursiveAction() {
+                   protected void compute() {
+                     MachineContext previous = MachineContext.getCurrent();
+                     MachineContext.setCurrent(context);
+                     try {
+                        task.run(fileIndex);
+                     } 
+                         catch (Throwable e) {
+                           failures[fileIndex] = e;
+                        }
+                     finally {
+                        MachineContext.setCurrent(previous);
+                     }
+                  }
+               };
+         }
+         getPool().invoke(
+               new RecursiveAction() {
+                   protected void compute() {
+                     invokeAll(actions);
+                  }
+               });
+         for (int i = 0; i < count; i++) {
+            if (failures[i] instanceof ProcessingException) {
+               throw (ProcessingException) failures[i];
+            }
+            if (failures[i] instanceof RuntimeException) {
+               throw (RuntimeException) failures[i];
+            }
+            if (failures[i] instanceof Error) {
+               throw (Error) failures[i];
+            }
+         }
+      }
+   
+       private static synchronized ForkJoinPool getPool() {
+         if (pool == null) {
+            pool = new ForkJoinPool();
+         }
+         return pool;
+      }
+   }
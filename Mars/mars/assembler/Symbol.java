@@ -84,6 +84,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
    	/**
    	  * Sets (replaces) the address of the the Symbol.
+   	  *   Symbols in a SymbolTable should be moved with its fixSymbolTableAddress method
+   	  *   instead, which keeps the table's address index up to date.
    	  *   @param newAddress The revised address of the Symbol.
    	  **/
    
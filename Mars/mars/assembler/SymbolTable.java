@@ -31,7 +31,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
   /**
-    *  Creats a table of Symbol objects.
+    *  Creats a table of Symbol objects.  Symbols are kept in the order they were
+	*   added, and indexed by name and by address so lookups do not have to go
+	*   through the whole table.
 	*   @author Jason Bumgarner, Jason Shrewsbury
 	*   @version June 2003
 	**/
@@ -40,6 +42,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static String startLabel = "main";
       private String filename;
       private ArrayList table;
+      private HashMap byName;      // label -> Symbol
+      private HashMap byAddress;   // Integer address -> ArrayList of Symbols, in table order
    	// Note -1 is legal 32 bit address (0xFFFFFFFF) but it is the high address in 
    	// kernel address space so highly unlikely that any symbol will have this as 
    	// its associated address!
@@ -53,6 +57,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public SymbolTable(String filename) {
          this.filename = filename;
          this.table = new ArrayList();
+         this.byName = new HashMap();
+         this.byAddress = new HashMap();
       }    
    	/**
    	  *  Adds a Symbol object into the array of Symbols.
@@ -70,6 +76,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          else {
             Symbol s= new Symbol(label, address, b);
             table.add(s);
+            byName.put(label, s);
+            addressList(address, true).add(s);
             if (Globals.debug) System.out.println("The symbol " + label + " with address " + address + " has been added to the "+this.filename+" symbol table.");
          }
       }
@@ -84,12 +92,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public void removeSymbol(Token token) {
          String label = token.getValue();
-         for (int i=0; i < table.size(); i++) {
-            if (((Symbol)(table.get(i))).getName().equals(label)){
-               table.remove(i);
-               if (Globals.debug) System.out.println("The symbol " + label + " has been removed from the "+this.filename+" symbol table.");
-               break;
+         Symbol s = (Symbol) byName.remove(label);
+         if (s != null) {
+            table.remove(s);
+            ArrayList list = addressList(s.getAddress(), false);
+            list.remove(s);
+            if (list.isEmpty()) {
+               byAddress.remove(new Integer(s.getAddress()));
             }
+            if (Globals.debug) System.out.println("The symbol " + label + " has been removed from the "+this.filename+" symbol table.");
          }
          return; 
       }
@@ -101,12 +112,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  *   @return The memory address of the label given, or NOT_FOUND if not found in symbol table.
    	  **/
        public int getAddress(String s){
-         for(int i=0; i < table.size(); i++){
-            if (((Symbol)(table.get(i))).getName().equals(s)){
-               return((Symbol) table.get(i)).getAddress();
-            }
-         }
-         return NOT_FOUND;
+         Symbol sym = (Symbol) byName.get(s);
+         return (sym == null) ? NOT_FOUND : sym.getAddress();
       }
       
    	/**
@@ -118,7 +125,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/		
        public int getAddressLocalOrGlobal(String s) {
          int address = this.getAddress(s);
-         return (address==NOT_FOUND) ? Globals.symbolTable.getAddress(s) : address ;
+         return (address==NOT_FOUND) ? MachineContext.getCurrent().getSymbolTable().getAddress(s) : address ;
       }
    	
    	
@@ -129,12 +136,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        **/
        
        public Symbol getSymbol(String s){
-         for(int i=0; i < table.size(); i++){
-            if (((Symbol)(table.get(i))).getName().equals(s)){
-               return (Symbol) table.get(i);
-            }
-         }
-         return null;
+         return (Symbol) byName.get(s);
       }
    
       /**
@@ -151,12 +153,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
              catch (NumberFormatException e) {
                return null;
             }
-         for(int i=0; i < table.size(); i++){
-            if (((Symbol)(table.get(i))).getAddress() == address){
-               return (Symbol) table.get(i);
-            }
-         }
-         return null;
+         ArrayList list = addressList(address, false);
+         return (list == null) ? null : (Symbol) list.get(0);
       }      
    
       /**
@@ -167,7 +165,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        **/
        public Symbol getSymbolGivenAddressLocalOrGlobal(String s){
          Symbol sym = this.getSymbolGivenAddress(s);
-         return (sym==null) ? Globals.symbolTable.getSymbolGivenAddress(s) : sym ;
+         return (sym==null) ? MachineContext.getCurrent().getSymbolTable().getSymbolGivenAddress(s) : sym ;
       }
    			  
    
@@ -231,6 +229,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 
        public void clear(){
          table= new ArrayList();
+         byName = new HashMap();
+         byAddress = new HashMap();
       }
    	
    /**
@@ -243,14 +243,47 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     */
    
        public void fixSymbolTableAddress(int originalAddress, int replacementAddress) {
-         Symbol label = getSymbolGivenAddress(Integer.toString(originalAddress));
-         while (label != null) {
-            label.setAddress(replacementAddress);
-            label = getSymbolGivenAddress(Integer.toString(originalAddress));
+         if (originalAddress == replacementAddress) {
+            return;
+         }
+         ArrayList moved = (ArrayList) byAddress.remove(new Integer(originalAddress));
+         if (moved == null) {
+            return;
+         }
+         for (int i = 0; i < moved.size(); i++) {
+            ((Symbol) moved.get(i)).setAddress(replacementAddress);
+         }
+         ArrayList list = addressList(replacementAddress, false);
+         if (list == null) {
+            byAddress.put(new Integer(replacementAddress), moved);
+         } 
+         else {
+            // Rare: both addresses already had symbols.  Keep the merged list in
+            // table order so getSymbolGivenAddress still finds the first one added.
+            list.addAll(moved);
+            final ArrayList order = table;
+            Collections.sort(list, 
+                   new Comparator() {
+                      public int compare(Object a, Object b) {
+                        return order.indexOf(a) - order.indexOf(b);
+                     }
+                  });
          }
          return;
       }
    
+   	// Symbols at the given address, in table order.  If there are none, returns a new
+   	// empty list that is in the index if create is true, else null.
+       private ArrayList addressList(int address, boolean create) {
+         Integer key = new Integer(address);
+         ArrayList list = (ArrayList) byAddress.get(key);
+         if (list == null && create) {
+            list = new ArrayList(1);
+            byAddress.put(key, list);
+         }
+         return list;
+      }
+   
      /**
       *  Fetches the text segment label (symbol) which, if declared global, indicates
    	*  the starting address for execution.
@@ -0,0 +1,92 @@
+package mars.lua;
+
+import java.io.*;
+import java.util.ArrayList;
+import mars.*;
+import mars.mips.hardware.RegisterFile;
+import mars.mips.trace.TraceSink;
+import mars.simulator.Simulator;
+
+/**
+ * Benchmark for custom instructions defined in Lua.  Runs the same loop twice,
+ * once with the built-in <code>addu</code> and once with an <code>addx</code>
+ * registered from a Lua extension that does the same thing through getgpr and
+ * setgpr, and reports the time per executed instruction for each.  Both runs use
+ * the regular simulation code path, since the fast interpreter never runs Lua
+ * instructions itself.
+ * <p>
+ * Usage: <code>java mars.lua.LuaBenchmark [iterations] [repeats]</code>,
+ * 1000000 iterations and 3 repeats by default.
+ */
+public class LuaBenchmark {
+    private static final String EXTENSION =
+        "register_instruction(\"addx $t1,$t2,$t3\", \"R\", \"000000 sssss ttttt fffff 00000 111111\",\n" +
+        "  function(d, s, t) setgpr(d, getgpr(s) + getgpr(t)) end)\n";
+    private static final int OPERATIONS_PER_ITERATION = 4;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int repeats = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        File extension = File.createTempFile("mars-benchmark", ".lua");
+        extension.deleteOnExit();
+        write(extension, EXTENSION);
+        File builtIn = File.createTempFile("mars-benchmark", ".asm");
+        builtIn.deleteOnExit();
+        write(builtIn, program("addu", iterations));
+        File custom = File.createTempFile("mars-benchmark", ".asm");
+        custom.deleteOnExit();
+        write(custom, program("addx", iterations));
+
+        Globals.initialize(false);
+        TraceSink.getInstance().setEnabled(false);
+        Globals.getLuaBinding().getGlobals().loadfile(extension.getPath()).call();
+        Globals.instructionSet.generateMatchMaps();
+        for (int i = 1; i <= repeats; i++) {
+            report("built-in addu", run(builtIn));
+            report("Lua addx     ", run(custom));
+        }
+    }
+
+    // Assemble and run the program, returning the time taken in nanoseconds per instruction.
+    private static double run(File source) throws ProcessingException {
+        // Not Globals.program, which would have back stepping record every write.
+        MIPSprogram program = new MIPSprogram();
+        ArrayList files = new ArrayList();
+        files.add(source.getPath());
+        program.assemble(program.prepareFilesForAssembly(files, source.getPath(), null), true, false);
+        RegisterFile.initializeProgramCounter(false);
+        long start = System.nanoTime();
+        program.simulate(-1);
+        long elapsed = System.nanoTime() - start;
+        return (double) elapsed / Simulator.getInstance().getInstructionCount();
+    }
+
+    private static void report(String name, double nanoseconds) {
+        System.out.println(name + ": " + Math.round(nanoseconds) + " ns per instruction");
+    }
+
+    // A loop of four dependent additions of a small constant, so values stay small.
+    private static String program(String operation, int iterations) {
+        StringBuffer source = new StringBuffer();
+        source.append(".text\nmain:\n");
+        source.append("  lui $t1, " + (iterations >>> 16) + "\n");
+        source.append("  ori $t1, $t1, " + (iterations & 0xFFFF) + "\n");
+        source.append("  li $t0, 0\n");
+        source.append("  li $s1, 3\n");
+        source.append("loop:\n");
+        source.append("  " + operation + " $t2, $t0, $s1\n");
+        for (int i = 1; i < OPERATIONS_PER_ITERATION; i++) {
+            source.append("  " + operation + " $t" + (2 + i) + ", $t" + (1 + i) + ", $s1\n");
+        }
+        source.append("  addiu $t0, $t0, 1\n");
+        source.append("  bne $t0, $t1, loop\n");
+        source.append("  li $v0, 10\n  syscall\n");
+        return source.toString();
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Writer out = new FileWriter(file);
+        out.write(text);
+        out.close();
+    }
+}
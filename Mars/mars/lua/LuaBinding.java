@@ -1,5 +1,6 @@
 package mars.lua;
 
+import java.io.IOException;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.*;
@@ -7,14 +8,50 @@ import mars.mips.instructions.*;
 import org.luaj.vm2.*;
 import org.luaj.vm2.lib.*;
 import org.luaj.vm2.lib.jse.JsePlatform;
+import org.luaj.vm2.luajc.LuaJC;
 
 public class LuaBinding extends TwoArgFunction {
+    // luajc generates its classes with Apache BCEL, which is not always on the class path.
+    private static final boolean luajcAvailable = isLuajcAvailable();
+
     private Globals luaGlobals = JsePlatform.standardGlobals();
 
     public LuaBinding() {
+        if (luajcAvailable) {
+            this.luaGlobals.loader = new CompilingLoader(this.luaGlobals.loader);
+        }
         this.luaGlobals.load(this);
     }
 
+    private static boolean isLuajcAvailable() {
+        try {
+            Class.forName("org.apache.bcel.generic.ClassGen");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    // Compiles each chunk loaded to Java bytecode, and falls back to the
+    // interpreter for any chunk luajc cannot handle.
+    static class CompilingLoader implements Globals.Loader {
+        private final Globals.Loader interpreter;
+
+        CompilingLoader(Globals.Loader interpreter) {
+            this.interpreter = interpreter;
+        }
+
+        public LuaFunction load(Prototype prototype, String chunkname, LuaValue env) throws IOException {
+            try {
+                return LuaJC.instance.load(prototype, chunkname, env);
+            } catch (RuntimeException e) {
+                return interpreter.load(prototype, chunkname, env);
+            } catch (LinkageError e) {
+                return interpreter.load(prototype, chunkname, env);
+            }
+        }
+    }
+
     public Globals getGlobals() {
         return this.luaGlobals;
     }
@@ -70,7 +107,7 @@ public class LuaBinding extends TwoArgFunction {
             int addr = lvAddr.checkint();
 
             try {
-                int val = mars.Globals.memory.getByte(addr);
+                int val = Memory.getInstance().getByte(addr);
                 return LuaValue.valueOf(val);
             } catch (AddressErrorException var5) {
                 System.err.printf("loadb(): address error: %#x%n", new Object[]{Integer.valueOf(addr)});
@@ -84,7 +121,7 @@ public class LuaBinding extends TwoArgFunction {
             int addr = lvAddr.checkint();
 
             try {
-                int val = mars.Globals.memory.getHalf(addr);
+                int val = Memory.getInstance().getHalf(addr);
                 return LuaValue.valueOf(val);
             } catch (AddressErrorException var5) {
                 System.err.printf("loadh(): address error: %#x%n", new Object[]{Integer.valueOf(addr)});
@@ -98,7 +135,7 @@ public class LuaBinding extends TwoArgFunction {
             int addr = lvAddr.checkint();
 
             try {
-                int val = mars.Globals.memory.getWord(addr);
+                int val = Memory.getInstance().getWord(addr);
                 return LuaValue.valueOf(val);
             } catch (AddressErrorException var5) {
                 System.err.printf("loadw(): address error: %#x%n", new Object[]{Integer.valueOf(addr)});
@@ -130,21 +167,81 @@ public class LuaBinding extends TwoArgFunction {
                 format = BasicInstructionFormat.R_FORMAT;
             }
 
-            SimulationCode code = new SimulationCode() {
-                public void simulate(ProgramStatement statement) throws ProcessingException {
-                    int[] operands = statement.getOperands();
-                    int n = operands.length;
-                    LuaValue[] args = new LuaValue[n];
+            mars.Globals.instructionSet.registerInstruction(template, format, encoding, new LuaSimulationCode(func));
+            return LuaValue.NIL;
+        }
+    }
+
+    // Calls the instruction's Lua function with the statement's operands.  They are
+    // converted to Lua values the first time the statement executes and kept with
+    // it.  A function taking up to three named parameters is called through the
+    // matching fixed-arity entry point, without building an argument array; the
+    // operands beyond its parameters would be dropped anyway.
+    static class LuaSimulationCode implements SimulationCode {
+        private final LuaFunction func;
+        private final int arity;
 
-                    for(int i = 0; i < n; ++i) {
-                        args[i] = LuaNumber.valueOf(operands[i]);
-                    }
+        LuaSimulationCode(LuaFunction func) {
+            this.func = func;
+            this.arity = fixedArity(func);
+        }
 
+        public void simulate(ProgramStatement statement) throws ProcessingException {
+            LuaValue[] args = operandValues(statement);
+            switch (Math.min(arity, args.length)) {
+                case 0:
+                    func.call();
+                    break;
+                case 1:
+                    func.call(args[0]);
+                    break;
+                case 2:
+                    func.call(args[0], args[1]);
+                    break;
+                case 3:
+                    func.call(args[0], args[1], args[2]);
+                    break;
+                default:
                     func.invoke(args);
-                }
-            };
-            mars.Globals.instructionSet.registerInstruction(template, format, encoding, code);
-            return LuaValue.NIL;
+                    break;
+            }
+        }
+
+        // Number of arguments the function looks at, -1 if it takes a variable number.
+        private static int fixedArity(LuaFunction func) {
+            if (func instanceof LuaClosure) {
+                Prototype p = ((LuaClosure) func).p;
+                return (p.is_vararg != 0) ? -1 : p.numparams;
+            }
+            if (func instanceof ZeroArgFunction) {
+                return 0;
+            }
+            if (func instanceof OneArgFunction) {
+                return 1;
+            }
+            if (func instanceof TwoArgFunction) {
+                return 2;
+            }
+            if (func instanceof ThreeArgFunction) {
+                return 3;
+            }
+            return -1;
+        }
+
+        private static LuaValue[] operandValues(ProgramStatement statement) {
+            Object data = statement.getSimulationData();
+            if (data instanceof LuaValue[]) {
+                return (LuaValue[]) data;
+            }
+            int[] operands = statement.getOperands();
+            int n = operands.length;
+            LuaValue[] args = new LuaValue[n];
+
+            for(int i = 0; i < n; ++i) {
+                args[i] = LuaInteger.valueOf(operands[i]);
+            }
+            statement.setSimulationData(args);
+            return args;
         }
     }
 
@@ -163,7 +260,7 @@ public class LuaBinding extends TwoArgFunction {
             int val = lvVal.checkint();
 
             try {
-                val = mars.Globals.memory.setByte(addr, val);
+                val = Memory.getInstance().setByte(addr, val);
                 return LuaValue.valueOf(val);
             } catch (AddressErrorException var6) {
                 System.err.printf("storeb(): address error: %#x%n", new Object[]{Integer.valueOf(addr)});
@@ -178,7 +275,7 @@ public class LuaBinding extends TwoArgFunction {
             int val = lvVal.checkint();
 
             try {
-                val = mars.Globals.memory.setHalf(addr, val);
+                val = Memory.getInstance().setHalf(addr, val);
                 return LuaValue.valueOf(val);
             } catch (AddressErrorException var6) {
                 System.err.printf("storeh(): address error: %#x%n", new Object[]{Integer.valueOf(addr)});
@@ -193,7 +290,7 @@ public class LuaBinding extends TwoArgFunction {
             int val = lvVal.checkint();
 
             try {
-                val = mars.Globals.memory.setWord(addr, val);
+                val = Memory.getInstance().setWord(addr, val);
                 return LuaValue.valueOf(val);
             } catch (AddressErrorException var6) {
                 System.err.printf("storew(): address error: %#x%n", new Object[]{Integer.valueOf(addr)});
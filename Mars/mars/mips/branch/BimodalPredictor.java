@@ -0,0 +1,60 @@
+   package mars.mips.branch;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Bimodal predictor: one 2-bit counter per table entry, indexed by the low bits
+ * of the branch's word address.
+ *
+ * @version October 2017
+ */
+
+    public class BimodalPredictor extends DirectionPredictor {
+   
+      private final byte[] table;
+      private final int mask;
+   
+   	/**
+   	 * @param entries number of counters, a power of two
+   	 */
+       public BimodalPredictor(int entries) {
+         super("bimodal:" + entries);
+         table = counters(powerOfTwo("entries", entries, 1 << 24));
+         mask = entries - 1;
+      }
+   
+       public boolean predict(int pc) {
+         return table[(pc >>> 2) & mask] >= 2;
+      }
+   
+       public void update(int pc, boolean taken) {
+         int index = (pc >>> 2) & mask;
+         table[index] = train(table[index], taken);
+      }
+   }
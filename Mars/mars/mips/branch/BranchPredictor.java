@@ -0,0 +1,162 @@
+   package mars.mips.branch;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * A branch predictor evaluated by <code>BranchPredictorLab</code>.  For every control
+ * transfer the program executes, the predictor makes its prediction, learns the
+ * outcome and says whether it was right.  Direction predictors only predict
+ * conditional branches, see <code>DirectionPredictor</code>; target predictors
+ * predict the address of the next instruction for every kind of transfer.
+ * <p>
+ * Predictors are created from a specification, a name followed by parameters
+ * separated by colons, for example <code>gshare:4096:12</code>.  Parameters left out
+ * take the defaults shown:
+ * <ul>
+ * <li><code>bimodal:4096</code> - table of 2-bit counters indexed by address
+ * <li><code>gshare:4096:12</code> - counters indexed by address xor global history bits
+ * <li><code>local:1024:10</code> - per-address history of so many bits indexing counters
+ * <li><code>tournament:4096:12:1024:10</code> - gshare and local, with a chooser indexed
+ * by address
+ * <li><code>btb:512:16</code> - branch target buffer with a return address stack
+ * </ul>
+ * Any other name is taken as the name of a class extending BranchPredictor with a
+ * public constructor taking the parameters as a String array.
+ *
+ * @version October 2017
+ */
+
+    public abstract class BranchPredictor {
+   
+      /** Conditional branch */
+      public static final int CONDITIONAL = 0;
+      /** Unconditional jump to a fixed address (j) */
+      public static final int JUMP = 1;
+      /** Call, direct or through a register (jal, jalr) */
+      public static final int CALL = 2;
+      /** Return, a jump through $ra (jr $ra) */
+      public static final int RETURN = 3;
+      /** Jump through any other register (jr) */
+      public static final int INDIRECT = 4;
+      
+      private final String name;
+   
+   	/**
+   	 * @param name name of the predictor in reports, normally its specification
+   	 */
+       protected BranchPredictor(String name) {
+         this.name = name;
+      }
+   
+   	/**
+   	 * @return name of the predictor in reports
+   	 */
+       public String getName() {
+         return name;
+      }
+   
+   	/**
+   	 * Tell whether this predictor predicts, and is scored on, transfers of a kind.
+   	 *
+   	 * @param kind one of CONDITIONAL, JUMP, CALL, RETURN and INDIRECT
+   	 * @return true if it predicts them
+   	 */
+       public abstract boolean predicts(int kind);
+   
+   	/**
+   	 * Predict a transfer of a kind this predictor predicts, then learn its outcome.
+   	 *
+   	 * @param pc address of the branch or jump
+   	 * @param kind one of CONDITIONAL, JUMP, CALL, RETURN and INDIRECT
+   	 * @param taken true if control went to the target
+   	 * @param target address control went to if taken
+   	 * @param fallThrough address control goes to if not taken, which is also the
+   	 * return address of a call
+   	 * @return true if the prediction was right
+   	 */
+       public abstract boolean resolve(int pc, int kind, boolean taken, int target, int fallThrough);
+   
+   	/**
+   	 * Create a predictor from its specification, as described above.
+   	 *
+   	 * @param specification name and parameters separated by colons
+   	 * @return a predictor with empty tables
+   	 * @throws IllegalArgumentException if there is no such predictor or a
+   	 * parameter is not valid
+   	 */
+       public static BranchPredictor create(String specification) {
+         String[] fields = specification.split(":");
+         String kind = fields[0].toLowerCase();
+         if (kind.equals("bimodal")) {
+            return new BimodalPredictor(parameter(fields, 1, 4096));
+         }
+         if (kind.equals("gshare")) {
+            return new GsharePredictor(parameter(fields, 1, 4096), parameter(fields, 2, 12));
+         }
+         if (kind.equals("local")) {
+            return new LocalHistoryPredictor(parameter(fields, 1, 1024), parameter(fields, 2, 10));
+         }
+         if (kind.equals("tournament")) {
+            return new TournamentPredictor(parameter(fields, 1, 4096), parameter(fields, 2, 12),
+                                           parameter(fields, 3, 1024), parameter(fields, 4, 10));
+         }
+         if (kind.equals("btb")) {
+            return new TargetBufferPredictor(parameter(fields, 1, 512), parameter(fields, 2, 16));
+         }
+         String[] parameters = new String[fields.length - 1];
+         System.arraycopy(fields, 1, parameters, 0, parameters.length);
+         try {
+            return (BranchPredictor) Class.forName(fields[0]).getConstructor(new Class[] { String[].class })
+                                          .newInstance(new Object[] { parameters });
+         } 
+             catch (Exception e) {
+               throw new IllegalArgumentException("unknown branch predictor " + specification);
+            }
+      }
+   
+       private static int parameter(String[] fields, int index, int defaultValue) {
+         return (index < fields.length) ? Integer.parseInt(fields[index]) : defaultValue;
+      }
+   
+   	/**
+   	 * Check that a table size is a power of two, so an index can be masked.
+   	 *
+   	 * @param what name of the parameter, for the message
+   	 * @param size the size
+   	 * @param maximum largest size allowed
+   	 * @return the size
+   	 * @throws IllegalArgumentException if it is not a power of two up to the maximum
+   	 */
+       protected static int powerOfTwo(String what, int size, int maximum) {
+         if (size <= 0 || (size & (size - 1)) != 0 || size > maximum) {
+            throw new IllegalArgumentException(what + " must be a power of two up to " + maximum + ", not " + size);
+         }
+         return size;
+      }
+   }
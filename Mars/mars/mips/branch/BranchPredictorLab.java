@@ -0,0 +1,338 @@
+   package mars.mips.branch;
+   import mars.util.Binary;
+   import java.io.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Evaluates any number of branch predictors side by side over the control
+ * transfers of one simulation.  Give it to <code>Simulator.setBranchPredictors</code>
+ * before the run; the simulator calls <code>resolve</code> after every instruction
+ * that could transfer control, taken or not, and each predictor predicts it and
+ * learns the outcome.  Counts are kept per static branch, so the report gives the
+ * accuracy of each predictor at each branch as well as overall, as CSV or JSON.
+ * <p>
+ * Branches are found by address in an open addressing table of ints, and every
+ * count is in a plain array, so nothing is allocated per transfer once each branch
+ * has been seen.
+ *
+ * @version October 2017
+ */
+
+    public class BranchPredictorLab {
+   
+      /** Not a control transfer, from <code>classify</code> */
+      public static final int NONE = -1;
+      private static final String[] KIND_NAMES = { "conditional", "jump", "call", "return", "indirect" };
+      private static final int INITIAL_SITES = 256;
+   
+      private final BranchPredictor[] predictors;
+      private final boolean[][] predicts;   // by predictor, then kind
+      private int[] slots;                  // site number + 1 by hash of address, 0 if free
+      private int[] addresses;              // by site
+      private byte[] kinds;
+      private long[] executed, taken;
+      private long[][] correct;             // by predictor, then site
+      private int sites;
+   
+   	/**
+   	 * Create a lab evaluating the given predictors, with nothing counted yet.
+   	 *
+   	 * @param predictors predictors to evaluate, with empty tables
+   	 */
+       public BranchPredictorLab(BranchPredictor[] predictors) {
+         this.predictors = predictors;
+         predicts = new boolean[predictors.length][KIND_NAMES.length];
+         for (int p = 0; p < predictors.length; p++) {
+            for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+               predicts[p][kind] = predictors[p].predicts(kind);
+            }
+         }
+         slots = new int[INITIAL_SITES * 2];
+         addresses = new int[INITIAL_SITES];
+         kinds = new byte[INITIAL_SITES];
+         executed = new long[INITIAL_SITES];
+         taken = new long[INITIAL_SITES];
+         correct = new long[predictors.length][INITIAL_SITES];
+      }
+   
+   	/**
+   	 * Create a lab from a comma-separated list of predictor specifications, see
+   	 * <code>BranchPredictor.create</code>.
+   	 *
+   	 * @param specifications the list, for example <code>bimodal:4096,gshare:4096:12</code>
+   	 * @return lab evaluating those predictors
+   	 * @throws IllegalArgumentException if a specification is not valid
+   	 */
+       public static BranchPredictorLab create(String specifications) {
+         StringTokenizer tokens = new StringTokenizer(specifications, ",");
+         BranchPredictor[] predictors = new BranchPredictor[tokens.countTokens()];
+         if (predictors.length == 0) {
+            throw new IllegalArgumentException("no branch predictors given");
+         }
+         for (int i = 0; i < predictors.length; i++) {
+            predictors[i] = BranchPredictor.create(tokens.nextToken());
+         }
+         return new BranchPredictorLab(predictors);
+      }
+   
+   	/**
+   	 * Find what kind of control transfer an instruction is, from its machine code.
+   	 *
+   	 * @param machineCode the instruction
+   	 * @return one of the <code>BranchPredictor</code> kinds, or NONE
+   	 */
+       public static int classify(int machineCode) {
+         int opcode = machineCode >>> 26;
+         switch (opcode) {
+            case 0:
+               int funct = machineCode & 0x3F;
+               if (funct == 8) {
+                  return (((machineCode >>> 21) & 0x1F) == 31) ? BranchPredictor.RETURN : BranchPredictor.INDIRECT;
+               }
+               return (funct == 9) ? BranchPredictor.CALL : NONE;
+            case 1:
+               int rt = (machineCode >>> 16) & 0x1F;
+               return (rt == 0 || rt == 1 || rt == 0x10 || rt == 0x11) ? BranchPredictor.CONDITIONAL : NONE;
+            case 2:
+               return BranchPredictor.JUMP;
+            case 3:
+               return BranchPredictor.CALL;
+            case 4: case 5: case 6: case 7:
+               return BranchPredictor.CONDITIONAL;
+            case 0x11:
+               return (((machineCode >>> 21) & 0x1F) == 8) ? BranchPredictor.CONDITIONAL : NONE; // bc1f, bc1t
+            default:
+               return NONE;
+         }
+      }
+   
+   	/**
+   	 * Have every predictor predict a control transfer and learn its outcome.
+   	 *
+   	 * @param pc address of the branch or jump
+   	 * @param kind its kind, from <code>classify</code>
+   	 * @param wasTaken true if control went to the target
+   	 * @param target address control went to, if taken
+   	 * @param fallThrough address control goes to if not taken
+   	 */
+       public void resolve(int pc, int kind, boolean wasTaken, int target, int fallThrough) {
+         int site = site(pc, kind);
+         executed[site]++;
+         if (wasTaken) {
+            taken[site]++;
+         }
+         for (int p = 0; p < predictors.length; p++) {
+            if (predicts[p][kind] && predictors[p].resolve(pc, kind, wasTaken, target, fallThrough)) {
+               correct[p][site]++;
+            }
+         }
+      }
+   
+      // Number of the site at an address, adding it if it is new.
+       private int site(int pc, int kind) {
+         int mask = slots.length - 1;
+         int slot = ((pc >>> 2) * 0x9E3779B1) >>> 7 & mask;
+         while (slots[slot] != 0) {
+            int site = slots[slot] - 1;
+            if (addresses[site] == pc) {
+               return site;
+            }
+            slot = (slot + 1) & mask;
+         }
+         if (sites == addresses.length) {
+            grow();
+            return site(pc, kind);
+         }
+         int site = sites++;
+         slots[slot] = site + 1;
+         addresses[site] = pc;
+         kinds[site] = (byte) kind;
+         return site;
+      }
+   
+      // Double the site arrays, and the slot table with them, rehashing every site.
+       private void grow() {
+         int capacity = addresses.length * 2;
+         addresses = Arrays.copyOf(addresses, capacity);
+         kinds = Arrays.copyOf(kinds, capacity);
+         executed = Arrays.copyOf(executed, capacity);
+         taken = Arrays.copyOf(taken, capacity);
+         for (int p = 0; p < predictors.length; p++) {
+            correct[p] = Arrays.copyOf(correct[p], capacity);
+         }
+         slots = new int[capacity * 2];
+         int mask = slots.length - 1;
+         for (int site = 0; site < sites; site++) {
+            int slot = ((addresses[site] >>> 2) * 0x9E3779B1) >>> 7 & mask;
+            while (slots[slot] != 0) {
+               slot = (slot + 1) & mask;
+            }
+            slots[slot] = site + 1;
+         }
+      }
+   
+   	/**
+   	 * @return the predictors being evaluated
+   	 */
+       public BranchPredictor[] getPredictors() {
+         return predictors;
+      }
+   
+   	/**
+   	 * Number of transfers a predictor has predicted correctly.
+   	 *
+   	 * @param predictor index of the predictor
+   	 * @return correct predictions over all branches
+   	 */
+       public long getCorrect(int predictor) {
+         long total = 0;
+         for (int site = 0; site < sites; site++) {
+            total += correct[predictor][site];
+         }
+         return total;
+      }
+   
+   	/**
+   	 * Number of transfers a predictor has been asked to predict.
+   	 *
+   	 * @param predictor index of the predictor
+   	 * @return transfers of the kinds it predicts, over all branches
+   	 */
+       public long getPredicted(int predictor) {
+         long total = 0;
+         for (int site = 0; site < sites; site++) {
+            if (predicts[predictor][kinds[site]]) {
+               total += executed[site];
+            }
+         }
+         return total;
+      }
+   
+      // Site numbers in address order, for the reports.
+       private int[] sitesByAddress() {
+         long[] keyed = new long[sites];
+         for (int site = 0; site < sites; site++) {
+            keyed[site] = ((addresses[site] & 0xFFFFFFFFL) << 32) | site;
+         }
+         Arrays.sort(keyed);
+         int[] order = new int[sites];
+         for (int i = 0; i < sites; i++) {
+            order[i] = (int) keyed[i];
+         }
+         return order;
+      }
+   
+   	/**
+   	 * Write the accuracy of every predictor as CSV: a header line, a line for all
+   	 * branches together, then a line per branch in address order with its kind,
+   	 * how often it was executed and taken, and the fraction each predictor got
+   	 * right.  A predictor's column is empty for branches of a kind it does not predict.
+   	 *
+   	 * @param out where to write
+   	 */
+       public void writeCSV(PrintStream out) {
+         StringBuffer line = new StringBuffer("address,kind,executed,taken");
+         for (int p = 0; p < predictors.length; p++) {
+            line.append(',').append(predictors[p].getName());
+         }
+         out.println(line);
+         long allExecuted = 0, allTaken = 0;
+         for (int site = 0; site < sites; site++) {
+            allExecuted += executed[site];
+            allTaken += taken[site];
+         }
+         line.setLength(0);
+         line.append("all,,").append(allExecuted).append(',').append(allTaken);
+         for (int p = 0; p < predictors.length; p++) {
+            line.append(',').append(accuracy(getCorrect(p), getPredicted(p)));
+         }
+         out.println(line);
+         int[] order = sitesByAddress();
+         for (int i = 0; i < order.length; i++) {
+            int site = order[i];
+            line.setLength(0);
+            line.append(Binary.intToHexString(addresses[site])).append(',').append(KIND_NAMES[kinds[site]]);
+            line.append(',').append(executed[site]).append(',').append(taken[site]);
+            for (int p = 0; p < predictors.length; p++) {
+               line.append(',');
+               if (predicts[p][kinds[site]]) {
+                  line.append(accuracy(correct[p][site], executed[site]));
+               }
+            }
+            out.println(line);
+         }
+      }
+   
+   	/**
+   	 * Write the accuracy of every predictor as JSON: an object with the overall
+   	 * counts of each predictor, and the counts of each branch in address order,
+   	 * one per line.
+   	 *
+   	 * @param out where to write
+   	 */
+       public void writeJSON(PrintStream out) {
+         out.println("{\"predictors\":[");
+         for (int p = 0; p < predictors.length; p++) {
+            long predicted = getPredicted(p);
+            long right = getCorrect(p);
+            out.println("{\"name\":\"" + predictors[p].getName() + "\",\"predicted\":" + predicted + ",\"correct\":" + right
+                        + ",\"accuracy\":" + accuracy(right, predicted) + "}" + ((p < predictors.length - 1) ? "," : ""));
+         }
+         out.println("],\"branches\":[");
+         int[] order = sitesByAddress();
+         StringBuffer json = new StringBuffer();
+         for (int i = 0; i < order.length; i++) {
+            int site = order[i];
+            json.setLength(0);
+            json.append("{\"address\":\"").append(Binary.intToHexString(addresses[site]));
+            json.append("\",\"kind\":\"").append(KIND_NAMES[kinds[site]]);
+            json.append("\",\"executed\":").append(executed[site]).append(",\"taken\":").append(taken[site]);
+            json.append(",\"correct\":{");
+            boolean first = true;
+            for (int p = 0; p < predictors.length; p++) {
+               if (predicts[p][kinds[site]]) {
+                  json.append(first ? "" : ",").append('"').append(predictors[p].getName()).append("\":").append(correct[p][site]);
+                  first = false;
+               }
+            }
+            out.println(json.append("}}").append((i < order.length - 1) ? "," : ""));
+         }
+         out.println("]}");
+      }
+   
+      // Correct over predicted, to six decimal places.
+       private static String accuracy(long right, long predicted) {
+         if (predicted == 0) {
+            return "0";
+         }
+         return String.valueOf(Math.round((double) right / predicted * 1000000) / 1000000.0);
+      }
+   }
@@ -0,0 +1,106 @@
+   package mars.mips.branch;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * A predictor of the direction of conditional branches, scored only on those.
+ * Subclasses predict from tables of 2-bit saturating counters kept in byte arrays;
+ * a counter of 2 or 3 means taken.  Counters start at 1, weakly not taken.
+ *
+ * @version October 2017
+ */
+
+    public abstract class DirectionPredictor extends BranchPredictor {
+   
+      /** Initial value of every counter, weakly not taken */
+      protected static final byte WEAKLY_NOT_TAKEN = 1;
+   
+   	/**
+   	 * @param name name of the predictor in reports
+   	 */
+       protected DirectionPredictor(String name) {
+         super(name);
+      }
+   
+   	/**
+   	 * @param kind kind of transfer
+   	 * @return true for conditional branches only
+   	 */
+       public boolean predicts(int kind) {
+         return kind == CONDITIONAL;
+      }
+   
+   	/**
+   	 * Predict whether the conditional branch at an address will be taken.
+   	 *
+   	 * @param pc address of the branch
+   	 * @return true to predict taken
+   	 */
+       public abstract boolean predict(int pc);
+   
+   	/**
+   	 * Learn the direction of the branch just predicted.
+   	 *
+   	 * @param pc address of the branch
+   	 * @param taken true if it was taken
+   	 */
+       public abstract void update(int pc, boolean taken);
+   
+       public boolean resolve(int pc, int kind, boolean taken, int target, int fallThrough) {
+         boolean correct = predict(pc) == taken;
+         update(pc, taken);
+         return correct;
+      }
+   
+   	/**
+   	 * Move a 2-bit counter one step towards the outcome.
+   	 *
+   	 * @param counter counter value, 0 to 3
+   	 * @param taken true if the branch was taken
+   	 * @return new counter value
+   	 */
+       protected static byte train(byte counter, boolean taken) {
+         if (taken) {
+            return (counter < 3) ? (byte) (counter + 1) : counter;
+         }
+         return (counter > 0) ? (byte) (counter - 1) : counter;
+      }
+   
+   	/**
+   	 * Fill a new counter table with weakly not taken counters.
+   	 *
+   	 * @param size number of counters
+   	 * @return the table
+   	 */
+       protected static byte[] counters(int size) {
+         byte[] table = new byte[size];
+         java.util.Arrays.fill(table, WEAKLY_NOT_TAKEN);
+         return table;
+      }
+   }
@@ -0,0 +1,67 @@
+   package mars.mips.branch;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Gshare predictor: a table of 2-bit counters indexed by the branch's word address
+ * xor the directions of the most recent conditional branches.
+ *
+ * @version October 2017
+ */
+
+    public class GsharePredictor extends DirectionPredictor {
+   
+      private final byte[] table;
+      private final int mask, historyMask;
+      private int history;
+   
+   	/**
+   	 * @param entries number of counters, a power of two
+   	 * @param historyBits number of recent branches remembered, up to 30
+   	 */
+       public GsharePredictor(int entries, int historyBits) {
+         super("gshare:" + entries + ":" + historyBits);
+         if (historyBits < 0 || historyBits > 30) {
+            throw new IllegalArgumentException("history bits must be 0 to 30, not " + historyBits);
+         }
+         table = counters(powerOfTwo("entries", entries, 1 << 24));
+         mask = entries - 1;
+         historyMask = (1 << historyBits) - 1;
+      }
+   
+       public boolean predict(int pc) {
+         return table[((pc >>> 2) ^ history) & mask] >= 2;
+      }
+   
+       public void update(int pc, boolean taken) {
+         int index = ((pc >>> 2) ^ history) & mask;
+         table[index] = train(table[index], taken);
+         history = ((history << 1) | (taken ? 1 : 0)) & historyMask;
+      }
+   }
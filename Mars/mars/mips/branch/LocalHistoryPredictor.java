@@ -0,0 +1,70 @@
+   package mars.mips.branch;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Local history predictor: a table of per-branch histories, indexed by the
+ * branch's word address, holding the directions it last went.  The history
+ * indexes a shared table of 2-bit counters.
+ *
+ * @version October 2017
+ */
+
+    public class LocalHistoryPredictor extends DirectionPredictor {
+   
+      private final short[] histories;
+      private final byte[] table;
+      private final int mask, historyMask;
+   
+   	/**
+   	 * @param entries number of histories, a power of two
+   	 * @param historyBits bits in each history, up to 16
+   	 */
+       public LocalHistoryPredictor(int entries, int historyBits) {
+         super("local:" + entries + ":" + historyBits);
+         if (historyBits < 1 || historyBits > 16) {
+            throw new IllegalArgumentException("history bits must be 1 to 16, not " + historyBits);
+         }
+         histories = new short[powerOfTwo("entries", entries, 1 << 24)];
+         table = counters(1 << historyBits);
+         mask = entries - 1;
+         historyMask = (1 << historyBits) - 1;
+      }
+   
+       public boolean predict(int pc) {
+         return table[histories[(pc >>> 2) & mask] & historyMask] >= 2;
+      }
+   
+       public void update(int pc, boolean taken) {
+         int index = (pc >>> 2) & mask;
+         int history = histories[index] & historyMask;
+         table[history] = train(table[history], taken);
+         histories[index] = (short) ((history << 1) | (taken ? 1 : 0));
+      }
+   }
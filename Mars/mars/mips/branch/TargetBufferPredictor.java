@@ -0,0 +1,98 @@
+   package mars.mips.branch;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Branch target buffer with a return address stack, predicting the address of the
+ * next instruction after every kind of transfer.  The buffer is direct mapped,
+ * indexed by the branch's word address, and holds the address of the branch and
+ * the target it last went to; a transfer found in it is predicted to go there
+ * again, any other to fall through.  Entries are only made when a transfer is
+ * taken.  Calls push their return address on the stack and returns are predicted
+ * to go to the address on top.  The stack is circular, so the oldest return
+ * addresses are lost when it overflows.
+ *
+ * @version October 2017
+ */
+
+    public class TargetBufferPredictor extends BranchPredictor {
+   
+      private final int[] branches;    // address of the branch in each entry
+      private final int[] targets;
+      private final boolean[] valid;
+      private final int mask;
+      private final int[] stack;
+      private int top;                 // number of pushes less pops, may exceed the stack size
+   
+   	/**
+   	 * @param entries number of buffer entries, a power of two
+   	 * @param depth return address stack entries, 0 for none
+   	 */
+       public TargetBufferPredictor(int entries, int depth) {
+         super("btb:" + entries + ":" + depth);
+         if (depth < 0) {
+            throw new IllegalArgumentException("stack depth must not be negative");
+         }
+         branches = new int[powerOfTwo("entries", entries, 1 << 24)];
+         targets = new int[entries];
+         valid = new boolean[entries];
+         mask = entries - 1;
+         stack = new int[depth];
+      }
+   
+   	/**
+   	 * @param kind kind of transfer
+   	 * @return true, since the next address is predicted for every kind
+   	 */
+       public boolean predicts(int kind) {
+         return true;
+      }
+   
+       public boolean resolve(int pc, int kind, boolean taken, int target, int fallThrough) {
+         int index = (pc >>> 2) & mask;
+         int predicted;
+         if (kind == RETURN && top > 0 && stack.length > 0) {
+            top--;
+            predicted = stack[top % stack.length];
+         } 
+         else {
+            predicted = (valid[index] && branches[index] == pc) ? targets[index] : fallThrough;
+         }
+         if (kind == CALL && stack.length > 0) {
+            stack[top % stack.length] = fallThrough;
+            top++;
+         }
+         if (taken) {
+            branches[index] = pc;
+            targets[index] = target;
+            valid[index] = true;
+         }
+         return predicted == (taken ? target : fallThrough);
+      }
+   }
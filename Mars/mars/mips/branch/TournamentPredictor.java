@@ -0,0 +1,75 @@
+   package mars.mips.branch;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Tournament predictor: a gshare and a local history predictor run side by side,
+ * and a table of 2-bit counters indexed by the branch's word address chooses
+ * between them.  The chooser moves towards whichever was right when they disagree;
+ * 2 or 3 means gshare.
+ *
+ * @version October 2017
+ */
+
+    public class TournamentPredictor extends DirectionPredictor {
+   
+      private final GsharePredictor global;
+      private final LocalHistoryPredictor local;
+      private final byte[] chooser;
+      private final int mask;
+   
+   	/**
+   	 * @param entries number of gshare counters and of chooser counters, a power of two
+   	 * @param historyBits global history bits of the gshare predictor
+   	 * @param localEntries number of histories of the local predictor
+   	 * @param localBits bits in each local history
+   	 */
+       public TournamentPredictor(int entries, int historyBits, int localEntries, int localBits) {
+         super("tournament:" + entries + ":" + historyBits + ":" + localEntries + ":" + localBits);
+         global = new GsharePredictor(entries, historyBits);
+         local = new LocalHistoryPredictor(localEntries, localBits);
+         chooser = counters(entries);
+         mask = entries - 1;
+      }
+   
+       public boolean predict(int pc) {
+         return (chooser[(pc >>> 2) & mask] >= 2) ? global.predict(pc) : local.predict(pc);
+      }
+   
+       public void update(int pc, boolean taken) {
+         boolean globalRight = global.predict(pc) == taken;
+         boolean localRight = local.predict(pc) == taken;
+         if (globalRight != localRight) {
+            int index = (pc >>> 2) & mask;
+            chooser[index] = train(chooser[index], globalRight);
+         }
+         global.update(pc, taken);
+         local.update(pc, taken);
+      }
+   }
@@ -0,0 +1,316 @@
+   package mars.mips.cache;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * One level of cache for the headless cache simulation, see <code>CacheSweep</code>.
+ * Only the tags are modelled, not the data.  Everything lives in primitive arrays
+ * indexed by set and way: the block address held by each line, its dirty bit, and
+ * the replacement state of each set.  Replacement is LRU, FIFO, random (a seeded
+ * xorshift, so runs repeat exactly) or tree pseudo-LRU, which needs a power of two
+ * number of ways, at most 32.  Lines of a set are filled in way order, so the
+ * empty ones are always used before anything is replaced.
+ * <p>
+ * The cache knows nothing of write policy or of the levels below it.  Each access
+ * says whether the block is brought in on a miss and whether it is made dirty;
+ * <code>CacheHierarchy</code> decides that and passes evicted dirty blocks on.
+ *
+ * @version October 2017
+ */
+
+    public class Cache {
+   
+      /** Replace the least recently used line of the set */
+      public static final int LRU = 0;
+      /** Replace the line of the set that was brought in first */
+      public static final int FIFO = 1;
+      /** Replace a line of the set at random */
+      public static final int RANDOM = 2;
+      /** Replace the line a binary tree of most recently used bits points away from */
+      public static final int PLRU = 3;
+      
+      private static final String[] POLICY_NAMES = { "lru", "fifo", "random", "plru" };
+      private static final int RANDOM_SEED = 0x2545F491;
+   
+      private final int size, blockSize, ways, policy;
+      private final int blockBits, setMask, levels;
+      private final int[] tags;        // block address of each line, by set then way
+      private final boolean[] dirty;
+      private final int[] filled;      // number of lines in use, per set
+      private final int[] order;       // LRU: ways of each set, most recently used first
+      private final int[] state;       // FIFO: next way to replace; PLRU: tree bits, per set
+      private int random = RANDOM_SEED;
+      private int evicted;             // dirty block replaced by the last access, -1 if none
+   
+      private long reads, readMisses, writes, writeMisses, writebacks;
+   
+   	/**
+   	 * Create an empty cache.
+   	 *
+   	 * @param size capacity in bytes, a power of two
+   	 * @param blockSize bytes per line, a power of two, at least 4
+   	 * @param ways lines per set, a power of two
+   	 * @param policy replacement policy, one of LRU, FIFO, RANDOM and PLRU
+   	 * @throws IllegalArgumentException if the geometry is not possible
+   	 */
+       public Cache(int size, int blockSize, int ways, int policy) {
+         if (!isPowerOfTwo(size) || !isPowerOfTwo(blockSize) || !isPowerOfTwo(ways)) {
+            throw new IllegalArgumentException("size, block size and ways must be powers of two");
+         }
+         if (blockSize < 4) {
+            throw new IllegalArgumentException("block size must be at least 4 bytes");
+         }
+         if (size < blockSize * ways) {
+            throw new IllegalArgumentException("size is less than one set of " + ways + " blocks of " + blockSize + " bytes");
+         }
+         if (policy < LRU || policy > PLRU) {
+            throw new IllegalArgumentException("unknown replacement policy " + policy);
+         }
+         if (policy == PLRU && ways > 32) {
+            throw new IllegalArgumentException("plru is limited to 32 ways");
+         }
+         this.size = size;
+         this.blockSize = blockSize;
+         this.ways = ways;
+         this.policy = policy;
+         int sets = size / (blockSize * ways);
+         blockBits = Integer.numberOfTrailingZeros(blockSize);
+         setMask = sets - 1;
+         levels = Integer.numberOfTrailingZeros(ways);
+         tags = new int[sets * ways];
+         dirty = new boolean[sets * ways];
+         filled = new int[sets];
+         order = (policy == LRU) ? new int[sets * ways] : null;
+         state = (policy == FIFO || policy == PLRU) ? new int[sets] : null;
+         if (order != null) {
+            for (int i = 0; i < order.length; i++) {
+               order[i] = i % ways;
+            }
+         }
+      }
+   
+   	/**
+   	 * Look up the block holding the given address, counting a read or a write.
+   	 * On a miss the block is brought in if <code>allocate</code> is true, replacing
+   	 * a line if the set is full.  If the replaced line was dirty, its address can
+   	 * be had from <code>getEvicted</code> until the next access.
+   	 *
+   	 * @param address byte address accessed
+   	 * @param write true to count a write, false a read
+   	 * @param allocate true to bring the block in on a miss
+   	 * @param makeDirty true to mark the line dirty, whether it hit or was brought in
+   	 * @return true on a hit
+   	 */
+       public boolean access(int address, boolean write, boolean allocate, boolean makeDirty) {
+         int block = address >>> blockBits;
+         int set = block & setMask;
+         int base = set * ways;
+         int count = filled[set];
+         evicted = -1;
+         if (write) {
+            writes++;
+         } 
+         else {
+            reads++;
+         }
+         for (int way = 0; way < count; way++) {
+            if (tags[base + way] == block) {
+               if (makeDirty) {
+                  dirty[base + way] = true;
+               }
+               touch(set, base, way);
+               return true;
+            }
+         }
+         if (write) {
+            writeMisses++;
+         } 
+         else {
+            readMisses++;
+         }
+         if (!allocate) {
+            return false;
+         }
+         int way;
+         if (count < ways) {
+            way = count;
+            filled[set] = count + 1;
+         } 
+         else {
+            way = victim(set, base);
+            if (dirty[base + way]) {
+               evicted = tags[base + way] << blockBits;
+               writebacks++;
+            }
+            if (policy == FIFO) {
+               state[set] = (way + 1) & (ways - 1);
+            }
+         }
+         tags[base + way] = block;
+         dirty[base + way] = makeDirty;
+         touch(set, base, way);
+         return false;
+      }
+   
+   	/**
+   	 * @return address of the dirty block replaced by the last access, or -1 if none was
+   	 */
+       public int getEvicted() {
+         return evicted;
+      }
+   
+      // Record a use of the given way, for the policies that care.
+       private void touch(int set, int base, int way) {
+         if (policy == LRU) {
+            int position = base;
+            while (order[position] != way) {
+               position++;
+            }
+            for (; position > base; position--) {
+               order[position] = order[position - 1];
+            }
+            order[base] = way;
+         } 
+         else if (policy == PLRU) {
+            // Walk from the root, pointing each node on the way at the other half.
+            int bits = state[set];
+            int node = 1;
+            for (int level = levels - 1; level >= 0; level--) {
+               int bit = (way >>> level) & 1;
+               if (bit == 0) {
+                  bits |= 1 << node;
+               } 
+               else {
+                  bits &= ~(1 << node);
+               }
+               node = 2 * node + bit;
+            }
+            state[set] = bits;
+         }
+      }
+   
+      // Way of a full set to replace.
+       private int victim(int set, int base) {
+         switch (policy) {
+            case LRU:
+               return order[base + ways - 1];
+            case FIFO:
+               return state[set];
+            case RANDOM:
+               random ^= random << 13;
+               random ^= random >>> 17;
+               random ^= random << 5;
+               return (random >>> 1) & (ways - 1);
+            default:
+               int bits = state[set];
+               int node = 1;
+               int way = 0;
+               for (int level = 0; level < levels; level++) {
+                  int bit = (bits >>> node) & 1;
+                  way = (way << 1) | bit;
+                  node = 2 * node + bit;
+               }
+               return way;
+         }
+      }
+   
+   	/**
+   	 * @return number of reads counted
+   	 */
+       public long getReads() {
+         return reads;
+      }
+   
+   	/**
+   	 * @return number of reads that missed
+   	 */
+       public long getReadMisses() {
+         return readMisses;
+      }
+   
+   	/**
+   	 * @return number of writes counted
+   	 */
+       public long getWrites() {
+         return writes;
+      }
+   
+   	/**
+   	 * @return number of writes that missed
+   	 */
+       public long getWriteMisses() {
+         return writeMisses;
+      }
+   
+   	/**
+   	 * @return number of dirty lines replaced
+   	 */
+       public long getWritebacks() {
+         return writebacks;
+      }
+   
+   	/**
+   	 * Describe the geometry the way the configuration file gives it, for example
+   	 * <code>4K:16:2:lru</code>.
+   	 *
+   	 * @return size, block size, ways and replacement policy, separated by colons
+   	 */
+       public String toString() {
+         return formatSize(size) + ":" + blockSize + ":" + ways + ":" + POLICY_NAMES[policy];
+      }
+   
+   	/**
+   	 * Find the replacement policy with the given name.
+   	 *
+   	 * @param name lru, fifo, random or plru, in any case
+   	 * @return the matching policy constant, or -1 if there is none
+   	 */
+       public static int policyForName(String name) {
+         for (int i = 0; i < POLICY_NAMES.length; i++) {
+            if (POLICY_NAMES[i].equalsIgnoreCase(name)) {
+               return i;
+            }
+         }
+         return -1;
+      }
+   
+       private static String formatSize(int bytes) {
+         if (bytes >= (1 << 20) && (bytes & ((1 << 20) - 1)) == 0) {
+            return (bytes >> 20) + "M";
+         }
+         if (bytes >= (1 << 10) && (bytes & ((1 << 10) - 1)) == 0) {
+            return (bytes >> 10) + "K";
+         }
+         return String.valueOf(bytes);
+      }
+   
+       private static boolean isPowerOfTwo(int n) {
+         return n > 0 && (n & (n - 1)) == 0;
+      }
+   }
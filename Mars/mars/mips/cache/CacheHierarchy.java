@@ -0,0 +1,195 @@
+   package mars.mips.cache;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * A cache hierarchy for the headless cache simulation: split level 1 instruction
+ * and data caches, and optionally a unified level 2 cache in front of memory.  One
+ * write policy applies to every level.  Write-back caches allocate on a write miss
+ * and pass dirty lines down when they are replaced.  Write-through caches pass
+ * every write straight down and do not allocate on a write miss.
+ * <p>
+ * Level 1 misses read the block from level 2, then write back the line they
+ * replaced; level 2 does the same with memory.  Accesses reaching memory are only
+ * counted.
+ *
+ * @version October 2017
+ */
+
+    public class CacheHierarchy {
+   
+      private final String name;
+      private final Cache instructionCache, dataCache, secondLevel;
+      private final boolean writeBack;
+      private long memoryReads, memoryWrites;
+   
+   	/**
+   	 * Create a hierarchy of empty caches.
+   	 *
+   	 * @param name name for the configuration in reports
+   	 * @param instructionCache level 1 cache for instruction fetches
+   	 * @param dataCache level 1 cache for loads and stores
+   	 * @param secondLevel unified level 2 cache, null for none
+   	 * @param writeBack true for write-back with write-allocate, false for write-through
+   	 * without write-allocate
+   	 */
+       public CacheHierarchy(String name, Cache instructionCache, Cache dataCache, Cache secondLevel, boolean writeBack) {
+         this.name = name;
+         this.instructionCache = instructionCache;
+         this.dataCache = dataCache;
+         this.secondLevel = secondLevel;
+         this.writeBack = writeBack;
+      }
+   
+   	/**
+   	 * Fetch an instruction.
+   	 *
+   	 * @param address byte address fetched
+   	 */
+       public void fetch(int address) {
+         if (!instructionCache.access(address, false, true, false)) {
+            readBelow(address);
+         }
+      }
+   
+   	/**
+   	 * Load data.
+   	 *
+   	 * @param address byte address read
+   	 */
+       public void read(int address) {
+         if (!dataCache.access(address, false, true, false)) {
+            readBelow(address);
+            if (dataCache.getEvicted() != -1) {
+               writeBelow(dataCache.getEvicted());
+            }
+         }
+      }
+   
+   	/**
+   	 * Store data.
+   	 *
+   	 * @param address byte address written
+   	 */
+       public void write(int address) {
+         if (writeBack) {
+            if (!dataCache.access(address, true, true, true)) {
+               readBelow(address);
+               if (dataCache.getEvicted() != -1) {
+                  writeBelow(dataCache.getEvicted());
+               }
+            }
+         } 
+         else {
+            dataCache.access(address, true, false, false);
+            writeBelow(address);
+         }
+      }
+   
+      // Read a block missing from level 1.
+       private void readBelow(int address) {
+         if (secondLevel == null) {
+            memoryReads++;
+         } 
+         else if (!secondLevel.access(address, false, true, false)) {
+            memoryReads++;
+            if (secondLevel.getEvicted() != -1) {
+               memoryWrites++;
+            }
+         }
+      }
+   
+      // Write a block, or a single word when writing through, from level 1.
+       private void writeBelow(int address) {
+         if (secondLevel == null) {
+            memoryWrites++;
+         } 
+         else if (writeBack) {
+            if (!secondLevel.access(address, true, true, true)) {
+               memoryReads++;
+               if (secondLevel.getEvicted() != -1) {
+                  memoryWrites++;
+               }
+            }
+         } 
+         else {
+            secondLevel.access(address, true, false, false);
+            memoryWrites++;
+         }
+      }
+   
+   	/**
+   	 * @return name of the configuration
+   	 */
+       public String getName() {
+         return name;
+      }
+   
+   	/**
+   	 * @return level 1 instruction cache
+   	 */
+       public Cache getInstructionCache() {
+         return instructionCache;
+      }
+   
+   	/**
+   	 * @return level 1 data cache
+   	 */
+       public Cache getDataCache() {
+         return dataCache;
+      }
+   
+   	/**
+   	 * @return level 2 cache, null if there is none
+   	 */
+       public Cache getSecondLevel() {
+         return secondLevel;
+      }
+   
+   	/**
+   	 * @return true for write-back with write-allocate, false for write-through without
+   	 */
+       public boolean isWriteBack() {
+         return writeBack;
+      }
+   
+   	/**
+   	 * @return number of blocks read from memory
+   	 */
+       public long getMemoryReads() {
+         return memoryReads;
+      }
+   
+   	/**
+   	 * @return number of blocks, or words when writing through, written to memory
+   	 */
+       public long getMemoryWrites() {
+         return memoryWrites;
+      }
+   }
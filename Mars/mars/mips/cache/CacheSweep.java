@@ -0,0 +1,332 @@
+   package mars.mips.cache;
+   import mars.mips.hardware.*;
+   import java.io.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Runs any number of cache hierarchy configurations side by side over the memory
+ * accesses of one simulation, so a whole design space is evaluated in a single run
+ * of the program.  Register it as an observer of all of <code>Memory</code> before
+ * the run and remove it afterwards.  Reads of the text segments are taken to be
+ * instruction fetches, which holds unless the program loads words of its own code;
+ * every other read is a load and every write a store.  At the end, the hit and
+ * miss counts of each configuration are written as CSV or JSON.
+ * <p>
+ * Configurations are read from a text file with one line per configuration:
+ * a name, then <code>l1i=</code>, <code>l1d=</code> and optionally <code>l2=</code>
+ * cache geometries, each <code>&lt;size&gt;:&lt;block&gt;:&lt;ways&gt;[:&lt;policy&gt;]</code>,
+ * and optionally <code>write=wb</code> (the default) or <code>write=wt</code>.
+ * Sizes are in bytes and may end in K or M; the policy is <code>lru</code> (the
+ * default), <code>fifo</code>, <code>random</code> or <code>plru</code>.  Any of these
+ * values may be a comma-separated list, and the line then stands for every
+ * combination, named after the line with -1, -2, ... added.  Blank lines and lines
+ * starting with # are ignored.  For example:
+ * <pre>
+ * small  l1i=4K:16:1 l1d=4K:16:1
+ * assoc  l1i=8K:32:2 l1d=8K:32:1,2,4,8:lru,plru l2=256K:64:8 write=wb,wt
+ * </pre>
+ *
+ * @version October 2017
+ */
+
+    public class CacheSweep implements Observer {
+   
+      private static final String[] LEVEL_KEYS = { "l1i", "l1d", "l2" };
+      private static final String WRITE_KEY = "write";
+      private static final int LEVEL_FIELDS = 4;   // size, block, ways, policy
+   
+      private final CacheHierarchy[] hierarchies;
+   
+   	/**
+   	 * Create a sweep over the given configurations.
+   	 *
+   	 * @param hierarchies the configurations to simulate, all empty to begin with
+   	 */
+       public CacheSweep(CacheHierarchy[] hierarchies) {
+         this.hierarchies = hierarchies;
+      }
+   
+   	/**
+   	 * Create a sweep over the configurations listed in a file, as described above.
+   	 *
+   	 * @param file configuration file
+   	 * @return sweep over every configuration in the file
+   	 * @throws IOException if the file cannot be read or a line is not valid, giving
+   	 * the line number
+   	 */
+       public static CacheSweep load(File file) throws IOException {
+         ArrayList configurations = new ArrayList();
+         BufferedReader in = new BufferedReader(new FileReader(file));
+         try {
+            int lineNumber = 0;
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+               lineNumber++;
+               line = line.trim();
+               if (line.length() == 0 || line.startsWith("#")) {
+                  continue;
+               }
+               try {
+                  parseLine(line, configurations);
+               } 
+                   catch (IllegalArgumentException e) {
+                     throw new IOException(file.getName() + " line " + lineNumber + ": " + e.getMessage());
+                  }
+            }
+         }
+         finally {
+            in.close();
+         }
+         if (configurations.size() == 0) {
+            throw new IOException(file.getName() + " has no cache configurations");
+         }
+         return new CacheSweep((CacheHierarchy[]) configurations.toArray(new CacheHierarchy[configurations.size()]));
+      }
+   
+      // Add the configurations one line of the file stands for.  Every value of the
+   	// line is a list of choices; count through all combinations like an odometer.
+       private static void parseLine(String line, ArrayList configurations) {
+         StringTokenizer tokens = new StringTokenizer(line);
+         String name = tokens.nextToken();
+         String[][] choices = new String[LEVEL_KEYS.length * LEVEL_FIELDS + 1][];
+         while (tokens.hasMoreTokens()) {
+            String token = tokens.nextToken();
+            int equals = token.indexOf('=');
+            String key = (equals < 0) ? token : token.substring(0, equals).toLowerCase();
+            String value = (equals < 0) ? "" : token.substring(equals + 1);
+            if (key.equals(WRITE_KEY)) {
+               choices[choices.length - 1] = split(value, ",");
+               continue;
+            }
+            int level = 0;
+            while (level < LEVEL_KEYS.length && !LEVEL_KEYS[level].equals(key)) {
+               level++;
+            }
+            if (level == LEVEL_KEYS.length || equals < 0) {
+               throw new IllegalArgumentException("expected l1i=, l1d=, l2= or write=, found " + token);
+            }
+            String[] fields = split(value, ":");
+            if (fields.length < 3 || fields.length > LEVEL_FIELDS) {
+               throw new IllegalArgumentException(key + " must be size:block:ways[:policy]");
+            }
+            for (int field = 0; field < LEVEL_FIELDS; field++) {
+               choices[level * LEVEL_FIELDS + field] =
+                     (field < fields.length) ? split(fields[field], ",") : new String[] { "lru" };
+            }
+         }
+         if (choices[0] == null || choices[LEVEL_FIELDS] == null) {
+            throw new IllegalArgumentException("l1i= and l1d= are required");
+         }
+         if (choices[choices.length - 1] == null) {
+            choices[choices.length - 1] = new String[] { "wb" };
+         }
+         int combinations = 1;
+         for (int i = 0; i < choices.length; i++) {
+            if (choices[i] != null) {
+               combinations *= choices[i].length;
+            }
+         }
+         int[] chosen = new int[choices.length];
+         for (int n = 1; n <= combinations; n++) {
+            Cache[] levels = new Cache[LEVEL_KEYS.length];
+            for (int level = 0; level < LEVEL_KEYS.length; level++) {
+               int first = level * LEVEL_FIELDS;
+               if (choices[first] != null) {
+                  levels[level] = new Cache(parseSize(choices[first][chosen[first]]),
+                                            parseSize(choices[first + 1][chosen[first + 1]]),
+                                            parseSize(choices[first + 2][chosen[first + 2]]),
+                                            parsePolicy(choices[first + 3][chosen[first + 3]]));
+               }
+            }
+            String write = choices[choices.length - 1][chosen[choices.length - 1]];
+            if (!write.equalsIgnoreCase("wb") && !write.equalsIgnoreCase("wt")) {
+               throw new IllegalArgumentException("write must be wb or wt, found " + write);
+            }
+            configurations.add(new CacheHierarchy((combinations == 1) ? name : name + "-" + n,
+                                                  levels[0], levels[1], levels[2], write.equalsIgnoreCase("wb")));
+            for (int i = choices.length - 1; i >= 0; i--) {
+               if (choices[i] != null && ++chosen[i] < choices[i].length) {
+                  break;
+               }
+               chosen[i] = 0;
+            }
+         }
+      }
+   
+       private static String[] split(String value, String separators) {
+         StringTokenizer parts = new StringTokenizer(value, separators);
+         String[] result = new String[parts.countTokens()];
+         for (int i = 0; i < result.length; i++) {
+            result[i] = parts.nextToken();
+         }
+         return result;
+      }
+   
+      // Bytes, possibly with a K or M suffix.  Throws NumberFormatException if not a number.
+       private static int parseSize(String text) {
+         int multiplier = 1;
+         char last = Character.toUpperCase(text.charAt(text.length() - 1));
+         if (last == 'K' || last == 'M') {
+            multiplier = (last == 'K') ? (1 << 10) : (1 << 20);
+            text = text.substring(0, text.length() - 1);
+         }
+         return Integer.parseInt(text) * multiplier;
+      }
+   
+       private static int parsePolicy(String text) {
+         int policy = Cache.policyForName(text);
+         if (policy < 0) {
+            throw new IllegalArgumentException("unknown replacement policy " + text);
+         }
+         return policy;
+      }
+   
+   	/**
+   	 * Give a memory access to every configuration.  Called by <code>Memory</code>.
+   	 *
+   	 * @param memory the memory that was accessed
+   	 * @param accessNotice <code>MemoryAccessNotice</code> describing the access
+   	 */
+       public void update(Observable memory, Object accessNotice) {
+         if (!(accessNotice instanceof MemoryAccessNotice)) {
+            return;
+         }
+         MemoryAccessNotice notice = (MemoryAccessNotice) accessNotice;
+         int address = notice.getAddress();
+         if (notice.getAccessType() == AccessNotice.WRITE) {
+            for (int i = 0; i < hierarchies.length; i++) {
+               hierarchies[i].write(address);
+            }
+         } 
+         else if (Memory.inTextSegment(address) || Memory.inKernelTextSegment(address)) {
+            for (int i = 0; i < hierarchies.length; i++) {
+               hierarchies[i].fetch(address);
+            }
+         } 
+         else {
+            for (int i = 0; i < hierarchies.length; i++) {
+               hierarchies[i].read(address);
+            }
+         }
+      }
+   
+   	/**
+   	 * @return the configurations being simulated
+   	 */
+       public CacheHierarchy[] getHierarchies() {
+         return hierarchies;
+      }
+   
+   	/**
+   	 * Write the counts of every configuration as CSV, with a header line and then one
+   	 * line per configuration.  Columns of a missing level 2 are left empty.
+   	 *
+   	 * @param out where to write
+   	 */
+       public void writeCSV(PrintStream out) {
+         out.println("name,write,l1i,l1i_reads,l1i_misses,l1i_miss_rate,"
+                     + "l1d,l1d_reads,l1d_read_misses,l1d_writes,l1d_write_misses,l1d_miss_rate,l1d_writebacks,"
+                     + "l2,l2_reads,l2_read_misses,l2_writes,l2_write_misses,l2_miss_rate,l2_writebacks,"
+                     + "memory_reads,memory_writes");
+         for (int i = 0; i < hierarchies.length; i++) {
+            CacheHierarchy h = hierarchies[i];
+            Cache l1i = h.getInstructionCache();
+            Cache l1d = h.getDataCache();
+            Cache l2 = h.getSecondLevel();
+            StringBuffer line = new StringBuffer();
+            line.append(h.getName()).append(',').append(h.isWriteBack() ? "wb" : "wt");
+            line.append(',').append(l1i).append(',').append(l1i.getReads()).append(',').append(l1i.getReadMisses());
+            line.append(',').append(missRate(l1i));
+            appendCSV(line, l1d);
+            if (l2 != null) {
+               appendCSV(line, l2);
+            } 
+            else {
+               line.append(",,,,,,,");
+            }
+            line.append(',').append(h.getMemoryReads()).append(',').append(h.getMemoryWrites());
+            out.println(line);
+         }
+      }
+   
+       private static void appendCSV(StringBuffer line, Cache cache) {
+         line.append(',').append(cache).append(',').append(cache.getReads()).append(',').append(cache.getReadMisses());
+         line.append(',').append(cache.getWrites()).append(',').append(cache.getWriteMisses());
+         line.append(',').append(missRate(cache)).append(',').append(cache.getWritebacks());
+      }
+   
+   	/**
+   	 * Write the counts of every configuration as a JSON array with one object per
+   	 * configuration, each on a line of its own.  A missing level 2 is null.
+   	 *
+   	 * @param out where to write
+   	 */
+       public void writeJSON(PrintStream out) {
+         out.println("[");
+         for (int i = 0; i < hierarchies.length; i++) {
+            CacheHierarchy h = hierarchies[i];
+            StringBuffer json = new StringBuffer();
+            json.append("{\"name\":\"").append(h.getName()).append("\",\"write\":\"").append(h.isWriteBack() ? "wb" : "wt");
+            json.append("\",\"l1i\":");
+            appendJSON(json, h.getInstructionCache());
+            json.append(",\"l1d\":");
+            appendJSON(json, h.getDataCache());
+            json.append(",\"l2\":");
+            if (h.getSecondLevel() != null) {
+               appendJSON(json, h.getSecondLevel());
+            } 
+            else {
+               json.append("null");
+            }
+            json.append(",\"memory\":{\"reads\":").append(h.getMemoryReads());
+            json.append(",\"writes\":").append(h.getMemoryWrites()).append("}}");
+            out.println(json.append((i < hierarchies.length - 1) ? "," : ""));
+         }
+         out.println("]");
+      }
+   
+       private static void appendJSON(StringBuffer json, Cache cache) {
+         json.append("{\"geometry\":\"").append(cache).append("\",\"reads\":").append(cache.getReads());
+         json.append(",\"read misses\":").append(cache.getReadMisses());
+         json.append(",\"writes\":").append(cache.getWrites()).append(",\"write misses\":").append(cache.getWriteMisses());
+         json.append(",\"miss rate\":").append(missRate(cache)).append(",\"writebacks\":").append(cache.getWritebacks());
+         json.append('}');
+      }
+   
+      // Misses over accesses, to six decimal places.
+       private static String missRate(Cache cache) {
+         long accesses = cache.getReads() + cache.getWrites();
+         if (accesses == 0) {
+            return "0";
+         }
+         double rate = (double) (cache.getReadMisses() + cache.getWriteMisses()) / accesses;
+         return String.valueOf(Math.round(rate * 1000000) / 1000000.0);
+      }
+   }
@@ -41,6 +41,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
     public abstract class AbstractDumpFormat implements DumpFormat {
    
+      /** Number of words dump formats read from memory at a time, one 4K block */
+      protected static final int WORDS_PER_READ = 1024;
+   
       private String name, commandDescriptor, description,  extension;
    	
    	/**
@@ -100,6 +103,24 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return commandDescriptor;
       }
    	    
+   /**
+   *  Read the next words to be dumped, as many as fit in the array without going
+   *  past the last address.  This is how subclasses should read memory: see
+   *  Memory.getRawWords(), which copies whole blocks at a time.
+   *
+   *  @param words Array to read the words into, usually WORDS_PER_READ long.
+   *  @param address address of the first word to read.
+   *  @param lastAddress last (highest) memory address to dump.
+   *  @return number of words read, or if the word at address has never been
+   *  written, minus the number of words from there that have not been either.
+   *  @throws AddressErrorException if address is invalid or not on a word boundary.
+   */
+       protected static int readWords(int[] words, int address, int lastAddress) 
+		    throws AddressErrorException {
+         int count = (int) Math.min(words.length, ((lastAddress - address) >>> 2) + 1L);
+         return Memory.getInstance().getRawWords(address, words, count);
+      }
+   
    /**
    *  Write MIPS memory contents according to the
    *  specification for this format. 
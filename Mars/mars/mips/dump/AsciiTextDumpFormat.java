@@ -61,7 +61,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 	*  followed by single-character code, e.g. \t for tab, \0 for null.
 	*  Non-printing character (control code,
 	*  values above 127) is rendered as a period (.).  Written
-	*  using PrintStream's println() method.
+	*  through a DumpWriter, a block of words at a time.
    *  Adapted by Pete Sanderson from code written by Greg Gibeling.
    *
    *  @param  file  File in which to store MIPS memory contents.  
@@ -74,14 +74,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void dumpMemoryRange(File file, int firstAddress, int lastAddress) 
         throws AddressErrorException, IOException {
-         PrintStream out = new PrintStream(new FileOutputStream(file));
-         String string = null;
+         DumpWriter out = new DumpWriter(file);
+         int[] words = new int[WORDS_PER_READ];
          try {
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-               Integer temp = Globals.memory.getRawWordOrNull(address);
-               if (temp == null) 
+            for (int address = firstAddress; address <= lastAddress; ) {
+               int count = readWords(words, address, lastAddress);
+               if (count <= 0) 
                   break;
-               out.println(Binary.intToAscii(temp.intValue()));
+               for (int i = 0; i < count; i++) {
+                  out.writeString(Binary.intToAscii(words[i]));
+                  out.newLine();
+               }
+               address += count * Memory.WORD_LENGTH_BYTES;
             }
          } 
          finally { 
@@ -51,8 +51,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
    
    /**
-   *  Write MIPS memory contents in pure binary format.  One byte at a time
-	*  using PrintStream's write() method.  Adapted by Pete Sanderson from
+   *  Write MIPS memory contents in pure binary format, each word least significant
+	*  byte first, through a DumpWriter.  Adapted by Pete Sanderson from
 	*  code written by Greg Gibeling.
 	*
    *  @param  file  File in which to store MIPS memory contents.  
@@ -65,15 +65,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void dumpMemoryRange(File file, int firstAddress, int lastAddress) 
         throws AddressErrorException, IOException {
-         PrintStream out = new PrintStream(new FileOutputStream(file));
+         DumpWriter out = new DumpWriter(file);
+         int[] words = new int[WORDS_PER_READ];
          try {
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-               Integer temp = Globals.memory.getRawWordOrNull(address);
-               if (temp == null) 
+            for (int address = firstAddress; address <= lastAddress; ) {
+               int count = readWords(words, address, lastAddress);
+               if (count <= 0) 
                   break;
-               int word = temp.intValue();
-               for (int i = 0; i < 4; i++) 
-                  out.write((word >>> (i << 3)) & 0xFF);
+               for (int i = 0; i < count; i++) 
+                  out.writeLittleEndian(words[i]);
+               address += count * Memory.WORD_LENGTH_BYTES;
             }
          } 
          finally { 
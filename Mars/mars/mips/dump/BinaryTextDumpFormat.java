@@ -53,7 +53,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    /**
    *  Write MIPS memory contents in binary text format.  Each line of
    *  text contains one memory word written as 32 '0' and '1' characters.  Written
-   *  using PrintStream's println() method.
+   *  through a DumpWriter, a block of words at a time.
    *  Adapted by Pete Sanderson from code written by Greg Gibeling.
    *
    *  @param  file  File in which to store MIPS memory contents.  
@@ -66,18 +66,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void dumpMemoryRange(File file, int firstAddress, int lastAddress) 
         throws AddressErrorException, IOException {
-         PrintStream out = new PrintStream(new FileOutputStream(file));
-         String string = null;
+         DumpWriter out = new DumpWriter(file);
+         int[] words = new int[WORDS_PER_READ];
          try {
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-               Integer temp = Globals.memory.getRawWordOrNull(address);
-               if (temp == null) 
+            for (int address = firstAddress; address <= lastAddress; ) {
+               int count = readWords(words, address, lastAddress);
+               if (count <= 0) 
                   break;
-               string = Integer.toBinaryString(temp.intValue());
-               while (string.length() < 32) {
-                  string = '0' + string;
+               for (int i = 0; i < count; i++) {
+                  out.writeBinary(words[i]);
+                  out.newLine();
                }
-               out.println(string);
+               address += count * Memory.WORD_LENGTH_BYTES;
             }
          } 
          finally { 
@@ -47,40 +47,135 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final String CLASS_EXTENSION = "class";
       
       private static ArrayList formatList = null;
+      private static ArrayList index = null;
+      private static boolean indexRead = false;
    	
      /**
       *  Dynamically loads dump formats into an ArrayList.  This method is adapted from
       *  the loadGameControllers() method in Bret Barker's GameServer class.
       *  Barker (bret@hypefiend.com) is co-author of the book "Developing Games
       *  in Java".  Also see the ToolLoader and SyscallLoader classes elsewhere in MARS.
+      *  The formats are the ones listed in the dump directory's plugin index (see
+      *  PluginIndex), or if there is none, every DumpFormat class in that directory.
       */
    	
        public ArrayList loadDumpFormats() {
          // The list will be populated only the first time this method is called.
          if (formatList == null) {
             formatList = new ArrayList();
-         // grab all class files in the dump directory
-            ArrayList candidates = FilenameFinder.getFilenameList(this.getClass( ).getClassLoader(),
-                                              DUMP_DIRECTORY_PATH, CLASS_EXTENSION);
-            for( int i = 0; i < candidates.size(); i++) {
-               String file = (String) candidates.get(i);
-               try {
-                  // grab the class, make sure it implements DumpFormat, instantiate, add to list
-                  String formatClassName = CLASS_PREFIX+file.substring(0, file.indexOf(CLASS_EXTENSION)-1);
-                  Class clas = Class.forName(formatClassName);
-                  if (DumpFormat.class.isAssignableFrom(clas) && 
-                      !Modifier.isAbstract(clas.getModifiers()) &&
-                  	 !Modifier.isInterface(clas.getModifiers())   ) {
-                     formatList.add(clas.newInstance());
-                  }
-               } 
-                   catch (Exception e) {
-                     System.out.println("Error instantiating DumpFormat from file " + file + ": "+e);
+            ArrayList entries = readIndex();
+            if (entries != null) {
+               for (int i = 0; i < entries.size(); i++) {
+                  DumpFormat format = create((String[]) entries.get(i));
+                  if (format != null) {
+                     formatList.add(format);
                   }
+               }
+               return formatList;
             }
+            formatList = scanDumpFormats();
          }
          return formatList;
       }
+   
+     /**
+      *  Get the dump format with the given command descriptor.  If the formats have
+      *  not all been loaded and there is a plugin index, only that one is created.
+      *  A format the index does not list is looked for in the dump directory.
+      *  @param formatCommandDescriptor command descriptor of the format, e.g. HexText
+      *  @return the format, or null if there is none with that command descriptor.
+      */
+       public DumpFormat loadDumpFormat(String formatCommandDescriptor) {
+         ArrayList entries = readIndex();
+         if (formatList == null && entries != null) {
+            for (int i = 0; i < entries.size(); i++) {
+               String[] entry = (String[]) entries.get(i);
+               if (entry.length > 1 && entry[1].equals(formatCommandDescriptor)) {
+                  return create(entry);
+               }
+            }
+         } 
+         else {
+            DumpFormat format = findDumpFormatGivenCommandDescriptor(loadDumpFormats(), formatCommandDescriptor);
+            if (format != null || entries == null) {
+               return format;
+            }
+         }
+         // Not in the index, which may be out of date: look through the directory.
+         DumpFormat format = findDumpFormatGivenCommandDescriptor(scanDumpFormats(), formatCommandDescriptor);
+         if (format != null) {
+            PluginIndex.reportMissing(DUMP_DIRECTORY_PATH, formatCommandDescriptor);
+         }
+         return format;
+      }
+   
+     /**
+      *  Get the command descriptors of all the dump formats, without creating
+      *  them if there is a plugin index.
+      *  @return ArrayList of String, one per format.
+      */
+       public ArrayList getCommandDescriptors() {
+         ArrayList descriptors = new ArrayList();
+         ArrayList entries = readIndex();
+         if (formatList == null && entries != null) {
+            for (int i = 0; i < entries.size(); i++) {
+               String[] entry = (String[]) entries.get(i);
+               if (entry.length > 1) {
+                  descriptors.add(entry[1]);
+               }
+            }
+            return descriptors;
+         }
+         ArrayList formats = loadDumpFormats();
+         for (int i = 0; i < formats.size(); i++) {
+            descriptors.add(((DumpFormat) formats.get(i)).getCommandDescriptor());
+         }
+         return descriptors;
+      }
+   
+      // Every DumpFormat class in the dump directory.
+       private ArrayList scanDumpFormats() {
+         ArrayList formats = new ArrayList();
+         // grab all class files in the dump directory
+         ArrayList candidates = FilenameFinder.getFilenameList(this.getClass( ).getClassLoader(),
+                                           DUMP_DIRECTORY_PATH, CLASS_EXTENSION);
+         for( int i = 0; i < candidates.size(); i++) {
+            String file = (String) candidates.get(i);
+            try {
+               // grab the class, make sure it implements DumpFormat, instantiate, add to list
+               String formatClassName = CLASS_PREFIX+file.substring(0, file.indexOf(CLASS_EXTENSION)-1);
+               Class clas = Class.forName(formatClassName);
+               if (DumpFormat.class.isAssignableFrom(clas) && 
+                   !Modifier.isAbstract(clas.getModifiers()) &&
+               	 !Modifier.isInterface(clas.getModifiers())   ) {
+                  formats.add(clas.newInstance());
+               }
+            } 
+                catch (Exception e) {
+                  System.out.println("Error instantiating DumpFormat from file " + file + ": "+e);
+               }
+         }
+         return formats;
+      }
+   
+       private ArrayList readIndex() {
+         if (!indexRead) {
+            index = PluginIndex.read(this.getClass().getClassLoader(), DUMP_DIRECTORY_PATH);
+            indexRead = true;
+         }
+         return index;
+      }
+   
+      // Create the format named by a plugin index entry, null if that fails.
+       private static DumpFormat create(String[] entry) {
+         try {
+            return (DumpFormat) PluginIndex.create(entry[0], DumpFormat.class);
+         } 
+             catch (Exception e) {
+               System.out.println("Error instantiating DumpFormat " + entry[0] + ": "+e);
+               return null;
+            }
+      }
    	
        public static DumpFormat findDumpFormatGivenCommandDescriptor(ArrayList formatList, String formatCommandDescriptor) {
          DumpFormat match = null;
@@ -0,0 +1,198 @@
+   package mars.mips.dump;
+
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Buffered output for dump formats.  Everything is encoded straight into one
+ * reusable byte buffer, which goes to the file through its channel whenever it
+ * fills up, so writing a dump creates no Strings per word and makes one system
+ * call per 64K bytes rather than one or more per word.  Text is written as
+ * single bytes, which suits the ASCII that dump formats produce, and lines end
+ * with the platform line separator, as PrintStream.println() would end them.
+ *
+ * @version October 2017
+ */
+
+    public class DumpWriter {
+   
+      private static final int BUFFER_BYTES = 1 << 16;
+      private static final byte[] HEX_DIGITS = {
+         '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+      private static final byte[] UPPER_CASE_HEX_DIGITS = {
+         '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+      private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes();
+   
+      private final FileChannel channel;
+      private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+      private final byte[] bytes = buffer.array();
+      private int position = 0;
+   
+   	/**
+   	 * Create a writer for the given file, replacing whatever it held.
+   	 *
+   	 * @param file file to write
+   	 * @throws FileNotFoundException if the file cannot be created
+   	 */
+       public DumpWriter(File file) throws FileNotFoundException {
+         channel = new FileOutputStream(file).getChannel();
+      }
+   
+   	/**
+   	 * Write one byte.
+   	 *
+   	 * @param value byte to write, in the low 8 bits
+   	 * @throws IOException if writing to the file fails
+   	 */
+       public void write(int value) throws IOException {
+         reserve(1);
+         bytes[position++] = (byte) value;
+      }
+   
+   	/**
+   	 * Write a word as four bytes, least significant first.
+   	 *
+   	 * @param word word to write
+   	 * @throws IOException if writing to the file fails
+   	 */
+       public void writeLittleEndian(int word) throws IOException {
+         reserve(4);
+         bytes[position] = (byte) word;
+         bytes[position + 1] = (byte) (word >>> 8);
+         bytes[position + 2] = (byte) (word >>> 16);
+         bytes[position + 3] = (byte) (word >>> 24);
+         position += 4;
+      }
+   
+   	/**
+   	 * Write the low digits of a value as lower case hexadecimal characters,
+   	 * with leading zeros.
+   	 *
+   	 * @param value value to write
+   	 * @param digits number of hex digits, 1 to 8
+   	 * @throws IOException if writing to the file fails
+   	 */
+       public void writeHex(int value, int digits) throws IOException {
+         writeHex(value, digits, false);
+      }
+   
+   	/**
+   	 * Write the low digits of a value as hexadecimal characters, with leading zeros.
+   	 *
+   	 * @param value value to write
+   	 * @param digits number of hex digits, 1 to 8
+   	 * @param upperCase true for A-F, false for a-f
+   	 * @throws IOException if writing to the file fails
+   	 */
+       public void writeHex(int value, int digits, boolean upperCase) throws IOException {
+         byte[] hexDigits = (upperCase) ? UPPER_CASE_HEX_DIGITS : HEX_DIGITS;
+         reserve(digits);
+         for (int i = position + digits - 1; i >= position; i--) {
+            bytes[i] = hexDigits[value & 0xF];
+            value >>>= 4;
+         }
+         position += digits;
+      }
+   
+   	/**
+   	 * Write a word as 32 '0' and '1' characters, most significant bit first.
+   	 *
+   	 * @param word word to write
+   	 * @throws IOException if writing to the file fails
+   	 */
+       public void writeBinary(int word) throws IOException {
+         reserve(32);
+         for (int i = 31; i >= 0; i--) {
+            bytes[position++] = (byte) ('0' + ((word >>> i) & 1));
+         }
+      }
+   
+   	/**
+   	 * Write the characters of a string, one byte each.
+   	 *
+   	 * @param string ASCII text to write
+   	 * @throws IOException if writing to the file fails
+   	 */
+       public void writeString(String string) throws IOException {
+         int length = string.length();
+         for (int done = 0; done < length; ) {
+            int chunk = Math.min(length - done, BUFFER_BYTES);
+            reserve(chunk);
+            for (int i = 0; i < chunk; i++) {
+               bytes[position++] = (byte) string.charAt(done + i);
+            }
+            done += chunk;
+         }
+      }
+   
+   	/**
+   	 * End the line.
+   	 *
+   	 * @throws IOException if writing to the file fails
+   	 */
+       public void newLine() throws IOException {
+         reserve(LINE_SEPARATOR.length);
+         for (int i = 0; i < LINE_SEPARATOR.length; i++) {
+            bytes[position++] = LINE_SEPARATOR[i];
+         }
+      }
+   
+   	/**
+   	 * Write out whatever is still buffered and close the file.
+   	 *
+   	 * @throws IOException if writing to or closing the file fails
+   	 */
+       public void close() throws IOException {
+         try {
+            flush();
+         } 
+         finally {
+            channel.close();
+         }
+      }
+   
+      // Make room for the given number of bytes, at most BUFFER_BYTES.
+       private void reserve(int count) throws IOException {
+         if (position + count > BUFFER_BYTES) {
+            flush();
+         }
+      }
+   
+       private void flush() throws IOException {
+         buffer.clear();
+         buffer.limit(position);
+         while (buffer.hasRemaining()) {
+            channel.write(buffer);
+         }
+         position = 0;
+      }
+   }
@@ -33,38 +33,37 @@
    */
        public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
           throws AddressErrorException, IOException {
-            PrintStream out = new PrintStream(new FileOutputStream(file));
-            String string = null;
+            DumpWriter out = new DumpWriter(file);
+            int[] words = new int[WORDS_PER_READ];
             try {
-               for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                  Integer temp = Globals.memory.getRawWordOrNull(address);
-                  if (temp == null) 
+               for (int address = firstAddress; address <= lastAddress; ) {
+                  int count = readWords(words, address, lastAddress);
+                  if (count <= 0) 
                      break;
-                  string = Integer.toHexString(temp.intValue());
-                  while (string.length() < 8) {
-                     string = '0' + string;
+                  for (int i = 0; i < count; i++, address += Memory.WORD_LENGTH_BYTES) {
+                     int word = words[i];
+                     int offset = address - firstAddress;
+                     int tmp_chksum = 0;
+                     tmp_chksum += 4;
+                     tmp_chksum += 0xFF & offset;
+                     tmp_chksum += 0xFF & (offset>>8);
+                     tmp_chksum += 0xFF & word;
+                     tmp_chksum += 0xFF & (word>>8);
+                     tmp_chksum += 0xFF & (word>>16);
+                     tmp_chksum += 0xFF & (word>>24);
+                     tmp_chksum = tmp_chksum % 256;
+                     tmp_chksum = ~tmp_chksum + 1;
+                     out.writeString(":04");
+                     // at least 4 digits of address, more once past 64K
+                     out.writeHex(offset, Math.max(4, (35 - Integer.numberOfLeadingZeros(offset)) >> 2), true);
+                     out.writeString("00");
+                     out.writeHex(word, 8, true);
+                     out.writeHex(tmp_chksum, 2, true);
+                     out.newLine();
                   }
-                  String addr = Integer.toHexString(address-firstAddress);
-                  while (addr.length() < 4) {
-                     addr = '0' + addr;
-                  }
-                  String chksum;
-                  int tmp_chksum = 0;
-                  tmp_chksum += 4;
-                  tmp_chksum += 0xFF & (address-firstAddress);
-                  tmp_chksum += 0xFF & ((address-firstAddress)>>8);
-                  tmp_chksum += 0xFF & temp.intValue();
-                  tmp_chksum += 0xFF & (temp.intValue()>>8);
-                  tmp_chksum += 0xFF & (temp.intValue()>>16);
-                  tmp_chksum += 0xFF & (temp.intValue()>>24);
-                  tmp_chksum = tmp_chksum % 256;
-                  tmp_chksum = ~tmp_chksum + 1;
-                  chksum = Integer.toHexString(0xFF & tmp_chksum);
-                  if(chksum.length()==1) chksum = '0' + chksum;
-                  String finalstr = ":04"+addr+"00"+string+chksum;
-                  out.println(finalstr.toUpperCase());
                }
-               out.println(":00000001FF");
+               out.writeString(":00000001FF");
+               out.newLine();
             } 
             finally { 
                out.close(); 
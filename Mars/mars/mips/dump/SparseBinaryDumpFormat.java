@@ -0,0 +1,110 @@
+   package mars.mips.dump;
+
+   import mars.mips.hardware.*;
+   import java.io.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Sparse binary memory image.  Unlike the other formats, which stop at the first
+ * word that has never been written, this one goes through the whole address range
+ * and records only the memory that has been written, so one file can hold a data
+ * segment together with its heap, or a whole segment with gaps in it, without
+ * filling the gaps with zeros.  Every value in the file is a 4-byte little endian
+ * word, the same byte order as the Binary format:
+ * <ul>
+ * <li>a header of three words: the magic number 0x4942534D ("MSBI" as bytes), the
+ * first address and the last address of the range;</li>
+ * <li>one record for each run of written words: its address, the number of words
+ * in it (at most 1024), then the words;</li>
+ * <li>an end record of two words, the address after the range and 0.</li>
+ * </ul>
+ * Memory that was never written is not recorded and reads as zero.  Runs are
+ * found a 4K block at a time, so a block counts as written when any word in it
+ * was, and text segment runs end at the first address without an instruction.
+ *
+ * @version October 2017
+ */
+
+    public class SparseBinaryDumpFormat extends AbstractDumpFormat {
+   
+      /** First word of every sparse binary image */
+      public static final int MAGIC = 0x4942534D;
+   
+   /**
+   *  Constructor.  File extension is "img".
+   */
+       public SparseBinaryDumpFormat() {
+         super("Sparse Binary Image", "SparseBinary", "Written memory blocks with their addresses, as binary file", "img");
+      }
+   
+   
+   /**
+   *  Write the written parts of the given range of MIPS memory as a sparse
+   *  binary image, described above.
+   *
+   *  @param  file  File in which to store MIPS memory contents.  
+   *  @param firstAddress first (lowest) memory address to dump.  In bytes but
+   *  must be on word boundary.
+   *  @param lastAddress last (highest) memory address to dump.  In bytes but
+   *  must be on word boundary.  Will dump the word that starts at this address.
+   *  @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
+   *  @throws IOException if error occurs during file output.
+   */
+       public void dumpMemoryRange(File file, int firstAddress, int lastAddress) 
+        throws AddressErrorException, IOException {
+         DumpWriter out = new DumpWriter(file);
+         int[] words = new int[WORDS_PER_READ];
+         try {
+            out.writeLittleEndian(MAGIC);
+            out.writeLittleEndian(firstAddress);
+            out.writeLittleEndian(lastAddress);
+            int address = firstAddress;
+            while (address <= lastAddress && address >= firstAddress) {
+               int count = readWords(words, address, lastAddress);
+               if (count > 0) {
+                  out.writeLittleEndian(address);
+                  out.writeLittleEndian(count);
+                  for (int i = 0; i < count; i++) 
+                     out.writeLittleEndian(words[i]);
+               }
+               else {
+                  count = -count; // skip what was never written
+               }
+               address += count * Memory.WORD_LENGTH_BYTES;
+            }
+            out.writeLittleEndian(lastAddress + Memory.WORD_LENGTH_BYTES);
+            out.writeLittleEndian(0);
+         } 
+         finally { 
+            out.close(); 
+         }
+      }
+   
+   }
@@ -3,6 +3,7 @@
    import mars.util.*;
    import mars.simulator.*;
    import mars.mips.instructions.*;
+   import mars.mips.trace.*;
    import java.util.*;
 	
 	/*
@@ -89,7 +90,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	/** Current setting for endian (default LITTLE_ENDIAN) **/
       private static boolean byteOrder = LITTLE_ENDIAN;
    	
-      public static int heapAddress;
+      private int heapAddress;
    
     // Memory will maintain a collection of observables.  Each one is associated
     // with a specific memory address or address range, and each will have at least
@@ -98,12 +99,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // This assures that observers are not bombarded with notices from memory
     // addresses they do not care about.
     //
-    // Would like a tree-like implementation, but that is complicated by this fact:
-    // key for insertion into the tree would be based on Comparable using both low 
-    // and high end of address range, but retrieval from the tree has to be based
-    // on target address being ANYWHERE IN THE RANGE (not an exact key match).
+    // Finding them is done through an ObserverIndex built whenever the collection
+    // changes: a bit per 4K page tells whether anybody watches that page at all, so
+    // an unobserved access costs one bit test, and a list sorted on low address tells
+    // which ranges can hold the address, so only those are checked.
       
       Collection observables = getNewMemoryObserversCollection();
+      private volatile ObserverIndex observerIndex = null;
    
     // The data segment is allocated in blocks of 1024 ints (4096 bytes).  Each block is
     // referenced by a "block table" entry, and the table has 1024 entries.  The capacity
@@ -174,7 +176,42 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final int TEXT_BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
       private ProgramStatement[][] textBlockTable;
       private ProgramStatement[][] kernelTextBlockTable;
+   
+    // Machine code loaded from an image (see setStatementWords()) is not made into
+    // statements until it is read.  Until then each word waits in these tables, laid out
+    // like the text block tables but with two ints per word: the word itself and the
+    // image line it came from, which is 0 if no word is waiting there.  A block is never
+    // changed once filled, only replaced, so snapshots can share them.
+      private int[][] imageTextBlockTable;
+      private int[][] imageKernelTextBlockTable;
     
+    // The flat memory model (selected by memory configuration, see MemoryConfiguration.isFlat())
+    // keeps the data segment, stack, memory mapped I/O and kernel data in one page table that
+    // covers the whole 32-bit address space: a directory of 1024 tables of 1024 pages of 1024
+    // words (4K bytes).  Tables and pages are allocated on first write.  Every segment,
+    // the stack included, is indexed by its address as is, so segments are limited only by the
+    // memory configuration, and an aligned word, halfword or byte access is a single operation
+    // on one array element, without the locking and byte-at-a-time loop of the block tables.
+    // Text segments still use the block tables above, flat or not.
+   
+      private static final int PAGE_LENGTH_WORDS = 1024;  // allocated page size 1024 ints == 4K bytes
+      private static final int PAGE_TABLE_LENGTH = 1024;  // pages per table, also tables in directory
+      private static boolean flatMemory = false;
+      private int[][][] pageDirectory; // null unless flat memory model is in use
+   
+    // Snapshots (see snapshot() and restore()) share blocks with the live memory, copy
+    // on write.  Every data block and page has one extra int at the end, index
+    // BLOCK_LENGTH_WORDS, holding the generation it was allocated or copied in.  Taking
+    // a snapshot or restoring one starts a new generation, so from then on a block from
+    // an earlier generation is copied before it is first written.  Text segments, which
+    // only change when a statement is stored, are shared as whole tables: textShared
+    // says the next store has to copy them first.
+   
+      private int generation = 0;
+      private boolean textShared = false;
+      private long textVersion = 0;        // changes with every statement stored
+      private long textVersionCounter = 0;
+   
     // Set "top" address boundary to go with each "base" address.  This determines permissable
     // address range for user program.  Currently limit is 4MB, or 1024 * 1024 * 4 bytes based
     // on the table structures described above (except memory mapped IO, limited to 64KB by range).
@@ -191,27 +228,36 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       														  BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
       public static int memoryMapLimitAddress   = memoryMapBaseAddress + 
                                  					  BLOCK_LENGTH_WORDS * MMIO_TABLE_LENGTH * WORD_LENGTH_BYTES;  
-    // This will be a Singleton class, only one instance is ever created.  Since I know the 
-    // Memory object is always needed, I'll go ahead and create it at the time of class loading.
-    // (greedy rather than lazy instantiation).  The constructor is private and getInstance()
-    // always returns this instance.
+    // There is one Memory per MachineContext, and getInstance() returns the one belonging
+    // to the current context.  For everything except parallel command mode simulations
+    // that is the default context's, also known as Globals.memory.
     
-      private static Memory uniqueMemoryInstance = new Memory(); 
-   	
+      private final InstructionCache instructionCache;
     
-    /*
-     * Private constructor for Memory.  Separate data structures for text and data segments. 
+    /**
+     * Constructor for Memory, for use by a <code>MachineContext</code>.  Everyone else
+     * should use getInstance().  Separate data structures for text and data segments. 
      **/
-       private Memory() {
+       public Memory() {
+         instructionCache = new InstructionCache(this);
          initialize();
       }
    
      /**
-      * Returns the unique Memory instance, which becomes in essence global.
+      * Returns the Memory instance of the current <code>MachineContext</code>.
    	*/
    	
        public static Memory getInstance() {
-         return uniqueMemoryInstance;
+         return MachineContext.getCurrent().getMemory();
+      }
+   
+     /**
+      * Returns the cache of decoded statements fetched from this memory.
+      * @return the instruction cache
+   	*/
+   	
+       public InstructionCache getInstructionCache() {
+         return instructionCache;
       }
    	
    	/**
@@ -221,6 +267,112 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void clear() {
          setConfiguration();
          initialize(); 		
+         instructionCache.clear();
+         // call garbage collector on any Table memory just deallocated.  Not for
+      	// other contexts: they are short-lived, often many at once, and a full
+      	// collection each time they assemble would stall them all.
+         if (this == MachineContext.getDefault().getMemory()) {
+            System.gc();
+         }
+      }
+   
+   /**
+    * Take a snapshot of the contents of memory, text and data, to be put back later
+    * with <code>restore</code>.  The snapshot shares its blocks with memory and a block
+    * is only copied when memory next writes to it, so a snapshot is cheap to take and
+    * costs one block per block written since.
+    *
+    * @return the snapshot
+    */
+       public synchronized Snapshot snapshot() {
+         Snapshot snapshot = new Snapshot(this);
+         generation++;
+         textShared = true;
+         return snapshot;
+      }
+   
+   /**
+    * Put the contents of memory back the way they were when the snapshot was taken.
+    * Only the block tables are copied, not the blocks, so the snapshot can be restored
+    * again later.  Observers are not notified.
+    *
+    * @param snapshot snapshot taken of this memory
+    * @throws IllegalArgumentException if the snapshot was taken of another memory
+    */
+       public synchronized void restore(Snapshot snapshot) {
+         if (snapshot.memory != this) {
+            throw new IllegalArgumentException("snapshot was taken of another memory");
+         }
+         heapAddress = snapshot.heapAddress;
+         dataBlockTable = (int[][]) snapshot.dataBlockTable.clone();
+         kernelDataBlockTable = (int[][]) snapshot.kernelDataBlockTable.clone();
+         stackBlockTable = (int[][]) snapshot.stackBlockTable.clone();
+         memoryMapBlockTable = (int[][]) snapshot.memoryMapBlockTable.clone();
+         pageDirectory = copyPageDirectory(snapshot.pageDirectory);
+         textBlockTable = snapshot.textBlockTable;
+         kernelTextBlockTable = snapshot.kernelTextBlockTable;
+         imageTextBlockTable = snapshot.imageTextBlockTable;
+         imageKernelTextBlockTable = snapshot.imageKernelTextBlockTable;
+         textShared = true;
+         generation++;
+         if (textVersion != snapshot.textVersion) {
+            textVersion = snapshot.textVersion;
+            instructionCache.clear();
+         }
+      }
+   
+   /**
+    * The contents of a memory at some point, as taken by <code>Memory.snapshot</code>.
+    * Nothing can be done with it except give it back to <code>restore</code>.
+    */
+       public static class Snapshot {
+         private final Memory memory;
+         private final int heapAddress;
+         private final int[][] dataBlockTable, kernelDataBlockTable, stackBlockTable, memoryMapBlockTable;
+         private final int[][][] pageDirectory;
+         private final ProgramStatement[][] textBlockTable, kernelTextBlockTable;
+         private final int[][] imageTextBlockTable, imageKernelTextBlockTable;
+         private final long textVersion;
+      
+          private Snapshot(Memory memory) {
+            this.memory = memory;
+            heapAddress = memory.heapAddress;
+            dataBlockTable = (int[][]) memory.dataBlockTable.clone();
+            kernelDataBlockTable = (int[][]) memory.kernelDataBlockTable.clone();
+            stackBlockTable = (int[][]) memory.stackBlockTable.clone();
+            memoryMapBlockTable = (int[][]) memory.memoryMapBlockTable.clone();
+            pageDirectory = copyPageDirectory(memory.pageDirectory);
+            textBlockTable = memory.textBlockTable;
+            kernelTextBlockTable = memory.kernelTextBlockTable;
+            imageTextBlockTable = memory.imageTextBlockTable;
+            imageKernelTextBlockTable = memory.imageKernelTextBlockTable;
+            textVersion = memory.textVersion;
+         }
+      }
+   
+      // Copy of the flat memory page directory and its page tables, sharing the pages.
+       private static int[][][] copyPageDirectory(int[][][] directory) {
+         if (directory == null) {
+            return null;
+         }
+         int[][][] copy = (int[][][]) directory.clone();
+         for (int i = 0; i < copy.length; i++) {
+            if (copy[i] != null) {
+               copy[i] = (int[][]) copy[i].clone();
+            }
+         }
+         return copy;
+      }
+   
+      // Copy of a text segment block table and its blocks, sharing the statements.
+       private static ProgramStatement[][] copyTextTable(ProgramStatement[][] table) {
+         ProgramStatement[][] copy = (ProgramStatement[][]) table.clone();
+         for (int i = 0; i < copy.length; i++) {
+            if (copy[i] != null) {
+               copy[i] = (ProgramStatement[]) copy[i].clone();
+            }
+         }
+         return copy;
       }
    
      /**
@@ -263,6 +415,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          memoryMapLimitAddress   = Math.min(MemoryConfigurations.getCurrentConfiguration().getMemoryMapLimitAddress(),
                                       memoryMapBaseAddress + 
                                  	  BLOCK_LENGTH_WORDS * MMIO_TABLE_LENGTH * WORD_LENGTH_BYTES);
+         flatMemory = MemoryConfigurations.getCurrentConfiguration().isFlat();
+         if (flatMemory) {
+            // no block tables to run out of, except for text
+            dataSegmentLimitAddress = MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress();
+            kernelDataSegmentLimitAddress = MemoryConfigurations.getCurrentConfiguration().getKernelDataSegmentLimitAddress();
+            stackLimitAddress = MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress();
+            memoryMapLimitAddress = MemoryConfigurations.getCurrentConfiguration().getMemoryMapLimitAddress();
+         }
       /*	System.out.println("dataSegmentLimitAddress "+Binary.intToHexString(dataSegmentLimitAddress));
       	System.out.println("textLimitAddress "+Binary.intToHexString(textLimitAddress));
       	System.out.println("kernelDataSegmentLimitAddress "+Binary.intToHexString(kernelDataSegmentLimitAddress));
@@ -289,10 +449,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          textBlockTable  = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
          dataBlockTable  = new int[BLOCK_TABLE_LENGTH][]; // array of null int[] references
          kernelTextBlockTable  = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
+         imageTextBlockTable = new int[TEXT_BLOCK_TABLE_LENGTH][];
+         imageKernelTextBlockTable = new int[TEXT_BLOCK_TABLE_LENGTH][];
          kernelDataBlockTable  = new int[BLOCK_TABLE_LENGTH][];      
          stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
          memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
-         System.gc(); // call garbage collector on any Table memory just deallocated. 	  
+         pageDirectory = (flatMemory) ? new int[PAGE_TABLE_LENGTH][][] : null;
+         textShared = false;
       }  
      
    	/**
@@ -359,7 +522,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          int oldValue = 0;
          if (Globals.debug) System.out.println("memory["+address+"] set to "+value+"("+length+" bytes)");
          int relativeByteAddress;
-         if (inDataSegment(address)) {
+         if (inPageTable(address)) {
+           // flat memory model: data, stack, MMIO or kernel data.
+            oldValue = storeBytesInPages(address, length, value);
+         } 
+         else if (inDataSegment(address)) {
            // in data segment.  Will write one byte at a time, w/o regard to boundaries.
             relativeByteAddress = address - dataSegmentBaseAddress; // relative to data segment start, in bytes
             oldValue = storeBytesInTable(dataBlockTable, relativeByteAddress, length, value);
@@ -414,9 +581,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          // MODIFIED BY DEPCT 2016
          // TODO: As an Observer
          // int offset = 8 - 2 * length;
-         int newWord = getWord(address & 0xFFFFFFFC);
-         SystemIO.logString("@" + Binary.intToHexString(RegisterFile.getProgramCounter() - 4).substring(6) + ":" +
-                 "*" + Binary.intToHexString(address & 0xFFFFFFFC).substring(2) + " <= " + Binary.intToHexString(newWord).substring(2) + "\n");
+         int newWord = getWordNoNotify(address & 0xFFFFFFFC);
+         TraceSink.getInstance().memoryWrite(RegisterFile.getProgramCounter() - 4, address & 0xFFFFFFFC, newWord);
          // Modified END
          return oldValue;
       }
@@ -438,7 +604,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("store address not aligned on word boundary ",
                Exceptions.ADDRESS_EXCEPTION_STORE, address);
          }
-         if (inDataSegment(address)) {
+         if (inPageTable(address)) {
+           // flat memory model: data, stack, MMIO or kernel data.
+            int[] page = getPage(address, true);
+            oldValue = page[(address >>> 2) & (PAGE_LENGTH_WORDS - 1)];
+            page[(address >>> 2) & (PAGE_LENGTH_WORDS - 1)] = value;
+         } 
+         else if (inDataSegment(address)) {
            // in data segment
             relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
             oldValue = storeWordInTable(dataBlockTable, relative, value);
@@ -586,12 +758,122 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                Exceptions.ADDRESS_EXCEPTION_STORE, address);
          }
          if (Globals.debug) System.out.println("memory["+address+"] set to "+statement.getBinaryStatement());
+         if (textShared) {
+            textBlockTable = copyTextTable(textBlockTable);
+            kernelTextBlockTable = copyTextTable(kernelTextBlockTable);
+            textShared = false;
+         }
+         textVersion = ++textVersionCounter;
          if (inTextSegment(address)) {
             storeProgramStatement(address, statement, textBaseAddress, textBlockTable);
          } 
          else {
             storeProgramStatement(address, statement, kernelTextBaseAddress, kernelTextBlockTable);
          }
+         instructionCache.invalidate(address);
+      }
+   
+   /**
+    * Stores machine code words in the text segment, for loading a machine code image.
+    * No statement is made for a word until it is first read: then, as for self-modifying
+    * code, one is decoded from the word, and kept.  Any statements already stored at
+    * those addresses are replaced.  Observers are not notified.
+    * @param address Address of the first word.  Must be word boundary.
+    * @param words Machine code, one instruction per word.
+    * @param lines For each word, the line of the image it came from, starting at 1.  The
+    * statement made from the word gets it as its source line.
+    * @param count Number of words to store, from the start of the arrays.
+    * @throws AddressErrorException If address is not on word boundary or any of the words
+    * would fall outside the text or kernel text segment.  Nothing is stored then.
+    **/
+   
+       public void setStatementWords(int address, int[] words, int[] lines, int count) throws AddressErrorException {
+         int last = address + (count - 1) * WORD_LENGTH_BYTES;
+         if (count <= 0) {
+            return;
+         }
+         if (address % 4 != 0 || !((inTextSegment(address) && inTextSegment(last)) 
+              || (inKernelTextSegment(address) && inKernelTextSegment(last)))) {
+            throw new AddressErrorException(
+               "store address to text segment out of range or not aligned to word boundary ",
+               Exceptions.ADDRESS_EXCEPTION_STORE, (inTextSegment(address) || inKernelTextSegment(address)) ? last : address);
+         }
+         if (textShared) {
+            textBlockTable = copyTextTable(textBlockTable);
+            kernelTextBlockTable = copyTextTable(kernelTextBlockTable);
+            textShared = false;
+         }
+         textVersion = ++textVersionCounter;
+         boolean kernel = inKernelTextSegment(address);
+         int baseAddress = (kernel) ? kernelTextBaseAddress : textBaseAddress;
+         ProgramStatement[][] blockTable = (kernel) ? kernelTextBlockTable : textBlockTable;
+         int[][] imageTable = (int[][]) ((kernel) ? imageKernelTextBlockTable : imageTextBlockTable).clone();
+         int relative = (address - baseAddress) >> 2;
+         int filledBlock = -1;
+         int[] image = null;
+         for (int i = 0; i < count; i++, relative++) {
+            int block = relative / TEXT_BLOCK_LENGTH_WORDS;
+            int offset = relative % TEXT_BLOCK_LENGTH_WORDS;
+            if (block != filledBlock) {
+               // first word for this block: copy it, or make it, to fill in
+               image = (imageTable[block] == null) ? new int[2 * TEXT_BLOCK_LENGTH_WORDS]
+                                                   : (int[]) imageTable[block].clone();
+               imageTable[block] = image;
+               filledBlock = block;
+            }
+            image[2 * offset] = words[i];
+            image[2 * offset + 1] = lines[i];
+            if (blockTable[block] != null) {
+               blockTable[block][offset] = null;
+            }
+            instructionCache.invalidate(baseAddress + (relative << 2));
+         }
+         if (kernel) {
+            imageKernelTextBlockTable = imageTable;
+         } 
+         else {
+            imageTextBlockTable = imageTable;
+         }
+      }
+   
+   /**
+    * Stores words starting at the given address in the data, kernel data or memory mapped
+    * I/O segment or stack, as they are, for loading a memory image.  Does what setRawWord()
+    * does for each, except that observers are not notified and nothing is traced or
+    * recorded for back stepping.
+    * @param address Address of the first word.  Must be word boundary.
+    * @param words Values to store.
+    * @param count Number of words to store, from the start of the array.
+    * @throws AddressErrorException If address is not on word boundary or a word falls
+    * outside those segments.  The words before it have been stored.
+    **/
+   
+       public synchronized void setRawWords(int address, int[] words, int count) throws AddressErrorException {
+         if (address % WORD_LENGTH_BYTES != 0) {
+            throw new AddressErrorException("store address not aligned on word boundary ",
+               Exceptions.ADDRESS_EXCEPTION_STORE, address);
+         }
+         for (int i = 0; i < count; i++, address += WORD_LENGTH_BYTES) {
+            if (inPageTable(address)) {
+               getPage(address, true)[(address >>> 2) & (PAGE_LENGTH_WORDS - 1)] = words[i];
+            } 
+            else if (inDataSegment(address)) {
+               storeWordInTable(dataBlockTable, (address - dataSegmentBaseAddress) >> 2, words[i]);
+            } 
+            else if (address > stackLimitAddress && address <= stackBaseAddress) {
+               storeWordInTable(stackBlockTable, (stackBaseAddress - address) >> 2, words[i]);
+            } 
+            else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
+               storeWordInTable(memoryMapBlockTable, (address - memoryMapBaseAddress) >> 2, words[i]);
+            } 
+            else if (inKernelDataSegment(address)) {
+               storeWordInTable(kernelDataBlockTable, (address - kernelDataBaseAddress) >> 2, words[i]);
+            } 
+            else {
+               throw new AddressErrorException("store address out of range ",
+                  Exceptions.ADDRESS_EXCEPTION_STORE, address);
+            }
+         }
       }
    	
    
@@ -616,7 +898,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        private int get(int address, int length, boolean notify) throws AddressErrorException {
          int value = 0;
          int relativeByteAddress;
-         if (inDataSegment(address)) {
+         if (inPageTable(address)) {
+           // flat memory model: data, stack, MMIO or kernel data.
+            value = fetchBytesFromPages(address, length);
+         } 
+         else if (inDataSegment(address)) {
            // in data segment.  Will read one byte at a time, w/o regard to boundaries.
             relativeByteAddress = address - dataSegmentBaseAddress; // relative to data segment start, in bytes
             value = fetchBytesFromTable(dataBlockTable, relativeByteAddress, length);
@@ -661,6 +947,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("address out of range ",
                Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
+         if (notify && address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
+            // Devices change these behind the program's back; see InputLog.
+            value = InputLog.deviceRead(value);
+         }
          if (notify) notifyAnyObservers(AccessNotice.READ, address, length, value);
          return value;
       }
@@ -689,7 +979,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("address for fetch not aligned on word boundary",
                Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
-         if (inDataSegment(address)) {
+         if (inPageTable(address)) {
+           // flat memory model: data, stack, MMIO or kernel data.
+            int[] page = getPage(address, false);
+            value = (page == null) ? 0 : page[(address >>> 2) & (PAGE_LENGTH_WORDS - 1)];
+         } 
+         else if (inDataSegment(address)) {
            // in data segment
             relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
             value = fetchWordFromTable(dataBlockTable, relative);
@@ -766,7 +1061,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("address for fetch not aligned on word boundary",
                   Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
-         if (inDataSegment(address)) {
+         if (inPageTable(address)) {
+              // flat memory model: null if page not yet allocated
+            int[] page = getPage(address, false);
+            value = (page == null) ? null : new Integer(page[(address >>> 2) & (PAGE_LENGTH_WORDS - 1)]);
+         } 
+         else if (inDataSegment(address)) {
               // in data segment
             relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
             value = fetchWordOrNullFromTable(dataBlockTable, relative);
@@ -797,6 +1097,105 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return value;
       } 
    
+     /**
+      *  Read a run of words starting at the given address, for the dump feature.  Gives
+   	*  the same values that getRawWordOrNull() would one word at a time, but copies
+   	*  whole 4K blocks out of the tables at once and does not create an Integer per
+   	*  word.  Stops at the first word getRawWordOrNull() would return null for.  If
+   	*  that is the word at the given address, nothing is read and the result is
+   	*  minus the number of words, at least one, from there on that are known to be
+   	*  null too (the rest of its 4K block, up to count), so a caller that wants to
+   	*  step over unwritten memory can do so a block at a time.
+   	*  Does not notify observers.
+   	*
+   	*  @param address Starting address of first word to be read.
+   	*  @param words Array to store the words in, starting at index 0.
+   	*  @param count Number of words to read, at most words.length.
+   	*  @return Number of words read, or minus the number of null words at the
+   	*  address if there are none to read.
+   	*  @throws AddressErrorException If address is not on word boundary or any word
+   	*  read falls outside the Mars addressing range.
+   	*/
+       public synchronized int getRawWords(int address, int[] words, int count) throws AddressErrorException {
+         if (address % WORD_LENGTH_BYTES != 0) {
+            throw new AddressErrorException("address for fetch not aligned on word boundary",
+                  Exceptions.ADDRESS_EXCEPTION_LOAD, address);
+         }
+         int read = 0;
+         while (read < count) {
+            int copied = copyRawWords(address + (read << 2), words, read, count - read);
+            if (copied <= 0) {
+               return (read == 0) ? copied : read;
+            }
+            read += copied;
+         }
+         return read;
+      }
+   
+      // Copy words starting at address into words[start...], no more than count and
+   	// no further than the end of the block, page or segment holding address.  Same
+   	// cases as getRawWordOrNull().  Returns the number copied, or minus the number
+   	// of null words there are from address to the same end.
+       private int copyRawWords(int address, int[] words, int start, int count) throws AddressErrorException {
+         int[] block;
+         int offset, length, relative;
+         if (inPageTable(address)) {
+            block = getPage(address, false);
+            offset = (address >>> 2) & (PAGE_LENGTH_WORDS - 1);
+            length = PAGE_LENGTH_WORDS - offset;
+         } 
+         else if (inDataSegment(address)) {
+            relative = (address - dataSegmentBaseAddress) >> 2;
+            block = dataBlockTable[relative / BLOCK_LENGTH_WORDS];
+            offset = relative % BLOCK_LENGTH_WORDS;
+            length = Math.min(BLOCK_LENGTH_WORDS - offset, (dataSegmentLimitAddress - address) >> 2);
+         } 
+         else if (address > stackLimitAddress && address <= stackBaseAddress) {
+            // Relative address computed "backward", so going up in memory is going
+         	// down in the block, as far as its first word.
+            relative = (stackBaseAddress - address) >> 2;
+            block = stackBlockTable[relative / BLOCK_LENGTH_WORDS];
+            offset = relative % BLOCK_LENGTH_WORDS;
+            length = Math.min(count, offset + 1);
+            if (block == null) {
+               return -length;
+            }
+            for (int i = 0; i < length; i++) {
+               words[start + i] = block[offset - i];
+            }
+            return length;
+         }
+         else if (inTextSegment(address) || inKernelTextSegment(address)) {
+            ProgramStatement statement;
+            try { 
+               statement = getStatementNoNotify(address);
+            } 
+                catch (AddressErrorException aee) { 
+                  statement = null;
+               }
+            if (statement == null) {
+               return -1;
+            }
+            words[start] = statement.getBinaryStatement();
+            return 1;
+         }  
+         else if (inKernelDataSegment(address)) {
+            relative = (address - kernelDataBaseAddress) >> 2;
+            block = kernelDataBlockTable[relative / BLOCK_LENGTH_WORDS];
+            offset = relative % BLOCK_LENGTH_WORDS;
+            length = Math.min(BLOCK_LENGTH_WORDS - offset, (kernelDataSegmentLimitAddress - address) >> 2);
+         } 
+         else {
+            throw new AddressErrorException("address out of range ", Exceptions.ADDRESS_EXCEPTION_LOAD, address);
+         }
+         length = Math.min(count, length);
+         if (block == null) {
+            return -length;
+         }
+         System.arraycopy(block, offset, words, start, length);
+         return length;
+      }
+   
      /**
       *  Look for first "null" memory value in an address range.  For text segment (binary code), this
    	*  represents a word that does not contain an instruction.  Normally use this to find the end of 
@@ -809,11 +1208,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	*  @throws AddressErrorException if the base address is not on a word boundary
    	*/
        public int getAddressOfFirstNull(int baseAddress, int limitAddress) throws AddressErrorException {
+         int[] words = new int[BLOCK_LENGTH_WORDS];
          int address = baseAddress;
-         for (; address < limitAddress; address += Memory.WORD_LENGTH_BYTES) {
-            if (getRawWordOrNull(address) == null) {
+         while (address < limitAddress) {
+            int read = getRawWords(address, words, Math.min(BLOCK_LENGTH_WORDS, (limitAddress - address + 3) >>> 2));
+            if (read <= 0) {
                break;
             }
+            address += read << 2;
          }
          return address;
       }
@@ -952,9 +1354,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
          if (inTextSegment(address)) 
-            return readProgramStatement(address, textBaseAddress, textBlockTable, notify);
+            return readProgramStatement(address, textBaseAddress, textBlockTable, imageTextBlockTable, notify);
          else if (inKernelTextSegment(address)) 
-            return readProgramStatement(address, kernelTextBaseAddress, kernelTextBlockTable, notify);
+            return readProgramStatement(address, kernelTextBaseAddress, kernelTextBlockTable, imageKernelTextBlockTable, notify);
          else 
             return new ProgramStatement(get(address, WORD_LENGTH_BYTES), address);
       }
@@ -1128,6 +1530,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                Exceptions.ADDRESS_EXCEPTION_LOAD, startAddr);
          }
          observables.add(new MemoryObservable(obs, startAddr, endAddr));
+         buildObserverIndex();
       }
    
       /**
@@ -1146,6 +1549,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          while (it.hasNext()) {
             ((MemoryObservable)it.next()).deleteObserver(obs);
          }	
+         buildObserverIndex();
       }
    	
    	/**
@@ -1154,6 +1558,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void deleteObservers() {
          // just drop the collection
          observables = getNewMemoryObserversCollection();
+         observerIndex = null;
       }
    	
    	/**
@@ -1180,6 +1585,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        private Collection getNewMemoryObserversCollection() {
          return new Vector();  // Vectors are thread-safe
       }
+   
+       // Rebuild the index from the current observables.  Observables whose observers
+   	 // have all been deleted are left out.  The index is never modified once built,
+   	 // so the simulating thread can keep using the old one while this runs.
+       private void buildObserverIndex() {
+         ArrayList live = new ArrayList();
+         synchronized (observables) {
+            Iterator it = observables.iterator();
+            while (it.hasNext()) {
+               MemoryObservable mo = (MemoryObservable) it.next();
+               if (mo.countObservers() > 0) {
+                  live.add(mo);
+               }
+            }
+         }
+         observerIndex = (live.size() == 0) ? null : new ObserverIndex(live);
+      }
    		
        /////////////////////////////////////////////////////////////////////////
        // Private class whose objects will represent an observable-observer pair 
@@ -1202,8 +1624,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             this.notifyObservers(notice);
          }
          
-      	// Useful to have for future refactoring, if it actually becomes worthwhile to sort
-      	// these or put 'em in a tree (rather than sequential search through list).
+      	// Orders by low address, then high address.  Used to sort the ObserverIndex.
           public int compareTo(Object obj) {
             if (!(obj instanceof MemoryObservable)) {
                throw new ClassCastException();
@@ -1213,12 +1634,72 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                return -1;
             }
             if (this.lowAddress > mo.lowAddress || this.lowAddress==mo.lowAddress && this.highAddress > mo.highAddress) {
-               return -1;
+               return 1;
             }
             return 0;  // they have to be equal at this point.
          }
       }
       
+       /////////////////////////////////////////////////////////////////////////
+       // Private class for looking up the observables that match an address.  Ranges
+   	 // never cross 0x80000000 (addObserver sees to that), so they can be compared as
+   	 // signed ints.  Ranges are sorted on low address and maxHigh[i] is the highest
+   	 // address covered by any of ranges 0..i, so the candidates for an address are
+   	 // found by a binary search followed by a backward scan that stops as soon as
+   	 // maxHigh falls below the address.
+       private static class ObserverIndex {
+         private final MemoryObservable[] ranges;
+         private final int[] low;
+         private final int[] maxHigh;
+         private final long[] pages = new long[(1 << 20) >>> 6];  // one bit per 4K page
+      
+          ObserverIndex(ArrayList observables) {
+            ranges = (MemoryObservable[]) observables.toArray(new MemoryObservable[observables.size()]);
+            Arrays.sort(ranges);
+            low = new int[ranges.length];
+            maxHigh = new int[ranges.length];
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < ranges.length; i++) {
+               int lastByte = ranges[i].highAddress - 1 + WORD_LENGTH_BYTES;
+               low[i] = ranges[i].lowAddress;
+               max = Math.max(max, lastByte);
+               maxHigh[i] = max;
+               for (int page = low[i] >>> 12; page <= lastByte >>> 12; page++) {
+                  pages[page >>> 6] |= 1L << page;
+               }
+            }
+         }
+      
+          boolean coversPage(int address) {
+            return (pages[address >>> 18] & (1L << (address >>> 12))) != 0;
+         }
+      
+         // Send a notice to every observer of the address.  All of them get the same
+      	// notice, which is only created if somebody actually matches.
+          void notifyObservers(int type, int address, int length, int value) {
+            int lo = 0;
+            int hi = low.length - 1;
+            while (lo <= hi) {   // find last range with low <= address
+               int mid = (lo + hi) >>> 1;
+               if (low[mid] <= address) {
+                  lo = mid + 1;
+               }
+               else {
+                  hi = mid - 1;
+               }
+            }
+            MemoryAccessNotice notice = null;
+            for (int i = hi; i >= 0 && maxHigh[i] >= address; i--) {
+               if (ranges[i].match(address)) {
+                  if (notice == null) {
+                     notice = new MemoryAccessNotice(type, address, length, value);
+                  }
+                  ranges[i].notifyObserver(notice);
+               }
+            }
+         }
+      }
+      
    
    /*********************************  THE HELPERS  *************************************/
      
@@ -1230,15 +1711,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // The "|| Globals.getGui()==null" is a hack added 19 July 2012 DPS.  IF MIPS simulation
    // is from command mode, Globals.program is null but still want ability to observe.
        private void notifyAnyObservers(int type, int address, int length, int value) {
-         if ((Globals.program != null || Globals.getGui()==null) && this.observables.size() > 0) {
-            Iterator it = this.observables.iterator();
-            MemoryObservable mo;
-            while (it.hasNext()) {
-               mo = (MemoryObservable)it.next();
-               if (mo.match(address)) {
-                  mo.notifyObserver(new MemoryAccessNotice(type, address, length, value));
-               }
-            }
+         ObserverIndex index = observerIndex;
+         if (index == null || !index.coversPage(address)) {
+            return;
+         }
+         if (Globals.program != null || Globals.getGui()==null) {
+            index.notifyObservers(type, address, length, value);
          } 		
       }
    
@@ -1301,11 +1779,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             relativeWordAddress = relativeByteAddress >> 2;
             block = relativeWordAddress / BLOCK_LENGTH_WORDS;  // Block number
             offset = relativeWordAddress % BLOCK_LENGTH_WORDS; // Word within that block
-            if (blockTable[block] == null) {
-               if (op==STORE) 
-                  blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-               else 
-                  return 0;
+            if (op==STORE) {
+               writableBlock(blockTable, block);
+            }
+            else if (blockTable[block] == null) {
+               return 0;
             }
             if (byteOrder == LITTLE_ENDIAN) bytePositionInMemory = 3 - bytePositionInMemory;
             if (op == STORE) {
@@ -1335,12 +1813,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          int  block, offset, oldValue;
          block = relative / BLOCK_LENGTH_WORDS;
          offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
-               // First time writing to this block, so allocate the space.
-            blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-         }
-         oldValue = blockTable[block][offset];
-         blockTable[block][offset] = value;
+         int[] words = writableBlock(blockTable, block);
+         oldValue = words[offset];
+         words[offset] = value;
          return oldValue;
       }
       
@@ -1394,6 +1869,118 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return new Integer(value);
       }
    	   
+   ////////////////////////////////////////////////////////////////////////////////
+   //
+   // True if the flat memory model is in use and the address belongs to one of the
+   // segments it keeps in its page table.
+   
+       private boolean inPageTable(int address) {
+         return pageDirectory != null && 
+            (inDataSegment(address) ||
+             (address > stackLimitAddress && address <= stackBaseAddress) ||
+             (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) ||
+             inKernelDataSegment(address));
+      }
+   
+   ////////////////////////////////////////////////////////////////////////////////
+   //
+   // Flat memory model: the page holding the given address.  If asked to allocate,
+   // it is made ready to be written (see writableBlock), otherwise it is null if it
+   // has never been written.
+   
+       private int[] getPage(int address, boolean allocate) {
+         int[][] table = pageDirectory[address >>> 22];
+         if (table == null) {
+            if (!allocate) {
+               return null;
+            }
+            table = new int[PAGE_TABLE_LENGTH][];
+            pageDirectory[address >>> 22] = table;
+         }
+         return (allocate) ? writableBlock(table, (address >>> 12) & (PAGE_TABLE_LENGTH - 1))
+                           : table[(address >>> 12) & (PAGE_TABLE_LENGTH - 1)];
+      }
+   
+   ////////////////////////////////////////////////////////////////////////////////
+   //
+   // Block (or flat memory page) with the given index in the table, ready to be
+   // written: allocated if it never was, copied if a snapshot shares it.
+   
+       private int[] writableBlock(int[][] table, int index) {
+         int[] block = table[index];
+         if (block == null) {
+            // First time writing to this block, so allocate the space.
+            block = new int[BLOCK_LENGTH_WORDS + 1];
+         } 
+         else if (block[BLOCK_LENGTH_WORDS] == generation) {
+            return block;
+         } 
+         else {
+            block = (int[]) block.clone();
+         }
+         block[BLOCK_LENGTH_WORDS] = generation;
+         table[index] = block;
+         return block;
+      }
+   
+   ////////////////////////////////////////////////////////////////////////////////
+   //
+   // Flat memory model: store 1, 2 or 4 byte value starting at the given address,
+   // and return the bytes it replaced.  Same byte placement as storeOrFetchBytesInTable:
+   // low order byte of the value goes to the lowest address, and within a word the
+   // byte at the lowest address is least significant for LITTLE_ENDIAN, most
+   // significant for BIG_ENDIAN.  Accesses within one little-endian word, which is
+   // all of them that a MIPS program can make, are done in one go.
+   
+       private int storeBytesInPages(int address, int length, int value) {
+         int shift = (address & 3) << 3;
+         if (byteOrder == LITTLE_ENDIAN && shift + (length << 3) <= 32) {
+            int[] page = getPage(address, true);
+            int offset = (address >>> 2) & (PAGE_LENGTH_WORDS - 1);
+            int mask = (length == WORD_LENGTH_BYTES) ? -1 : ((1 << (length << 3)) - 1) << shift;
+            int oldWord = page[offset];
+            page[offset] = (oldWord & ~mask) | ((value << shift) & mask);
+            return (oldWord & mask) >>> shift;
+         }
+         int oldValue = 0;
+         for (int i = 0; i < length; i++) {
+            int byteAddress = address + i;
+            int[] page = getPage(byteAddress, true);
+            int offset = (byteAddress >>> 2) & (PAGE_LENGTH_WORDS - 1);
+            shift = (byteOrder == LITTLE_ENDIAN) ? (byteAddress & 3) << 3 : (3 - (byteAddress & 3)) << 3;
+            oldValue |= ((page[offset] >>> shift) & 0xFF) << (i << 3);
+            page[offset] = (page[offset] & ~(0xFF << shift)) | (((value >>> (i << 3)) & 0xFF) << shift);
+         }
+         return oldValue;
+      }
+   
+   ////////////////////////////////////////////////////////////////////////////////
+   //
+   // Flat memory model: fetch 1, 2 or 4 byte value starting at the given address,
+   // into the low order bytes of the result.  See storeBytesInPages.
+   
+       private int fetchBytesFromPages(int address, int length) {
+         int shift = (address & 3) << 3;
+         if (byteOrder == LITTLE_ENDIAN && shift + (length << 3) <= 32) {
+            int[] page = getPage(address, false);
+            if (page == null) {
+               return 0;
+            }
+            int word = page[(address >>> 2) & (PAGE_LENGTH_WORDS - 1)];
+            return (length == WORD_LENGTH_BYTES) ? word : (word >>> shift) & ((1 << (length << 3)) - 1);
+         }
+         int value = 0;
+         for (int i = 0; i < length; i++) {
+            int byteAddress = address + i;
+            int[] page = getPage(byteAddress, false);
+            if (page != null) {
+               shift = (byteOrder == LITTLE_ENDIAN) ? (byteAddress & 3) << 3 : (3 - (byteAddress & 3)) << 3;
+               value |= ((page[(byteAddress >>> 2) & (PAGE_LENGTH_WORDS - 1)] >>> shift) & 0xFF) << (i << 3);
+            }
+         }
+         return value;
+      }
+   
    ////////////////////////////////////////////////////////////////////////////////////
    // Returns result of substituting specified byte of source value into specified byte 
    // of destination value. Byte positions are 0-1-2-3, listed from most to least 
@@ -1440,13 +2027,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    ///////////////////////////////////////////////////////////////////////   	
    // Read a program statement from the given address.  Address has already been verified
    // as valid.  It may be either in user or kernel text segment, as specified by arguments.  
-   // Returns associated ProgramStatement or null if none. 
+   // Returns associated ProgramStatement or null if none.  If there is none but a word
+   // of a machine code image is waiting there, the statement is made from it now.
    // Last parameter controls whether or not observers will be notified.
-       private ProgramStatement readProgramStatement(int address, int baseAddress, ProgramStatement[][] blockTable, boolean notify) {
+       private ProgramStatement readProgramStatement(int address, int baseAddress, ProgramStatement[][] blockTable, 
+                                                     int[][] imageTable, boolean notify) {
          int relative = (address - baseAddress) >> 2; // convert byte address to words
          int block = relative / TEXT_BLOCK_LENGTH_WORDS;
          int offset = relative % TEXT_BLOCK_LENGTH_WORDS; 
          if (block < TEXT_BLOCK_TABLE_LENGTH) {
+            if (imageTable[block] != null && imageTable[block][2 * offset + 1] != 0 
+                 && (blockTable[block] == null || blockTable[block][offset] == null)) {
+               makeImageStatement(address, block, offset, blockTable, imageTable[block]);
+            }
             if (blockTable[block] == null || blockTable[block][offset] == null) {
                // No instructions are stored in this block or offset.
                if (notify) notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH,0);
@@ -1460,5 +2053,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (notify) notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH,0);
          return null;
       }
+   
+   ///////////////////////////////////////////////////////////////////////   	
+   // Make the statement for a word of a machine code image, as the assembler does for
+   // a line of hexadecimal machine code, and store it in place of the word.  The statement
+   // is the same whichever table it is read through, so it does not matter if the block
+   // is shared with a snapshot.
+       private void makeImageStatement(int address, int block, int offset, 
+                                       ProgramStatement[][] blockTable, int[] image) {
+         int word = image[2 * offset];
+         if (blockTable[block] == null) {
+            blockTable[block] = new ProgramStatement[TEXT_BLOCK_LENGTH_WORDS];
+         }
+         blockTable[block][offset] = new ProgramStatement(word, address, image[2 * offset + 1], 
+                                                          Binary.intToHexString(word).substring(2));
+      }
    	   	
    }
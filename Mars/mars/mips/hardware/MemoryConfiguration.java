@@ -45,13 +45,40 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private String configurationIdentifier, configurationName;
       private String[] configurationItemNames;
       private int[] configurationItemValues;
+      private boolean flat;
    	
    
        public MemoryConfiguration(String ident, String name, String[] items, int[] values) {
+         this(ident, name, items, values, false);
+      }
+   
+   	/**
+   	 * Create a memory configuration.
+   	 *
+   	 * @param ident identifier, used for saving the setting and for the mc command option
+   	 * @param name name for display
+   	 * @param items names of the configuration items
+   	 * @param values values of the configuration items, in the same order
+   	 * @param flat true to use the flat memory model, see isFlat()
+   	 */
+       public MemoryConfiguration(String ident, String name, String[] items, int[] values, boolean flat) {
 		   this.configurationIdentifier = ident;
          this.configurationName = name;
          this.configurationItemNames = items;
          this.configurationItemValues = values;
+         this.flat = flat;
+      }
+   
+   	/**
+   	 * Whether Memory uses its flat memory model with this configuration.  Data, stack,
+   	 * memory mapped I/O and kernel data then live in one lazily allocated page table
+   	 * spanning the whole address space, and are limited only by the limit addresses of
+   	 * the configuration instead of 4MB each.  Loads and stores are also faster.
+   	 *
+   	 * @return true for the flat memory model
+   	 */
+       public boolean isFlat() {
+         return flat;
       }
    	
    	public String getConfigurationIdentifier() {
@@ -191,6 +191,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             configurations.add(new MemoryConfiguration("CompactDataAtZero", "Compact, Data at Address 0", configurationItemNames, dataBasedCompactConfigurationItemValues));
             configurations.add(new MemoryConfiguration("CompactTextAtZero", "Compact, Text at Address 0", configurationItemNames, textBasedCompactConfigurationItemValues));
             configurations.add(new MemoryConfiguration("CompactDataZeroR0", "Data at 0, $gp,$sp = 0", configurationItemNames, dataBasedGpSpZeroConfigurationItemValues));
+            configurations.add(new MemoryConfiguration("Flat", "Default, flat memory model", configurationItemNames, 
+                                                       (int[]) defaultConfigurationItemValues.clone(), true));
             defaultConfiguration = (MemoryConfiguration) configurations.get(0);
             currentConfiguration = defaultConfiguration;
          	// Get current config from settings
@@ -3,8 +3,10 @@
    import java.util.Observer;
 
    import mars.Globals;
+   import mars.MachineContext;
    import mars.assembler.SymbolTable;
    import mars.mips.instructions.Instruction;
+   import mars.mips.trace.TraceSink;
    import mars.util.Binary;
    import mars.util.*;
 
@@ -37,7 +39,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
 /**
-  *  Represents the collection of MIPS registers.
+  *  Represents the collection of MIPS registers.  The static methods work on the
+  *  registers of the current <code>MachineContext</code>; each context has its own
+  *  RegisterFile object.
   *   @author Jason Bumgarner, Jason Shrewsbury
   *   @version June 2003
   **/
@@ -47,7 +51,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public static final int GLOBAL_POINTER_REGISTER = 28;
       public static final int STACK_POINTER_REGISTER = 29;
    
-      private static Register [] regFile = 
+      private final Register [] regFile = 
           { new Register("$zero", 0, 0), new Register("$at", 1, 0),
          	new Register("$v0", 2, 0),new Register("$v1", 3, 0),
          	new Register("$a0", 4, 0),new Register("$a1", 5, 0),
@@ -67,9 +71,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	new Register("$fp", 30, 0),new Register("$ra", 31, 0)
            };
          												  
-      private static Register programCounter= new Register("pc", 32, Memory.textBaseAddress); 
-      private static Register hi= new Register("hi", 33, 0);//this is an internal register with arbitrary number
-      private static Register lo= new Register("lo", 34, 0);// this is an internal register with arbitrary number
+      private final Register programCounter= new Register("pc", 32, Memory.textBaseAddress); 
+      private final Register hi= new Register("hi", 33, 0);//this is an internal register with arbitrary number
+      private final Register lo= new Register("lo", 34, 0);// this is an internal register with arbitrary number
+   
+   	/**
+   	  *  Creates a separate set of registers, for use by a <code>MachineContext</code>.
+   	  *  Everyone else should use the static methods.
+   	  **/
+       public RegisterFile() {
+      }
+   
+       private static RegisterFile current() {
+         return MachineContext.getCurrent().getRegisterFile();
+      }
    		 
    
    	/**
@@ -77,10 +92,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/	 
    		 
        public static void showRegisters(){
-         for (int i=0; i< regFile.length; i++){
-            System.out.println("Name: " + regFile[i].getName());
-            System.out.println("Number: " + regFile[i].getNumber());
-            System.out.println("Value: " + regFile[i].getValue());	
+         RegisterFile file = current();
+         for (int i=0; i< file.regFile.length; i++){
+            System.out.println("Name: " + file.regFile[i].getName());
+            System.out.println("Number: " + file.regFile[i].getNumber());
+            System.out.println("Value: " + file.regFile[i].getValue());	
             System.out.println(""); 
          }
       }
@@ -94,37 +110,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	  
        public static int updateRegister(int num, int val){
+         RegisterFile file = current();
          int old = 0;
          if(num == 0){
             //System.out.println("You can not change the value of the zero register.");
          }
-         else {
-            for (int i=0; i< regFile.length; i++){
-               if(regFile[i].getNumber()== num) {
-                  old = (Globals.getSettings().getBackSteppingEnabled())
-                        ? Globals.program.getBackStepper().addRegisterFileRestore(num,regFile[i].setValue(val))
-                     	: regFile[i].setValue(val);
-                  break;
-               }
-            }
+         else if (num > 0 && num < file.regFile.length) {
+            // regFile is indexed by register number
+            old = (Globals.getSettings().getBackSteppingEnabled())
+                  ? Globals.program.getBackStepper().addRegisterFileRestore(num,file.regFile[num].setValue(val))
+               	: file.regFile[num].setValue(val);
          }
          if(num== 33){//updates the hi register
             old = (Globals.getSettings().getBackSteppingEnabled())
-               	      ? Globals.program.getBackStepper().addRegisterFileRestore(num,hi.setValue(val))
-               			: hi.setValue(val);
+               	      ? Globals.program.getBackStepper().addRegisterFileRestore(num,file.hi.setValue(val))
+               			: file.hi.setValue(val);
          }
          else if(num== 34){// updates the low register
             old = (Globals.getSettings().getBackSteppingEnabled())
-               	      ? Globals.program.getBackStepper().addRegisterFileRestore(num,lo.setValue(val))
-               			: lo.setValue(val);
+               	      ? Globals.program.getBackStepper().addRegisterFileRestore(num,file.lo.setValue(val))
+               			: file.lo.setValue(val);
          }
          
          // Modified by DEPCT, 2016,11
          // Add Output, except hi, lo
          if (num < 32) {
-             String numStr = num < 10 ? " " + num : "" + num;
-             SystemIO.logString("@" + Binary.intToHexString(programCounter.getValue() - 4).substring(6) + ":" +
-                     "$" + numStr + " <= " + Binary.intToHexString(val).substring(2) + "\n");
+             TraceSink.getInstance().registerWrite(file.programCounter.getValue() - 4, num, val);
          }
          return old;
       }
@@ -136,12 +147,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static void updateRegister(String reg, int val){
+         RegisterFile file = current();
          if(reg.equals("zero")){
             //System.out.println("You can not change the value of the zero register.");
          }
          else{
-            for (int i=0; i< regFile.length; i++){
-               if(regFile[i].getName().equals(reg)) {
+            for (int i=0; i< file.regFile.length; i++){
+               if(file.regFile[i].getName().equals(reg)) {
                   updateRegister(i,val);
                   break;
                }
@@ -155,14 +167,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int getValue(int num){
+         RegisterFile file = current();
          if(num==33){
-            return hi.getValue();
+            return file.hi.getValue();
          }
          else if(num==34){
-            return lo.getValue();
+            return file.lo.getValue();
          }
          else  
-            return regFile[num].getValue();
+            return file.regFile[num].getValue();
             
       }
       		
@@ -174,10 +187,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    		  **/	
       		
        public static int getNumber(String n){
+         RegisterFile file = current();
          int j=-1;
-         for (int i=0; i< regFile.length; i++){
-            if(regFile[i].getName().equals(n)) {
-               j= regFile[i].getNumber();
+         for (int i=0; i< file.regFile.length; i++){
+            if(file.regFile[i].getName().equals(n)) {
+               j= file.regFile[i].getNumber();
                break;
             }
          } 
@@ -190,7 +204,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static Register[] getRegisters(){
-         return regFile;
+         return current().regFile;
       }
       
    	/**
@@ -200,20 +214,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static Register getUserRegister(String Rname) {
+         RegisterFile file = current();
          Register reg = null;
          if (Rname.charAt(0) == '$') {
             try {
                    // check for register number 0-31.
-               reg = regFile[Binary.stringToInt(Rname.substring(1))];    // KENV 1/6/05
+               reg = file.regFile[Binary.stringToInt(Rname.substring(1))];    // KENV 1/6/05
             }
                 catch (Exception e) {
                    // handles both NumberFormat and ArrayIndexOutOfBounds
                    // check for register mnemonic $zero thru $ra
                   reg = null; // just to be sure
                    // just do linear search; there aren't that many registers
-                  for (int i=0; i < regFile.length; i++) {
-                     if (Rname.equals(regFile[i].getName())) {
-                        reg = regFile[i];
+                  for (int i=0; i < file.regFile.length; i++) {
+                     if (Rname.equals(file.regFile[i].getName())) {
+                        reg = file.regFile[i];
                         break;
                      }
                   }
@@ -230,7 +245,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
      
        public static void initializeProgramCounter(int value){
-         programCounter.setValue(value);
+         current().programCounter.setValue(value);
       }
    	
    	/**
@@ -242,13 +257,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  will set program counter to default reset value.
    	 **/
    	 
-       public static void initializeProgramCounter(boolean startAtMain) {  
-         int mainAddr = Globals.symbolTable.getAddress(SymbolTable.getStartLabel());
+       public static void initializeProgramCounter(boolean startAtMain) {
+         RegisterFile file = current();
+         int mainAddr = MachineContext.getCurrent().getSymbolTable().getAddress(SymbolTable.getStartLabel());
          if (startAtMain && mainAddr != SymbolTable.NOT_FOUND && (Memory.inTextSegment(mainAddr) || Memory.inKernelTextSegment(mainAddr))) {
             initializeProgramCounter(mainAddr);
          } 
          else {
-            initializeProgramCounter(programCounter.getResetValue());
+            initializeProgramCounter(file.programCounter.getResetValue());
          }
       }
    	
@@ -260,8 +276,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
      
        public static int setProgramCounter(int value){
-         int old = programCounter.getValue();
-         programCounter.setValue(value);
+         RegisterFile file = current();
+         int old = file.programCounter.getValue();
+         file.programCounter.setValue(value);
          if (Globals.getSettings().getBackSteppingEnabled()) {
             Globals.program.getBackStepper().addPCRestore(old);
          } 
@@ -274,7 +291,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	 
        public static int getProgramCounter(){
-         return programCounter.getValue();
+         return current().programCounter.getValue();
       }
    
      /**
@@ -282,7 +299,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	*  @return program counter's Register object.
    	*/
        public static Register getProgramCounterRegister() {
-         return programCounter;
+         return current().programCounter;
       }
    	
      /**
@@ -291,7 +308,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	 
        public static int getInitialProgramCounter(){
-         return programCounter.getResetValue();
+         return current().programCounter.getResetValue();
       }
    	
    	/**
@@ -304,12 +321,49 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static void resetRegisters(){
-         for(int i=0; i< regFile.length; i++){
-            regFile[i].resetValue();
+         RegisterFile file = current();
+         for(int i=0; i< file.regFile.length; i++){
+            file.regFile[i].resetValue();
          }
          initializeProgramCounter(Globals .getSettings().getStartAtMain());// replaces "programCounter.resetValue()", DPS 3/3/09
-         hi.resetValue();
-         lo.resetValue();
+         file.hi.resetValue();
+         file.lo.resetValue();
+      }
+   
+     /**
+   	 *  Values of all the registers, followed by pc, hi and lo, to be given back to
+   	 *  restoreState later.
+   	 *
+   	 *  @return the values
+   	 **/
+   
+       public static int[] saveState() {
+         RegisterFile file = current();
+         int[] state = new int[file.regFile.length + 3];
+         for (int i = 0; i < file.regFile.length; i++) {
+            state[i] = file.regFile[i].getValue();
+         }
+         state[file.regFile.length] = file.programCounter.getValue();
+         state[file.regFile.length + 1] = file.hi.getValue();
+         state[file.regFile.length + 2] = file.lo.getValue();
+         return state;
+      }
+   
+     /**
+   	 *  Set all the registers, pc, hi and lo back to values from saveState.  Observers
+   	 *  are notified, but the writes are not traced nor recorded for back stepping.
+   	 *
+   	 *  @param state values returned by saveState
+   	 **/
+   
+       public static void restoreState(int[] state) {
+         RegisterFile file = current();
+         for (int i = 0; i < file.regFile.length; i++) {
+            file.regFile[i].setValue(state[i]);
+         }
+         file.programCounter.setValue(state[file.regFile.length]);
+         file.hi.setValue(state[file.regFile.length + 1]);
+         file.lo.setValue(state[file.regFile.length + 2]);
       }
       
      /**
@@ -317,7 +371,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 **/
    
        public static void incrementPC(){
-         programCounter.setValue(programCounter.getValue() + Instruction.INSTRUCTION_LENGTH);
+         RegisterFile file = current();
+         file.programCounter.setValue(file.programCounter.getValue() + Instruction.INSTRUCTION_LENGTH);
       }
 
         /**
@@ -326,7 +381,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          **/
 
         public static void addPCObserver(Observer observer){
-            programCounter.addObserver(observer);
+            current().programCounter.addObserver(observer);
         }
 
       /**
@@ -335,11 +390,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  Counter.
    	 */
        public static void addRegistersObserver(Observer observer) {
-         for (int i=0; i<regFile.length; i++) {
-            regFile[i].addObserver(observer);
+         RegisterFile file = current();
+         for (int i=0; i<file.regFile.length; i++) {
+            file.regFile[i].addObserver(observer);
          }
-         hi.addObserver(observer);
-         lo.addObserver(observer);
+         file.hi.addObserver(observer);
+         file.lo.addObserver(observer);
       }
    	
       /**
@@ -348,10 +404,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  Counter.
    	 */
        public static void deleteRegistersObserver(Observer observer) {
-         for (int i=0; i<regFile.length; i++) {
-            regFile[i].deleteObserver(observer);
+         RegisterFile file = current();
+         for (int i=0; i<file.regFile.length; i++) {
+            file.regFile[i].deleteObserver(observer);
          }
-         hi.deleteObserver(observer);
-         lo.deleteObserver(observer);
+         file.hi.deleteObserver(observer);
+         file.lo.deleteObserver(observer);
       }
    }
@@ -0,0 +1,155 @@
+   package mars.mips.instructions;
+   import mars.*;
+   import mars.mips.trace.*;
+   import mars.util.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Benchmark for decoding binary machine code, comparing the decode table that
+ * <code>InstructionSet.findByBinaryCode</code> goes through with the search of the
+ * match maps, one per opcode mask, that it replaced.  There are two samples of
+ * words: encodings of the basic instructions with random operand fields, and
+ * random words, about half of which are not instructions.  Both ways are first
+ * checked to decode every word of the samples to the same instruction, then each
+ * way decodes each sample the requested number of times and the time per decode
+ * is reported.
+ * <p>
+ * Usage: <code>java mars.mips.instructions.DecodeBenchmark [decodes] [repeats]</code>,
+ * 10000000 decodes and 3 repeats by default.
+ *
+ * @version October 2017
+ */
+
+    public class DecodeBenchmark {
+   
+      private static final int SAMPLE_SIZE = 4096; // words in each sample, a power of 2
+      private static int decoded; // kept so the decoding is not optimized away
+   
+       public static void main(String[] args) {
+         int decodes = (args.length > 0) ? Integer.parseInt(args[0]) : 10000000;
+         int repeats = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+         Globals.initialize(false);
+         TraceSink.getInstance().setEnabled(false);
+         InstructionSet set = Globals.instructionSet;
+         Random random = new Random(42);
+         int[] encodings = encodings(set, random);
+         int[] words = new int[SAMPLE_SIZE];
+         for (int i = 0; i < SAMPLE_SIZE; i++) {
+            words[i] = random.nextInt();
+         }
+         int found = check(set, encodings) + check(set, words);
+         System.out.println("All " + (2 * SAMPLE_SIZE) + " words decode the same both ways, "
+               + found + " of them to instructions");
+      
+         for (int i = 1; i <= repeats; i++) {
+            report(i, "instruction encodings", decodes,
+                  timeTable(set, encodings, decodes), timeMatchMaps(set, encodings, decodes));
+            report(i, "random words", decodes,
+                  timeTable(set, words, decodes), timeMatchMaps(set, words, decodes));
+         }
+      }
+   
+   	// Encodings of the basic instructions in turn, with random bits wherever
+   	// the opcode mask leaves operand fields.
+       private static int[] encodings(InstructionSet set, Random random) {
+         ArrayList basics = new ArrayList();
+         ArrayList instructions = set.getInstructionList();
+         for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) instanceof BasicInstruction) {
+               basics.add(instructions.get(i));
+            }
+         }
+         int[] encodings = new int[SAMPLE_SIZE];
+         for (int i = 0; i < SAMPLE_SIZE; i++) {
+            BasicInstruction basic = (BasicInstruction) basics.get(i % basics.size());
+            encodings[i] = basic.getOpcodeMatch() | (random.nextInt() & ~basic.getOpcodeMask());
+         }
+         return encodings;
+      }
+   
+   	// Check that both ways decode every word the same, exiting if not.
+   	// Returns the number of words that are instructions.
+       private static int check(InstructionSet set, int[] words) {
+         int found = 0;
+         for (int i = 0; i < words.length; i++) {
+            BasicInstruction table = set.findByBinaryCode(words[i]);
+            BasicInstruction matchMaps = set.findByBinaryCodeThroughMatchMaps(words[i]);
+            if (table != matchMaps) {
+               System.out.println(Binary.intToHexString(words[i]) + " decodes to "
+                     + name(table) + " through the table but " + name(matchMaps) + " through the match maps");
+               System.exit(1);
+            }
+            if (table != null) {
+               found++;
+            }
+         }
+         return found;
+      }
+   
+       private static String name(BasicInstruction instruction) {
+         return (instruction == null) ? "nothing" : instruction.getExampleFormat();
+      }
+   
+       private static long timeTable(InstructionSet set, int[] words, int decodes) {
+         long start = System.nanoTime();
+         int found = 0;
+         for (int i = 0; i < decodes; i++) {
+            if (set.findByBinaryCode(words[i & (SAMPLE_SIZE - 1)]) != null) {
+               found++;
+            }
+         }
+         long elapsed = System.nanoTime() - start;
+         decoded += found;
+         return elapsed;
+      }
+   
+       private static long timeMatchMaps(InstructionSet set, int[] words, int decodes) {
+         long start = System.nanoTime();
+         int found = 0;
+         for (int i = 0; i < decodes; i++) {
+            if (set.findByBinaryCodeThroughMatchMaps(words[i & (SAMPLE_SIZE - 1)]) != null) {
+               found++;
+            }
+         }
+         long elapsed = System.nanoTime() - start;
+         decoded += found;
+         return elapsed;
+      }
+   
+       private static void report(int repeat, String sample, int decodes, long table, long matchMaps) {
+         System.out.println("repeat " + repeat + ", " + sample + ": table " + nanosPerDecode(table, decodes)
+               + " ns, match maps " + nanosPerDecode(matchMaps, decodes) + " ns per decode");
+      }
+   
+       private static String nanosPerDecode(long nanos, int decodes) {
+         return String.valueOf(Math.round(10.0 * nanos / decodes) / 10.0);
+      }
+   }
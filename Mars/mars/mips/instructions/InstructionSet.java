@@ -48,6 +48,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    {
       private ArrayList instructionList;
 	  private ArrayList opcodeMatchMaps;
+	  private DecodeTable decodeTable;
+      private volatile HashMap operatorIndex;    // lower-cased mnemonic -> ArrayList of Instructions
+      private int operatorIndexSize;    // size of instruction list when operatorIndex was built
       private SyscallLoader syscallLoader;
     /**
      * Creates a new InstructionSet object.
@@ -92,6 +95,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
           Collections.sort(matchMaps);
           this.opcodeMatchMaps = matchMaps;
+          this.decodeTable = new DecodeTable(matchMaps);
       }
 
 
@@ -99,6 +103,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
         BasicInstruction inst = new BasicInstruction(template, format, encoding, code);
         inst.createExampleTokenList();
         this.instructionList.add(inst);
+        this.decodeTable = null; // rebuilt on next decode
+        this.operatorIndex = null; // rebuilt on next match
+    }
+
+    /**
+     * Remove the instructions registered after the instruction list reached the
+     * given size, for example to unload the instructions of a Lua extension.
+     * @param size size of the instruction list to go back to
+     */
+    public void removeInstructionsFrom(int size) {
+        while (this.instructionList.size() > size) {
+            this.instructionList.remove(this.instructionList.size() - 1);
+        }
+        this.operatorIndex = null;
+        generateMatchMaps();
     }
     /**
      * Adds all instructions to the set.  A given extended instruction may have
@@ -709,7 +728,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      try
                      {
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getWord(
+                            Memory.getInstance().getWord(
                             RegisterFile.getValue(operands[2]) + (operands[1] << 16 >> 16)));
                      } 
                          catch (AddressErrorException e)
@@ -739,7 +758,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      try
                      {
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getWord(
+                            Memory.getInstance().getWord(
                             RegisterFile.getValue(operands[2]) + (operands[1] << 16 >> 16)));
                      } 
                          catch (AddressErrorException e)
@@ -762,8 +781,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      {
                         int address = RegisterFile.getValue(operands[2]) + (operands[1] << 16 >> 16);
                         int result = RegisterFile.getValue(operands[0]);
-                        for (int i=0; i<=address % Globals.memory.WORD_LENGTH_BYTES; i++) {
-                           result = Binary.setByte(result,3-i,Globals.memory.getByte(address-i));
+                        for (int i=0; i<=address % Memory.getInstance().WORD_LENGTH_BYTES; i++) {
+                           result = Binary.setByte(result,3-i,Memory.getInstance().getByte(address-i));
                         }
                         RegisterFile.updateRegister(operands[0], result);
                      } 
@@ -787,8 +806,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      {
                         int address = RegisterFile.getValue(operands[2]) + (operands[1] << 16 >> 16);
                         int result = RegisterFile.getValue(operands[0]);
-                        for (int i=0; i<=3-(address % Globals.memory.WORD_LENGTH_BYTES); i++) {
-                           result = Binary.setByte(result,i,Globals.memory.getByte(address+i));
+                        for (int i=0; i<=3-(address % Memory.getInstance().WORD_LENGTH_BYTES); i++) {
+                           result = Binary.setByte(result,i,Memory.getInstance().getByte(address+i));
                         }
                         RegisterFile.updateRegister(operands[0], result);
                      } 
@@ -810,7 +829,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      int[] operands = statement.getOperands();
                      try
                      {
-                        Globals.memory.setWord(
+                        Memory.getInstance().setWord(
                             RegisterFile.getValue(operands[2]) + (operands[1] << 16 >> 16),
                             RegisterFile.getValue(operands[0]));
                      } 
@@ -834,7 +853,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      int[] operands = statement.getOperands();
                      try
                      {
-                        Globals.memory.setWord(
+                        Memory.getInstance().setWord(
                             RegisterFile.getValue(operands[2]) + (operands[1] << 16 >> 16),
                             RegisterFile.getValue(operands[0]));
                      } 
@@ -859,8 +878,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      {
                         int address = RegisterFile.getValue(operands[2]) + (operands[1] << 16 >> 16);
                         int source = RegisterFile.getValue(operands[0]);
-                        for (int i=0; i<=address % Globals.memory.WORD_LENGTH_BYTES; i++) {
-                           Globals.memory.setByte(address-i,Binary.getByte(source,3-i));
+                        for (int i=0; i<=address % Memory.getInstance().WORD_LENGTH_BYTES; i++) {
+                           Memory.getInstance().setByte(address-i,Binary.getByte(source,3-i));
                         }
                      } 
                          catch (AddressErrorException e)
@@ -883,8 +902,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      {
                         int address = RegisterFile.getValue(operands[2]) + (operands[1] << 16 >> 16);
                         int source = RegisterFile.getValue(operands[0]);
-                        for (int i=0; i<=3-(address % Globals.memory.WORD_LENGTH_BYTES); i++) {
-                           Globals.memory.setByte(address+i,Binary.getByte(source,i));
+                        for (int i=0; i<=3-(address % Memory.getInstance().WORD_LENGTH_BYTES); i++) {
+                           Memory.getInstance().setByte(address+i,Binary.getByte(source,i));
                         }
                      } 
                          catch (AddressErrorException e)
@@ -1333,7 +1352,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      try
                      {
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getByte(
+                            Memory.getInstance().getByte(
                             RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16))
                                             << 24
@@ -1358,7 +1377,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      try
                      {
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getHalf(
+                            Memory.getInstance().getHalf(
                             RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16))
                                             << 16
@@ -1384,7 +1403,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      {
                      // offset is sign-extended and loaded halfword value is zero-extended
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getHalf(
+                            Memory.getInstance().getHalf(
                             RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16))
                                             & 0x0000ffff);
@@ -1408,7 +1427,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      try
                      {
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getByte(
+                            Memory.getInstance().getByte(
                             RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16))
                                             & 0x000000ff);
@@ -1431,7 +1450,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      int[] operands = statement.getOperands();
                      try
                      {
-                        Globals.memory.setByte(
+                        Memory.getInstance().setByte(
                             RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16),
                                     RegisterFile.getValue(operands[0])
@@ -1455,7 +1474,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      int[] operands = statement.getOperands();
                      try
                      {
-                        Globals.memory.setHalf(
+                        Memory.getInstance().setHalf(
                             RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16),
                                     RegisterFile.getValue(operands[0])
@@ -2776,7 +2795,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      try
                      {
                         Coprocessor1.updateRegister(operands[0],
-                            Globals.memory.getWord(
+                            Memory.getInstance().getWord(
                             RegisterFile.getValue(operands[2]) + (operands[1] << 16 >> 16)));
                      } 
                          catch (AddressErrorException e)
@@ -2799,7 +2818,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                         throw new ProcessingException(statement, "first register must be even-numbered");
                      }
                   	// IF statement added by DPS 13-July-2011.
-                     if (!Globals.memory.doublewordAligned(RegisterFile.getValue(operands[2]) + operands[1])) {
+                     if (!Memory.getInstance().doublewordAligned(RegisterFile.getValue(operands[2]) + operands[1])) {
                         throw new ProcessingException(statement,
                            new AddressErrorException("address not aligned on doubleword boundary ",
                            Exceptions.ADDRESS_EXCEPTION_LOAD, RegisterFile.getValue(operands[2]) + operands[1]));
@@ -2808,10 +2827,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      try
                      {
                         Coprocessor1.updateRegister(operands[0],
-                            Globals.memory.getWord(
+                            Memory.getInstance().getWord(
                             RegisterFile.getValue(operands[2]) + operands[1]));
                         Coprocessor1.updateRegister(operands[0]+1,
-                            Globals.memory.getWord(
+                            Memory.getInstance().getWord(
                             RegisterFile.getValue(operands[2]) + operands[1] + 4));
                      } 
                          catch (AddressErrorException e)
@@ -2832,7 +2851,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      int[] operands = statement.getOperands();
                      try
                      {
-                        Globals.memory.setWord(
+                        Memory.getInstance().setWord(
                             RegisterFile.getValue(operands[2]) + (operands[1] << 16 >> 16),
                             Coprocessor1.getValue(operands[0]));
                      } 
@@ -2856,17 +2875,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                         throw new ProcessingException(statement, "first register must be even-numbered");
                      }
                   	// IF statement added by DPS 13-July-2011.
-                     if (!Globals.memory.doublewordAligned(RegisterFile.getValue(operands[2]) + operands[1])) {
+                     if (!Memory.getInstance().doublewordAligned(RegisterFile.getValue(operands[2]) + operands[1])) {
                         throw new ProcessingException(statement,
                            new AddressErrorException("address not aligned on doubleword boundary ",
                            Exceptions.ADDRESS_EXCEPTION_STORE, RegisterFile.getValue(operands[2]) + operands[1]));
                      }
                      try
                      {
-                        Globals.memory.setWord(
+                        Memory.getInstance().setWord(
                             RegisterFile.getValue(operands[2]) + operands[1],
                             Coprocessor1.getValue(operands[0]));
-                        Globals.memory.setWord(
+                        Memory.getInstance().setWord(
                             RegisterFile.getValue(operands[2]) + operands[1] + 4,
                             Coprocessor1.getValue(operands[0]+1));
                      } 
@@ -3126,28 +3145,36 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             inst.createExampleTokenList();
          }
 
-		 HashMap maskMap = new HashMap();
-		 ArrayList matchMaps = new ArrayList();
-		 for (int i = 0; i < instructionList.size(); i++) {
-		 	Object rawInstr = instructionList.get(i);
-			if (rawInstr instanceof BasicInstruction) {
-				BasicInstruction basic = (BasicInstruction) rawInstr;
-				Integer mask = Integer.valueOf(basic.getOpcodeMask());
-				Integer match = Integer.valueOf(basic.getOpcodeMatch());
-				HashMap matchMap = (HashMap) maskMap.get(mask);
-				if (matchMap == null) {
-					matchMap = new HashMap();
-					maskMap.put(mask, matchMap);
-					matchMaps.add(new MatchMap(mask, matchMap));
-				}
-				matchMap.put(match, basic);
-			}
-		 }
-		 Collections.sort(matchMaps);
-		 this.opcodeMatchMaps = matchMaps;
+		 operatorIndex = null;
+		 generateMatchMaps();
       }
 
+    /**
+     * Find the basic instruction whose encoding matches the given binary
+     * machine code.  Goes through the decode table, so takes the same short
+     * time for any instruction.
+     * @param binaryInstr 32-bit machine code
+     * @return matching BasicInstruction, or null if there is none.
+     */
 	public BasicInstruction findByBinaryCode(int binaryInstr) {
+		if (this.decodeTable == null) {
+			generateMatchMaps();
+		}
+		return this.decodeTable.find(binaryInstr);
+	}
+
+    /**
+     * Find the basic instruction whose encoding matches the given binary
+     * machine code the way findByBinaryCode did before the decode table, by
+     * trying each distinct opcode mask in turn, longest first.  Only kept for
+     * DecodeBenchmark to compare against; the result is the same.
+     * @param binaryInstr 32-bit machine code
+     * @return matching BasicInstruction, or null if there is none.
+     */
+	BasicInstruction findByBinaryCodeThroughMatchMaps(int binaryInstr) {
+		if (this.decodeTable == null) {
+			generateMatchMaps();
+		}
 		ArrayList matchMaps = this.opcodeMatchMaps;
 		for (int i = 0; i < matchMaps.size(); i++) {
 			MatchMap map = (MatchMap) matchMaps.get(i);
@@ -3234,24 +3261,47 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
     /**
      *  Given an operator mnemonic, will return the corresponding Instruction object(s)
-     *  from the instruction set.  Uses straight linear search technique.
+     *  from the instruction set.  Case-insensitive.  Looks the lower-cased mnemonic up
+     *  in a hash index, which is rebuilt whenever the instruction list has changed.
      *  @param name operator mnemonic (e.g. addi, sw,...)
-     *  @return list of corresponding Instruction object(s), or null if not found.
+     *  @return list of corresponding Instruction object(s), in instruction set order,
+     *  or null if not found.
      */
        public ArrayList matchOperator(String name)
       {
-         ArrayList matchingInstructions = null;
-        // Linear search for now....
-         for (int i = 0; i < instructionList.size(); i++)
+         if (name == null)
+            return null;
+         HashMap index = operatorIndex;
+         if (index == null || operatorIndexSize != instructionList.size())
+            index = buildOperatorIndex();
+         ArrayList matchingInstructions = (ArrayList) index.get(name.toLowerCase());
+         return (matchingInstructions == null) ? null : new ArrayList(matchingInstructions);
+      }
+   
+    // Index every instruction by its lower-cased mnemonic.  Lists keep instruction set
+    // order, which is the order the assembler tries alternative operand formats in.
+    // Source files may be tokenized in parallel, so only one thread builds it.
+       private synchronized HashMap buildOperatorIndex()
+      {
+         if (operatorIndex != null && operatorIndexSize == instructionList.size())
+            return operatorIndex;
+         HashMap index = new HashMap();
+         int size = instructionList.size();
+         for (int i = 0; i < size; i++)
          {
-            if (((Instruction) instructionList.get(i)).getName().equalsIgnoreCase(name))
+            Instruction inst = (Instruction) instructionList.get(i);
+            String key = inst.getName().toLowerCase();
+            ArrayList list = (ArrayList) index.get(key);
+            if (list == null) 
             {
-               if (matchingInstructions == null) 
-                  matchingInstructions = new ArrayList();
-               matchingInstructions.add(instructionList.get(i));
+               list = new ArrayList(2);
+               index.put(key, list);
             }
+            list.add(inst);
          }
-         return matchingInstructions;
+         operatorIndexSize = size;
+         operatorIndex = index;
+         return index;
       }
    
    
@@ -3398,6 +3448,116 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 			int match = Integer.valueOf(instr & mask);
 			return (BasicInstruction) matchMap.get(match);
 		}
+
+	}
+
+	/*
+	 * Two-level table for decoding binary machine code.  The first level is
+	 * indexed by the opcode (bits 31..26).  Each opcode then picks whichever of
+	 * the funct (5..0), rt (20..16) or rs/fmt (25..21) fields best separates its
+	 * instructions, and the second level is indexed by that field.  Each cell lists
+	 * the instructions that can match there, in the same priority order as the
+	 * sorted MatchMaps (longest mask first), as parallel mask/match/instruction
+	 * arrays.  Almost every cell holds a single instruction.
+	 */
+	private static class DecodeTable {
+		private static final int[] FIELD_SHIFTS = { 0, 16, 21 };
+		private static final int[] FIELD_MASKS = { 0x3F, 0x1F, 0x1F };
+
+		private int[] shift = new int[64];
+		private int[] fieldMask = new int[64];
+		private int[][][] masks = new int[64][][];
+		private int[][][] matches = new int[64][][];
+		private BasicInstruction[][][] instructions = new BasicInstruction[64][][];
+
+		public DecodeTable(ArrayList sortedMatchMaps) {
+			// Flatten the match maps into priority order.  Within one mask the
+			// matches are all different so their order does not matter.
+			ArrayList all = new ArrayList();
+			for (int i = 0; i < sortedMatchMaps.size(); i++) {
+				MatchMap map = (MatchMap) sortedMatchMaps.get(i);
+				Iterator it = map.matchMap.values().iterator();
+				while (it.hasNext()) {
+					all.add(it.next());
+				}
+			}
+			for (int opcode = 0; opcode < 64; opcode++) {
+				int opcodeBits = opcode << 26;
+				ArrayList candidates = new ArrayList();
+				for (int i = 0; i < all.size(); i++) {
+					BasicInstruction inst = (BasicInstruction) all.get(i);
+					if (agrees(inst, opcodeBits, 0xFC000000)) {
+						candidates.add(inst);
+					}
+				}
+				// Choose the field that leaves the fewest candidates in the worst cell.
+				int best = 0;
+				int bestWorst = Integer.MAX_VALUE;
+				for (int f = 0; f < FIELD_SHIFTS.length; f++) {
+					int worst = 0;
+					for (int v = 0; v <= FIELD_MASKS[f]; v++) {
+						worst = Math.max(worst, countAgreeing(candidates, v << FIELD_SHIFTS[f], FIELD_MASKS[f] << FIELD_SHIFTS[f]));
+					}
+					if (worst < bestWorst) {
+						best = f;
+						bestWorst = worst;
+					}
+				}
+				shift[opcode] = FIELD_SHIFTS[best];
+				fieldMask[opcode] = FIELD_MASKS[best];
+				int cells = fieldMask[opcode] + 1;
+				masks[opcode] = new int[cells][];
+				matches[opcode] = new int[cells][];
+				instructions[opcode] = new BasicInstruction[cells][];
+				for (int v = 0; v < cells; v++) {
+					int bits = v << shift[opcode];
+					int bitsMask = fieldMask[opcode] << shift[opcode];
+					int n = countAgreeing(candidates, bits, bitsMask);
+					masks[opcode][v] = new int[n];
+					matches[opcode][v] = new int[n];
+					instructions[opcode][v] = new BasicInstruction[n];
+					int k = 0;
+					for (int i = 0; i < candidates.size(); i++) {
+						BasicInstruction inst = (BasicInstruction) candidates.get(i);
+						if (agrees(inst, bits, bitsMask)) {
+							masks[opcode][v][k] = inst.getOpcodeMask();
+							matches[opcode][v][k] = inst.getOpcodeMatch();
+							instructions[opcode][v][k] = inst;
+							k++;
+						}
+					}
+				}
+			}
+		}
+
+		// true if inst could match some word having the given values in the given bits
+		private static boolean agrees(BasicInstruction inst, int bits, int bitsMask) {
+			int common = inst.getOpcodeMask() & bitsMask;
+			return (bits & common) == (inst.getOpcodeMatch() & common);
+		}
+
+		private static int countAgreeing(ArrayList candidates, int bits, int bitsMask) {
+			int n = 0;
+			for (int i = 0; i < candidates.size(); i++) {
+				if (agrees((BasicInstruction) candidates.get(i), bits, bitsMask)) {
+					n++;
+				}
+			}
+			return n;
+		}
+
+		public BasicInstruction find(int instr) {
+			int opcode = instr >>> 26;
+			int cell = (instr >>> shift[opcode]) & fieldMask[opcode];
+			int[] cellMasks = masks[opcode][cell];
+			int[] cellMatches = matches[opcode][cell];
+			for (int i = 0; i < cellMasks.length; i++) {
+				if ((instr & cellMasks[i]) == cellMatches[i]) {
+					return instructions[opcode][cell][i];
+				}
+			}
+			return null;
+		}
 	}
    }
 
@@ -48,17 +48,74 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final String SYSCALL_INTERFACE = "Syscall.class";
       private static final String SYSCALL_ABSTRACT = "AbstractSyscall.class";
       private static final String CLASS_EXTENSION = "class";
+      // Services numbered 0 up to this are looked up by array index, others by hashing.
+      private static final int TABLE_LENGTH = 256;
       
       private ArrayList syscallList;
+      private volatile Service[] table;
+      private HashMap otherServices;
+      private boolean indexed;   // services were read from the plugin index
+      private boolean scanned;   // syscalls directory has been searched
    	
    /*
       *  Dynamically loads Syscalls into an ArrayList.  This method is adapted from
       *  the loadGameControllers() method in Bret Barker's GameServer class.
       *  Barker (bret@hypefiend.com) is co-author of the book "Developing Games
       *  in Java".  Also see the "loadMarsTools()" method from ToolLoader class.
+      *
+      *  If the syscalls directory has a plugin index (see PluginIndex), the services
+      *  are read from it and each Syscall object is only created when a program first
+      *  asks for that service.  Otherwise every Syscall class in the directory is loaded.
+      *  A service the index does not list is looked for in the directory when a program
+      *  asks for it, since the index may be out of date.
       */
        void loadSyscalls() {
          syscallList = new ArrayList();
+         ArrayList entries = PluginIndex.read(this.getClass().getClassLoader(), SYSCALLS_DIRECTORY_PATH);
+         indexed = (entries != null);
+         scanned = !indexed;
+         if (entries != null) {
+            for (int i = 0; i < entries.size(); i++) {
+               String[] entry = (String[]) entries.get(i);
+               try {
+                  if (entry.length < 3) {
+                     throw new Exception("index entry has no service number and name");
+                  }
+                  addService(new Service(Integer.parseInt(entry[1]), entry[2], entry[0], null));
+               } 
+                   catch (Exception e) {
+                     System.out.println("Error instantiating Syscall " + entry[0] + ": "+e);
+                     System.exit(0);
+                  }
+            }
+         } 
+         else {
+            loadSyscallClasses();
+         }
+         syscallList = processSyscallNumberOverrides(syscallList);
+         buildTable();
+         return;
+      }
+   
+       // Set up the lookup table for the services in syscallList.
+       private void buildTable() {
+         Service[] services = new Service[TABLE_LENGTH];
+         otherServices = new HashMap();
+         for (int i = 0; i < syscallList.size(); i++) {
+            Service service = (Service) syscallList.get(i);
+            if (service.number >= 0 && service.number < TABLE_LENGTH) {
+               services[service.number] = service;
+            } 
+            else {
+               otherServices.put(new Integer(service.number), service);
+            }
+         }
+         table = services;
+      }
+   
+       // Load every Syscall class in the syscalls directory that syscallList does
+   	// not already have.
+       private void loadSyscallClasses() {
          // grab all class files in the same directory as Syscall
          ArrayList candidates = FilenameFinder.getFilenameList(this.getClass( ).getClassLoader(),
                                               SYSCALLS_DIRECTORY_PATH, CLASS_EXTENSION);
@@ -76,18 +133,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                try {
                   // grab the class, make sure it implements Syscall, instantiate, add to list
                   String syscallClassName = CLASS_PREFIX+file.substring(0, file.indexOf(CLASS_EXTENSION)-1);
+                  if (hasService(syscallClassName)) {
+                     continue;
+                  }
                   Class clas = Class.forName(syscallClassName);
                   if (!Syscall.class.isAssignableFrom(clas)) {
                      continue;
                   }
                   Syscall syscall = (Syscall) clas.newInstance();
-                  if (findSyscall(syscall.getNumber()) == null) {
-                     syscallList.add(syscall);
-                  } 
-                  else {
-                     throw new Exception("Duplicate service number: "+syscall.getNumber()+
-                            " already registered to "+
-                            findSyscall(syscall.getNumber()).getName());
+                  addService(new Service(syscall.getNumber(), syscall.getName(), syscallClassName, syscall));
+                  if (indexed) {
+                     PluginIndex.reportMissing(SYSCALLS_DIRECTORY_PATH, syscallClassName);
                   }
                } 
                    catch (Exception e) {
@@ -96,8 +152,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   }
             }
          }
-         syscallList = processSyscallNumberOverrides(syscallList);
-         return;
+      }
+   
+       private void addService(Service service) throws Exception {
+         for (int i = 0; i < syscallList.size(); i++) {
+            Service other = (Service) syscallList.get(i);
+            if (other.number == service.number) {
+               throw new Exception("Duplicate service number: "+service.number+
+                            " already registered to "+other.name);
+            }
+         }
+         syscallList.add(service);
+      }
+   
+       private boolean hasService(String className) {
+         for (int i = 0; i < syscallList.size(); i++) {
+            if (((Service) syscallList.get(i)).className.equals(className)) {
+               return true;
+            }
+         }
+         return false;
       }
          
        // Will get any syscall number override specifications from MARS config file and
@@ -105,18 +179,25 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        private ArrayList processSyscallNumberOverrides(ArrayList syscallList) {
          ArrayList overrides = new Globals().getSyscallOverrides();
          SyscallNumberOverride override;
-         Syscall syscall;
+         Service syscall;
          for (int index=0; index < overrides.size(); index++) {
             override = (SyscallNumberOverride) overrides.get(index);
             boolean match = false; 
             for (int i=0; i < syscallList.size(); i++) {
-               syscall = (Syscall) syscallList.get(i);
-               if (override.getName().equals(syscall.getName())) {
+               syscall = (Service) syscallList.get(i);
+               if (override.getName().equals(syscall.name)) {
                       // we have a match to service name, assign new number
                   syscall.setNumber(override.getNumber());
                   match = true;
                } 
             }
+            if (!match && !scanned) {
+               // The index may be out of date: search the directory and start over.
+               scanned = true;
+               loadSyscallClasses();
+               index = -1;
+               continue;
+            }
             if (!match) {
                System.out.println("Error: syscall name '"+override.getName()+
                      "' in config file does not match any name in syscall list");
@@ -129,15 +210,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       		// This will also detect duplicates that accidently occur from addition
       		// of a new Syscall subclass to the collection, even if the config file
       		// does not contain any overrides.
-         Syscall syscallA, syscallB;
+         Service syscallA, syscallB;
          boolean duplicates = false;
          for (int i = 0; i < syscallList.size(); i++) {
-            syscallA = (Syscall)syscallList.get(i);
+            syscallA = (Service)syscallList.get(i);
             for (int j = i+1; j < syscallList.size(); j++) {
-               syscallB = (Syscall)syscallList.get(j);
-               if ( syscallA.getNumber() == syscallB.getNumber()) {
-                  System.out.println("Error: syscalls "+syscallA.getName()+" and "+
-                        syscallB.getName()+" are both assigned same number "+syscallA.getNumber());
+               syscallB = (Service)syscallList.get(j);
+               if ( syscallA.number == syscallB.number) {
+                  System.out.println("Error: syscalls "+syscallA.name+" and "+
+                        syscallB.name+" are both assigned same number "+syscallA.number);
                   duplicates = true;
                }
             }
@@ -150,20 +231,81 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
    	/*
    	 * Method to find Syscall object associated with given service number.
-   	 * Returns null if no associated object found.
+   	 * Returns null if no associated object found.  This runs for every syscall
+   	 * instruction, so it is a table lookup, without locking once the Syscall
+   	 * object exists.
    	 */
        Syscall findSyscall(int number) {
-         // linear search is OK since number of syscalls is small.
-         Syscall service, match = null;
+         Service[] services = table;
+         if (services != null && number >= 0 && number < TABLE_LENGTH) {
+            Service service = services[number];
+            Syscall syscall = (service == null) ? null : service.syscall;
+            if (syscall != null) {
+               return syscall;
+            }
+         }
+         return findOrCreateSyscall(number);
+      }
+   
+      // The rest of findSyscall(): load the syscalls if that has not been done,
+   	// search the directory for a service the index does not list, and create the
+   	// Syscall object if it has not been, holding the lock since programs may be
+   	// running on several threads.
+       private synchronized Syscall findOrCreateSyscall(int number) {
          if (syscallList==null) {
             loadSyscalls();
          }
-         for (int index=0; index < syscallList.size(); index++) {
-            service = (Syscall) syscallList.get(index);
-            if (service.getNumber() == number) {
-               match = service;
+         Service service = findService(number);
+         if (service == null && !scanned) {
+            scanned = true;
+            loadSyscallClasses();
+            syscallList = processSyscallNumberOverrides(syscallList);
+            buildTable();
+            service = findService(number);
+         }
+         if (service == null) {
+            return null;
+         }
+         if (service.syscall == null) {
+            try {
+               Syscall syscall = (Syscall) PluginIndex.create(service.className, Syscall.class);
+               syscall.setNumber(service.number);
+               service.syscall = syscall;
+            } 
+                catch (Exception e) {
+                  System.out.println("Error instantiating Syscall " + service.className + ": "+e);
+                  return null;
+               }
+         }
+         return service.syscall;
+      }
+   
+       private Service findService(int number) {
+         return (number >= 0 && number < TABLE_LENGTH) 
+                ? table[number] : (Service) otherServices.get(new Integer(number));
+      }
+   
+      // A syscall service: its number and name, and the Syscall object, which
+   	// is null until it is needed when the service was read from the index.
+   	// Volatile so that a thread finding it set sees the whole object.
+       private static class Service {
+         int number;
+         String name;
+         String className;
+         volatile Syscall syscall;
+      
+          Service(int number, String name, String className, Syscall syscall) {
+            this.number = number;
+            this.name = name;
+            this.className = className;
+            this.syscall = syscall;
+         }
+      
+          void setNumber(int number) {
+            this.number = number;
+            if (syscall != null) {
+               syscall.setNumber(number);
             }
          }
-         return match;
       }
    }
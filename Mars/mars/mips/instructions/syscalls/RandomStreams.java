@@ -1,5 +1,6 @@
    package mars.mips.instructions.syscalls;
 	import java.util.HashMap;
+	import mars.MachineContext;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -31,13 +32,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 
 /** 
- * This small class serves only to hold a static HashMap for storing
+ * This small class serves only to hold the HashMap for storing
  * random number generators for use by all the random number generator
- * syscalls.
+ * syscalls.  Each <code>MachineContext</code> has its own.
  */
  
     public class RandomStreams {
-      /** Collection of pseudorandom number streams available for use in Rand-type syscalls.
-       * The streams are by default not seeded. */
-		 static final HashMap randomStreams = new HashMap();
+      /** Collection of pseudorandom number streams available for use in Rand-type syscalls,
+       * belonging to the current context.  The streams are by default not seeded.
+       * @return map from stream number to java.util.Random */
+       static HashMap getRandomStreams() {
+         return MachineContext.getCurrent().getRandomStreams();
+      }
    }
\ No newline at end of file
@@ -54,13 +54,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void simulate(ProgramStatement statement) throws ProcessingException {
           // Input arguments: $a0 = index of pseudorandom number generator
           // Return: $a0 = the next pseudorandom, uniformly distributed int value from this random number generator's sequence.
+          Integer logged = (Integer) InputLog.replay();
+          if (logged != null) {
+             RegisterFile.updateRegister(4, logged.intValue());
+             return;
+          }
           Integer index = new Integer(RegisterFile.getValue(4));
-			 Random stream = (Random) RandomStreams.randomStreams.get(index);
+			 Random stream = (Random) RandomStreams.getRandomStreams().get(index);
           if (stream == null) {
 			    stream = new Random(); // create a non-seeded stream
-			    RandomStreams.randomStreams.put(index, stream);
+			    RandomStreams.getRandomStreams().put(index, stream);
 			 } 
-			 RegisterFile.updateRegister(4, stream.nextInt() );
+          int value = stream.nextInt();
+          InputLog.record(new Integer(value));
+			 RegisterFile.updateRegister(4, value );
        }
 
    }
@@ -58,14 +58,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
           //    $a1 = the upper bound of range of returned values.
           // Return: $a0 = the next pseudorandom, uniformly distributed int value from this
           // random number generator's sequence.
+         Integer logged = (Integer) InputLog.replay();
+         if (logged != null) {
+            RegisterFile.updateRegister(4, logged.intValue());
+            return;
+         }
          Integer index = new Integer(RegisterFile.getValue(4));
-         Random stream = (Random) RandomStreams.randomStreams.get(index);
+         Random stream = (Random) RandomStreams.getRandomStreams().get(index);
          if (stream == null) {
             stream = new Random(); // create a non-seeded stream
-            RandomStreams.randomStreams.put(index, stream);
+            RandomStreams.getRandomStreams().put(index, stream);
          } 
          try {
-            RegisterFile.updateRegister(4, stream.nextInt( RegisterFile.getValue(5) ) );
+            int value = stream.nextInt( RegisterFile.getValue(5) );
+            InputLog.record(new Integer(value));
+            RegisterFile.updateRegister(4, value );
          } 
              catch (IllegalArgumentException iae) {
                throw new ProcessingException(statement,
@@ -69,15 +69,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          {
             for (int index = 0; index < stringLength; index++)
             {
-               Globals.memory.setByte(buf + index,
+               Memory.getInstance().setByte(buf + index,
                                        inputString.charAt(index));
             }            
             if (stringLength < maxLength)
             {
-               Globals.memory.setByte(buf + stringLength, '\n');
+               Memory.getInstance().setByte(buf + stringLength, '\n');
                stringLength++;
             }
-            if (addNullByte) Globals.memory.setByte(buf + stringLength, 0);
+            if (addNullByte) Memory.getInstance().setByte(buf + stringLength, 0);
          } 
              catch (AddressErrorException e)
             {
@@ -0,0 +1,684 @@
+   package mars.mips.pipeline;
+   import mars.mips.hardware.*;
+   import mars.util.Binary;
+   import mars.ProgramStatement;
+   import java.io.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Timing model of the classic 5-stage MIPS pipeline (IF, ID, EX, MEM, WB), run
+ * beside the functional simulation to count the cycles a pipelined implementation
+ * would take.  Give it to <code>Simulator.setPipelineModel</code> before the run; the
+ * simulator calls <code>issue</code> with every instruction it executes, in order,
+ * and the model works out the cycle the instruction reaches EX from those before
+ * it.  Nothing is simulated cycle by cycle, so the cost is a table lookup and a few
+ * comparisons per instruction.
+ * <p>
+ * One instruction enters the pipeline per cycle unless it has to wait:
+ * <ul>
+ * <li>for a general purpose register written by an earlier instruction.  Results
+ * can be forwarded to EX from the EX/MEM and the MEM/WB pipeline registers, as
+ * configured; otherwise they are read from the register file in ID, no earlier
+ * than the cycle they are written back.  A load's result is only there after MEM.
+ * <li>for the operands of a branch or register jump, which are needed in ID if
+ * branches are resolved there.
+ * <li>for HI and LO, or for the multiply/divide unit, which works beside the
+ * pipeline, unpipelined, with the configured latency.  <code>mul</code> writes its
+ * general purpose register from that unit too.
+ * <li>for the fetch to be redirected by a taken branch or jump.  The pipeline keeps
+ * fetching the following statements, so a not taken branch costs nothing.  Jumps
+ * to a fixed address are taken in ID; branches and register jumps in the stage
+ * configured.  With delayed branching the statement in the delay slot fills one
+ * of the lost cycles.
+ * </ul>
+ * Floating point registers are not tracked.  Each wait is charged, as stall cycles
+ * of one cause, to the instruction that waited, and the report gives them for each
+ * statement and in total.
+ *
+ * @version October 2017
+ */
+
+    public class PipelineModel {
+   
+      /** Forward results from neither pipeline register */
+      public static final int FORWARD_NONE = 0;
+      /** Forward results to EX from the EX/MEM pipeline register */
+      public static final int FORWARD_EX = 1;
+      /** Forward results to EX from the MEM/WB pipeline register */
+      public static final int FORWARD_MEM = 2;
+      /** Forward results from both */
+      public static final int FORWARD_FULL = FORWARD_EX | FORWARD_MEM;
+      private static final String[] FORWARD_NAMES = { "none", "ex", "mem", "full" };
+   
+      /** Resolve branches in ID */
+      public static final int RESOLVE_ID = 0;
+      /** Resolve branches in EX */
+      public static final int RESOLVE_EX = 1;
+      /** Resolve branches in MEM */
+      public static final int RESOLVE_MEM = 2;
+      private static final String[] STAGE_NAMES = { "id", "ex", "mem" };
+   
+      /** Stall cause: operand loaded by the instruction just before */
+      public static final int LOAD_USE = 0;
+      /** Stall cause: other operand not yet available */
+      public static final int DATA = 1;
+      /** Stall cause: operand of a branch resolved in ID not yet available */
+      public static final int BRANCH_OPERAND = 2;
+      /** Stall cause: waiting for HI, LO or the multiply/divide unit */
+      public static final int HILO = 3;
+      /** Stall cause: fetch redirected by a taken branch or jump */
+      public static final int CONTROL = 4;
+      private static final String[] CAUSE_NAMES = { "load-use", "data", "branch operand", "hilo", "control" };
+      private static final int CAUSES = CAUSE_NAMES.length;
+   
+      // Classes of instruction, as far as timing is concerned.
+      private static final byte ALU = 0;
+      private static final byte LOAD = 1;
+      private static final byte BRANCH = 2;         // conditional, resolved in the configured stage
+      private static final byte JUMP = 3;           // fixed target, resolved in ID
+      private static final byte JUMP_REGISTER = 4;  // resolved in the configured stage
+      private static final byte MULTIPLY = 5;       // writes HI and LO through the unit
+      private static final byte DIVIDE = 6;
+      private static final byte MUL = 7;            // writes a register through the unit
+      private static final byte MULTIPLY_ADD = 8;   // reads and writes HI and LO through the unit
+      private static final byte READ_HILO = 9;
+      private static final byte WRITE_HILO = 10;
+   
+      private static final int INITIAL_SITES = 1024;
+      private static final long NEVER = -100;
+   
+      private final int forwarding, branchStage, multiplyLatency, divideLatency;
+      private final boolean delayedBranching;
+   
+      // Statements executed, found by address in an open addressing table.
+      private int[] slots;           // site number + 1 by hash of address, 0 if free
+      private int[] addresses;       // by site
+      private int[] codes;           // machine code the rest was decoded from
+      private int[] sources;         // two source register numbers, 8 bits each, 0 for none
+      private byte[] destinations;
+      private byte[] classes;
+      private long[] executed;
+      private long[] stalls;         // by site, then cause
+      private int sites;
+   
+      // Pipeline state.  Cycles are numbered from 1, the first fetch.
+      private long lastExecute = 2;  // cycle the last instruction was in EX
+      private long redirect;         // first cycle the target of a taken transfer can be in EX
+      private int redirectAfter;     // instructions still to issue before that applies, 0 if none
+      private final long[] produced = new long[32];   // cycle at the end of which each register's value exists
+      private final boolean[] loaded = new boolean[32];
+      private long hiloReady = NEVER, unitFree = NEVER;
+      private long instructions;
+   
+   	/**
+   	 * Create a model of an empty pipeline.
+   	 *
+   	 * @param forwarding FORWARD_NONE, FORWARD_EX, FORWARD_MEM or FORWARD_FULL
+   	 * @param branchStage stage branches and register jumps are resolved in, RESOLVE_ID,
+   	 * RESOLVE_EX or RESOLVE_MEM
+   	 * @param multiplyLatency cycles from a multiply entering EX until HI, LO or the
+   	 * result of mul can be used in EX, at least 1
+   	 * @param divideLatency the same for divides
+   	 * @param delayedBranching true if the statement after a branch or jump is executed
+   	 * whether it is taken or not
+   	 */
+       public PipelineModel(int forwarding, int branchStage, int multiplyLatency, int divideLatency,
+                            boolean delayedBranching) {
+         if (forwarding < FORWARD_NONE || forwarding > FORWARD_FULL) {
+            throw new IllegalArgumentException("unknown forwarding " + forwarding);
+         }
+         if (branchStage < RESOLVE_ID || branchStage > RESOLVE_MEM) {
+            throw new IllegalArgumentException("unknown branch stage " + branchStage);
+         }
+         if (multiplyLatency < 1 || divideLatency < 1) {
+            throw new IllegalArgumentException("latencies must be at least 1 cycle");
+         }
+         this.forwarding = forwarding;
+         this.branchStage = branchStage;
+         this.multiplyLatency = multiplyLatency;
+         this.divideLatency = divideLatency;
+         this.delayedBranching = delayedBranching;
+         Arrays.fill(produced, NEVER);
+         slots = new int[INITIAL_SITES * 2];
+         addresses = new int[INITIAL_SITES];
+         codes = new int[INITIAL_SITES];
+         sources = new int[INITIAL_SITES];
+         destinations = new byte[INITIAL_SITES];
+         classes = new byte[INITIAL_SITES];
+         executed = new long[INITIAL_SITES];
+         stalls = new long[INITIAL_SITES * CAUSES];
+      }
+   
+   	/**
+   	 * Create a model from a comma-separated list of settings, each
+   	 * <code>forward=none|ex|mem|full</code>, <code>branch=id|ex|mem</code>,
+   	 * <code>mul=&lt;cycles&gt;</code> or <code>div=&lt;cycles&gt;</code>.  Settings not
+   	 * given are <code>forward=full,branch=id,mul=1,div=1</code>, which is also what
+   	 * <code>default</code> stands for.
+   	 *
+   	 * @param settings the list
+   	 * @param delayedBranching true if delayed branching is enabled
+   	 * @return the model
+   	 * @throws IllegalArgumentException if a setting is not valid
+   	 */
+       public static PipelineModel create(String settings, boolean delayedBranching) {
+         int forwarding = FORWARD_FULL;
+         int branchStage = RESOLVE_ID;
+         int multiplyLatency = 1;
+         int divideLatency = 1;
+         StringTokenizer tokens = new StringTokenizer(settings, ",");
+         while (tokens.hasMoreTokens()) {
+            String setting = tokens.nextToken().toLowerCase();
+            if (setting.equals("default")) {
+               continue;
+            }
+            int equals = setting.indexOf('=');
+            String key = (equals < 0) ? setting : setting.substring(0, equals);
+            String value = (equals < 0) ? "" : setting.substring(equals + 1);
+            if (key.equals("forward")) {
+               forwarding = indexOf(FORWARD_NAMES, value, setting);
+            } 
+            else if (key.equals("branch")) {
+               branchStage = indexOf(STAGE_NAMES, value, setting);
+            } 
+            else if (key.equals("mul")) {
+               multiplyLatency = Integer.parseInt(value);
+            } 
+            else if (key.equals("div")) {
+               divideLatency = Integer.parseInt(value);
+            } 
+            else {
+               throw new IllegalArgumentException("unknown pipeline setting " + setting);
+            }
+         }
+         return new PipelineModel(forwarding, branchStage, multiplyLatency, divideLatency, delayedBranching);
+      }
+   
+       private static int indexOf(String[] names, String name, String setting) {
+         for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+               return i;
+            }
+         }
+         throw new IllegalArgumentException("invalid pipeline setting " + setting);
+      }
+   
+   	/**
+   	 * Issue the next instruction executed.  Called by the simulator after it has
+   	 * executed it, or when it ended the run.
+   	 *
+   	 * @param pc address of the statement
+   	 * @param machineCode the statement's machine code
+   	 * @param taken true if it is a branch or jump and control went to its target
+   	 */
+       public void issue(int pc, int machineCode, boolean taken) {
+         int site = site(pc, machineCode);
+         int kind = classes[site];
+         long execute = lastExecute + 1;
+         if (redirectAfter > 0 && --redirectAfter == 0 && redirect > execute) {
+            stalls[site * CAUSES + CONTROL] += redirect - execute;
+            execute = redirect;
+         }
+         long unstalled = execute;
+         int cause = -1;
+         boolean readInDecode = branchStage == RESOLVE_ID && (kind == BRANCH || kind == JUMP_REGISTER);
+         int first = sources[site] & 0xFF;
+         int second = sources[site] >>> 8;
+         // Waiting for one operand may miss the forwarding window of the other, so go round again.
+         for (boolean waited = true; waited; ) {
+            waited = false;
+            long needed = readInDecode ? available(first, execute - 1, true) + 1 : available(first, execute, false);
+            if (needed > execute) {
+               execute = needed;
+               cause = readInDecode ? BRANCH_OPERAND : loaded[first] ? LOAD_USE : DATA;
+               waited = true;
+            }
+            needed = readInDecode ? available(second, execute - 1, true) + 1 : available(second, execute, false);
+            if (needed > execute) {
+               execute = needed;
+               cause = readInDecode ? BRANCH_OPERAND : loaded[second] ? LOAD_USE : DATA;
+               waited = true;
+            }
+         }
+         if ((kind == READ_HILO || kind == MULTIPLY_ADD) && hiloReady > execute) {
+            execute = hiloReady;
+            cause = HILO;
+         }
+         if ((kind == MULTIPLY || kind == DIVIDE || kind == MUL || kind == MULTIPLY_ADD) && unitFree > execute) {
+            execute = unitFree;
+            cause = HILO;
+         }
+         if (cause >= 0) {
+            stalls[site * CAUSES + cause] += execute - unstalled;
+         }
+         int destination = destinations[site];
+         if (destination != 0) {
+            produced[destination] = (kind == LOAD) ? execute + 1
+                                  : (kind == MUL) ? execute + multiplyLatency - 1 : execute;
+            loaded[destination] = kind == LOAD;
+         }
+         switch (kind) {
+            case MULTIPLY:
+            case MULTIPLY_ADD:
+            case MUL:
+               unitFree = execute + multiplyLatency;
+               if (kind != MUL) {
+                  hiloReady = unitFree;
+               }
+               break;
+            case DIVIDE:
+               unitFree = hiloReady = execute + divideLatency;
+               break;
+            case WRITE_HILO:
+               hiloReady = Math.max(hiloReady, execute + 1);
+               break;
+            case JUMP:
+               redirectTo(execute - 1);
+               break;
+            case BRANCH:
+            case JUMP_REGISTER:
+               if (taken) {
+                  redirectTo(execute - 1 + branchStage);
+               }
+               break;
+         }
+         executed[site]++;
+         instructions++;
+         lastExecute = execute;
+      }
+   
+      // A transfer was decided in the given cycle: the target is fetched in the
+   	// next, so it reaches EX two cycles later.  Any delay slot goes first.
+       private void redirectTo(long resolved) {
+         redirect = resolved + 3;
+         redirectAfter = delayedBranching ? 2 : 1;
+      }
+   
+      // Earliest cycle, not before the given one, that the value of the register
+   	// can be had in EX, or in ID if readInDecode (a branch): from the EX/MEM pipeline
+   	// register the cycle after it was computed, from MEM/WB the cycle after that
+   	// (after a load, the cycle after MEM), or from the register file.  That is
+   	// written in the first half of WB and read in the second half of ID, so ID can
+   	// read it in the WB cycle itself and EX has it the cycle after.
+       private long available(int register, long cycle, boolean readInDecode) {
+         long value = produced[register];
+         if (register == 0 || value == NEVER) {
+            return cycle;
+         }
+         boolean load = loaded[register];
+         long fromMemWb = value + (load ? 1 : 2);
+         long fromRegisterFile = (readInDecode) ? fromMemWb : fromMemWb + 1;
+         if (cycle >= fromRegisterFile) {
+            return cycle;
+         }
+         long best = fromRegisterFile;
+         if ((forwarding & FORWARD_MEM) != 0 && fromMemWb >= cycle) {
+            best = fromMemWb;
+         }
+         if ((forwarding & FORWARD_EX) != 0 && !load && value + 1 >= cycle) {
+            best = value + 1;
+         }
+         return best;
+      }
+   
+      // Number of the site at an address, adding it if it is new and decoding it
+   	// again if the machine code there has changed.
+       private int site(int pc, int machineCode) {
+         int mask = slots.length - 1;
+         int slot = ((pc >>> 2) * 0x9E3779B1) >>> 7 & mask;
+         while (slots[slot] != 0) {
+            int site = slots[slot] - 1;
+            if (addresses[site] == pc) {
+               if (codes[site] != machineCode) {
+                  decode(site, machineCode);
+               }
+               return site;
+            }
+            slot = (slot + 1) & mask;
+         }
+         if (sites == addresses.length) {
+            grow();
+            return site(pc, machineCode);
+         }
+         int site = sites++;
+         slots[slot] = site + 1;
+         addresses[site] = pc;
+         decode(site, machineCode);
+         return site;
+      }
+   
+      // Double the site arrays, and the slot table with them, rehashing every site.
+       private void grow() {
+         int capacity = addresses.length * 2;
+         addresses = Arrays.copyOf(addresses, capacity);
+         codes = Arrays.copyOf(codes, capacity);
+         sources = Arrays.copyOf(sources, capacity);
+         destinations = Arrays.copyOf(destinations, capacity);
+         classes = Arrays.copyOf(classes, capacity);
+         executed = Arrays.copyOf(executed, capacity);
+         stalls = Arrays.copyOf(stalls, capacity * CAUSES);
+         slots = new int[capacity * 2];
+         int mask = slots.length - 1;
+         for (int site = 0; site < sites; site++) {
+            int slot = ((addresses[site] >>> 2) * 0x9E3779B1) >>> 7 & mask;
+            while (slots[slot] != 0) {
+               slot = (slot + 1) & mask;
+            }
+            slots[slot] = site + 1;
+         }
+      }
+   
+      // Work out the class and the registers read and written from the machine code.
+       private void decode(int site, int code) {
+         int opcode = code >>> 26;
+         int rs = (code >>> 21) & 0x1F;
+         int rt = (code >>> 16) & 0x1F;
+         int rd = (code >>> 11) & 0x1F;
+         int funct = code & 0x3F;
+         byte kind = ALU;
+         int first = 0, second = 0, destination = 0;
+         switch (opcode) {
+            case 0:
+               switch (funct) {
+                  case 0x00: case 0x02: case 0x03:           // sll srl sra
+                     first = rt;
+                     destination = rd;
+                     break;
+                  case 0x08:                                  // jr
+                     kind = JUMP_REGISTER;
+                     first = rs;
+                     break;
+                  case 0x09:                                  // jalr
+                     kind = JUMP_REGISTER;
+                     first = rs;
+                     destination = rd;
+                     break;
+                  case 0x0C:                                  // syscall: $v0, $a0, result in $v0
+                     first = 2;
+                     second = 4;
+                     destination = 2;
+                     break;
+                  case 0x0D:                                  // break
+                     break;
+                  case 0x10: case 0x12:                       // mfhi mflo
+                     kind = READ_HILO;
+                     destination = rd;
+                     break;
+                  case 0x11: case 0x13:                       // mthi mtlo
+                     kind = WRITE_HILO;
+                     first = rs;
+                     break;
+                  case 0x18: case 0x19:                       // mult multu
+                     kind = MULTIPLY;
+                     first = rs;
+                     second = rt;
+                     break;
+                  case 0x1A: case 0x1B:                       // div divu
+                     kind = DIVIDE;
+                     first = rs;
+                     second = rt;
+                     break;
+                  case 0x01:                                  // movf movt
+                     first = rs;
+                     destination = rd;
+                     break;
+                  default:                                    // sllv ... slt, movz, movn, traps
+                     first = rs;
+                     second = rt;
+                     destination = (funct >= 0x30) ? 0 : rd;
+                     break;
+               }
+               break;
+            case 0x1C:
+               first = rs;
+               if (funct == 0x02) {                           // mul
+                  kind = MUL;
+                  second = rt;
+                  destination = rd;
+               } 
+               else if (funct == 0x20 || funct == 0x21) {     // clz clo
+                  destination = rd;
+               } 
+               else {                                         // madd maddu msub msubu
+                  kind = MULTIPLY_ADD;
+                  second = rt;
+               }
+               break;
+            case 1:                                           // bltz bgez bltzal bgezal, trap immediates
+               first = rs;
+               if (rt == 0 || rt == 1 || rt == 0x10 || rt == 0x11) {
+                  kind = BRANCH;
+                  destination = (rt >= 0x10) ? 31 : 0;
+               }
+               break;
+            case 2:                                           // j
+               kind = JUMP;
+               break;
+            case 3:                                           // jal
+               kind = JUMP;
+               destination = 31;
+               break;
+            case 4: case 5:                                   // beq bne
+               kind = BRANCH;
+               first = rs;
+               second = rt;
+               break;
+            case 6: case 7:                                   // blez bgtz
+               kind = BRANCH;
+               first = rs;
+               break;
+            case 0x0F:                                        // lui
+               destination = rt;
+               break;
+            case 0x10: case 0x11:                             // coprocessor 0 and 1
+               if (opcode == 0x11 && rs == 8) {               // bc1f bc1t
+                  kind = BRANCH;
+               } 
+               else if (rs == 0) {                            // mfc0 mfc1
+                  destination = rt;
+               } 
+               else if (rs == 4) {                            // mtc0 mtc1
+                  first = rt;
+               }
+               break;
+            default:
+               if (opcode >= 0x08 && opcode <= 0x0E) {       // addi ... xori
+                  first = rs;
+                  destination = rt;
+               } 
+               else if (opcode >= 0x20 && opcode <= 0x26 || opcode == 0x30) {   // loads, ll
+                  kind = LOAD;
+                  first = rs;
+                  second = (opcode == 0x22 || opcode == 0x26) ? rt : 0;        // lwl lwr merge into rt
+                  destination = rt;
+               } 
+               else if (opcode == 0x31 || opcode == 0x35) {  // lwc1 ldc1
+                  kind = LOAD;
+                  first = rs;
+               } 
+               else if (opcode >= 0x28 && opcode <= 0x2E || opcode == 0x39 || opcode == 0x3D) {   // stores
+                  first = rs;
+                  second = (opcode < 0x30) ? rt : 0;
+               } 
+               else if (opcode == 0x38) {                    // sc
+                  first = rs;
+                  second = rt;
+                  destination = rt;
+               }
+               break;
+         }
+         codes[site] = code;
+         classes[site] = kind;
+         sources[site] = first | (second << 8);
+         destinations[site] = (byte) destination;
+      }
+   
+   	/**
+   	 * @return number of instructions issued
+   	 */
+       public long getInstructions() {
+         return instructions;
+      }
+   
+   	/**
+   	 * @return number of cycles from the first fetch until the last instruction
+   	 * issued has been written back, 0 if none were
+   	 */
+       public long getCycles() {
+         return (instructions == 0) ? 0 : lastExecute + 2;
+      }
+   
+   	/**
+   	 * Stall cycles of one cause over all instructions.
+   	 *
+   	 * @param cause LOAD_USE, DATA, BRANCH_OPERAND, HILO or CONTROL
+   	 * @return number of cycles
+   	 */
+       public long getStalls(int cause) {
+         long total = 0;
+         for (int site = 0; site < sites; site++) {
+            total += stalls[site * CAUSES + cause];
+         }
+         return total;
+      }
+   
+   	/**
+   	 * @return the settings, as given to create
+   	 */
+       public String toString() {
+         return "forward=" + FORWARD_NAMES[forwarding] + ",branch=" + STAGE_NAMES[branchStage]
+                + ",mul=" + multiplyLatency + ",div=" + divideLatency;
+      }
+   
+      // Site numbers in address order, for the reports.
+       private int[] sitesByAddress() {
+         long[] keyed = new long[sites];
+         for (int site = 0; site < sites; site++) {
+            keyed[site] = ((addresses[site] & 0xFFFFFFFFL) << 32) | site;
+         }
+         Arrays.sort(keyed);
+         int[] order = new int[sites];
+         for (int i = 0; i < sites; i++) {
+            order[i] = (int) keyed[i];
+         }
+         return order;
+      }
+   
+      // Basic assembly statement at an address, as the simulator has it now.
+       private static String statementAt(int address) {
+         try {
+            ProgramStatement statement = Memory.getInstance().getStatementNoNotify(address);
+            if (statement != null) {
+               return statement.getPrintableBasicAssemblyStatement().trim();
+            }
+         } 
+             catch (AddressErrorException e) {
+            }
+         return "";
+      }
+   
+       private long siteCycles(int site) {
+         long cycles = executed[site];
+         for (int cause = 0; cause < CAUSES; cause++) {
+            cycles += stalls[site * CAUSES + cause];
+         }
+         return cycles;
+      }
+   
+   	/**
+   	 * Write the timing as CSV: a header line, a line for the whole run, then a line
+   	 * per statement in address order with how often it was executed, the cycles it
+   	 * took (one per execution plus the cycles it stalled) and its stall cycles by
+   	 * cause.  The line for the whole run has the total cycles, which also count the
+   	 * four cycles to fill the pipeline.
+   	 *
+   	 * @param out where to write
+   	 */
+       public void writeCSV(PrintStream out) {
+         StringBuffer line = new StringBuffer("address,statement,executed,cycles");
+         for (int cause = 0; cause < CAUSES; cause++) {
+            line.append(',').append(CAUSE_NAMES[cause]);
+         }
+         out.println(line);
+         line.setLength(0);
+         line.append("all,\"").append(this).append("\",").append(instructions).append(',').append(getCycles());
+         for (int cause = 0; cause < CAUSES; cause++) {
+            line.append(',').append(getStalls(cause));
+         }
+         out.println(line);
+         int[] order = sitesByAddress();
+         for (int i = 0; i < order.length; i++) {
+            int site = order[i];
+            line.setLength(0);
+            line.append(Binary.intToHexString(addresses[site])).append(",\"");
+            line.append(statementAt(addresses[site]).replaceAll("\"", "\"\"")).append("\",");
+            line.append(executed[site]).append(',').append(siteCycles(site));
+            for (int cause = 0; cause < CAUSES; cause++) {
+               line.append(',').append(stalls[site * CAUSES + cause]);
+            }
+            out.println(line);
+         }
+      }
+   
+   	/**
+   	 * Write the timing as JSON: an object with the settings, total cycles,
+   	 * instructions, cycles per instruction and stall cycles by cause, and the same
+   	 * for each statement in address order, one per line.
+   	 *
+   	 * @param out where to write
+   	 */
+       public void writeJSON(PrintStream out) {
+         StringBuffer json = new StringBuffer();
+         json.append("{\"pipeline\":\"").append(this).append("\",\"cycles\":").append(getCycles());
+         json.append(",\"instructions\":").append(instructions).append(",\"cpi\":");
+         json.append((instructions == 0) ? 0 : Math.round((double) getCycles() / instructions * 1000000) / 1000000.0);
+         json.append(",\"stalls\":{");
+         for (int cause = 0; cause < CAUSES; cause++) {
+            json.append((cause == 0) ? "" : ",").append('"').append(CAUSE_NAMES[cause]).append("\":").append(getStalls(cause));
+         }
+         out.println(json.append("},\"statements\":["));
+         int[] order = sitesByAddress();
+         for (int i = 0; i < order.length; i++) {
+            int site = order[i];
+            json.setLength(0);
+            json.append("{\"address\":\"").append(Binary.intToHexString(addresses[site]));
+            json.append("\",\"statement\":\"").append(statementAt(addresses[site]).replaceAll("[\\\\\"]", "\\\\$0"));
+            json.append("\",\"executed\":").append(executed[site]).append(",\"cycles\":").append(siteCycles(site));
+            json.append(",\"stalls\":{");
+            for (int cause = 0; cause < CAUSES; cause++) {
+               json.append((cause == 0) ? "" : ",").append('"').append(CAUSE_NAMES[cause]).append("\":");
+               json.append(stalls[site * CAUSES + cause]);
+            }
+            out.println(json.append("}}").append((i < order.length - 1) ? "," : ""));
+         }
+         out.println("]}");
+      }
+   }
@@ -0,0 +1,106 @@
+   package mars.mips.pipeline;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Checks the stall counts of <code>PipelineModel</code> on short sequences whose
+ * timing is worked out by hand, the way it is in the textbooks: a register file
+ * written in the first half of WB and read in the second half of ID, and branch
+ * operands needed in ID when branches are resolved there.  Each case issues its
+ * instructions to a new model, none of them taken, and compares the stalls of one
+ * cause with the expected number.
+ * <p>
+ * Usage: <code>java mars.mips.pipeline.PipelineModelCheck</code>.  Prints each case
+ * and exits with status 1 if any fails.
+ *
+ * @version October 2017
+ */
+
+    public class PipelineModelCheck {
+   
+      private static final int T3 = 11, T4 = 12;
+      private static final int NOP = 0;
+      private static final int ALU = addiu(T3, 0, 1);
+      private static final int LOAD = (0x23 << 26) | (29 << 21) | (T3 << 16);
+      private static final int USE = (T3 << 21) | (T3 << 16) | (T4 << 11) | 0x21;      // addu $t4,$t3,$t3
+      private static final int BRANCH = (4 << 26) | (T3 << 21) | 1;                     // beq $t3,$zero,1
+   
+      private static int failures = 0;
+   
+       public static void main(String[] args) {
+         check("no forwarding, ALU result used two later", "forward=none", 
+               new int[] {ALU, NOP, NOP, USE}, PipelineModel.DATA, 0);
+         check("no forwarding, ALU result branched on two later", "forward=none", 
+               new int[] {ALU, NOP, NOP, BRANCH}, PipelineModel.BRANCH_OPERAND, 0);
+         check("no forwarding, ALU result branched on one later", "forward=none", 
+               new int[] {ALU, NOP, BRANCH}, PipelineModel.BRANCH_OPERAND, 1);
+         check("no forwarding, ALU result used next", "forward=none", 
+               new int[] {ALU, USE}, PipelineModel.DATA, 2);
+         check("no forwarding, ALU result branched on next", "forward=none", 
+               new int[] {ALU, BRANCH}, PipelineModel.BRANCH_OPERAND, 2);
+         check("EX forwarding only, ALU result branched on next", "forward=ex", 
+               new int[] {ALU, BRANCH}, PipelineModel.BRANCH_OPERAND, 1);
+         check("full forwarding, ALU result used next", "forward=full", 
+               new int[] {ALU, USE}, PipelineModel.DATA, 0);
+         check("full forwarding, ALU result branched on next", "forward=full", 
+               new int[] {ALU, BRANCH}, PipelineModel.BRANCH_OPERAND, 1);
+         check("full forwarding, load used next", "forward=full", 
+               new int[] {LOAD, USE}, PipelineModel.LOAD_USE, 1);
+         check("full forwarding, load branched on next", "forward=full", 
+               new int[] {LOAD, BRANCH}, PipelineModel.BRANCH_OPERAND, 2);
+         check("no forwarding, load branched on two later", "forward=none", 
+               new int[] {LOAD, NOP, NOP, BRANCH}, PipelineModel.BRANCH_OPERAND, 0);
+         check("branches resolved in EX, ALU result branched on next", "forward=full,branch=ex", 
+               new int[] {ALU, BRANCH}, PipelineModel.DATA, 0);
+         if (failures > 0) {
+            System.out.println(failures + " failed");
+            System.exit(1);
+         }
+         System.out.println("all passed");
+      }
+   
+       private static void check(String name, String settings, int[] code, int cause, long expected) {
+         PipelineModel model = PipelineModel.create(settings, false);
+         for (int i = 0; i < code.length; i++) {
+            model.issue(0x00400000 + 4 * i, code[i], false);
+         }
+         long stalls = model.getStalls(cause);
+         if (stalls == expected) {
+            System.out.println("ok      " + name + ": " + stalls);
+         } 
+         else {
+            System.out.println("FAILED  " + name + ": " + stalls + " stalls, expected " + expected);
+            failures++;
+         }
+      }
+   
+       private static int addiu(int rt, int rs, int immediate) {
+         return (9 << 26) | (rs << 21) | (rt << 16) | (immediate & 0xFFFF);
+      }
+   }
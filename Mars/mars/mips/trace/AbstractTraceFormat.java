@@ -0,0 +1,125 @@
+   package mars.mips.trace;
+   import java.nio.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Abstract class for write trace formats.  Provides constructor and
+ * defaults for everything except the encoding itself.
+ *
+ * @version October 2017
+ */
+
+
+    public abstract class AbstractTraceFormat implements TraceFormat {
+   
+      private String name, commandDescriptor, description, extension;
+      private int maximumEventLength;
+      private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+   	
+   	/**
+   	 *  Typical constructor.  Note you cannot creates objects from this
+   	 *  class but subclass constructor can call this one.
+   	 *  @param name Brief descriptive name of the format.
+   	 *  @param commandDescriptor One-word descriptive name to be used by MARS command mode parser and user.
+   	 *  Any spaces in this string will be removed.
+   	 *  @param description Short description of the format.
+   	 *  @param extension Standard file extension for this format.  Null if none.
+   	 *  @param maximumEventLength Most bytes a single encoded event can take.
+   	 */
+       public AbstractTraceFormat(String name, String commandDescriptor, 
+                                  String description, String extension, int maximumEventLength) {
+         this.name = name;
+         this.commandDescriptor = (commandDescriptor==null) ? null : commandDescriptor.replaceAll(" ","");
+         this.description = description;
+         this.extension = extension;
+         this.maximumEventLength = maximumEventLength;
+      }
+   
+   /**
+   *  Get the file extension associated with this format.
+   *  @return String containing file extension -- without the leading "." -- or
+   *  null if there is no standard extension.
+   */
+       public String getFileExtension() {
+         return extension;
+      }
+   
+   /**
+   *  Get a short description of the format.
+   *  @return String containing short description of the format.
+   */
+       public String getDescription() {
+         return description;
+      }
+   
+   /**
+    * String representing this object.
+    * @return Name given for this object.
+    */
+       public String toString() {
+         return name;
+      }
+   
+   /**
+    * One-word description of format to be used by MARS command mode parser
+    * and user in conjunction with the "trace" option.
+    * @return One-word String describing the format.
+    */
+       public String getCommandDescriptor() {
+         return commandDescriptor;
+      }
+   
+   /**
+    * Upper bound on the number of bytes a single event encodes to.
+    * @return maximum encoded length of one event, in bytes.
+    */
+       public int getMaximumEventLength() {
+         return maximumEventLength;
+      }
+   
+   /**
+   *  Encode one write event into the given buffer.  See <code>TraceFormat</code>.
+   */
+       public abstract void writeEvent(ByteBuffer buffer, int kind, int pc, int target, int value);
+   
+   	/**
+   	 *  Put the given number of low order hex digits of value into the buffer,
+   	 *  lower case, most significant first.  Shared by the text based formats.
+   	 *  @param buffer buffer to put the digits in.
+   	 *  @param value the value to encode.
+   	 *  @param digits number of hex digits, 1 to 8.
+   	 */
+       protected static void putHex(ByteBuffer buffer, int value, int digits) {
+         for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            buffer.put(HEX_DIGITS[(value >>> shift) & 0xF]);
+         }
+      }
+   
+   }
@@ -0,0 +1,117 @@
+   package mars.mips.trace;
+   import java.io.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Compares two binary write traces record by record and reports where they
+ * first diverge.  Meant for checking a MARS trace against one produced by a
+ * hardware simulation without going through text.  From the command line:
+ * <pre>
+ *    java mars.mips.trace.BinaryTraceDiff expected.trc actual.trc [maxDifferences]
+ * </pre>
+ * Exit code is 0 if the traces are identical, 1 if they differ, 2 on error.
+ *
+ * @version October 2017
+ */
+
+    public class BinaryTraceDiff {
+   
+   	/**
+   	 *  Advance both readers in step until their records differ or both end.  On
+   	 *  return the readers are positioned at the differing records, so the caller
+   	 *  can report them, and calling again resumes from the following record.
+   	 *
+   	 *  @param expected reader for the reference trace
+   	 *  @param actual reader for the trace being checked
+   	 *  @return true if a difference (including one trace being longer) was found,
+   	 *  false if both ran out together.
+   	 *  @throws IOException if either trace cannot be read.
+   	 */
+       public static boolean findNextDifference(BinaryTraceReader expected, BinaryTraceReader actual) 
+                                               throws IOException {
+         while (true) {
+            boolean moreExpected = expected.next();
+            boolean moreActual = actual.next();
+            if (moreExpected != moreActual) {
+               return true;
+            }
+            if (!moreExpected) {
+               return false;
+            }
+            if (expected.getPC() != actual.getPC() ||
+                expected.getKind() != actual.getKind() ||
+                expected.getTarget() != actual.getTarget() ||
+                expected.getValue() != actual.getValue()) {
+               return true;
+            }
+         }
+      }
+   
+       public static void main(String[] args) {
+         if (args.length < 2) {
+            System.out.println("Usage:  BinaryTraceDiff expected actual [maxDifferences]");
+            System.exit(2);
+         }
+         int maxDifferences = 1;
+         BinaryTraceReader expected = null, actual = null;
+         int differences = 0;
+         try {
+            if (args.length > 2) {
+               maxDifferences = Integer.parseInt(args[2]);
+            }
+            expected = new BinaryTraceReader(new File(args[0]));
+            actual = new BinaryTraceReader(new File(args[1]));
+            while (differences < maxDifferences && findNextDifference(expected, actual)) {
+               differences++;
+               System.out.println("Difference at record " + Math.max(expected.getRecordNumber(), actual.getRecordNumber()) + ":");
+               System.out.println("   expected: " + expected);
+               System.out.println("   actual:   " + actual);
+               if (expected.isAtEnd() || actual.isAtEnd()) {
+                  break;
+               }
+            }
+            if (differences == 0) {
+               System.out.println("Traces are identical, " + (expected.getRecordNumber() + 1) + " records.");
+            }
+            expected.close();
+            actual.close();
+         } 
+             catch (NumberFormatException e) {
+               System.out.println("Invalid maximum number of differences: " + args[2]);
+               System.exit(2);
+            }
+             catch (IOException e) {
+               System.out.println("Error reading trace: " + e.getMessage());
+               System.exit(2);
+            }
+         System.exit((differences == 0) ? 0 : 1);
+      }
+   
+   }
@@ -0,0 +1,64 @@
+   package mars.mips.trace;
+   import java.nio.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Packed binary trace format.  Every write is a fixed 13-byte record, all
+ * fields big-endian: PC (4 bytes, full address), kind (1 byte, 0 for a
+ * register write and 1 for a memory write), register number or word-aligned
+ * address (4 bytes) and value (4 bytes).  There is no header, so record
+ * <i>n</i> starts at byte 13*<i>n</i>.  See <code>BinaryTraceReader</code>.
+ *
+ * @version October 2017
+ */
+
+    public class BinaryTraceFormat extends AbstractTraceFormat {
+   
+      /** Length in bytes of one record */
+      public static final int RECORD_LENGTH = 13;
+   
+   	/**
+   	 *  Constructor.
+   	 */
+       public BinaryTraceFormat() {
+         super("Binary", "Binary", "Packed binary trace, 13 bytes per write", "trc", RECORD_LENGTH);
+      }
+   
+   /**
+   *  Encode one write event as a 13-byte record.  See <code>TraceFormat</code>.
+   */
+       public void writeEvent(ByteBuffer buffer, int kind, int pc, int target, int value) {
+         buffer.putInt(pc);
+         buffer.put((byte) kind);
+         buffer.putInt(target);
+         buffer.putInt(value);
+      }
+   
+   }
@@ -0,0 +1,184 @@
+   package mars.mips.trace;
+   import mars.util.*;
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Streaming reader for traces written in the packed binary format (see
+ * <code>BinaryTraceFormat</code>).  Records are read through a large buffer
+ * one at a time, and the fields of the current record are available through
+ * getters, so reading a trace of any length allocates nothing per record.
+ * Reading from a pipe waits only for the next record, never for a whole buffer.
+ *
+ * @version October 2017
+ */
+
+    public class BinaryTraceReader implements TraceReader {
+   
+      private static final int BUFFER_RECORDS = 8192;
+   
+      private ReadableByteChannel channel;
+      private ByteBuffer buffer;
+      private long recordNumber;
+      private boolean atEnd;
+      private int pc, kind, target, value;
+   
+   	/**
+   	 *  Open the given trace file for reading.
+   	 *  @param file binary trace file
+   	 *  @throws IOException if the file cannot be opened.
+   	 */
+       public BinaryTraceReader(File file) throws IOException {
+         this(new FileInputStream(file).getChannel());
+      }
+   
+   	/**
+   	 *  Read a trace from the given stream, for example a pipe from another simulator.
+   	 *  @param stream stream of binary trace records
+   	 */
+       public BinaryTraceReader(InputStream stream) {
+         this(Channels.newChannel(stream));
+      }
+   
+       private BinaryTraceReader(ReadableByteChannel channel) {
+         this.channel = channel;
+         this.buffer = ByteBuffer.allocate(BUFFER_RECORDS * BinaryTraceFormat.RECORD_LENGTH);
+         this.buffer.flip(); // start out empty
+         this.recordNumber = -1;
+         this.atEnd = false;
+      }
+   
+   	/**
+   	 *  Advance to the next record.
+   	 *  @return true if there is one, false at the end of the trace.
+   	 *  @throws IOException if reading fails or the trace ends part way through a record.
+   	 */
+       public boolean next() throws IOException {
+         if (atEnd) {
+            return false;
+         }
+         if (buffer.remaining() < BinaryTraceFormat.RECORD_LENGTH) {
+            buffer.compact();
+            while (buffer.position() < BinaryTraceFormat.RECORD_LENGTH && channel.read(buffer) >= 0) {
+               // keep reading until a whole record is in or end of stream
+            }
+            buffer.flip();
+            if (buffer.remaining() < BinaryTraceFormat.RECORD_LENGTH) {
+               atEnd = true;
+               if (buffer.hasRemaining()) {
+                  throw new IOException("trace ends in the middle of record " + (recordNumber + 1));
+               }
+               return false;
+            }
+         }
+         pc = buffer.getInt();
+         kind = buffer.get();
+         target = buffer.getInt();
+         value = buffer.getInt();
+         recordNumber++;
+         return true;
+      }
+   
+   	/**
+   	 *  @return true if next() has run past the last record.
+   	 */
+       public boolean isAtEnd() {
+         return atEnd;
+      }
+   
+   	/**
+   	 *  @return zero-based number of the current record, -1 before the first call to next().
+   	 */
+       public long getRecordNumber() {
+         return recordNumber;
+      }
+   
+   	/**
+   	 *  @return address of the instruction that performed the current write.
+   	 */
+       public int getPC() {
+         return pc;
+      }
+   
+   	/**
+   	 *  @return -1, records give the whole address.
+   	 */
+       public int getPCMask() {
+         return -1;
+      }
+   
+   	/**
+   	 *  @return <code>TraceSink.REGISTER_WRITE</code> or <code>TraceSink.MEMORY_WRITE</code>
+   	 */
+       public int getKind() {
+         return kind;
+      }
+   
+   	/**
+   	 *  @return register number or word-aligned memory address written by the current record.
+   	 */
+       public int getTarget() {
+         return target;
+      }
+   
+   	/**
+   	 *  @return value written by the current record.
+   	 */
+       public int getValue() {
+         return value;
+      }
+   
+   	/**
+   	 *  Close the underlying file or stream.
+   	 *  @throws IOException if closing fails.
+   	 */
+       public void close() throws IOException {
+         channel.close();
+      }
+   
+   	/**
+   	 *  Current record in readable form, for reports.
+   	 *  @return for example "@00400048: $9 &lt;= 0x0005fffc"
+   	 */
+       public String toString() {
+         if (atEnd) {
+            return "end of trace";
+         }
+         if (recordNumber < 0) {
+            return "start of trace";
+         }
+         return "@" + Binary.intToHexString(pc).substring(2) + ": "
+            + ((kind == TraceSink.REGISTER_WRITE) ? "$" + target : "*" + Binary.intToHexString(target))
+            + " <= " + Binary.intToHexString(value);
+      }
+   
+   }
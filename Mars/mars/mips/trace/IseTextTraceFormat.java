@@ -0,0 +1,74 @@
+   package mars.mips.trace;
+   import java.nio.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * The ISE text trace format, one line per write, compatible with the
+ * reference traces: "@0048:$ 9 &lt;= 0005fffc" for a register write and
+ * "@0030:*10010004 &lt;= 0005fffc" for a memory write.  Only the low 16 bits
+ * of the PC are shown.  This is the format used when no other is selected.
+ *
+ * @version October 2017
+ */
+
+    public class IseTextTraceFormat extends AbstractTraceFormat {
+   
+   	/**
+   	 *  Constructor.  There is no standard file extension for this format.
+   	 */
+       public IseTextTraceFormat() {
+         super("ISE Text", "Text", "ISE text trace, one line per write", null, 27);
+      }
+   
+   /**
+   *  Encode one write event as a line of ISE text.  See <code>TraceFormat</code>.
+   */
+       public void writeEvent(ByteBuffer buffer, int kind, int pc, int target, int value) {
+         buffer.put((byte) '@');
+         putHex(buffer, pc, 4);
+         buffer.put((byte) ':');
+         if (kind == TraceSink.REGISTER_WRITE) {
+            buffer.put((byte) '$');
+            buffer.put((target < 10) ? (byte) ' ' : (byte) ('0' + target / 10));
+            buffer.put((byte) ('0' + target % 10));
+         }
+         else {
+            buffer.put((byte) '*');
+            putHex(buffer, target, 8);
+         }
+         buffer.put((byte) ' ');
+         buffer.put((byte) '<');
+         buffer.put((byte) '=');
+         buffer.put((byte) ' ');
+         putHex(buffer, value, 8);
+         buffer.put((byte) '\n');
+      }
+   
+   }
@@ -0,0 +1,308 @@
+   package mars.mips.trace;
+   import mars.util.*;
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Streaming reader for write traces in ISE text (see <code>IseTextTraceFormat</code>),
+ * such as the <code>$display</code> output of a Verilog model of the processor.
+ * Event lines are "@PPPP:$ r &lt;= vvvvvvvv" or "@PPPP:*aaaaaaaa &lt;= vvvvvvvv"; the
+ * PC may have up to 8 hex digits, the register number may or may not be padded,
+ * and spacing around the fields is free.  Lines that do not start with '@' are
+ * other simulator output and are skipped.  Bytes are parsed straight out of the
+ * read buffer, so reading a trace allocates nothing per event, and reading from a
+ * pipe waits only for as much as the next event needs.
+ *
+ * @version October 2017
+ */
+
+    public class IseTextTraceReader implements TraceReader {
+   
+      private static final int BUFFER_BYTES = 1 << 16;
+   
+      private ReadableByteChannel channel;
+      private ByteBuffer buffer;
+      private long recordNumber;
+      private long lineNumber;
+      private boolean atEnd;
+      private int pc, pcMask, pcDigits, kind, target, value;
+   
+   	/**
+   	 *  Open the given trace file, or named pipe, for reading.
+   	 *  @param file ISE text trace file
+   	 *  @throws IOException if the file cannot be opened.
+   	 */
+       public IseTextTraceReader(File file) throws IOException {
+         this(new FileInputStream(file).getChannel());
+      }
+   
+   	/**
+   	 *  Read a trace from the given stream, for example a pipe from another simulator.
+   	 *  @param stream stream of ISE text
+   	 */
+       public IseTextTraceReader(InputStream stream) {
+         this(Channels.newChannel(stream));
+      }
+   
+       private IseTextTraceReader(ReadableByteChannel channel) {
+         this.channel = channel;
+         this.buffer = ByteBuffer.allocate(BUFFER_BYTES);
+         this.buffer.flip(); // start out empty
+         this.recordNumber = -1;
+         this.lineNumber = 0;
+         this.atEnd = false;
+      }
+   
+   	/**
+   	 *  Advance to the next event line.
+   	 *  @return true if there is one, false at the end of the trace.
+   	 *  @throws IOException if reading fails or a line starting with '@' is not a write event.
+   	 */
+       public boolean next() throws IOException {
+         if (atEnd) {
+            return false;
+         }
+         while (true) {
+            int c = read();
+            lineNumber++;
+            while (c == ' ' || c == '\t') {
+               c = read();
+            }
+            if (c == '@') {
+               parseEvent();
+               recordNumber++;
+               return true;
+            }
+            while (c != '\n' && c != -1) {
+               c = read();
+            }
+            if (c == -1) {
+               atEnd = true;
+               return false;
+            }
+         }
+      }
+   
+      // Parse the rest of an event line, the '@' has been read.  Leaves the
+   	// buffer positioned at the start of the next line.
+       private void parseEvent() throws IOException {
+         int c = read();
+         int digits = 0;
+         pc = 0;
+         while (hexDigit(c) >= 0) {
+            pc = (pc << 4) | hexDigit(c);
+            digits++;
+            c = read();
+         }
+         if (digits == 0 || digits > 8 || c != ':') {
+            malformed();
+         }
+         pcDigits = digits;
+         pcMask = (digits == 8) ? -1 : (1 << (4 * digits)) - 1;
+         c = skipSpaces(read());
+         if (c == '$') {
+            kind = TraceSink.REGISTER_WRITE;
+            c = skipSpaces(read());
+            target = 0;
+            digits = 0;
+            while (c >= '0' && c <= '9') {
+               target = target * 10 + (c - '0');
+               digits++;
+               c = read();
+            }
+            if (digits == 0 || target > 31) {
+               malformed();
+            }
+         }
+         else if (c == '*') {
+            kind = TraceSink.MEMORY_WRITE;
+            target = 0;
+            digits = 0;
+            c = read();
+            while (hexDigit(c) >= 0) {
+               target = (target << 4) | hexDigit(c);
+               digits++;
+               c = read();
+            }
+            if (digits == 0 || digits > 8) {
+               malformed();
+            }
+         }
+         else {
+            malformed();
+         }
+         c = skipSpaces(c);
+         if (c != '<' || read() != '=') {
+            malformed();
+         }
+         c = skipSpaces(read());
+         value = 0;
+         digits = 0;
+         while (hexDigit(c) >= 0) {
+            value = (value << 4) | hexDigit(c);
+            digits++;
+            c = read();
+         }
+         if (digits == 0 || digits > 8) {
+            malformed();
+         }
+         while (c != '\n' && c != -1) {
+            c = read();
+         }
+      }
+   
+       private int skipSpaces(int c) throws IOException {
+         while (c == ' ' || c == '\t') {
+            c = read();
+         }
+         return c;
+      }
+   
+       private static int hexDigit(int c) {
+         if (c >= '0' && c <= '9') {
+            return c - '0';
+         }
+         if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+         }
+         if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+         }
+         return -1;
+      }
+   
+       private void malformed() throws IOException {
+         atEnd = true;
+         throw new IOException("line " + lineNumber + " of the trace is not a write event");
+      }
+   
+      // Next byte of the trace, -1 at the end.  Refills the buffer with whatever
+   	// the channel has, without waiting for it to fill up.
+       private int read() throws IOException {
+         if (!buffer.hasRemaining()) {
+            buffer.clear();
+            int count;
+            do {
+               count = channel.read(buffer);
+            } while (count == 0);
+            buffer.flip();
+            if (count < 0) {
+               return -1;
+            }
+         }
+         return buffer.get() & 0xff;
+      }
+   
+   	/**
+   	 *  @return true if next() has run past the last event.
+   	 */
+       public boolean isAtEnd() {
+         return atEnd;
+      }
+   
+   	/**
+   	 *  @return zero-based number of the current event, -1 before the first call to next().
+   	 */
+       public long getRecordNumber() {
+         return recordNumber;
+      }
+   
+   	/**
+   	 *  @return one-based number of the line of the current event.
+   	 */
+       public long getLineNumber() {
+         return lineNumber;
+      }
+   
+   	/**
+   	 *  @return as many low bits of the address of the instruction that performed
+   	 *  the current write as the line gives.
+   	 */
+       public int getPC() {
+         return pc;
+      }
+   
+   	/**
+   	 *  @return mask of the address bits given by the current line, 0xffff for the
+   	 *  usual 4 hex digits.
+   	 */
+       public int getPCMask() {
+         return pcMask;
+      }
+   
+   	/**
+   	 *  @return <code>TraceSink.REGISTER_WRITE</code> or <code>TraceSink.MEMORY_WRITE</code>
+   	 */
+       public int getKind() {
+         return kind;
+      }
+   
+   	/**
+   	 *  @return register number or memory address written by the current event.
+   	 */
+       public int getTarget() {
+         return target;
+      }
+   
+   	/**
+   	 *  @return value written by the current event.
+   	 */
+       public int getValue() {
+         return value;
+      }
+   
+   	/**
+   	 *  Close the underlying file or stream.
+   	 *  @throws IOException if closing fails.
+   	 */
+       public void close() throws IOException {
+         channel.close();
+      }
+   
+   	/**
+   	 *  Current event in readable form, for reports.
+   	 *  @return the event as an ISE text line, without the newline
+   	 */
+       public String toString() {
+         if (atEnd) {
+            return "end of trace";
+         }
+         if (recordNumber < 0) {
+            return "start of trace";
+         }
+         return "@" + Binary.intToHexString(pc).substring(10 - pcDigits) + ":"
+            + ((kind == TraceSink.REGISTER_WRITE) ? ((target < 10) ? "$ " : "$") + target
+                                                   : "*" + Binary.intToHexString(target).substring(2))
+            + " <= " + Binary.intToHexString(value).substring(2);
+      }
+   
+   }
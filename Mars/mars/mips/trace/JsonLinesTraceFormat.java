@@ -0,0 +1,80 @@
+   package mars.mips.trace;
+   import java.nio.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * JSON Lines trace format, one object per write.  Unlike the ISE text format,
+ * the PC is given in full.  Values are 8-digit hex strings, for example
+ * <br><code>{"pc":"00400048","kind":"reg","reg":9,"value":"0005fffc"}</code>
+ * <br><code>{"pc":"00400030","kind":"mem","addr":"10010004","value":"0005fffc"}</code>
+ *
+ * @version October 2017
+ */
+
+    public class JsonLinesTraceFormat extends AbstractTraceFormat {
+   
+      private static final byte[] PC = "{\"pc\":\"".getBytes();
+      private static final byte[] REGISTER = "\",\"kind\":\"reg\",\"reg\":".getBytes();
+      private static final byte[] ADDRESS = "\",\"kind\":\"mem\",\"addr\":\"".getBytes();
+      private static final byte[] REGISTER_VALUE = ",\"value\":\"".getBytes();
+      private static final byte[] ADDRESS_VALUE = "\",\"value\":\"".getBytes();
+      private static final byte[] END = "\"}\n".getBytes();
+   
+   	/**
+   	 *  Constructor.
+   	 */
+       public JsonLinesTraceFormat() {
+         super("JSON Lines", "JSONL", "JSON Lines trace, one object per write", "jsonl", 80);
+      }
+   
+   /**
+   *  Encode one write event as a line holding a JSON object.  See <code>TraceFormat</code>.
+   */
+       public void writeEvent(ByteBuffer buffer, int kind, int pc, int target, int value) {
+         buffer.put(PC);
+         putHex(buffer, pc, 8);
+         if (kind == TraceSink.REGISTER_WRITE) {
+            buffer.put(REGISTER);
+            if (target >= 10) {
+               buffer.put((byte) ('0' + target / 10));
+            }
+            buffer.put((byte) ('0' + target % 10));
+            buffer.put(REGISTER_VALUE);
+         }
+         else {
+            buffer.put(ADDRESS);
+            putHex(buffer, target, 8);
+            buffer.put(ADDRESS_VALUE);
+         }
+         putHex(buffer, value, 8);
+         buffer.put(END);
+      }
+   
+   }
@@ -0,0 +1,309 @@
+   package mars.mips.trace;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.simulator.*;
+   import mars.util.*;
+   import java.io.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Checks the writes of a running simulation, as they happen, against a reference
+ * trace read incrementally from another simulator, typically an RTL model of the
+ * processor writing to a named pipe.  Set it on the <code>TraceSink</code> before
+ * the simulation starts.  On the first write that does not match, it stops the
+ * simulation after the current instruction and keeps a report of the divergence:
+ * the two writes, the last matching writes, the code around the instruction and
+ * the registers.
+ * <p>
+ * Writes made by one instruction may come in a different order in the two traces,
+ * so expected writes are matched in any order among those with the same PC.  A
+ * write is only found missing once the reference trace moves on to another PC.
+ * Comparison works on ints in preallocated arrays and allocates nothing per write.
+ *
+ * @version October 2017
+ */
+
+    public class TraceChecker {
+   
+      private static final int MAXIMUM_PENDING = 256;   // expected writes of one PC not yet matched
+      private static final int CODE_CONTEXT = 4;         // statements shown either side of the PC
+   
+      private final TraceReader expected;
+      private boolean haveNext;         // expected is at an event not yet compared
+      private boolean groupOpen;        // some write of groupPC has been checked
+      private int groupPC;
+      private final int[] pending = new int[MAXIMUM_PENDING * 3]; // kind, target, value
+      private int pendingCount;
+      private final int[] history;      // pc, kind, target, value of the last matching writes
+      private final int historyLength;
+      private long matched;
+      private boolean diverged;
+      private int divergencePC;
+      private String expectedWrite, actualWrite;
+   
+   	/**
+   	 *  Create a checker reading the reference trace from the given reader.
+   	 *
+   	 *  @param expected reader for the reference trace, positioned at its start
+   	 *  @param historyLength number of matching writes to show before a divergence
+   	 */
+       public TraceChecker(TraceReader expected, int historyLength) {
+         this.expected = expected;
+         this.historyLength = historyLength;
+         this.history = new int[historyLength * 4];
+      }
+   
+   	/**
+   	 *  Compare a write of the simulation with the reference trace.  Called by the
+   	 *  <code>TraceSink</code> on the simulating thread, for each write.
+   	 *
+   	 *  @param kind <code>TraceSink.REGISTER_WRITE</code> or <code>TraceSink.MEMORY_WRITE</code>
+   	 *  @param pc address of the instruction that performed the write
+   	 *  @param target register number or word-aligned memory address
+   	 *  @param value value written
+   	 */
+       public void check(int kind, int pc, int target, int value) {
+         if (diverged) {
+            return;
+         }
+         try {
+            if (groupOpen && pc != groupPC && !closeGroup()) {
+               diverge(groupPC, describePending(), describe(kind, pc, target, value));
+               return;
+            }
+            groupOpen = true;
+            groupPC = pc;
+            if (matchPending(kind, target, value) || matchExpected(kind, target, value)) {
+               if (historyLength > 0) {
+                  int slot = (int) (matched % historyLength) * 4;
+                  history[slot] = pc;
+                  history[slot + 1] = kind;
+                  history[slot + 2] = target;
+                  history[slot + 3] = value;
+               }
+               matched++;
+               return;
+            }
+            diverge(pc, (pendingCount > 0) ? describePending() : expected.toString(),
+                    describe(kind, pc, target, value));
+         } 
+             catch (IOException e) {
+               diverge(pc, "unreadable, " + e.getMessage(), describe(kind, pc, target, value));
+            }
+      }
+   
+   	/**
+   	 *  Check that the reference trace has no writes left over once the simulation
+   	 *  has ended.  Not for a simulation stopped short, at a step limit for instance.
+   	 *
+   	 *  @return true if every write matched, false if the traces diverged
+   	 */
+       public boolean finish() {
+         if (diverged) {
+            return false;
+         }
+         try {
+            if (groupOpen && !closeGroup()) {
+               diverge(groupPC, describePending(), "none, the program ended");
+               return false;
+            }
+            groupOpen = false;
+            if (!haveNext) {
+               haveNext = expected.next();
+            }
+            if (haveNext) {
+               diverge(RegisterFile.getProgramCounter(), expected.toString(), "none, the program ended");
+            }
+         } 
+             catch (IOException e) {
+               diverge(RegisterFile.getProgramCounter(), "unreadable, " + e.getMessage(), "none, the program ended");
+            }
+         return !diverged;
+      }
+   
+   	/**
+   	 *  @return true if a write did not match the reference trace
+   	 */
+       public boolean hasDiverged() {
+         return diverged;
+      }
+   
+   	/**
+   	 *  @return number of writes that matched the reference trace
+   	 */
+       public long getMatchedCount() {
+         return matched;
+      }
+   
+   	/**
+   	 *  Print the context of the divergence: the expected and actual writes, the
+   	 *  writes that matched just before, the code around the instruction, and the
+   	 *  registers as they are now, after that instruction.
+   	 *
+   	 *  @param out where to print the report
+   	 */
+       public void writeReport(PrintStream out) {
+         if (!diverged) {
+            out.println("Co-simulation matched all " + matched + " writes.");
+            return;
+         }
+         out.println("Co-simulation diverged after " + matched + " matching writes, at the instruction at "
+                     + Binary.intToHexString(divergencePC) + ":");
+         out.println("   expected: " + expectedWrite);
+         out.println("   actual:   " + actualWrite);
+         int shown = (int) Math.min(matched, historyLength);
+         if (shown > 0) {
+            out.println("Last " + shown + " matching writes:");
+            for (long w = matched - shown; w < matched; w++) {
+               int slot = (int) (w % historyLength) * 4;
+               out.println("   " + describe(history[slot + 1], history[slot], history[slot + 2], history[slot + 3]));
+            }
+         }
+         out.println("Code around " + Binary.intToHexString(divergencePC) + ":");
+         Memory memory = Memory.getInstance();
+         for (int address = divergencePC - CODE_CONTEXT * Memory.WORD_LENGTH_BYTES;
+              address <= divergencePC + CODE_CONTEXT * Memory.WORD_LENGTH_BYTES;
+              address += Memory.WORD_LENGTH_BYTES) {
+            ProgramStatement statement = null;
+            try {
+               statement = memory.getStatementNoNotify(address);
+            } 
+                catch (AddressErrorException e) {
+                  // outside the text segment, nothing to show
+               }
+            if (statement != null) {
+               out.println(((address == divergencePC) ? "   => " : "      ") + Binary.intToHexString(address)
+                           + "  " + statement.getPrintableBasicAssemblyStatement());
+            }
+         }
+         out.println("Registers:");
+         Register[] registers = RegisterFile.getRegisters();
+         StringBuffer line = new StringBuffer();
+         for (int i = 0; i < 32; i++) {
+            line.append("   ").append(registers[i].getName());
+            for (int pad = registers[i].getName().length(); pad < 5; pad++) {
+               line.append(' ');
+            }
+            line.append(' ').append(Binary.intToHexString(registers[i].getValueNoNotify()));
+            if (i % 4 == 3) {
+               out.println(line);
+               line.setLength(0);
+            }
+         }
+         out.println("   pc    " + Binary.intToHexString(RegisterFile.getProgramCounter())
+                     + "   hi    " + Binary.intToHexString(RegisterFile.getValue(33))
+                     + "   lo    " + Binary.intToHexString(RegisterFile.getValue(34)));
+      }
+   
+   	/**
+   	 *  Close the reference trace.
+   	 *  @throws IOException if closing fails.
+   	 */
+       public void close() throws IOException {
+         expected.close();
+      }
+   
+      // Match a write against expected writes of this PC read earlier, out of order.
+       private boolean matchPending(int kind, int target, int value) {
+         for (int i = 0; i < pendingCount * 3; i += 3) {
+            if (pending[i] == kind && pending[i + 1] == target && pending[i + 2] == value) {
+               pendingCount--;
+               System.arraycopy(pending, i + 3, pending, i, pendingCount * 3 - i);
+               return true;
+            }
+         }
+         return false;
+      }
+   
+      // Read on through the expected writes of this PC until one matches the write,
+   	// keeping those passed over for later writes of the same instruction.
+       private boolean matchExpected(int kind, int target, int value) throws IOException {
+         while (nextOfGroup()) {
+            if (expected.getKind() == kind && expected.getTarget() == target && expected.getValue() == value) {
+               haveNext = false;
+               return true;
+            }
+            if (pendingCount == MAXIMUM_PENDING) {
+               return false;
+            }
+            keepPending();
+         }
+         return false;
+      }
+   
+      // Done with the writes of groupPC.  Read in the rest of its expected writes;
+   	// true if every one of them has been matched.
+       private boolean closeGroup() throws IOException {
+         while (pendingCount < MAXIMUM_PENDING && nextOfGroup()) {
+            keepPending();
+         }
+         return pendingCount == 0;
+      }
+   
+      // Position expected at its next event, if that is one of groupPC.
+       private boolean nextOfGroup() throws IOException {
+         if (!haveNext) {
+            haveNext = expected.next();
+            if (!haveNext) {
+               return false;
+            }
+         }
+         return (groupPC & expected.getPCMask()) == expected.getPC();
+      }
+   
+       private void keepPending() {
+         int slot = pendingCount * 3;
+         pending[slot] = expected.getKind();
+         pending[slot + 1] = expected.getTarget();
+         pending[slot + 2] = expected.getValue();
+         pendingCount++;
+         haveNext = false;
+      }
+   
+       private void diverge(int pc, String expectedWrite, String actualWrite) {
+         this.diverged = true;
+         this.divergencePC = pc;
+         this.expectedWrite = expectedWrite;
+         this.actualWrite = actualWrite;
+         Simulator.getInstance().stopExecution(null);
+      }
+   
+       private String describePending() {
+         return describe(pending[0], groupPC, pending[1], pending[2]);
+      }
+   
+       private static String describe(int kind, int pc, int target, int value) {
+         return "@" + Binary.intToHexString(pc).substring(2) + ":"
+            + ((kind == TraceSink.REGISTER_WRITE) ? ((target < 10) ? "$ " : "$") + target
+                                                   : "*" + Binary.intToHexString(target).substring(2))
+            + " <= " + Binary.intToHexString(value).substring(2);
+      }
+   
+   }
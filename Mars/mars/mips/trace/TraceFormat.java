@@ -0,0 +1,92 @@
+   package mars.mips.trace;
+   import java.nio.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Interface for write trace formats.  A format turns each register or memory
+ * write event recorded by the <code>TraceSink</code> into bytes.  Formats are
+ * specified through classes that implement this interface, and are found at
+ * runtime by <code>TraceFormatLoader</code>.
+ *
+ * @version October 2017
+ */
+
+
+    public interface TraceFormat {
+   
+   /**
+   *  Get the file extension associated with this format.
+   *  @return String containing file extension -- without the leading "." -- or
+	*  null if there is no standard extension.
+   */
+       public String getFileExtension();
+   
+   /**
+   *  Get a short description of the format, suitable for displaying
+   *  along with the extension or as a tool tip.
+	*  @return String containing short description of the format.
+   */
+       public String getDescription();
+
+   /**
+	 * A short one-word descriptor that will be used by the MARS
+	 * command line parser (and the MARS command line user) to specify
+	 * that this format is to be used.
+	 * @return One-word String describing the format.
+	 */
+       public String getCommandDescriptor();
+		 
+   /**
+    * Descriptive name for the format. 
+	 * @return Format name.
+    */
+       public String toString();
+
+   /**
+    * Upper bound on the number of bytes <code>writeEvent</code> will put in the
+	 * buffer for a single event.  The caller guarantees at least this much room.
+	 * @return maximum encoded length of one event, in bytes.
+    */
+       public int getMaximumEventLength();
+	    
+   /**
+   *  Encode one write event into the given buffer.
+   *
+   *  @param buffer buffer to put the encoded event in, at its current position.
+   *  @param kind <code>TraceSink.REGISTER_WRITE</code> or <code>TraceSink.MEMORY_WRITE</code>
+   *  @param pc address of the instruction that performed the write.
+   *  @param target register number for a register write, word-aligned address for
+   *  a memory write.
+   *  @param value value written to the register, or full content of the memory word
+   *  after the write.
+   */
+       public void writeEvent(ByteBuffer buffer, int kind, int pc, int target, int value);
+   
+   }
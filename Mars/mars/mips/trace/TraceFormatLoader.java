@@ -0,0 +1,188 @@
+   package mars.mips.trace;
+   import mars.util.*;
+   import java.util.*;
+   import java.lang.reflect.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+    /****************************************************************************/
+    /* This class provides functionality to bring external write trace format definitions
+     * into MARS.  It works the same way as DumpFormatLoader does for memory dump formats:
+     * any concrete class in the trace directory that implements TraceFormat is picked up.
+     */
+    
+    public class TraceFormatLoader {
+      
+      private static final String CLASS_PREFIX = "mars.mips.trace.";
+      private static final String TRACE_DIRECTORY_PATH = "mars/mips/trace";
+      private static final String CLASS_EXTENSION = "class";
+      
+      private static ArrayList formatList = null;
+      private static ArrayList index = null;
+      private static boolean indexRead = false;
+   	
+     /**
+      *  Dynamically loads trace formats into an ArrayList.  Also see the DumpFormatLoader,
+      *  ToolLoader and SyscallLoader classes elsewhere in MARS.  The formats are the ones
+      *  listed in the trace directory's plugin index (see PluginIndex), or if there is
+      *  none, every TraceFormat class in that directory.
+      *  @return ArrayList of TraceFormat objects, one per format.
+      */
+   	
+       public ArrayList loadTraceFormats() {
+         // The list will be populated only the first time this method is called.
+         if (formatList == null) {
+            formatList = new ArrayList();
+            ArrayList entries = readIndex();
+            if (entries != null) {
+               for (int i = 0; i < entries.size(); i++) {
+                  TraceFormat format = create((String[]) entries.get(i));
+                  if (format != null) {
+                     formatList.add(format);
+                  }
+               }
+               return formatList;
+            }
+            formatList = scanTraceFormats();
+         }
+         return formatList;
+      }
+   
+     /**
+      *  Get the trace format with the given command descriptor.  If the formats have
+      *  not all been loaded and there is a plugin index, only that one is created.
+      *  A format the index does not list is looked for in the trace directory.
+      *  @param formatCommandDescriptor command descriptor of the format, e.g. Text
+      *  @return the format, or null if there is none with that command descriptor.
+      */
+       public TraceFormat loadTraceFormat(String formatCommandDescriptor) {
+         ArrayList entries = readIndex();
+         if (formatList == null && entries != null) {
+            for (int i = 0; i < entries.size(); i++) {
+               String[] entry = (String[]) entries.get(i);
+               if (entry.length > 1 && entry[1].equals(formatCommandDescriptor)) {
+                  return create(entry);
+               }
+            }
+         } 
+         else {
+            TraceFormat format = findTraceFormatGivenCommandDescriptor(loadTraceFormats(), formatCommandDescriptor);
+            if (format != null || entries == null) {
+               return format;
+            }
+         }
+         // Not in the index, which may be out of date: look through the directory.
+         TraceFormat format = findTraceFormatGivenCommandDescriptor(scanTraceFormats(), formatCommandDescriptor);
+         if (format != null) {
+            PluginIndex.reportMissing(TRACE_DIRECTORY_PATH, formatCommandDescriptor);
+         }
+         return format;
+      }
+   
+     /**
+      *  Get the command descriptors of all the trace formats, without creating
+      *  them if there is a plugin index.
+      *  @return ArrayList of String, one per format.
+      */
+       public ArrayList getCommandDescriptors() {
+         ArrayList descriptors = new ArrayList();
+         ArrayList entries = readIndex();
+         if (formatList == null && entries != null) {
+            for (int i = 0; i < entries.size(); i++) {
+               String[] entry = (String[]) entries.get(i);
+               if (entry.length > 1) {
+                  descriptors.add(entry[1]);
+               }
+            }
+            return descriptors;
+         }
+         ArrayList formats = loadTraceFormats();
+         for (int i = 0; i < formats.size(); i++) {
+            descriptors.add(((TraceFormat) formats.get(i)).getCommandDescriptor());
+         }
+         return descriptors;
+      }
+   
+      // Every TraceFormat class in the trace directory.
+       private ArrayList scanTraceFormats() {
+         ArrayList formats = new ArrayList();
+         // grab all class files in the trace directory
+         ArrayList candidates = FilenameFinder.getFilenameList(this.getClass( ).getClassLoader(),
+                                           TRACE_DIRECTORY_PATH, CLASS_EXTENSION);
+         for( int i = 0; i < candidates.size(); i++) {
+            String file = (String) candidates.get(i);
+            try {
+               // grab the class, make sure it implements TraceFormat, instantiate, add to list
+               String formatClassName = CLASS_PREFIX+file.substring(0, file.indexOf(CLASS_EXTENSION)-1);
+               Class clas = Class.forName(formatClassName);
+               if (TraceFormat.class.isAssignableFrom(clas) && 
+                   !Modifier.isAbstract(clas.getModifiers()) &&
+               	 !Modifier.isInterface(clas.getModifiers())   ) {
+                  formats.add(clas.newInstance());
+               }
+            } 
+                catch (Exception e) {
+                  System.out.println("Error instantiating TraceFormat from file " + file + ": "+e);
+               }
+         }
+         return formats;
+      }
+   
+       private ArrayList readIndex() {
+         if (!indexRead) {
+            index = PluginIndex.read(this.getClass().getClassLoader(), TRACE_DIRECTORY_PATH);
+            indexRead = true;
+         }
+         return index;
+      }
+   
+      // Create the format named by a plugin index entry, null if that fails.
+       private static TraceFormat create(String[] entry) {
+         try {
+            return (TraceFormat) PluginIndex.create(entry[0], TraceFormat.class);
+         } 
+             catch (Exception e) {
+               System.out.println("Error instantiating TraceFormat " + entry[0] + ": "+e);
+               return null;
+            }
+      }
+   	
+       public static TraceFormat findTraceFormatGivenCommandDescriptor(ArrayList formatList, String formatCommandDescriptor) {
+         TraceFormat match = null;
+         for (int i=0; i<formatList.size(); i++) {
+            if (((TraceFormat)formatList.get(i)).getCommandDescriptor().equals(formatCommandDescriptor)) {
+               match = (TraceFormat) formatList.get(i);
+               break;
+            }
+         }
+         return match;
+      }
+   			
+         
+   }
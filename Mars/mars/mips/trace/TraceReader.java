@@ -0,0 +1,93 @@
+   package mars.mips.trace;
+   import java.io.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Reads a write trace back one event at a time, for comparing it with another.
+ * The fields of the current event are available through getters, so an
+ * implementation need not allocate anything per event.
+ *
+ * @version October 2017
+ */
+
+    public interface TraceReader {
+   
+   	/**
+   	 *  Advance to the next event.
+   	 *  @return true if there is one, false at the end of the trace.
+   	 *  @throws IOException if the trace cannot be read or is malformed.
+   	 */
+       public boolean next() throws IOException;
+   
+   	/**
+   	 *  @return true if next() has run past the last event.
+   	 */
+       public boolean isAtEnd();
+   
+   	/**
+   	 *  @return zero-based number of the current event, -1 before the first call to next().
+   	 */
+       public long getRecordNumber();
+   
+   	/**
+   	 *  @return address of the instruction that performed the current write, or as
+   	 *  much of it as the trace gives (see <code>getPCMask</code>).
+   	 */
+       public int getPC();
+   
+   	/**
+   	 *  Some traces give only the low bits of the PC, ISE text for instance gives 16.
+   	 *  @return mask selecting the bits of an address that <code>getPC</code> gives,
+   	 *  -1 if it gives the whole address.
+   	 */
+       public int getPCMask();
+   
+   	/**
+   	 *  @return <code>TraceSink.REGISTER_WRITE</code> or <code>TraceSink.MEMORY_WRITE</code>
+   	 */
+       public int getKind();
+   
+   	/**
+   	 *  @return register number or word-aligned memory address written by the current event.
+   	 */
+       public int getTarget();
+   
+   	/**
+   	 *  @return value written by the current event.
+   	 */
+       public int getValue();
+   
+   	/**
+   	 *  Close the underlying file or stream.
+   	 *  @throws IOException if closing fails.
+   	 */
+       public void close() throws IOException;
+   
+   }
@@ -0,0 +1,344 @@
+   package mars.mips.trace;
+   import mars.*;
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Collects the write trace (one event per register or memory write) produced by
+ * <code>RegisterFile</code> and <code>Memory</code>.  Write events are recorded as raw
+ * ints in a preallocated ring buffer by the simulating thread, and a background writer
+ * thread encodes them in batches, using the selected <code>TraceFormat</code>, and pushes
+ * the bytes through a large buffered channel.  By default the trace is ISE text written
+ * to standard output in command mode, or to the MARS Messages pane in the IDE; a trace
+ * file and format can be chosen with <code>setDestination</code>.  Each
+ * <code>MachineContext</code> has its own TraceSink, writing to that context's
+ * standard output.  A <code>TraceChecker</code> can be set to compare each write with a
+ * reference trace as it is recorded.
+ * <p>
+ * Output must stay in order with everything else MARS writes to standard output,
+ * so anything that prints (syscalls, the command-mode post-mortem, simulation end)
+ * calls <code>flush()</code> first.  The simulating thread formats the backlog itself
+ * whenever the ring is full, so it never waits on the writer thread.
+ *
+ * @version October 2017
+ */
+
+    public class TraceSink implements Runnable {
+
+      /** Event kind for a write to a general purpose register */
+      public static final int REGISTER_WRITE = 0;
+      /** Event kind for a write to memory, value is the full aligned word after the write */
+      public static final int MEMORY_WRITE = 1;
+
+      private static final int RING_CAPACITY = 1 << 16;   // events, must be power of 2
+      private static final int RING_MASK = RING_CAPACITY - 1;
+      private static final int EVENT_INTS = 4;            // kind, pc, target, value
+      private static final int OUTPUT_BUFFER_BYTES = 1 << 18;
+      private static final long WRITER_INTERVAL_MS = 50;
+
+      // Ring of events.  Slots [tail, head) hold events not yet written.  Producer
+   	// owns head, the writer owns tail; both are only touched while holding "this".
+      private final int[] ring = new int[RING_CAPACITY * EVENT_INTS];
+      private long head = 0;
+      private long tail = 0;
+
+      // Held while formatting and writing, so the writer thread and a flushing
+   	// producer never interleave their output.
+      private final Object writeLock = new Object();
+      private final ByteBuffer output = ByteBuffer.allocate(OUTPUT_BUFFER_BYTES);
+      private TraceFormat format = new IseTextTraceFormat();
+      private WritableByteChannel channel = null;   // null means standard output or Messages pane
+      private final OutputStream standardOutput;
+      private WritableByteChannel stdout = null;
+      private Thread writer = null;
+      private boolean enabled = true;
+      private TraceChecker checker = null;
+
+   	/**
+   	 * Returns the TraceSink of the current <code>MachineContext</code>.
+   	 *
+   	 * @return the TraceSink object in use
+   	 */
+       public static TraceSink getInstance() {
+         return MachineContext.getCurrent().getTraceSink();
+      }
+
+   	/**
+   	 * Create a trace sink, for use by a <code>MachineContext</code>.  Everyone else
+   	 * should use getInstance().
+   	 *
+   	 * @param standardOutput where the trace goes when no file has been given
+   	 */
+       public TraceSink(OutputStream standardOutput) {
+         this.standardOutput = standardOutput;
+      }
+
+   	/**
+   	 * Make sure the tail end of the trace is not lost if MARS exits through
+   	 * System.exit() without closing the sink.
+   	 */
+       public void flushAtExit() {
+         Runtime.getRuntime().addShutdownHook(
+               new Thread() {
+                  public void run() {
+                     flush();
+                  }
+               });
+      }
+
+   	/**
+   	 * Record a write to general purpose register.
+   	 *
+   	 * @param pc address of the instruction that performed the write
+   	 * @param register register number, 0-31
+   	 * @param value value written
+   	 */
+       public void registerWrite(int pc, int register, int value) {
+         record(REGISTER_WRITE, pc, register, value);
+      }
+
+   	/**
+   	 * Record a write to memory.
+   	 *
+   	 * @param pc address of the instruction that performed the write
+   	 * @param address word-aligned address of the word that was written
+   	 * @param word full content of that word after the write
+   	 */
+       public void memoryWrite(int pc, int address, int word) {
+         record(MEMORY_WRITE, pc, address, word);
+      }
+
+   	/**
+   	 * Format and write out every event recorded so far, and wait until it is done.
+   	 * Call this before writing anything else to the trace destination.
+   	 */
+       public void flush() {
+         drain();
+      }
+
+   	/**
+   	 * Send the trace to the given file, in the given format, from now on.
+   	 * Anything already recorded is written out to the previous destination first.
+   	 *
+   	 * @param format format to write the trace in
+   	 * @param file file to write the trace to.  If null, the trace goes to standard
+   	 * output (Messages pane in the IDE), which only makes sense for text formats.
+   	 * @throws IOException if the file cannot be created
+   	 */
+       public void setDestination(TraceFormat format, File file) throws IOException {
+         synchronized (writeLock) {
+            drain();
+            closeChannel();
+            if (file != null) {
+               channel = new FileOutputStream(file).getChannel();
+            }
+            this.format = format;
+         }
+      }
+   
+   	/**
+   	 * Compare every write, from now on, with a reference trace.  Set this before the
+   	 * simulation starts; the checker is called on the simulating thread.
+   	 *
+   	 * @param checker checker to give each write to, null for none
+   	 */
+       public void setChecker(TraceChecker checker) {
+         this.checker = checker;
+      }
+   
+   	/**
+   	 * @return the checker writes are given to, null if none
+   	 */
+       public TraceChecker getChecker() {
+         return checker;
+      }
+   
+   	/**
+   	 * Turn tracing on or off.  While it is off, writes are not recorded at all,
+   	 * though a checker, if set, still sees them.  It is on to begin with.
+   	 *
+   	 * @param enabled false to stop recording writes, true to record them again
+   	 */
+       public void setEnabled(boolean enabled) {
+         this.enabled = enabled;
+      }
+   
+   	/**
+   	 * @return true if writes are being recorded
+   	 */
+       public boolean isEnabled() {
+         return enabled;
+      }
+   
+   	/**
+   	 * Write out everything recorded so far and close the trace file, if there is one.
+   	 * The writer thread is let go until something else is recorded.  Further writes go
+   	 * to standard output (Messages pane in the IDE).
+   	 */
+       public void close() {
+         synchronized (writeLock) {
+            drain();
+            closeChannel();
+         }
+         synchronized (this) {
+            writer = null;
+            notify();
+         }
+      }
+   
+       private void closeChannel() {
+         if (channel != null) {
+            try {
+               channel.close();
+            }
+                catch (IOException e) {
+                  // nothing more can be written to it anyway
+               }
+            channel = null;
+         }
+      }
+   
+       private void record(int kind, int pc, int target, int value) {
+         if (checker != null) {
+            checker.check(kind, pc, target, value);
+         }
+         if (!enabled) {
+            return;
+         }
+         while (true) {
+            synchronized (this) {
+               if (head - tail < RING_CAPACITY) {
+                  int slot = ((int) head & RING_MASK) * EVENT_INTS;
+                  ring[slot] = kind;
+                  ring[slot + 1] = pc;
+                  ring[slot + 2] = target;
+                  ring[slot + 3] = value;
+                  head++;
+                  if (writer == null) {
+                     startWriter();
+                  }
+                  else if (head - tail == (RING_CAPACITY >> 1)) {
+                     notify(); // half full, get the writer going
+                  }
+                  return;
+               }
+            }
+            // Ring is full.  Rather than wait for the writer, do its work here.
+            drain();
+         }
+      }
+
+       private void startWriter() {
+         writer = new Thread(this, "MARS trace writer");
+         writer.setDaemon(true);
+         writer.start();
+      }
+
+   	/**
+   	 * Body of the writer thread.  Wakes up periodically, or when the ring is
+   	 * half full, and writes out whatever has accumulated, until the sink is closed.
+   	 */
+       public void run() {
+         while (true) {
+            synchronized (this) {
+               if (writer != Thread.currentThread()) {
+                  return;
+               }
+               try {
+                  if (head == tail) {
+                     wait(WRITER_INTERVAL_MS);
+                  }
+               }
+                   catch (InterruptedException e) {
+                     return;
+                  }
+            }
+            drain();
+         }
+      }
+
+      // Format and write events [tail, head) as of the time of the call.  The slots
+   	// are not released to the producer until they have been formatted.
+       private void drain() {
+         synchronized (writeLock) {
+            long first, last;
+            synchronized (this) {
+               first = tail;
+               last = head;
+            }
+            if (first == last) {
+               return;
+            }
+            for (long e = first; e < last; e++) {
+               if (output.remaining() < format.getMaximumEventLength()) {
+                  writeOutput();
+               }
+               int slot = ((int) e & RING_MASK) * EVENT_INTS;
+               format.writeEvent(output, ring[slot], ring[slot + 1], ring[slot + 2], ring[slot + 3]);
+            }
+            writeOutput();
+            synchronized (this) {
+               tail = last;
+            }
+         }
+      }
+
+      // Hand buffered bytes to their destination: the trace file if one was given,
+   	// else the Messages pane when running the IDE, otherwise standard output.
+       private void writeOutput() {
+         output.flip();
+         if (output.hasRemaining()) {
+            if (channel == null && Globals.getGui() != null) {
+               Globals.getGui().getMessagesPane().postLogMessage(
+                     new String(output.array(), 0, output.limit()));
+            }
+            else {
+               try {
+                  WritableByteChannel destination = channel;
+                  if (destination == null) {
+                     if (stdout == null) {
+                        stdout = Channels.newChannel(standardOutput);
+                     }
+                     destination = stdout;
+                  }
+                  while (output.hasRemaining()) {
+                     destination.write(output);
+                  }
+               }
+                   catch (IOException e) {
+                     // nowhere left to report it; drop this batch
+                  }
+            }
+         }
+         output.clear();
+      }
+   }
@@ -3,6 +3,9 @@
    import mars.venus.*;
    import mars.mips.hardware.*;
    import mars.mips.instructions.*;
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
    import java.util.*;
 
 /*
@@ -53,20 +56,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final int COPROC1_CONDITION_CLEAR = 8;
       private static final int COPROC1_CONDITION_SET = 9;
       private static final int DO_NOTHING = 10;  // instruction does not write anything.
+      // Added to the action of a back step taken by an instruction in the delay slot.
+      private static final int IN_DELAY_SLOT = 0x100;
    
-      // Flag to mark BackStep object as prepresenting specific situation: user manipulates
-   	// memory/register value via GUI after assembling program but before running it.
-      private static final int NOT_PC_VALUE = -1;
-   	
       private boolean engaged;
-      private BackstepStack backSteps;
+      private BackstepJournal backSteps;
    	
-   	// One can argue using java.util.Stack, given its clumsy implementation.
-   	// A homegrown linked implementation will be more streamlined, but
-   	// I anticipate that backstepping will only be used during timed
-   	// (currently max 30 instructions/second) or stepped execution, where
-   	// performance is not an issue.  Its Vector implementation may result
-   	// in quicker garbage collection than a pure linked list implementation.
+   	// Back stepping used to be meant for timed or stepped execution only, where
+   	// performance is not an issue.  But it is also handy for stepping back through
+   	// a long run, so recording a step has to be cheap: see BackstepJournal below.
    
        /**
    	  * Create a fresh BackStepper.  It is enabled, which means all
@@ -75,7 +73,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  */
        public BackStepper() {
          engaged = true;
-         backSteps = new BackstepStack(Globals.maximumBacksteps);
+         backSteps = new BackstepJournal(Globals.maximumBacksteps, Globals.maximumBackstepFileMegabytes);
       }
    
        /**
@@ -94,6 +92,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          engaged = state;
       }
    
+      /**
+   	 * Forget every step recorded so far and give up the temporary file holding
+   	 * the oldest of them, if there is one.  Call this when the BackStepper is
+   	 * replaced or the program is reset, since the file otherwise stays open until
+   	 * MARS exits.  The BackStepper can go on recording afterwards.
+   	 */
+       public void close() {
+         backSteps.close();
+      }
+   
       /**
    	 * Test whether there are steps that can be undone.
    	 * @return true if there are no steps to be undone, false otherwise.
@@ -110,7 +118,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */
    	// Added 25 June 2007
        public boolean inDelaySlot() {
-         return !empty() && backSteps.peek().inDelaySlot;
+         return !empty() && (backSteps.action[backSteps.top()] & IN_DELAY_SLOT) != 0;
       }
    	
       /**
@@ -123,53 +131,53 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 // all store their result in register pairs which results in two store operations.  
    	 // Both must be undone transparently, so we need to detect that multiple steps happen
    	 // together and carry out all of them here.  
-   	 // Use a do-while loop based on the backstep's program statement reference.
+   	 // Use a do-while loop based on the backstep's program counter value.
    	 
        public void backStep() {
          if (engaged && !backSteps.empty()) {
-            ProgramStatement statement = ((BackStep)backSteps.peek()).ps;
+            int statement = backSteps.pc[backSteps.top()];
             engaged = false; // GOTTA DO THIS SO METHOD CALL IN SWITCH WILL NOT RESULT IN NEW ACTION ON STACK!
             do {
-               BackStep step = (BackStep) backSteps.pop();
-            /*
-            	System.out.println("backstep POP: action "+step.action+" pc "+mars.util.Binary.intToHexString(step.pc)+
-            	                   " source "+((step.ps==null)? "none":step.ps.getSource())+
-            							 " parm1 "+step.param1+" parm2 "+step.param2);
-            */
-               if (step.pc != NOT_PC_VALUE) {
-                  RegisterFile.setProgramCounter(step.pc);
+               int top = backSteps.top();
+               int action = backSteps.action[top] & ~IN_DELAY_SLOT;
+               int pc = backSteps.pc[top];
+               int param1 = backSteps.param1[top];
+               int param2 = backSteps.param2[top];
+               backSteps.pop();
+               if (isStatementAddress(pc)) {
+                  RegisterFile.setProgramCounter(pc);
                }
                try {
-                  switch (step.action) {
+                  switch (action) {
                      case MEMORY_RESTORE_RAW_WORD : 
-                        Globals.memory.setRawWord(step.param1, step.param2);
+                        Memory.getInstance().setRawWord(param1, param2);
                         break;
                      case MEMORY_RESTORE_WORD : 
-                        Globals.memory.setWord(step.param1, step.param2);
+                        Memory.getInstance().setWord(param1, param2);
                         break;
                      case MEMORY_RESTORE_HALF :
-                        Globals.memory.setHalf(step.param1, step.param2);
+                        Memory.getInstance().setHalf(param1, param2);
                         break;
                      case MEMORY_RESTORE_BYTE :
-                        Globals.memory.setByte(step.param1, step.param2);
+                        Memory.getInstance().setByte(param1, param2);
                         break;
                      case REGISTER_RESTORE :
-                        RegisterFile.updateRegister(step.param1, step.param2);
+                        RegisterFile.updateRegister(param1, param2);
                         break;
                      case PC_RESTORE : 
-                        RegisterFile.setProgramCounter(step.param1);
+                        RegisterFile.setProgramCounter(param1);
                         break;
                      case COPROC0_REGISTER_RESTORE :
-                        Coprocessor0.updateRegister(step.param1, step.param2);
+                        Coprocessor0.updateRegister(param1, param2);
                         break;
                      case COPROC1_REGISTER_RESTORE :
-                        Coprocessor1.updateRegister(step.param1, step.param2);
+                        Coprocessor1.updateRegister(param1, param2);
                         break;
                      case COPROC1_CONDITION_CLEAR :
-                        Coprocessor1.clearConditionFlag(step.param1);
+                        Coprocessor1.clearConditionFlag(param1);
                         break;
                      case COPROC1_CONDITION_SET :
-                        Coprocessor1.setConditionFlag(step.param1);
+                        Coprocessor1.setConditionFlag(param1);
                         break;
                      case DO_NOTHING :
                         break;
@@ -180,10 +188,28 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      System.out.println("Internal MARS error: address exception while back-stepping.");
                      System.exit(0);
                   }
-            } while (!backSteps.empty() && statement == ((BackStep)backSteps.peek()).ps);
+            } while (!backSteps.empty() && statement == backSteps.pc[backSteps.top()]);
             engaged = true;  // RESET IT (was disabled at top of loop -- see comment)
          }
       }
+   
+      /* Whether the program counter recorded with a back step is the address of a
+   	 * statement, so can be restored.  It is not when the user modifies memory or
+   	 * register contents through direct manipulation on the GUI, after assembling the
+   	 * program but before starting to run it (or after backstepping all the way to
+   	 * the start).  The action will not be associated with any instruction, but will
+   	 * be carried out when popped.  This used to be worked out for every step as it was
+   	 * recorded; it is only needed for the ones actually undone.
+   	 */
+       private static boolean isStatementAddress(int pc) {
+         try {
+            Memory.getInstance().getStatementNoNotify(pc);
+            return true;
+         } 
+             catch (Exception e) {
+               return false;
+            }
+      }
   
      
       /* Convenience method called below to get program counter value.  If it needs to be
@@ -324,137 +350,210 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  * @return 0
    	  */
        public int addDoNothing(int pc) {
-         if (backSteps.empty() || backSteps.peek().pc != pc) { 
+         if (backSteps.empty() || backSteps.pc[backSteps.top()] != pc) { 
             backSteps.push(DO_NOTHING, pc);
          }
          return 0;
       }
    	
    		   	 	
-   	// Represents a "back step" (undo action) on the stack.
-       private class BackStep {
-         private int action;  // what do do MEMORY_RESTORE_WORD, etc
-         private int pc;      // program counter value when original step occurred
-         private ProgramStatement ps;   // statement whose action is being "undone" here
-         private int param1;  // first parameter required by that action
-         private int param2;  // optional second parameter required by that action
-         private boolean inDelaySlot; // true if instruction executed in "delay slot" (delayed branching enabled)
-      
-         // it is critical that BackStep object get its values by calling this method
-      	// rather than assigning to individual members, because of the technique used
-      	// to set its ps member (and possibly pc).
-          private void assign(int act, int programCounter, int parm1, int parm2) {
-            action = act;
-            pc     = programCounter;
-            try {
-            // Client does not have direct access to program statement, and rather than making all
-            // of them go through the methods below to obtain it, we will do it here.  
-            // Want the program statement but do not want observers notified.
-               ps = Globals.memory.getStatementNoNotify(programCounter);
-            } 
-                catch (Exception e) {
-                // The only situation causing this so far: user modifies memory or register
-                // contents through direct manipulation on the GUI, after assembling the program but
-                // before starting to run it (or after backstepping all the way to the start).
-                // The action will not be associated with any instruction, but will be carried out
-                // when popped.
-                  ps = null;
-                  pc = NOT_PC_VALUE; // Backstep method above will see this as flag to not set PC
-               } 
-            param1 = parm1;
-            param2 = parm2;
-            inDelaySlot = Simulator.inDelaySlot(); // ADDED 25 June 2007
-         /*				
-            System.out.println("backstep PUSH: action "+action+" pc "+mars.util.Binary.intToHexString(pc)+
-         		                   " source "+((ps==null)? "none":ps.getSource())+
-         								 " parm1 "+param1+" parm2 "+param2);
-         */
-         }
-      }
-   	
    	// *****************************************************************************
-   	// special purpose stack class for backstepping.  You've heard of circular queues
-   	// implemented with an array, right?  This is a circular stack!  When full, the
-   	// newly-pushed item overwrites the oldest item, with circular top!  All operations 
-   	// are constant time.  It's synchronized too, to be safe (is used by both the 
-   	// simulation thread and the GUI thread for the back-step button).
-   	// Upon construction, it is filled with newly-created empty BackStep objects which
-   	// will exist for the life of the stack.  Push does not create a BackStep object 
-   	// but instead overwrites the contents of the existing one.  Thus during MIPS
-   	// program (simulated) execution, BackStep objects are never created or junked
-   	// regardless of how many steps are executed.  This will speed things up a bit
-   	// and make life easier for the garbage collector.
+   	// The journal of back steps.  Steps are kept as parallel int arrays rather than
+   	// objects: recording one is four array stores, with nothing to look up and no
+   	// lock to take.  The statement a step belongs to is not looked up when it is
+   	// recorded; steps of the same instruction are recognized by their program counter
+   	// when undone.  The journal is used by the simulation thread while the program
+   	// runs and by the GUI thread (back-step button) while it does not, never both at
+   	// once, so it needs no synchronization of its own.
+   	//
+   	// Up to "capacity" steps are held in memory.  When that fills up, the oldest
+   	// half is moved to a memory-mapped temporary file and the rest slide down; when
+   	// back stepping empties the arrays, the newest half-load is brought back.  The file
+   	// is used as a circular buffer of those half-loads, so once it reaches its size
+   	// limit the oldest are overwritten.  Without a file (limit 0, or it cannot be
+   	// created) the oldest half is simply dropped.
    	
-       private class BackstepStack {
-         private int capacity;
-         private int size;
-         private int top;
-         private BackStep[] stack;
+       private static class BackstepJournal {
+         private final int capacity;   // steps held in memory
+         private final int chunk;      // steps moved to or from the file at a time
+         private final int fileChunks; // capacity of the file, in chunks
+         private final int[] action;   // action, plus IN_DELAY_SLOT
+         private final int[] pc;       // program counter value when original step occurred
+         private final int[] param1;   // first parameter required by that action
+         private final int[] param2;   // optional second parameter required by that action
+         private int size;             // steps in memory, the newest at size-1
+         private SpillFile file;       // null until first needed
+         private boolean noFile;       // set if the file could not be created or written
       
-          // Stack is created upon successful assembly or reset.  The one-time overhead of
-      	 // creating all the BackStep objects will not be noticed by the user, and enhances
-      	 // runtime performance by not having to create or recycle them during MIPS
-      	 // program execution.
-          private BackstepStack(int capacity) {
-            this.capacity = capacity;
+          private BackstepJournal(int capacity, int fileMegabytes) {
+            this.capacity = Math.max(2, capacity);
+            this.chunk = this.capacity / 2;
+            long chunkBytes = 16L * chunk;  // four ints per step
+            this.fileChunks = (int) Math.min(Integer.MAX_VALUE, ((long) fileMegabytes << 20) / chunkBytes);
+            this.noFile = fileChunks == 0;
+            this.action = new int[this.capacity];
+            this.pc = new int[this.capacity];
+            this.param1 = new int[this.capacity];
+            this.param2 = new int[this.capacity];
             this.size = 0;
-            this.top = -1;
-            this.stack = new BackStep[capacity];
-            for (int i=0; i<capacity; i++) {
-               this.stack[i] = new BackStep();
-            }
          }
-      	
-          private synchronized boolean empty() {
-            return size==0;
+      
+          private boolean empty() {
+            return size == 0 && (file == null || file.count == 0);
          }
-         
-          private synchronized void push(int act, int programCounter, int parm1, int parm2) {
-            if (size==0) {
-               top=0;
-               size++;
-            } 
-            else if (size < capacity) {
-               top = (top + 1) % capacity;
-               size++;
-            } 
-            else { // size == capacity.  The top moves up one, replacing oldest entry (goodbye!)
-               top = (top + 1) % capacity;
+      
+          private void push(int act, int programCounter, int parm1, int parm2) {
+            if (size == capacity) {
+               makeRoom();
             }
-         	// We'll re-use existing objects rather than create/discard each time.
-         	// Must use assign() method rather than series of assignment statements!
-            stack[top].assign(act, programCounter, parm1, parm2);
+            action[size] = Simulator.inDelaySlot() ? act | IN_DELAY_SLOT : act; // ADDED 25 June 2007
+            pc[size] = programCounter;
+            param1[size] = parm1;
+            param2[size] = parm2;
+            size++;
          }
-      	
-          private synchronized void push(int act, int programCounter, int parm1) {
+      
+          private void push(int act, int programCounter, int parm1) {
             push(act, programCounter, parm1, 0);
          }
-      	
-          private synchronized void push(int act, int programCounter) {
+      
+          private void push(int act, int programCounter) {
             push(act, programCounter, 0, 0);
          }
-         
+      
+      	// Index of the newest step, bringing steps back from the file if need be.
       	// NO PROTECTION.  This class is used only within this file so there is no excuse
-      	// for trying to pop from empty stack.
-          private synchronized BackStep pop() {
-            BackStep bs;
-            bs = stack[top];
-            if (size==1) {
-               top = -1;
-            } 
-            else {
-               top = (top + capacity - 1) % capacity;
+      	// for trying to look at the top of an empty journal.
+          private int top() {
+            if (size == 0) {
+               file.read(this);
+               size = chunk;
             }
+            return size - 1;
+         }
+      
+      	// Drop the newest step.  Call top() first.
+          private void pop() {
             size--;
-            return bs;
          }
       
-      	// NO PROTECTION.  This class is used only within this file so there is no excuse
-      	// for trying to peek from empty stack.         
-          private synchronized BackStep peek() {
-            return stack[top];
+      	// Drop every step, closing the file.
+          private void close() {
+            size = 0;
+            if (file != null) {
+               file.close();
+               file = null;
+            }
+         }
+      
+      	// Move the oldest chunk out of the arrays, to the file if possible.
+          private void makeRoom() {
+            if (!noFile) {
+               try {
+                  if (file == null) {
+                     file = new SpillFile(chunk, fileChunks);
+                  }
+                  file.write(this);
+               } 
+                   catch (IOException e) {
+                     noFile = true; // carry on with what is in memory
+                  }
+            }
+            int keep = size - chunk;
+            System.arraycopy(action, chunk, action, 0, keep);
+            System.arraycopy(pc, chunk, pc, 0, keep);
+            System.arraycopy(param1, chunk, param1, 0, keep);
+            System.arraycopy(param2, chunk, param2, 0, keep);
+            size = keep;
+         }
+      }
+   
+   	// *****************************************************************************
+   	// Temporary file holding chunks of a BackstepJournal's oldest steps, as a circular
+   	// buffer of "capacity" chunks.  Each chunk is stored as the four arrays one after
+   	// the other.  The file is mapped in segments of up to SEGMENT_BYTES, created as
+   	// needed and each holding a whole number of chunks.  The file is deleted as soon
+   	// as it is open, where the system allows that, so nothing is left behind even if
+   	// MARS does not get to close it; elsewhere it goes on close() or when MARS exits.
+   	
+       private static class SpillFile {
+         private static final int SEGMENT_BYTES = 1 << 26;
+         private final int chunk;
+         private final int chunkBytes;
+         private final int capacity;
+         private final int segmentChunks;
+         private final File temp;
+         private final FileChannel channel;
+         private final MappedByteBuffer[] segments;
+         private long next;            // number of chunks ever written, less those read back
+         private int count;            // number of chunks that can be read back
+      
+          private SpillFile(int chunk, int capacity) throws IOException {
+            this.chunk = chunk;
+            this.chunkBytes = 16 * chunk;
+            this.capacity = capacity;
+            this.segmentChunks = Math.max(1, SEGMENT_BYTES / chunkBytes);
+            this.segments = new MappedByteBuffer[(capacity + segmentChunks - 1) / segmentChunks];
+            this.temp = File.createTempFile("marsbackstep", ".tmp");
+            this.channel = new RandomAccessFile(temp, "rw").getChannel();
+            if (!temp.delete()) {
+               temp.deleteOnExit(); // still open, which some systems do not allow deleting
+            }
+         }
+      
+      	// Close the file and delete it if that was not done when it was opened.  The
+      	// mapped segments go when they are garbage collected.
+          private void close() {
+            Arrays.fill(segments, null);
+            try {
+               channel.close();
+            } 
+                catch (IOException e) {
+                  // nothing more is read from it anyway
+               }
+            temp.delete();
+         }
+      
+      	// Append the oldest chunk of the journal's arrays.
+          private void write(BackstepJournal journal) throws IOException {
+            IntBuffer ints = chunkAt(next);
+            ints.put(journal.action, 0, chunk);
+            ints.put(journal.pc, 0, chunk);
+            ints.put(journal.param1, 0, chunk);
+            ints.put(journal.param2, 0, chunk);
+            next++;
+            count = Math.min(count + 1, capacity);
+         }
+      
+      	// Take back the newest chunk, into the start of the journal's arrays.
+          private void read(BackstepJournal journal) {
+            next--;
+            count--;
+            IntBuffer ints;
+            try {
+               ints = chunkAt(next);
+            } 
+                catch (IOException e) {
+                  throw new IllegalStateException("back-step file: " + e); // it was written, so is mapped
+               }
+            ints.get(journal.action, 0, chunk);
+            ints.get(journal.pc, 0, chunk);
+            ints.get(journal.param1, 0, chunk);
+            ints.get(journal.param2, 0, chunk);
+         }
+      
+          private IntBuffer chunkAt(long chunkNumber) throws IOException {
+            int slot = (int) (chunkNumber % capacity);
+            int segment = slot / segmentChunks;
+            if (segments[segment] == null) {
+               long start = (long) segment * segmentChunks * chunkBytes;
+               long length = (long) Math.min(segmentChunks, capacity - segment * segmentChunks) * chunkBytes;
+               segments[segment] = channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+            }
+            ByteBuffer bytes = segments[segment].duplicate();
+            bytes.position((slot % segmentChunks) * chunkBytes);
+            return bytes.order(ByteOrder.nativeOrder()).asIntBuffer();
          }
-      			
       }
    
-   }
\ No newline at end of file
+   }
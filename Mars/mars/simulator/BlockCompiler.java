@@ -0,0 +1,1026 @@
+   package mars.simulator;
+   import mars.mips.hardware.*;
+   import mars.mips.instructions.*;
+   import java.io.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Translates hot straight runs of statements into JVM classes, for
+ * <code>TurboEngine</code>.  A block starts where control arrives and runs up to
+ * and including the first branch or jump (and its delay slot when delayed
+ * branching is enabled), or up to the first statement the engine does not
+ * handle itself, whichever comes first.  The generated code does exactly what
+ * the engine's interpreter would do for each statement, with the registers in
+ * JVM locals: it records the same register writes with the same PCs, and goes
+ * through <code>Memory</code> for loads and stores.
+ * <p>
+ * A statement that would raise an exception (arithmetic overflow, bad address)
+ * ends the run in front of it, so the simulation code can raise it.  Stores are
+ * left out of blocks when self-modifying code is enabled, since they could change
+ * the block itself.  Class files are written by hand, in the version 49 format,
+ * which needs no stack map frames; each block gets its own class loader so it
+ * can be unloaded once nothing refers to it.
+ *
+ * @version October 2017
+ */
+
+    public class BlockCompiler {
+   
+      /** Maximum number of statements in a block */
+      static final int MAXIMUM_LENGTH = 64;
+   
+      private static final String BLOCK_CLASS = "mars/simulator/GeneratedBlock";
+      private static final String SUPER_CLASS = "mars/simulator/CompiledBlock";
+      private static final String RUN_DESCRIPTOR =
+            "([ILmars/mips/hardware/Memory;Lmars/mips/trace/TraceSink;Lmars/mips/hardware/Register;)I";
+      private static int blocksCompiled = 0;
+   
+      // Opcodes used.
+      private static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14,
+              ILOAD = 0x15, LLOAD = 0x16, ALOAD = 0x19, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c, ALOAD_3 = 0x2d,
+              IALOAD = 0x2e, ISTORE = 0x36, LSTORE = 0x37, IASTORE = 0x4f, POP = 0x57,
+              IADD = 0x60, ISUB = 0x64, LMUL = 0x69, IDIV = 0x6c, LDIV = 0x6d, IREM = 0x70, LREM = 0x71,
+              ISHL = 0x78, ISHR = 0x7a, LSHR = 0x7b, IUSHR = 0x7c, IAND = 0x7e, LAND = 0x7f, IOR = 0x80, IXOR = 0x82,
+              I2L = 0x85, L2I = 0x88, IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e,
+              IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPGE = 0xa2, GOTO = 0xa7, IRETURN = 0xac, RETURN = 0xb1,
+              INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7;
+   
+      // Fixed locals of run(); register locals follow.
+      private static final int REGISTERS = 1, MEMORY = 2, TRACE = 3, PC_REGISTER = 4, NEXT = 5, COUNT = 6,
+              A = 7, B = 8, V = 9, P = 10, Q = 12, HI_LOCAL = 14, LO_LOCAL = 15, FIRST_REGISTER_LOCAL = 16;
+   
+      private final boolean delayed;
+      private final ArrayList statements = new ArrayList();
+      private final ConstantPool pool = new ConstantPool();
+      private byte[] code = new byte[4096];
+      private int length = 0;
+      private final int[] registerLocals = new int[32];
+      private int localCount = FIRST_REGISTER_LOCAL;
+      private boolean hiLoUsed = false;
+      private int[] labels = new int[16];
+      private int labelCount = 0;
+      private final ArrayList fixups = new ArrayList();     // int[] {branch position, label}
+      private final ArrayList exits = new ArrayList();      // int[] {label, statement index, pc, exception}
+      private final ArrayList handlers = new ArrayList();   // int[] {start, end, exit label}
+   
+       private BlockCompiler(boolean delayed) {
+         this.delayed = delayed;
+      }
+   
+   	/**
+   	 * Translate the block starting at the given statement.
+   	 *
+   	 * @param cache cache to fetch the statements of the block from
+   	 * @param head first statement of the block
+   	 * @param delayed true if delayed branching is enabled
+   	 * @param selfModifying true if self-modifying code is enabled
+   	 * @return the block, or null if fewer than two statements starting there
+   	 * can be translated.
+   	 */
+       static CompiledBlock compile(InstructionCache cache, DecodedInstruction head, boolean delayed, boolean selfModifying) {
+         BlockCompiler compiler = new BlockCompiler(delayed);
+         int version = cache.getVersion();
+         compiler.collect(cache, head, selfModifying);
+         if (compiler.statements.size() < 2) {
+            return null;
+         }
+         try {
+            byte[] classFile = compiler.generate();
+            String name;
+            synchronized (BlockCompiler.class) {
+               name = BLOCK_CLASS + (blocksCompiled++);
+            }
+            classFile = compiler.finish(name, classFile);
+            Class blockClass = new BlockLoader().define(name.replace('/', '.'), classFile);
+            CompiledBlock block = (CompiledBlock) blockClass.newInstance();
+            block.statements = (DecodedInstruction[]) compiler.statements.toArray(new DecodedInstruction[0]);
+            block.cacheVersion = version;
+            return block;
+         } 
+             catch (Exception e) {
+               return null; // the interpreter will do
+            }
+             catch (LinkageError e) {
+               return null;
+            }
+      }
+   
+      // Pick the statements of the block.
+       private void collect(InstructionCache cache, DecodedInstruction d, boolean selfModifying) {
+         while (d != null && d.valid && statements.size() < MAXIMUM_LENGTH) {
+            int op = TurboEngine.operation(d);
+            if (op == TurboEngine.FALLBACK || (selfModifying && isStore(op))) {
+               return;
+            }
+            if (isControl(op)) {
+               if (delayed) {
+                  DecodedInstruction slot = fetch(cache, d);
+                  if (slot == null || !slot.valid || statements.size() + 2 > MAXIMUM_LENGTH) {
+                     return;
+                  }
+                  int slotOp = TurboEngine.operation(slot);
+                  if (slotOp == TurboEngine.FALLBACK || isControl(slotOp) || canFail(slotOp)) {
+                     return; // leave it to the interpreter, which handles the delay slot the usual way
+                  }
+                  statements.add(d);
+                  statements.add(slot);
+               } 
+               else {
+                  statements.add(d);
+               }
+               return;
+            }
+            statements.add(d);
+            d = fetch(cache, d);
+         }
+      }
+   
+       private static DecodedInstruction fetch(InstructionCache cache, DecodedInstruction d) {
+         try {
+            return cache.fetch(d.getNextAddress(), d);
+         } 
+             catch (AddressErrorException e) {
+               return null;
+            }
+      }
+   
+       private static boolean isControl(int op) {
+         return op >= TurboEngine.BEQ && op <= TurboEngine.BLTZAL || op >= TurboEngine.J && op <= TurboEngine.JALR_RA;
+      }
+   
+       private static boolean isStore(int op) {
+         return op == TurboEngine.SW || op == TurboEngine.SB || op == TurboEngine.SH;
+      }
+   
+      // Statements that may stop the block in front of them.
+       private static boolean canFail(int op) {
+         switch (op) {
+            case TurboEngine.ADD: case TurboEngine.SUB: case TurboEngine.ADDI:
+            case TurboEngine.LW: case TurboEngine.LB: case TurboEngine.LBU: case TurboEngine.LH: case TurboEngine.LHU:
+            case TurboEngine.SW: case TurboEngine.SB: case TurboEngine.SH:
+               return true;
+            default:
+               return false;
+         }
+      }
+   
+      /////////////////////////////////////////////////////////////////////////
+      // Code of run(), without the prologue loading the registers into locals.
+   
+       private byte[] generate() {
+         int exit = newLabel();
+         boolean ended = false;
+         for (int k = 0; k < statements.size(); k++) {
+            DecodedInstruction d = (DecodedInstruction) statements.get(k);
+            ended |= statement(d, k, exit);
+         }
+         DecodedInstruction last = (DecodedInstruction) statements.get(statements.size() - 1);
+         if (!ended) {
+            pushInt(last.getNextAddress());
+            store(ISTORE, NEXT);
+         }
+         pushInt(statements.size());
+         store(ISTORE, COUNT);
+         // Shared exit: put every register used back in the array.
+         place(exit);
+         for (int i = 1; i < 32; i++) {
+            if (registerLocals[i] != 0) {
+               op(ALOAD_1);
+               pushInt(i);
+               load(ILOAD, registerLocals[i]);
+               op(IASTORE);
+            }
+         }
+         if (hiLoUsed) {
+            op(ALOAD_1);
+            pushInt(CompiledBlock.HI);
+            load(ILOAD, HI_LOCAL);
+            op(IASTORE);
+            op(ALOAD_1);
+            pushInt(CompiledBlock.LO);
+            load(ILOAD, LO_LOCAL);
+            op(IASTORE);
+         }
+         op(ALOAD_1);
+         pushInt(CompiledBlock.EXECUTED);
+         load(ILOAD, COUNT);
+         op(IASTORE);
+         load(ILOAD, NEXT);
+         op(IRETURN);
+         // Early exits, in front of the statement that has to raise an exception.
+         for (int i = 0; i < exits.size(); i++) {
+            int[] e = (int[]) exits.get(i);
+            place(e[0]);
+            if (e[3] != 0) {
+               op(POP);
+            }
+            pushInt(e[2]);
+            store(ISTORE, NEXT);
+            pushInt(e[1]);
+            store(ISTORE, COUNT);
+            jump(GOTO, exit);
+         }
+         for (int i = 0; i < fixups.size(); i++) {
+            int[] f = (int[]) fixups.get(i);
+            int offset = labels[f[1]] - f[0];
+            code[f[0] + 1] = (byte) (offset >> 8);
+            code[f[0] + 2] = (byte) offset;
+         }
+         byte[] body = new byte[length];
+         System.arraycopy(code, 0, body, 0, length);
+         return body;
+      }
+   
+      // Code for one statement, k-th of the block.  Returns true if it set NEXT.
+       private boolean statement(DecodedInstruction d, int k, int exit) {
+         int pc = d.address;
+         int next = pc + Instruction.INSTRUCTION_LENGTH;
+         int link = next + (delayed ? Instruction.INSTRUCTION_LENGTH : 0);
+         int fallThrough = link;
+         switch (d.operation) {
+            case TurboEngine.NOP:
+               return false;
+            case TurboEngine.ADD:
+            case TurboEngine.SUB:
+            case TurboEngine.ADDI:
+               register(d.op1);
+               store(ISTORE, A);
+               if (d.operation == TurboEngine.ADDI) {
+                  pushInt(d.op2 << 16 >> 16);
+               } 
+               else {
+                  register(d.op2);
+               }
+               store(ISTORE, B);
+               load(ILOAD, A);
+               load(ILOAD, B);
+               op((d.operation == TurboEngine.SUB) ? ISUB : IADD);
+               store(ISTORE, V);
+               // Overflow if the result's sign differs from that of both addends,
+            	// or for a difference, from the first operand where the operands differ.
+               load(ILOAD, A);
+               load(ILOAD, V);
+               op(IXOR);
+               load(ILOAD, (d.operation == TurboEngine.SUB) ? A : B);
+               if (d.operation == TurboEngine.SUB) {
+                  load(ILOAD, B);
+               } 
+               else {
+                  load(ILOAD, V);
+               }
+               op(IXOR);
+               op(IAND);
+               jump(IFLT, exitBefore(k, pc, false));
+               load(ILOAD, V);
+               writeRegister(pc, d.op0);
+               return false;
+            case TurboEngine.ADDU:
+               binary(d, IADD);
+               return false;
+            case TurboEngine.SUBU:
+               binary(d, ISUB);
+               return false;
+            case TurboEngine.ADDIU:
+               register(d.op1);
+               pushInt(d.op2 << 16 >> 16);
+               op(IADD);
+               writeRegister(pc, d.op0);
+               return false;
+            case TurboEngine.MULT:
+            case TurboEngine.MULTU:
+               register(d.op0);
+               op(I2L);
+               if (d.operation == TurboEngine.MULTU) {
+                  unsigned();
+               }
+               register(d.op1);
+               op(I2L);
+               if (d.operation == TurboEngine.MULTU) {
+                  unsigned();
+               }
+               op(LMUL);
+               store(LSTORE, P);
+               setHiLo();
+               return false;
+            case TurboEngine.MUL:
+               register(d.op1);
+               op(I2L);
+               register(d.op2);
+               op(I2L);
+               op(LMUL);
+               store(LSTORE, P);
+               load(LLOAD, P);
+               op(L2I);
+               writeRegister(pc, d.op0);
+               setHiLo();
+               return false;
+            case TurboEngine.DIV:
+               {
+                  int skip = newLabel();
+                  hiLoUsed = true;
+                  register(d.op1);
+                  jump(IFEQ, skip);
+                  register(d.op0);
+                  register(d.op1);
+                  op(IREM);
+                  store(ISTORE, HI_LOCAL);
+                  register(d.op0);
+                  register(d.op1);
+                  op(IDIV);
+                  store(ISTORE, LO_LOCAL);
+                  place(skip);
+               }
+               return false;
+            case TurboEngine.DIVU:
+               {
+                  int skip = newLabel();
+                  hiLoUsed = true;
+                  register(d.op1);
+                  jump(IFEQ, skip);
+                  register(d.op0);
+                  op(I2L);
+                  unsigned();
+                  store(LSTORE, P);
+                  register(d.op1);
+                  op(I2L);
+                  unsigned();
+                  store(LSTORE, Q);
+                  load(LLOAD, P);
+                  load(LLOAD, Q);
+                  op(LREM);
+                  op(L2I);
+                  store(ISTORE, HI_LOCAL);
+                  load(LLOAD, P);
+                  load(LLOAD, Q);
+                  op(LDIV);
+                  op(L2I);
+                  store(ISTORE, LO_LOCAL);
+                  place(skip);
+               }
+               return false;
+            case TurboEngine.MFHI:
+            case TurboEngine.MFLO:
+               hiLoUsed = true;
+               load(ILOAD, (d.operation == TurboEngine.MFHI) ? HI_LOCAL : LO_LOCAL);
+               writeRegister(pc, d.op0);
+               return false;
+            case TurboEngine.MTHI:
+            case TurboEngine.MTLO:
+               hiLoUsed = true;
+               register(d.op0);
+               store(ISTORE, (d.operation == TurboEngine.MTHI) ? HI_LOCAL : LO_LOCAL);
+               return false;
+            case TurboEngine.AND:
+               binary(d, IAND);
+               return false;
+            case TurboEngine.OR:
+               binary(d, IOR);
+               return false;
+            case TurboEngine.XOR:
+               binary(d, IXOR);
+               return false;
+            case TurboEngine.NOR:
+               register(d.op1);
+               register(d.op2);
+               op(IOR);
+               pushInt(-1);
+               op(IXOR);
+               writeRegister(pc, d.op0);
+               return false;
+            case TurboEngine.ANDI:
+               immediate(d, d.op2 & 0x0000FFFF, IAND);
+               return false;
+            case TurboEngine.ORI:
+               immediate(d, d.op2 & 0x0000FFFF, IOR);
+               return false;
+            case TurboEngine.XORI:
+               immediate(d, d.op2 & 0x0000FFFF, IXOR);
+               return false;
+            case TurboEngine.SLL:
+               immediate(d, d.op2, ISHL);
+               return false;
+            case TurboEngine.SRL:
+               immediate(d, d.op2, IUSHR);
+               return false;
+            case TurboEngine.SRA:
+               immediate(d, d.op2, ISHR);
+               return false;
+            case TurboEngine.SLLV:
+               variableShift(d, ISHL);
+               return false;
+            case TurboEngine.SRLV:
+               variableShift(d, IUSHR);
+               return false;
+            case TurboEngine.SRAV:
+               variableShift(d, ISHR);
+               return false;
+            case TurboEngine.ROTR:
+               register(d.op1);
+               pushInt(d.op2);
+               op(IUSHR);
+               register(d.op1);
+               pushInt(32 - d.op2);
+               op(ISHL);
+               op(IOR);
+               writeRegister(pc, d.op0);
+               return false;
+            case TurboEngine.LUI:
+               pushInt(d.op1 << 16);
+               writeRegister(pc, d.op0);
+               return false;
+            case TurboEngine.LW:
+               memoryLoad(d, k, "getWord");
+               writeRegister(pc, d.op0);
+               return false;
+            case TurboEngine.LB:
+            case TurboEngine.LBU:
+               memoryLoad(d, k, "getByte");
+               if (d.operation == TurboEngine.LB) {
+                  pushInt(24);
+                  op(ISHL);
+                  pushInt(24);
+                  op(ISHR);
+               } 
+               else {
+                  pushInt(0x000000ff);
+                  op(IAND);
+               }
+               writeRegister(pc, d.op0);
+               return false;
+            case TurboEngine.LH:
+            case TurboEngine.LHU:
+               memoryLoad(d, k, "getHalf");
+               if (d.operation == TurboEngine.LH) {
+                  pushInt(16);
+                  op(ISHL);
+                  pushInt(16);
+                  op(ISHR);
+               } 
+               else {
+                  pushInt(0x0000ffff);
+                  op(IAND);
+               }
+               writeRegister(pc, d.op0);
+               return false;
+            case TurboEngine.SW:
+               memoryStore(d, k, "setWord", 0);
+               return false;
+            case TurboEngine.SB:
+               memoryStore(d, k, "setByte", 0x000000ff);
+               return false;
+            case TurboEngine.SH:
+               memoryStore(d, k, "setHalf", 0x0000ffff);
+               return false;
+            case TurboEngine.SLT:
+            case TurboEngine.SLTU:
+               register(d.op1);
+               if (d.operation == TurboEngine.SLTU) {
+                  flipSign();
+               }
+               register(d.op2);
+               if (d.operation == TurboEngine.SLTU) {
+                  flipSign();
+               }
+               lessThan();
+               writeRegister(pc, d.op0);
+               return false;
+            case TurboEngine.SLTI:
+            case TurboEngine.SLTIU:
+               register(d.op1);
+               if (d.operation == TurboEngine.SLTIU) {
+                  flipSign();
+               }
+               pushInt((d.operation == TurboEngine.SLTIU) ? (d.op2 << 16 >> 16) ^ Integer.MIN_VALUE : d.op2 << 16 >> 16);
+               lessThan();
+               writeRegister(pc, d.op0);
+               return false;
+            case TurboEngine.MOVN:
+            case TurboEngine.MOVZ:
+               {
+                  int skip = newLabel();
+                  register(d.op2);
+                  jump((d.operation == TurboEngine.MOVN) ? IFEQ : IFNE, skip);
+                  register(d.op1);
+                  writeRegister(pc, d.op0);
+                  place(skip);
+               }
+               return false;
+            case TurboEngine.BEQ:
+            case TurboEngine.BNE:
+               register(d.op0);
+               register(d.op1);
+               conditionalBranch((d.operation == TurboEngine.BEQ) ? IF_ICMPNE : IF_ICMPEQ, pc, -1,
+                                 next + ((d.op2 << 16 >> 16) << 2), fallThrough);
+               return true;
+            case TurboEngine.BGEZ:
+            case TurboEngine.BGEZAL:
+               register(d.op0);
+               conditionalBranch(IFLT, pc, (d.operation == TurboEngine.BGEZAL) ? link : -1,
+                                 next + ((d.op1 << 16 >> 16) << 2), fallThrough);
+               return true;
+            case TurboEngine.BLTZ:
+            case TurboEngine.BLTZAL:
+               register(d.op0);
+               conditionalBranch(IFGE, pc, (d.operation == TurboEngine.BLTZAL) ? link : -1,
+                                 next + ((d.op1 << 16 >> 16) << 2), fallThrough);
+               return true;
+            case TurboEngine.BGTZ:
+               register(d.op0);
+               conditionalBranch(IFLE, pc, -1, next + ((d.op1 << 16 >> 16) << 2), fallThrough);
+               return true;
+            case TurboEngine.BLEZ:
+               register(d.op0);
+               conditionalBranch(IFGT, pc, -1, next + ((d.op1 << 16 >> 16) << 2), fallThrough);
+               return true;
+            case TurboEngine.J:
+               pushInt((next & 0xF0000000) | (d.op0 << 2));
+               store(ISTORE, NEXT);
+               return true;
+            case TurboEngine.JAL:
+               pushInt(link);
+               writeRegister(pc, 31);
+               pushInt((next & 0xF0000000) | (d.op0 << 2));
+               store(ISTORE, NEXT);
+               return true;
+            case TurboEngine.JR:
+               register(d.op0);
+               store(ISTORE, NEXT);
+               return true;
+            // The target register is read after the link is written, as in the interpreter.
+            case TurboEngine.JALR:
+               pushInt(link);
+               writeRegister(pc, d.op0);
+               register(d.op1);
+               store(ISTORE, NEXT);
+               return true;
+            case TurboEngine.JALR_RA:
+               pushInt(link);
+               writeRegister(pc, 31);
+               register(d.op0);
+               store(ISTORE, NEXT);
+               return true;
+            default:
+               throw new IllegalStateException("operation " + d.operation + " cannot be compiled");
+         }
+      }
+   
+       private void binary(DecodedInstruction d, int opcode) {
+         register(d.op1);
+         register(d.op2);
+         op(opcode);
+         writeRegister(d.address, d.op0);
+      }
+   
+       private void immediate(DecodedInstruction d, int value, int opcode) {
+         register(d.op1);
+         pushInt(value);
+         op(opcode);
+         writeRegister(d.address, d.op0);
+      }
+   
+       private void variableShift(DecodedInstruction d, int opcode) {
+         register(d.op1);
+         register(d.op2);
+         pushInt(0x0000001F);
+         op(IAND);
+         op(opcode);
+         writeRegister(d.address, d.op0);
+      }
+   
+       private void unsigned() {
+         ldcLong(0xFFFFFFFFL);
+         op(LAND);
+      }
+   
+       private void flipSign() {
+         pushInt(Integer.MIN_VALUE);
+         op(IXOR);
+      }
+   
+      // Leaves 1 if the second int on the stack is less than the top one, else 0.
+       private void lessThan() {
+         int no = newLabel();
+         int done = newLabel();
+         jump(IF_ICMPGE, no);
+         pushInt(1);
+         jump(GOTO, done);
+         place(no);
+         pushInt(0);
+         place(done);
+      }
+   
+      // HI and LO from the long product in P.
+       private void setHiLo() {
+         hiLoUsed = true;
+         load(LLOAD, P);
+         pushInt(32);
+         op(LSHR);
+         op(L2I);
+         store(ISTORE, HI_LOCAL);
+         load(LLOAD, P);
+         op(L2I);
+         store(ISTORE, LO_LOCAL);
+      }
+   
+      // Operand on the stack decides; branch not taken if the given test succeeds.
+       private void conditionalBranch(int notTakenTest, int pc, int link, int target, int fallThrough) {
+         int notTaken = newLabel();
+         int done = newLabel();
+         jump(notTakenTest, notTaken);
+         if (link != -1) {
+            pushInt(link);
+            writeRegister(pc, 31);
+         }
+         pushInt(target);
+         store(ISTORE, NEXT);
+         jump(GOTO, done);
+         place(notTaken);
+         pushInt(fallThrough);
+         store(ISTORE, NEXT);
+         place(done);
+      }
+   
+       private void memoryLoad(DecodedInstruction d, int k, String method) {
+         register(d.op2);
+         pushInt(d.op1 << 16 >> 16);
+         op(IADD);
+         store(ISTORE, A);
+         int start = length;
+         op(ALOAD_2);
+         load(ILOAD, A);
+         invoke("mars/mips/hardware/Memory", method, "(I)I");
+         handlers.add(new int[] {start, length, exitBefore(k, d.address, true)});
+      }
+   
+      // Memory traces a store with the program counter, so it must be current.
+       private void memoryStore(DecodedInstruction d, int k, String method, int mask) {
+         load(ALOAD, PC_REGISTER);
+         pushInt(d.getNextAddress());
+         invoke("mars/mips/hardware/Register", "setValue", "(I)I");
+         op(POP);
+         register(d.op2);
+         pushInt(d.op1 << 16 >> 16);
+         op(IADD);
+         store(ISTORE, A);
+         register(d.op0);
+         if (mask != 0) {
+            pushInt(mask);
+            op(IAND);
+         }
+         store(ISTORE, B);
+         int start = length;
+         op(ALOAD_2);
+         load(ILOAD, A);
+         load(ILOAD, B);
+         invoke("mars/mips/hardware/Memory", method, "(II)I");
+         handlers.add(new int[] {start, length, exitBefore(k, d.address, true)});
+         op(POP);
+      }
+   
+      // Value on the stack goes to the register, traced first as the simulation code does.
+       private void writeRegister(int pc, int register) {
+         store(ISTORE, V);
+         op(ALOAD_3);
+         pushInt(pc);
+         pushInt(register);
+         load(ILOAD, V);
+         invoke("mars/mips/trace/TraceSink", "registerWrite", "(III)V");
+         if (register != 0) {
+            load(ILOAD, V);
+            store(ISTORE, local(register));
+         }
+      }
+   
+       private void register(int register) {
+         if (register == 0) {
+            op(ICONST_0);
+         } 
+         else {
+            load(ILOAD, local(register));
+         }
+      }
+   
+       private int local(int register) {
+         if (registerLocals[register] == 0) {
+            registerLocals[register] = localCount++;
+         }
+         return registerLocals[register];
+      }
+   
+      // Label of an exit in front of statement k.  Exception handlers pop the exception.
+       private int exitBefore(int k, int pc, boolean exception) {
+         int label = newLabel();
+         exits.add(new int[] {label, k, pc, exception ? 1 : 0});
+         return label;
+      }
+   
+      /////////////////////////////////////////////////////////////////////////
+      // Bytecode output.
+   
+       private void op(int opcode) {
+         if (length + 8 > code.length) {
+            byte[] bigger = new byte[code.length * 2];
+            System.arraycopy(code, 0, bigger, 0, length);
+            code = bigger;
+         }
+         code[length++] = (byte) opcode;
+      }
+   
+       private void load(int opcode, int local) {
+         op(opcode);
+         code[length++] = (byte) local;
+      }
+   
+       private void store(int opcode, int local) {
+         op(opcode);
+         code[length++] = (byte) local;
+      }
+   
+       private void pushInt(int value) {
+         if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value);
+         } 
+         else if (value >= -128 && value <= 127) {
+            op(BIPUSH);
+            code[length++] = (byte) value;
+         } 
+         else if (value >= -32768 && value <= 32767) {
+            op(SIPUSH);
+            code[length++] = (byte) (value >> 8);
+            code[length++] = (byte) value;
+         } 
+         else {
+            constant(pool.integer(value));
+         }
+      }
+   
+       private void constant(int index) {
+         if (index < 256) {
+            op(LDC);
+            code[length++] = (byte) index;
+         } 
+         else {
+            op(LDC_W);
+            code[length++] = (byte) (index >> 8);
+            code[length++] = (byte) index;
+         }
+      }
+   
+       private void ldcLong(long value) {
+         int index = pool.longValue(value);
+         op(LDC2_W);
+         code[length++] = (byte) (index >> 8);
+         code[length++] = (byte) index;
+      }
+   
+       private void invoke(String owner, String name, String descriptor) {
+         int index = pool.method(owner, name, descriptor);
+         op(INVOKEVIRTUAL);
+         code[length++] = (byte) (index >> 8);
+         code[length++] = (byte) index;
+      }
+   
+       private int newLabel() {
+         if (labelCount == labels.length) {
+            int[] more = new int[labels.length * 2];
+            System.arraycopy(labels, 0, more, 0, labelCount);
+            labels = more;
+         }
+         labels[labelCount] = -1;
+         return labelCount++;
+      }
+   
+       private void place(int label) {
+         labels[label] = length;
+      }
+   
+       private void jump(int opcode, int label) {
+         fixups.add(new int[] {length, label});
+         op(opcode);
+         code[length++] = 0;
+         code[length++] = 0;
+      }
+   
+      /////////////////////////////////////////////////////////////////////////
+      // The class file: a constructor and run(), whose code is the prologue
+   	// loading the registers used followed by the body generated above.
+   
+       private byte[] finish(String name, byte[] body) throws IOException {
+         length = 0;
+         for (int i = 1; i < 32; i++) {
+            if (registerLocals[i] != 0) {
+               op(ALOAD_1);
+               pushInt(i);
+               op(IALOAD);
+               store(ISTORE, registerLocals[i]);
+            }
+         }
+         if (hiLoUsed) {
+            op(ALOAD_1);
+            pushInt(CompiledBlock.HI);
+            op(IALOAD);
+            store(ISTORE, HI_LOCAL);
+            op(ALOAD_1);
+            pushInt(CompiledBlock.LO);
+            op(IALOAD);
+            store(ISTORE, LO_LOCAL);
+         }
+         int prologue = length;
+         int thisClass = pool.classRef(name);
+         int superClass = pool.classRef(SUPER_CLASS);
+         int constructor = pool.method(SUPER_CLASS, "<init>", "()V");
+         int exception = pool.classRef("mars/mips/hardware/AddressErrorException");
+         int codeName = pool.utf8("Code");
+         int initName = pool.utf8("<init>");
+         int initType = pool.utf8("()V");
+         int runName = pool.utf8("run");
+         int runType = pool.utf8(RUN_DESCRIPTOR);
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 1024);
+         DataOutputStream out = new DataOutputStream(bytes);
+         out.writeInt(0xCAFEBABE);
+         out.writeShort(0);
+         out.writeShort(49);
+         pool.write(out);
+         out.writeShort(0x0031); // public final super
+         out.writeShort(thisClass);
+         out.writeShort(superClass);
+         out.writeShort(0); // interfaces
+         out.writeShort(0); // fields
+         out.writeShort(2); // methods
+         // public <init>() { super(); }
+         out.writeShort(0x0001);
+         out.writeShort(initName);
+         out.writeShort(initType);
+         out.writeShort(1);
+         out.writeShort(codeName);
+         out.writeInt(12 + 5);
+         out.writeShort(1); // max stack
+         out.writeShort(1); // max locals
+         out.writeInt(5);
+         out.writeByte(ALOAD_0);
+         out.writeByte(INVOKESPECIAL);
+         out.writeShort(constructor);
+         out.writeByte(RETURN);
+         out.writeShort(0);
+         out.writeShort(0);
+         // public int run(int[], Memory, TraceSink, Register)
+         int codeLength = prologue + body.length;
+         out.writeShort(0x0001);
+         out.writeShort(runName);
+         out.writeShort(runType);
+         out.writeShort(1);
+         out.writeShort(codeName);
+         out.writeInt(12 + codeLength + 8 * handlers.size());
+         out.writeShort(8); // max stack: two longs and a reference is the most
+         out.writeShort(localCount);
+         out.writeInt(codeLength);
+         out.write(code, 0, prologue);
+         out.write(body);
+         out.writeShort(handlers.size());
+         for (int i = 0; i < handlers.size(); i++) {
+            int[] h = (int[]) handlers.get(i);
+            out.writeShort(prologue + h[0]);
+            out.writeShort(prologue + h[1]);
+            out.writeShort(prologue + labels[h[2]]);
+            out.writeShort(exception);
+         }
+         out.writeShort(0); // code attributes
+         out.writeShort(0); // class attributes
+         out.flush();
+         return bytes.toByteArray();
+      }
+   
+      // Constant pool, entries shared by key.
+       private static class ConstantPool {
+         private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         private final DataOutputStream out = new DataOutputStream(bytes);
+         private final HashMap entries = new HashMap();
+         private int count = 1;
+      
+          int utf8(String s) {
+            Integer index = (Integer) entries.get("U" + s);
+            if (index == null) {
+               index = add("U" + s, 1);
+               try {
+                  out.writeByte(1);
+                  out.writeUTF(s);
+               } 
+                   catch (IOException e) {
+                     throw new IllegalStateException(e.toString()); // cannot happen in memory
+                  }
+            }
+            return index.intValue();
+         }
+      
+          int classRef(String name) {
+            return reference("C", 7, utf8(name), -1);
+         }
+      
+          int method(String owner, String name, String descriptor) {
+            int ownerClass = classRef(owner);
+            int nameAndType = reference("N", 12, utf8(name), utf8(descriptor));
+            return reference("M", 10, ownerClass, nameAndType);
+         }
+      
+          int integer(int value) {
+            Integer index = (Integer) entries.get("I" + value);
+            if (index == null) {
+               index = add("I" + value, 1);
+               try {
+                  out.writeByte(3);
+                  out.writeInt(value);
+               } 
+                   catch (IOException e) {
+                     throw new IllegalStateException(e.toString());
+                  }
+            }
+            return index.intValue();
+         }
+      
+          int longValue(long value) {
+            Integer index = (Integer) entries.get("J" + value);
+            if (index == null) {
+               index = add("J" + value, 2); // longs take two entries
+               try {
+                  out.writeByte(5);
+                  out.writeLong(value);
+               } 
+                   catch (IOException e) {
+                     throw new IllegalStateException(e.toString());
+                  }
+            }
+            return index.intValue();
+         }
+      
+          private int reference(String kind, int tag, int first, int second) {
+            String key = kind + first + "," + second;
+            Integer index = (Integer) entries.get(key);
+            if (index == null) {
+               index = add(key, 1);
+               try {
+                  out.writeByte(tag);
+                  out.writeShort(first);
+                  if (second >= 0) {
+                     out.writeShort(second);
+                  }
+               } 
+                   catch (IOException e) {
+                     throw new IllegalStateException(e.toString());
+                  }
+            }
+            return index.intValue();
+         }
+      
+          private Integer add(String key, int size) {
+            Integer index = new Integer(count);
+            entries.put(key, index);
+            count += size;
+            return index;
+         }
+      
+          void write(DataOutputStream to) throws IOException {
+            out.flush();
+            to.writeShort(count);
+            bytes.writeTo(to);
+         }
+      }
+   
+      // One loader per block, so the class goes away with the block.
+       private static class BlockLoader extends ClassLoader {
+          BlockLoader() {
+            super(BlockCompiler.class.getClassLoader());
+         }
+      
+          Class define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+         }
+      }
+   }
@@ -0,0 +1,114 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * The complete state of a running MIPS machine at one point: memory, the
+ * registers of the CPU and both coprocessors, delayed branch state, the
+ * file descriptor table and the position in the <code>InputLog</code>, if any.  Restoring a checkpoint puts all of it back, so the
+ * program can be run again from there as many times as needed, for instance to
+ * re-execute a stretch of a long run while looking for where it first goes
+ * wrong.  Memory is snapshotted copy-on-write (see <code>Memory.snapshot</code>),
+ * so a checkpoint costs little more than the memory blocks written after it.
+ * <p>
+ * Standard input and output cannot be wound back, and neither can the random
+ * number generators of the random number syscalls, unless an
+ * <code>InputLog</code> is recording them.
+ * <p>
+ * The simulator takes checkpoints every so many instructions if asked to; see
+ * <code>Simulator.setCheckpointInterval</code>.
+ *
+ * @version October 2017
+ */
+
+    public class Checkpoint {
+      private final int steps;
+      private final Memory memory;
+      private final Memory.Snapshot memorySnapshot;
+      private final int[] registers;
+      private final int[] coprocessor0;
+      private final int[] coprocessor1;
+      private final int[] delayedBranch;
+      private final SystemIO.FileState files;
+      private final InputLog log;
+      private final InputLog.Mark logMark;
+   
+   	/**
+   	 * Take a checkpoint of the current context's machine.  It should be between
+   	 * instructions, with the program counter addressing the next one to execute.
+   	 *
+   	 * @param steps number of instructions executed so far, for the record
+   	 */
+       public Checkpoint(int steps) {
+         this.steps = steps;
+         memory = Memory.getInstance();
+         memorySnapshot = memory.snapshot();
+         registers = RegisterFile.saveState();
+         coprocessor0 = Coprocessor0.saveState();
+         coprocessor1 = Coprocessor1.saveState();
+         delayedBranch = DelayedBranch.saveState();
+         files = SystemIO.saveFiles();
+         log = Simulator.getInstance().getInputLog();
+         logMark = (log == null) ? null : log.mark();
+      }
+   
+   	/**
+   	 * Put the machine back in the state it was in when the checkpoint was taken.
+   	 * Must be called in the same context, and not while the simulator is running.
+   	 * The checkpoint can be restored again later.
+   	 */
+       public void restore() {
+         memory.restore(memorySnapshot);
+         RegisterFile.restoreState(registers);
+         Coprocessor0.restoreState(coprocessor0);
+         Coprocessor1.restoreState(coprocessor1);
+         DelayedBranch.restoreState(delayedBranch);
+         SystemIO.restoreFiles(files);
+         if (log != null) {
+            log.rewind(logMark);
+         }
+      }
+   
+   	/**
+   	 * @return number of instructions that had been executed when the checkpoint was taken
+   	 */
+       public int getSteps() {
+         return steps;
+      }
+   
+   	/**
+   	 * @return address of the next instruction to execute at the checkpoint
+   	 */
+       public int getProgramCounter() {
+         return registers[registers.length - 3];
+      }
+   }
@@ -0,0 +1,83 @@
+   package mars.simulator;
+   import mars.mips.hardware.*;
+   import mars.mips.trace.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * A straight run of program statements translated by <code>BlockCompiler</code>
+ * into a JVM class of its own, so the JVM can optimize across statements.
+ * Subclasses are generated at run time; <code>TurboEngine</code> runs a block
+ * in place of interpreting its statements one by one.
+ * <p>
+ * The engine's register array holds the general purpose registers in elements
+ * 0-31, HI and LO in 32 and 33.  A run reads the registers it uses from there,
+ * keeps them in locals, and stores them back before returning.  Element 34 gets
+ * the number of statements executed, which is less than the length of the block
+ * if it stopped in front of a statement that has to raise an exception; that
+ * statement is left to the simulation code.
+ *
+ * @version October 2017
+ */
+
+    public abstract class CompiledBlock {
+   
+      /** Element of the register array holding HI */
+      public static final int HI = 32;
+      /** Element of the register array holding LO */
+      public static final int LO = 33;
+      /** Element of the register array given the number of statements executed */
+      public static final int EXECUTED = 34;
+      /** Length of the register array */
+      public static final int REGISTER_ARRAY_LENGTH = 35;
+   
+      // The statements translated, in order.
+      DecodedInstruction[] statements;
+      // InstructionCache version at which they were last seen to be valid.
+      int cacheVersion;
+   
+   	/**
+   	 * Execute the block.
+   	 *
+   	 * @param registers register array, as described above
+   	 * @param memory memory to load from and store to
+   	 * @param trace sink to record register writes in, as the simulation code does
+   	 * @param pc program counter register, set in front of each store so memory
+   	 * traces it with the right PC
+   	 * @return address of the next statement to execute
+   	 */
+       public abstract int run(int[] registers, Memory memory, TraceSink trace, Register pc);
+   
+   	/**
+   	 * @return number of statements in the block
+   	 */
+       public int length() {
+         return statements.length;
+      }
+   }
@@ -0,0 +1,110 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.instructions.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * A program statement as the simulator's fetch loop wants to see it: the
+ * statement, the simulation code that carries it out, and the register and
+ * immediate fields already pulled out of the machine code, all in plain
+ * fields.  Entries are created and owned by the <code>InstructionCache</code>,
+ * which also links each one to the entries most recently executed after it so the
+ * next fetch can usually skip the cache lookup altogether.
+ *
+ * @version October 2017
+ */
+
+    public class DecodedInstruction {
+   
+      /** Text address the statement was fetched from */
+      public final int address;
+      /** The statement itself, passed to the simulation code */
+      public final ProgramStatement statement;
+      /** Its basic instruction, null if the machine code is not a valid instruction */
+      public final BasicInstruction instruction;
+      /** Simulation code for the instruction, null if the instruction is null */
+      public final SimulationCode code;
+      /** Machine code fields: bits 25-21, 20-16, 15-11 and 10-6 */
+      public final int rs, rt, rd, shamt;
+      /** Low 16 bits, sign-extended */
+      public final int imm;
+      /** Low 26 bits, the jump target field */
+      public final int target;
+      /** First three operands of the statement, as given to the simulation code (0 if absent) */
+      public final int op0, op1, op2;
+   
+      // Set false when the statement at this address is replaced, so any links
+   	// to this entry are seen to be stale.
+      boolean valid = true;
+      // Entry that followed this one last time it fell through to address+4,
+   	// and last time it went anywhere else.  Hints only; either may be stale.
+      DecodedInstruction next;
+      DecodedInstruction jump;
+      // Operation number used by TurboEngine, assigned the first time it gets here.
+      int operation = TurboEngine.UNCLASSIFIED;
+      // Times TurboEngine arrived here at the start of a block, and the block
+   	// compiled from here once it got hot.
+      int heat;
+      CompiledBlock block;
+      // Index and kind used by SimulationStats, assigned the first time it is counted.
+      int statistic = SimulationStats.UNCLASSIFIED;
+   
+   	/**
+   	 *  Decode the given statement.
+   	 *  @param address text address of the statement
+   	 *  @param statement the statement
+   	 */
+       public DecodedInstruction(int address, ProgramStatement statement) {
+         this.address = address;
+         this.statement = statement;
+         this.instruction = (BasicInstruction) statement.getInstruction();
+         this.code = (instruction == null) ? null : instruction.getSimulationCode();
+         int binary = statement.getBinaryStatement();
+         this.rs = (binary >>> 21) & 0x1F;
+         this.rt = (binary >>> 16) & 0x1F;
+         this.rd = (binary >>> 11) & 0x1F;
+         this.shamt = (binary >>> 6) & 0x1F;
+         this.imm = (binary << 16) >> 16;
+         this.target = binary & 0x03FFFFFF;
+         int[] operands = statement.getOperands();
+         int count = (operands == null) ? 0 : operands.length;
+         this.op0 = (count > 0) ? operands[0] : 0;
+         this.op1 = (count > 1) ? operands[1] : 0;
+         this.op2 = (count > 2) ? operands[2] : 0;
+      }
+   
+   	/**
+   	 *  Address of the next statement if execution falls through.
+   	 *  @return address following this statement
+   	 */
+       public int getNextAddress() {
+         return address + Instruction.INSTRUCTION_LENGTH;
+      }
+   }
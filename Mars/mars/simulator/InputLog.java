@@ -0,0 +1,239 @@
+   package mars.simulator;
+   import mars.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Log of everything that makes a MIPS program behave differently from one run
+ * to the next: lines read by the input syscalls, bytes read from standard
+ * input, the time of day, random numbers, values the program loads from memory
+ * mapped I/O, and external interrupts.  While a log is recording, each such
+ * value is appended as the program consumes it.  After the machine is put back
+ * to an earlier <code>Checkpoint</code>, the log is rewound with it and the
+ * program is given the same values again, in the same order, so re-executing
+ * from the checkpoint reproduces the original run exactly.  Past the end of the
+ * log, the program is back in the live world and recording resumes.
+ * <p>
+ * While replaying, the program's output to the console is not repeated and
+ * <code>sleep</code> does not sleep.  Only the simulating thread's reads are
+ * logged, so tools reading memory mapped I/O from the GUI thread are unaffected.
+ * <p>
+ * A log is only kept while one is attached with <code>Simulator.setInputLog</code>,
+ * which <code>TimeTravel</code> does.  The input dialog syscalls are not logged;
+ * they need the IDE, and time travel is only available without it.
+ *
+ * @version October 2017
+ */
+
+    public class InputLog {
+      private final ArrayList values = new ArrayList();
+      private int position = 0;      // next value to replay; values.size() when live
+      private int[] interruptTimes = new int[16];
+      private int[] interruptDevices = new int[16];
+      private int interruptCount = 0;
+      private int interruptPosition = 0;
+      private int time = 0;          // instructions executed before the run in progress
+      private boolean replaying = false;
+      private volatile Thread simulating = null;
+   
+   	/**
+   	 * A position in the log, saved with a <code>Checkpoint</code>.
+   	 */
+       public static class Mark {
+         private final int position;
+         private final int interruptPosition;
+      
+          private Mark(int position, int interruptPosition) {
+            this.position = position;
+            this.interruptPosition = interruptPosition;
+         }
+      }
+   
+   	/**
+   	 * Returns the log attached to the current context's simulator, if the
+   	 * calling thread is the one running the simulation.
+   	 *
+   	 * @return the log to record to or replay from, or null if there is none
+   	 */
+       private static InputLog current() {
+         InputLog log = Simulator.getInstance().getInputLog();
+         return (log != null && log.simulating == Thread.currentThread()) ? log : null;
+      }
+   
+   	/**
+   	 * Next value to give the program instead of asking the live world, when
+   	 * replaying.  A syscall that gets null here should produce the value as
+   	 * usual and then pass it to <code>record</code>.
+   	 *
+   	 * @return the logged value, or null if not replaying
+   	 */
+       public static Object replay() {
+         InputLog log = current();
+         if (log == null || !log.replaying || log.position == log.values.size()) {
+            return null;
+         }
+         return log.values.get(log.position++);
+      }
+   
+   	/**
+   	 * Append a value the program has just been given, if a log is recording.
+   	 *
+   	 * @param value the value; must not be null
+   	 */
+       public static void record(Object value) {
+         InputLog log = current();
+         if (log != null && !log.replaying) {
+            log.values.add(value);
+            log.position = log.values.size();
+         }
+      }
+   
+   	/**
+   	 * Whether the program is being re-executed from the log, so output and
+   	 * delays have already happened once and should not happen again.
+   	 *
+   	 * @return true if replaying
+   	 */
+       public static boolean isReplaying() {
+         InputLog log = current();
+         return log != null && log.replaying;
+      }
+   
+   	/**
+   	 * A value the program loaded from memory mapped I/O.  Called by
+   	 * <code>Memory</code> for every such load.
+   	 *
+   	 * @param value value just read from memory
+   	 * @return the value the program should see
+   	 */
+       public static int deviceRead(int value) {
+         Integer logged = (Integer) replay();
+         if (logged != null) {
+            return logged.intValue();
+         }
+         record(new Integer(value));
+         return value;
+      }
+   
+   	/**
+   	 * The external interrupt to take before executing the next instruction, if
+   	 * any.  When live, this takes <code>Simulator.externalInterruptingDevice</code>
+   	 * and logs it.  When replaying, it returns the interrupt logged for this
+   	 * instruction, and interrupts raised meanwhile are left pending.
+   	 *
+   	 * @param steps number of instructions executed so far in the run in progress
+   	 * @return device code, or <code>Simulator.NO_DEVICE</code>
+   	 */
+       int interrupt(int steps) {
+         if (replaying) {
+            if (interruptPosition < interruptCount && interruptTimes[interruptPosition] == time + steps) {
+               return interruptDevices[interruptPosition++];
+            }
+            return Simulator.NO_DEVICE;
+         }
+         int device = Simulator.externalInterruptingDevice;
+         if (device != Simulator.NO_DEVICE) {
+            Simulator.externalInterruptingDevice = Simulator.NO_DEVICE;
+            if (interruptCount == interruptTimes.length) {
+               interruptTimes = grow(interruptTimes);
+               interruptDevices = grow(interruptDevices);
+            }
+            interruptTimes[interruptCount] = time + steps;
+            interruptDevices[interruptCount] = device;
+            interruptPosition = ++interruptCount;
+         }
+         return device;
+      }
+   
+   	/**
+   	 * Number of instructions the run in progress may execute before the next
+   	 * logged interrupt is due.
+   	 *
+   	 * @param steps number of instructions executed so far in the run in progress
+   	 * @return instructions to go, or Integer.MAX_VALUE if none is due
+   	 */
+       int stepsToInterrupt(int steps) {
+         if (replaying && interruptPosition < interruptCount) {
+            return interruptTimes[interruptPosition] - time - steps;
+         }
+         return Integer.MAX_VALUE;
+      }
+   
+       private static int[] grow(int[] array) {
+         int[] grown = new int[array.length * 2];
+         System.arraycopy(array, 0, grown, 0, array.length);
+         return grown;
+      }
+   
+   	/**
+   	 * Get ready for a run.  Called by whoever starts it.
+   	 *
+   	 * @param time number of instructions the program has executed so far
+   	 * @param replaying true to replay from the log, false to record to it
+   	 */
+       void prepare(int time, boolean replaying) {
+         this.time = time;
+         this.replaying = replaying;
+      }
+   
+   	/**
+   	 * Mark the calling thread as the one running the simulation, or none.
+   	 * Called by the simulator at the start and end of each run.
+   	 *
+   	 * @param thread simulating thread, or null when the run is over
+   	 */
+       void setSimulatingThread(Thread thread) {
+         simulating = thread;
+      }
+   
+   	/**
+   	 * @return the current position in the log
+   	 */
+       public Mark mark() {
+         return new Mark(position, interruptPosition);
+      }
+   
+   	/**
+   	 * Go back to a position returned by mark().
+   	 *
+   	 * @param mark position to replay from next
+   	 */
+       public void rewind(Mark mark) {
+         position = mark.position;
+         interruptPosition = mark.interruptPosition;
+      }
+   
+   	/**
+   	 * @return number of values and interrupts logged
+   	 */
+       public int size() {
+         return values.size() + interruptCount;
+      }
+   }
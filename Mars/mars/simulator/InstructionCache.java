@@ -0,0 +1,201 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.mips.instructions.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Cache of decoded program statements, keyed by text address, used by the
+ * simulator's fetch loop in place of <code>Memory.getStatement</code>.
+ * Entries are kept in a three-level table of 1024-entry blocks indexed by
+ * the address bits, allocated as needed, so a lookup never searches.  Only
+ * the text and kernel text segments are cached; code executed from the data
+ * segment under self-modifying code is always fetched from memory.
+ * <p>
+ * <code>Memory</code> calls <code>invalidate</code> whenever a statement is
+ * stored (this includes self-modifying stores to the text segment) and
+ * <code>clear</code> when it is cleared.
+ * <p>
+ * Fetching through the cache does not notify memory observers of the
+ * instruction fetch, so the simulator only uses it when no observers are
+ * registered.
+ * <p>
+ * Each <code>Memory</code> owns one cache of its own statements.
+ *
+ * @version October 2017
+ */
+
+    public class InstructionCache {
+   
+      private static final int LEVEL_BITS = 10;
+      private static final int LEVEL_LENGTH = 1 << LEVEL_BITS;
+      private static final int LEVEL_MASK = LEVEL_LENGTH - 1;
+   
+      private final Memory memory;
+      private DecodedInstruction[][][] table;
+      private int version = 0;
+   
+   	/**
+   	 * Returns the InstructionCache of the current context's memory.
+   	 * @return the instruction cache
+   	 */
+       public static InstructionCache getInstance() {
+         return Memory.getInstance().getInstructionCache();
+      }
+   
+   	/**
+   	 * Create an empty cache for statements from the given memory.  Only
+   	 * <code>Memory</code> itself should need to do this.
+   	 * @param memory the memory statements are fetched from
+   	 */
+       public InstructionCache(Memory memory) {
+         this.memory = memory;
+         clear();
+      }
+   
+   	/**
+   	 * Drop every entry.  Called when memory is cleared.
+   	 */
+       public synchronized void clear() {
+         if (table != null) {
+            for (int i = 0; i < LEVEL_LENGTH; i++) {
+               if (table[i] != null) {
+                  for (int j = 0; j < LEVEL_LENGTH; j++) {
+                     invalidateBlock(table[i][j]);
+                  }
+               }
+            }
+         }
+         table = new DecodedInstruction[LEVEL_LENGTH][][];
+         version++;
+      }
+   
+   	/**
+   	 * Drop the entry for the given address, because the statement stored there
+   	 * has changed.
+   	 * @param address text address of the statement
+   	 */
+       public synchronized void invalidate(int address) {
+         DecodedInstruction[][] middle = table[address >>> (2 + 2 * LEVEL_BITS)];
+         if (middle != null) {
+            DecodedInstruction[] block = middle[(address >>> (2 + LEVEL_BITS)) & LEVEL_MASK];
+            if (block != null) {
+               int index = (address >>> 2) & LEVEL_MASK;
+               if (block[index] != null) {
+                  block[index].valid = false;
+                  block[index] = null;
+                  version++;
+               }
+            }
+         }
+      }
+   
+   	/**
+   	 * Number that changes whenever an entry is dropped, so anyone holding on to
+   	 * a run of entries can tell cheaply whether they may have gone stale.
+   	 * @return the current version
+   	 */
+       public int getVersion() {
+         return version;
+      }
+   
+   	/**
+   	 * Fetch the decoded statement at the given address, which the simulator is
+   	 * about to execute after <code>previous</code>.  Follows the link from the
+   	 * previous entry when it is still good, else looks the address up and
+   	 * decodes the statement from memory on a miss.
+   	 *
+   	 * @param address address of statement to fetch
+   	 * @param previous entry executed just before, null if none
+   	 * @return decoded statement, or null if there is no statement at that address.
+   	 * @throws AddressErrorException if the address is not a valid fetch address
+   	 */
+       public DecodedInstruction fetch(int address, DecodedInstruction previous) throws AddressErrorException {
+         DecodedInstruction decoded;
+         if (previous != null) {
+            boolean fellThrough = (address == previous.address + Instruction.INSTRUCTION_LENGTH);
+            decoded = fellThrough ? previous.next : previous.jump;
+            if (decoded == null || !decoded.valid || decoded.address != address) {
+               decoded = lookup(address);
+               if (fellThrough) {
+                  previous.next = decoded;
+               } 
+               else {
+                  previous.jump = decoded;
+               }
+            }
+            return decoded;
+         }
+         return lookup(address);
+      }
+   
+       private synchronized DecodedInstruction lookup(int address) throws AddressErrorException {
+         DecodedInstruction[][] middle = table[address >>> (2 + 2 * LEVEL_BITS)];
+         DecodedInstruction[] block = null;
+         int index = (address >>> 2) & LEVEL_MASK;
+         if (middle != null) {
+            block = middle[(address >>> (2 + LEVEL_BITS)) & LEVEL_MASK];
+            if (block != null && block[index] != null && (address & 3) == 0) {
+               return block[index];
+            }
+         }
+         // Miss.  Memory checks the address and throws if it cannot be fetched.
+         ProgramStatement statement = memory.getStatementNoNotify(address);
+         if (statement == null) {
+            return null;
+         }
+         DecodedInstruction decoded = new DecodedInstruction(address, statement);
+         if (Memory.inTextSegment(address) || Memory.inKernelTextSegment(address)) {
+            if (middle == null) {
+               middle = new DecodedInstruction[LEVEL_LENGTH][];
+               table[address >>> (2 + 2 * LEVEL_BITS)] = middle;
+            }
+            if (block == null) {
+               block = new DecodedInstruction[LEVEL_LENGTH];
+               middle[(address >>> (2 + LEVEL_BITS)) & LEVEL_MASK] = block;
+            }
+            block[index] = decoded;
+         }
+         else {
+            decoded.valid = false; // data segment code may change under us, never reuse it
+         }
+         return decoded;
+      }
+   
+       private void invalidateBlock(DecodedInstruction[] block) {
+         if (block != null) {
+            for (int k = 0; k < LEVEL_LENGTH; k++) {
+               if (block[k] != null) {
+                  block[k].valid = false;
+               }
+            }
+         }
+      }
+   }
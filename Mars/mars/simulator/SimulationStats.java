@@ -0,0 +1,257 @@
+   package mars.simulator;
+   import mars.mips.instructions.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Execution counters kept by the simulator while a program runs: the total
+ * number of instructions, a count per mnemonic, a count per instruction format
+ * (R, I, branch, J), how many branches were taken and not taken, and how many
+ * loads and stores there were.  Counting is off unless turned on with
+ * <code>Simulator.setStatsEnabled</code>; when it is off, the simulator does
+ * nothing more per instruction than test for that.
+ * <p>
+ * Every instruction the simulator starts is counted, including one that ends the
+ * run with an exit syscall or exception, so the total is the same as the
+ * simulator's step count.  Counts accumulate over runs until <code>reset</code>.
+ *
+ * @version October 2017
+ */
+
+    public class SimulationStats {
+   
+      /** Index of R format instructions in the format counts */
+      public static final int R_FORMAT = 0;
+      /** Index of I format instructions, other than branches, in the format counts */
+      public static final int I_FORMAT = 1;
+      /** Index of branch instructions in the format counts */
+      public static final int BRANCH_FORMAT = 2;
+      /** Index of J format instructions in the format counts */
+      public static final int J_FORMAT = 3;
+      private static final String[] FORMAT_NAMES = {"R", "I", "branch", "J"};
+   
+      // DecodedInstruction.statistic holds the instruction's index, shifted left by
+   	// KIND_BITS, and these bits.  Indexes are shared by every SimulationStats.
+      static final int UNCLASSIFIED = -1;
+      private static final int KIND_BITS = 4;
+      private static final int FORMAT_MASK = 3;
+      private static final int LOAD = 4;
+      private static final int STORE = 8;
+      private static final int INVALID = 0; // index 0: not a valid instruction
+   
+      private static final HashMap indexes = new HashMap(); // BasicInstruction -> Integer
+      private static final ArrayList instructions = new ArrayList();
+   
+      private long instructionCount;
+      private long[] instructionCounts = new long[64];
+      private final long[] formatCounts = new long[FORMAT_NAMES.length];
+      private long taken, notTaken;
+      private long loads, stores;
+   
+   	/**
+   	 * Count one instruction.  Called by the simulator after it has executed it, or
+   	 * when it ended the run.
+   	 *
+   	 * @param d the instruction
+   	 * @param transferred true if it changed the flow of control, that is, the next
+   	 * instruction is not the one following it (or a delayed branch was registered)
+   	 */
+       void count(DecodedInstruction d, boolean transferred) {
+         int statistic = d.statistic;
+         if (statistic == UNCLASSIFIED) {
+            statistic = d.statistic = classify(d);
+         }
+         instructionCount++;
+         if (statistic == INVALID) {
+            return;
+         }
+         int index = statistic >>> KIND_BITS;
+         if (index >= instructionCounts.length) {
+            long[] larger = new long[Math.max(index + 1, 2 * instructionCounts.length)];
+            System.arraycopy(instructionCounts, 0, larger, 0, instructionCounts.length);
+            instructionCounts = larger;
+         }
+         instructionCounts[index]++;
+         int format = statistic & FORMAT_MASK;
+         formatCounts[format]++;
+         if (format == BRANCH_FORMAT) {
+            if (transferred) {
+               taken++;
+            } 
+            else {
+               notTaken++;
+            }
+         } 
+         else if ((statistic & LOAD) != 0) {
+            loads++;
+         } 
+         else if ((statistic & STORE) != 0) {
+            stores++;
+         }
+      }
+   
+   	/**
+   	 * Set every count back to zero.
+   	 */
+       public void reset() {
+         instructionCount = 0;
+         Arrays.fill(instructionCounts, 0);
+         Arrays.fill(formatCounts, 0);
+         taken = notTaken = loads = stores = 0;
+      }
+   
+   	/**
+   	 * @return number of instructions executed
+   	 */
+       public long getInstructionCount() {
+         return instructionCount;
+      }
+   
+   	/**
+   	 * Number of instructions executed per mnemonic.  Instructions that have the
+   	 * same mnemonic but different operand formats are counted together.
+   	 *
+   	 * @return map from mnemonic (String) to count (Long), in mnemonic order.
+   	 * Mnemonics not executed are left out.
+   	 */
+       public SortedMap getMnemonicCounts() {
+         TreeMap counts = new TreeMap();
+         synchronized (indexes) {
+            for (int i = 1; i < instructionCounts.length && i < instructions.size(); i++) {
+               if (instructionCounts[i] != 0) {
+                  String name = ((BasicInstruction) instructions.get(i)).getName();
+                  Long sum = (Long) counts.get(name);
+                  counts.put(name, new Long(instructionCounts[i] + ((sum == null) ? 0 : sum.longValue())));
+               }
+            }
+         }
+         return counts;
+      }
+   
+   	/**
+   	 * @param format one of R_FORMAT, I_FORMAT, BRANCH_FORMAT or J_FORMAT
+   	 * @return number of instructions executed in that format
+   	 */
+       public long getFormatCount(int format) {
+         return formatCounts[format];
+      }
+   
+   	/**
+   	 * @return number of branches executed that were taken
+   	 */
+       public long getTakenBranchCount() {
+         return taken;
+      }
+   
+   	/**
+   	 * @return number of branches executed that were not taken
+   	 */
+       public long getNotTakenBranchCount() {
+         return notTaken;
+      }
+   
+   	/**
+   	 * @return number of load instructions executed, including loads to coprocessor 1
+   	 */
+       public long getLoadCount() {
+         return loads;
+      }
+   
+   	/**
+   	 * @return number of store instructions executed, including stores from coprocessor 1
+   	 */
+       public long getStoreCount() {
+         return stores;
+      }
+   
+   	/**
+   	 * All the counts as a JSON object, for the "stats json" command line option.
+   	 *
+   	 * @return JSON text, on one line
+   	 */
+       public String toJSON() {
+         StringBuffer json = new StringBuffer();
+         json.append("{\"instructions\":").append(instructionCount);
+         json.append(",\"formats\":{");
+         for (int i = 0; i < FORMAT_NAMES.length; i++) {
+            json.append((i == 0) ? "" : ",").append('"').append(FORMAT_NAMES[i]).append("\":").append(formatCounts[i]);
+         }
+         json.append("},\"branches\":{\"taken\":").append(taken).append(",\"not taken\":").append(notTaken).append('}');
+         json.append(",\"loads\":").append(loads).append(",\"stores\":").append(stores);
+         json.append(",\"mnemonics\":{");
+         Iterator it = getMnemonicCounts().entrySet().iterator();
+         for (boolean first = true; it.hasNext(); first = false) {
+            Map.Entry entry = (Map.Entry) it.next();
+            json.append(first ? "" : ",").append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+         }
+         return json.append("}}").toString();
+      }
+   
+      // Index and kind bits for an instruction, the first time it is counted.
+       private static int classify(DecodedInstruction d) {
+         BasicInstruction instruction = d.instruction;
+         if (instruction == null) {
+            return INVALID;
+         }
+         synchronized (indexes) {
+            if (instructions.size() == 0) {
+               instructions.add(null); // index 0 is INVALID
+            }
+            Integer index = (Integer) indexes.get(instruction);
+            if (index == null) {
+               index = new Integer(instructions.size());
+               indexes.put(instruction, index);
+               instructions.add(instruction);
+            }
+            int kind;
+            BasicInstructionFormat format = instruction.getInstructionFormat();
+            if (format == BasicInstructionFormat.R_FORMAT) {
+               kind = R_FORMAT;
+            } 
+            else if (format == BasicInstructionFormat.I_BRANCH_FORMAT) {
+               kind = BRANCH_FORMAT;
+            } 
+            else if (format == BasicInstructionFormat.J_FORMAT) {
+               kind = J_FORMAT;
+            } 
+            else {
+               kind = I_FORMAT;
+               int opcode = d.statement.getBinaryStatement() >>> 26;
+               if ((opcode >= 0x20 && opcode <= 0x26) || opcode == 0x30 || opcode == 0x31 || opcode == 0x35) {
+                  kind |= LOAD;   // lb lh lwl lw lbu lhu lwr, ll lwc1 ldc1
+               } 
+               else if ((opcode >= 0x28 && opcode <= 0x2E) || opcode == 0x38 || opcode == 0x39 || opcode == 0x3D) {
+                  kind |= STORE;  // sb sh swl sw swr, sc swc1 sdc1
+               }
+            }
+            return (index.intValue() << KIND_BITS) | kind;
+         }
+      }
+   }
@@ -4,6 +4,9 @@
    import mars.util.*;
    import mars.mips.hardware.*;
    import mars.mips.instructions.*;
+   import mars.mips.trace.TraceSink;
+   import mars.mips.branch.BranchPredictorLab;
+   import mars.mips.pipeline.PipelineModel;
    import java.util.*;
    import javax.swing.*;
    import java.awt.event.*;
@@ -44,8 +47,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
     public class Simulator extends Observable {
       private SimThread simulatorThread;
-      private static Simulator simulator = null;  // Singleton object
       private static Runnable interactiveGUIUpdater = null;
+      private boolean turboEnabled = false;
+      private boolean compilationEnabled = true;
+      private int instructionCount = 0;
+      private int stopReason = 0;
+      private InputLog inputLog = null;
+      private final SimulationStats stats = new SimulationStats();
+      private boolean statsEnabled = false;
+      private BranchPredictorLab branchPredictors = null;
+      private PipelineModel pipelineModel = null;
+      private int checkpointInterval = 0;
+      private final ArrayList checkpoints = new ArrayList();
       // Others can set this true to indicate external interrupt.  Initially used
    	// to simulate keyboard and display interrupts.  The device is identified
    	// by the address of its MMIO control register.  keyboard 0xFFFF0000 and
@@ -61,22 +74,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public static final int PAUSE_OR_STOP = 6;
    
       /**
-   	 * Returns the Simulator object
+   	 * Returns the Simulator object of the current <code>MachineContext</code>
    	 *
    	 * @return the Simulator object in use
    	 */
        public static Simulator getInstance() {
-         // Do NOT change this to create the Simulator at load time (in declaration above)!
-      	// Its constructor looks for the GUI, which at load time is not created yet,
-      	// and incorrectly leaves interactiveGUIUpdater null!  This causes runtime
-      	// exceptions while running in timed mode.
-         if (simulator==null) {
-            simulator = new Simulator();
-         }
-         return simulator;
+         return MachineContext.getCurrent().getSimulator();
       }
    
-       private Simulator() {
+      /**
+   	 * Create a Simulator, for use by a <code>MachineContext</code>.  Everyone else
+   	 * should use getInstance().
+   	 */
+       public Simulator() {
+         // Do NOT change MachineContext to create the Simulator at load time!
+      	// This constructor looks for the GUI, which at load time is not created yet,
+      	// and incorrectly leaves interactiveGUIUpdater null!  This causes runtime
+      	// exceptions while running in timed mode.
          simulatorThread = null;
          if (Globals.getGui() != null) {
             interactiveGUIUpdater = new UpdateGUI();
@@ -85,6 +99,156 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
    
    
+   /**
+    *  Allow or disallow use of the fast interpreter (<code>TurboEngine</code>) for
+    *  runs that nobody is watching: no GUI, no observers on registers or memory,
+    *  no breakpoints and back stepping disabled.  Other runs are unaffected.
+    *  Off by default.
+    *
+    *  @param enabled true to use the fast interpreter where possible
+    */
+       public void setTurboEnabled(boolean enabled) {
+         turboEnabled = enabled;
+      }
+   
+   
+   /**
+    *  Allow or disallow translating hot blocks of statements into JVM code
+    *  (<code>BlockCompiler</code>) in runs that use the fast interpreter.  Compiled
+    *  blocks are not used while statements are being counted.  On by default.
+    *
+    *  @param enabled true to compile hot blocks
+    */
+       public void setCompilationEnabled(boolean enabled) {
+         compilationEnabled = enabled;
+      }
+   
+   
+   /**
+    *  Number of MIPS instructions executed by the last run started from the
+    *  command line (the actor given to simulate() was null), counting the one
+    *  that ended it with an exit syscall or exception.
+    *
+    *  @return number of instructions executed
+    */
+       public int getInstructionCount() {
+         return instructionCount;
+      }
+   
+   
+   /**
+    *  Turn the execution counters in <code>getStats()</code> on or off for runs
+    *  started from now on.  Off by default.
+    *
+    *  @param enabled true to count instructions as they are executed
+    */
+       public void setStatsEnabled(boolean enabled) {
+         statsEnabled = enabled;
+      }
+   
+   
+   /**
+    *  Execution counters for the runs made while they were enabled.
+    *
+    *  @return the counters
+    *  @see #setStatsEnabled
+    */
+       public SimulationStats getStats() {
+         return stats;
+      }
+   
+   
+   /**
+    *  Have the given branch predictors predict every control transfer of the runs
+    *  started from now on.  Those runs do not use the fast interpreter.
+    *
+    *  @param lab the predictors to evaluate, null for none
+    */
+       public void setBranchPredictors(BranchPredictorLab lab) {
+         branchPredictors = lab;
+      }
+   
+   
+   /**
+    *  Have the given pipeline timing model follow every instruction of the runs
+    *  started from now on.  Those runs do not use the fast interpreter.
+    *
+    *  @param model the model to issue instructions to, null for none
+    */
+       public void setPipelineModel(PipelineModel model) {
+         pipelineModel = model;
+      }
+   
+   
+   /**
+    *  Take a <code>Checkpoint</code> of the machine every so many instructions
+    *  during the runs started from now on, beginning with one before the first
+    *  instruction.  Each run discards the checkpoints of the previous one.
+    *  Off (0) by default.
+    *
+    *  @param interval number of instructions between checkpoints, 0 or less for none
+    */
+       public void setCheckpointInterval(int interval) {
+         checkpointInterval = interval;
+      }
+   
+   
+   /**
+    *  Checkpoints taken during the last run, in the order they were taken.
+    *  Checkpoint K was taken after K times the interval instructions.
+    *
+    *  @return ArrayList of <code>Checkpoint</code>
+    *  @see #setCheckpointInterval
+    */
+       public ArrayList getCheckpoints() {
+         return checkpoints;
+      }
+   
+   
+   /**
+    *  Why the last run started from the command line (the actor given to
+    *  simulate() was null) stopped.
+    *
+    *  @return BREAKPOINT, EXCEPTION, MAX_STEPS, NORMAL_TERMINATION,
+    *  CLIFF_TERMINATION or PAUSE_OR_STOP
+    */
+       public int getStopReason() {
+         return stopReason;
+      }
+   
+   
+   /**
+    *  Number of instructions the run in progress has executed so far, not
+    *  counting the one executing now.  Meant for memory and register observers,
+    *  which are notified from the simulating thread while an instruction executes.
+    *
+    *  @return number of instructions executed, or 0 if nothing is running
+    */
+       public int getRunSteps() {
+         SimThread thread = simulatorThread;
+         return (thread == null) ? 0 : thread.steps;
+      }
+   
+   
+   /**
+    *  Attach a log of nondeterministic input to runs started from now on, or
+    *  detach it.  See <code>InputLog</code>.  None by default.
+    *
+    *  @param log the log, or null for none
+    */
+       public void setInputLog(InputLog log) {
+         inputLog = log;
+      }
+   
+   
+   /**
+    *  @return the attached log of nondeterministic input, or null if there is none
+    */
+       public InputLog getInputLog() {
+         return inputLog;
+      }
+   
+   
    /**
     *  Determine whether or not the next instruction to be executed is in a
     *  "delay slot".  This means delayed branching is enabled, the branch
@@ -112,15 +276,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     **/
     
        public boolean simulate(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction actor) throws ProcessingException {
-         simulatorThread = new SimThread(p,pc,maxSteps,breakPoints,actor);
-         simulatorThread.start();
+         SimThread thread = new SimThread(p,pc,maxSteps,breakPoints,actor);
+         simulatorThread = thread;
+         thread.start();
       	
       	// Condition should only be true if run from command-line instead of GUI.
-      	// If so, just stick around until execution thread is finished.
+      	// If so, just stick around until execution thread is finished.  The field
+      	// is cleared if the run is stopped, possibly from the execution thread itself.
          if (actor == null) {
-            Object dun = simulatorThread.get(); // this should emulate join()
-            ProcessingException pe = simulatorThread.pe;
-            boolean done = simulatorThread.done;
+            Object dun = thread.get(); // this should emulate join()
+            ProcessingException pe = thread.pe;
+            boolean done = thread.done;
+            instructionCount = thread.steps;
+            stopReason = thread.constructReturnReason;
             if (done) SystemIO.resetFiles(); // close any files opened in MIPS progra
             this.simulatorThread = null;
             if (pe != null) {
@@ -207,6 +375,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          private volatile AbstractAction stopper;
          private AbstractAction starter;
          private int constructReturnReason;
+         private int steps;
+         private MachineContext context;
+         private Memory memory;
+         private InputLog log;
       
       
          /**
@@ -228,6 +400,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             this.pe = null;
             this.starter = starter;
             this.stopper = null;
+            this.context = MachineContext.getCurrent();
          }
       	
       	/**
@@ -252,6 +425,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	 */
       	
           public Object construct() {
+            // Run in the context of whoever started the simulation.
+            MachineContext.setCurrent(context);
+            memory = context.getMemory();
+            log = inputLog;
+            if (log != null) {
+               log.setSimulatingThread(Thread.currentThread());
+            }
+            // Trace writes are buffered; whatever way the simulation ends, get them
+         	// all out before anyone else gets a chance to write.
+            try {
+               return simulateInstructions();
+            } 
+            finally {
+               TraceSink.getInstance().flush();
+               if (log != null) {
+                  log.setSimulatingThread(null);
+               }
+            }
+         }
+      	
+      	/**
+      	 *  Simulation loop proper, called by construct().
+      	 *
+      	 *  @return  boolean value true if execution done, false otherwise
+      	 */
+          private Object simulateInstructions() {
             // The next two statements are necessary for GUI to be consistently updated
          	// before the simulation gets underway.  Without them, this happens only intermittently,
          	// with a consequence that some simulations are interruptable using PAUSE/STOP and others
@@ -270,8 +469,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	
             RegisterFile.initializeProgramCounter(pc);
             ProgramStatement statement = null;
+            DecodedInstruction decoded = null;
             try {
-               statement = Globals.memory.getStatement(RegisterFile.getProgramCounter());
+               decoded = fetch(RegisterFile.getProgramCounter(), null);
+               statement = (decoded == null) ? null : decoded.statement;
             } 
                 catch (AddressErrorException e) {
                   ErrorList el = new ErrorList();
@@ -288,7 +489,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
                   return new Boolean(done);
                }
-            int steps = 0;
+            steps = 0;
+            SimulationStats stats = statsEnabled ? Simulator.this.stats : null;
+            BranchPredictorLab predictors = branchPredictors;
+            PipelineModel pipeline = pipelineModel;
+            TurboEngine turbo = turboEligible() ? new TurboEngine(stats, compilationEnabled) : null;
+            int interval = checkpointInterval;
+            int nextCheckpoint = Integer.MAX_VALUE;
+            if (interval > 0) {
+               checkpoints.clear();
+               nextCheckpoint = 0;
+            }
          	
          	// *******************  PS addition 26 July 2006  **********************
          	// A couple statements below were added for the purpose of assuring that when
@@ -324,6 +535,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          
             while (statement != null) {
                pc = RegisterFile.getProgramCounter(); // added: 7/26/06 (explanation above)
+               if (steps >= nextCheckpoint) {
+                  synchronized (context.getLock()) {
+                     checkpoints.add(new Checkpoint(steps));
+                  }
+                  nextCheckpoint = (Integer.MAX_VALUE - steps > interval) ? steps + interval : Integer.MAX_VALUE;
+               }
             	
                    // MODIFIED BY DEPCTG, Dec 2017
                     ///////// DPS 15 June 2007.  Handle delayed branching if it occurs./////
@@ -332,21 +549,37 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             	// to access MIPS memory and registers only through synchronized blocks on same 
             	// lock variable, then full (albeit heavy-handed) protection of MIPS memory and 
             	// registers is assured.  Not as critical for reading from those resources.
-               synchronized (Globals.memoryAndRegistersLock) {
+               synchronized (context.getLock()) {
                   try {                      
-                     if (Simulator.externalInterruptingDevice != NO_DEVICE) {
+                     if (log != null) {
+                        int deviceInterruptCode = log.interrupt(steps);
+                        if (deviceInterruptCode != NO_DEVICE) {
+                           throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
+                        }
+                     }
+                     else if (Simulator.externalInterruptingDevice != NO_DEVICE) {
                         int deviceInterruptCode = externalInterruptingDevice;
                         Simulator.externalInterruptingDevice = NO_DEVICE;
                         throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
                      }
-                     BasicInstruction instruction = (BasicInstruction)statement.getInstruction();
-                     if (instruction == null) {
+                     if (decoded.code == null) {
                         throw new ProcessingException(statement,
                             "undefined instruction ("+Binary.intToHexString(statement.getBinaryStatement())+")",
                             Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
                      }
                      // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
-                     instruction.getSimulationCode().simulate(statement);
+                     decoded.code.simulate(statement);
+                     if (stats != null) {
+                        stats.count(decoded, DelayedBranch.isRegistered() ||
+                                    RegisterFile.getProgramCounter() != decoded.getNextAddress());
+                     }
+                     if (predictors != null) {
+                        resolveBranch(predictors, decoded);
+                     }
+                     if (pipeline != null) {
+                        pipeline.issue(decoded.address, statement.getBinaryStatement(), DelayedBranch.isRegistered() ||
+                                       RegisterFile.getProgramCounter() != decoded.getNextAddress());
+                     }
 
                    if (DelayedBranch.isTriggered()) {
                       RegisterFile.setProgramCounter(DelayedBranch.getBranchTargetAddress());
@@ -364,7 +597,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   catch (ProcessingException pe) {
                     // ADDED BY DEPCTG
                     DelayedBranch.clear();
+                    if (stats != null) {
+                       stats.count(decoded, false);
+                    }
+                    if (pipeline != null) {
+                       pipeline.issue(decoded.address, statement.getBinaryStatement(), false);
+                    }
                     if (pe.errors() == null) {
+                       steps++;
                        this.constructReturnReason = NORMAL_TERMINATION;
                        this.done = true;
                        SystemIO.resetFiles(); // close any files opened in MIPS program
@@ -379,13 +619,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                             // MIPS program with appropriate error message.
                        ProgramStatement exceptionHandler = null;
                        try {
-                          exceptionHandler = Globals.memory.getStatement(Memory.exceptionHandlerAddress);
+                          exceptionHandler = memory.getStatement(Memory.exceptionHandlerAddress);
                        } 
                            catch (AddressErrorException aee) { } // will not occur with this well-known addres
                        if (exceptionHandler != null) {
                           RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
                        } 
                        else {
+                          steps++;
                           this.constructReturnReason = EXCEPTION;
                           this.pe = pe;
                           this.done = true;
@@ -396,6 +637,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                     }
                  }
                }// end synchronized block
+               steps++; // before the returns below, so getInstructionCount() includes this one
             	
             	// Volatile variable initialized false but can be set true by the main thread.
             	// Used to stop or pause a running MIPS program.  See stopSimulation() above.
@@ -414,14 +656,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   return new Boolean(done); // false;
                }
             	// Check number of MIPS instructions executed.  Return if at limit (-1 is no limit).
-               if (maxSteps > 0) {
-                  steps++;
-                  if (steps >= maxSteps) {
-                     this.constructReturnReason = MAX_STEPS;
-                     this.done = false;
-                     Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                     return new Boolean(done);// false;
-                  }
+               if (maxSteps > 0 && steps >= maxSteps) {
+                  this.constructReturnReason = MAX_STEPS;
+                  this.done = false;
+                  Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+                  return new Boolean(done);// false;
                }
             	
             	// schedule GUI update only if: there is in fact a GUI! AND
@@ -442,10 +681,39 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                }
                
             
+               // Run ahead in the fast interpreter as far as it will go.  It leaves the
+            	// program counter at the next statement it could not handle itself.
+               if (turbo != null && memory.countObservers() == 0) {
+                  // Stop short of the next checkpoint, if any, so it is taken on time.
+                  int limit = (maxSteps > 0) ? maxSteps - steps : 0;
+                  // Likewise for the next logged interrupt, if replaying.
+                  int due = nextCheckpoint - steps;
+                  if (log != null) {
+                     due = Math.min(due, log.stepsToInterrupt(steps));
+                  }
+                  if (due < Integer.MAX_VALUE - steps && (limit == 0 || due < limit)) {
+                     limit = due;
+                  }
+                  int executed = (limit != 0 || maxSteps <= 0 && due >= Integer.MAX_VALUE - steps)
+                                 ? turbo.run(decoded, limit) : 0;
+                  if (executed > 0) {
+                     decoded = turbo.getLastExecuted();
+                     pc = decoded.address;
+                     steps += executed;
+                     if (maxSteps > 0 && steps >= maxSteps) {
+                        this.constructReturnReason = MAX_STEPS;
+                        this.done = false;
+                        Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+                        return new Boolean(done);
+                     }
+                  }
+               }
+            
                // Get next instruction in preparation for next iteration.
             
                try {
-                  statement = Globals.memory.getStatement(RegisterFile.getProgramCounter());
+                  decoded = fetch(RegisterFile.getProgramCounter(), decoded);
+                  statement = (decoded == null) ? null : decoded.statement;
                } 
                    catch (AddressErrorException e) {
                      ErrorList el = new ErrorList();
@@ -479,6 +747,77 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
             return new Boolean(done); // true;  // execution completed
          }
+      	
+      	/**
+      	 *  Whether this run may use the fast interpreter.  It bypasses register
+      	 *  observers, back stepping, breakpoints, run speed control, branch
+      	 *  predictors and the pipeline model, so it is only used when none of
+      	 *  those are in play.
+      	 */
+          private boolean turboEligible() {
+            if (!turboEnabled || Globals.getGui() != null || interactiveGUIUpdater != null ||
+                branchPredictors != null || pipelineModel != null ||
+                (Globals.runSpeedPanelExists &&
+                 RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) ||
+                breakPoints != null ||
+                Globals.getSettings().getBackSteppingEnabled() ||
+                RegisterFile.getProgramCounterRegister().countObservers() != 0) {
+               return false;
+            }
+            Register[] registers = RegisterFile.getRegisters();
+            for (int i = 0; i < registers.length; i++) {
+               if (registers[i].countObservers() != 0) {
+                  return false;
+               }
+            }
+            return true;
+         }
+      
+      	/**
+      	 *  Give the branch predictors the outcome of the statement just executed,
+      	 *  if it is a branch or jump.  It was taken if it registered a delayed
+      	 *  branch or moved the program counter anywhere but the next statement.
+      	 *
+      	 *  @param predictors the predictors being evaluated
+      	 *  @param decoded the statement just executed
+      	 */
+          private void resolveBranch(BranchPredictorLab predictors, DecodedInstruction decoded) {
+            int kind = BranchPredictorLab.classify(decoded.statement.getBinaryStatement());
+            if (kind == BranchPredictorLab.NONE) {
+               return;
+            }
+            boolean delayed = Globals.getSettings().getDelayedBranchingEnabled();
+            int fallThrough = decoded.getNextAddress() + (delayed ? Instruction.INSTRUCTION_LENGTH : 0);
+            int target;
+            boolean taken;
+            if (delayed) {
+               taken = DelayedBranch.isRegistered();
+               target = taken ? DelayedBranch.getBranchTargetAddress() : fallThrough;
+            } 
+            else {
+               target = RegisterFile.getProgramCounter();
+               taken = target != decoded.getNextAddress();
+            }
+            predictors.resolve(decoded.address, kind, taken, target, fallThrough);
+         }
+      
+      	/**
+      	 *  Fetch the statement at the given address.  Goes through the instruction
+      	 *  cache unless someone is observing memory, since observers expect to be
+      	 *  notified of every instruction fetch and the cache bypasses that.
+      	 *
+      	 *  @param address address of the statement
+      	 *  @param previous the statement executed just before, null if none
+      	 *  @return the decoded statement, or null if there is none at that address
+      	 *  @throws AddressErrorException if address is not a valid fetch address
+      	 */
+          private DecodedInstruction fetch(int address, DecodedInstruction previous) throws AddressErrorException {
+            if (memory.countObservers() == 0) {
+               return memory.getInstructionCache().fetch(address, previous);
+            }
+            ProgramStatement statement = memory.getStatement(address);
+            return (statement == null) ? null : new DecodedInstruction(address, statement);
+         }
          
       	
       	/**
@@ -0,0 +1,401 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.mips.trace.TraceSink;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Runs a program forward and backward in time.  Execution history is kept as
+ * a <code>Checkpoint</code> every so many instructions plus an
+ * <code>InputLog</code> of everything nondeterministic the program consumed.
+ * Going back to an earlier instruction restores the nearest checkpoint before
+ * it and re-executes forward from there, silently and at full speed.  The log
+ * makes the re-execution reproduce the original run exactly.
+ * <p>
+ * Time is the number of instructions executed since the start of the program.
+ * The horizon is the furthest time reached so far.  Running forward from a time
+ * before the horizon replays up to it without repeating output, then continues
+ * live.
+ * <p>
+ * Only a limited number of checkpoints is kept.  When there would be more,
+ * every other one is dropped and the interval is doubled, so memory use stays
+ * bounded however long the program runs, at the cost of longer re-execution
+ * further back in time.  Each checkpoint costs the memory blocks written
+ * during its interval (see <code>Memory.snapshot</code>).
+ * <p>
+ * Intended for use without the IDE, from the thread that assembled the program.
+ * Nothing else should run the program while a TimeTravel is attached to it.
+ *
+ * @version October 2017
+ */
+
+    public class TimeTravel {
+      /** Default number of instructions between checkpoints */
+      public static final int DEFAULT_INTERVAL = 100000;
+      /** Default number of checkpoints kept */
+      public static final int DEFAULT_CHECKPOINT_LIMIT = 64;
+   
+      private final MIPSprogram program;
+      private final InputLog log = new InputLog();
+      private final ArrayList checkpoints = new ArrayList();
+      private final int checkpointLimit;
+      private int interval;
+      private int time = 0;
+      private int horizon = 0;
+      private boolean finished = false;  // program ended at the horizon
+      private int endReason = 0;
+      private ProcessingException exception = null;
+      private int lastWrite;
+   
+   	/**
+   	 * Start recording the history of a program, with the default interval and
+   	 * number of checkpoints.
+   	 *
+   	 * @param program assembled program, ready to run from the program counter
+   	 */
+       public TimeTravel(MIPSprogram program) {
+         this(program, DEFAULT_INTERVAL, DEFAULT_CHECKPOINT_LIMIT);
+      }
+   
+   	/**
+   	 * Start recording the history of a program.  Nothing has been executed yet.
+   	 *
+   	 * @param program assembled program, ready to run from the program counter
+   	 * @param interval number of instructions between checkpoints to begin with
+   	 * @param checkpointLimit number of checkpoints kept, at least 2
+   	 */
+       public TimeTravel(MIPSprogram program, int interval, int checkpointLimit) {
+         if (interval < 1 || checkpointLimit < 2) {
+            throw new IllegalArgumentException("interval must be positive and limit at least 2");
+         }
+         this.program = program;
+         this.interval = interval;
+         this.checkpointLimit = checkpointLimit;
+         Simulator.getInstance().setInputLog(log);
+         checkpoints.add(new Checkpoint(0));
+      }
+   
+   	/**
+   	 * Stop recording.  The machine is left as it is, and the history is discarded.
+   	 */
+       public void close() {
+         if (Simulator.getInstance().getInputLog() == log) {
+            Simulator.getInstance().setInputLog(null);
+         }
+         checkpoints.clear();
+      }
+   
+   	/**
+   	 * @return number of instructions executed to get to the current state
+   	 */
+       public int getTime() {
+         return time;
+      }
+   
+   	/**
+   	 * @return furthest time reached so far
+   	 */
+       public int getHorizon() {
+         return horizon;
+      }
+   
+   	/**
+   	 * @return true if the program has ended, at the horizon
+   	 */
+       public boolean isFinished() {
+         return finished;
+      }
+   
+   	/**
+   	 * @return the runtime error that ended the program, or null if none did
+   	 */
+       public ProcessingException getException() {
+         return exception;
+      }
+   
+   	/**
+   	 * @return number of instructions between checkpoints at present
+   	 */
+       public int getInterval() {
+         return interval;
+      }
+   
+   	/**
+   	 * @return number of checkpoints held
+   	 */
+       public int getCheckpointCount() {
+         return checkpoints.size();
+      }
+   
+   	/**
+   	 * Run forward from the current time, replaying up to the horizon and live
+   	 * beyond it, until the program ends, reaches a breakpoint or has executed
+   	 * the given number of instructions.
+   	 *
+   	 * @param maxSteps maximum number of instructions to execute, 0 or less for no maximum
+   	 * @param breakPoints addresses of breakpoints, or null for none
+   	 * @return why it stopped: <code>Simulator.BREAKPOINT</code>, <code>MAX_STEPS</code>,
+   	 * or how the program ended if it did (see <code>getException</code> for errors)
+   	 */
+       public int run(int maxSteps, int[] breakPoints) {
+         if (finished && time == horizon) {
+            return endReason;
+         }
+         int[] sorted = sortedCopy(breakPoints);
+         int remaining = maxSteps;
+         while (true) {
+            boolean replaying = time < horizon;
+            int limit = replaying ? horizon - time : nextCheckpointTime() - time;
+            if (remaining > 0 && remaining < limit) {
+               limit = remaining;
+            }
+            int start = time;
+            int reason = simulate(limit, sorted, replaying);
+            if (remaining > 0) {
+               remaining -= time - start;
+            }
+            if (!replaying && !finished && time == nextCheckpointTime()) {
+               takeCheckpoint();
+            }
+            if (reason != Simulator.MAX_STEPS || remaining == 0 && maxSteps > 0) {
+               return reason;
+            }
+         }
+      }
+   
+   	/**
+   	 * Go back one instruction.
+   	 *
+   	 * @return false if already at the start of the program
+   	 */
+       public boolean reverseStep() {
+         if (time == 0) {
+            return false;
+         }
+         goTo(time - 1);
+         return true;
+      }
+   
+   	/**
+   	 * Go back to the last time the program stopped at one of the given
+   	 * breakpoints, that is, the program counter held one of them, or to the
+   	 * start of the program if it never did.
+   	 *
+   	 * @param breakPoints addresses of breakpoints
+   	 * @return false if no breakpoint was found and the machine is at the start
+   	 */
+       public boolean reverseContinue(int[] breakPoints) {
+         int[] sorted = (breakPoints == null) ? new int[0] : sortedCopy(breakPoints);
+         int now = time;
+         for (int i = checkpointBefore(now - 1); i >= 0 && now > 0; i--) {
+            // Breakpoint stops at times in (start, end] happen in this interval.
+            int start = checkpoint(i).getSteps();
+            int end = (i + 1 < checkpoints.size()) ? Math.min(checkpoint(i + 1).getSteps(), now - 1) : now - 1;
+            if (end <= start) {
+               continue;
+            }
+            restore(i);
+            int last = -1;
+            while (time < end) {
+               int reason = simulate(end - time, sorted, true);
+               if (reason == Simulator.BREAKPOINT) {
+                  last = time;
+               } 
+               else if (reason != Simulator.MAX_STEPS) {
+                  break;
+               }
+            }
+            if (last >= 0) {
+               goTo(last);
+               return true;
+            }
+         }
+         goTo(0);
+         return now > 0 && Arrays.binarySearch(sorted, checkpoint(0).getProgramCounter()) >= 0;
+      }
+   
+   	/**
+   	 * Go back to just before the last instruction that wrote to the given memory
+   	 * word, so that instruction is the next to execute.  If no instruction wrote
+   	 * to it, go back to the start of the program.
+   	 *
+   	 * @param address address of a byte in the word
+   	 * @return false if no write was found and the machine is at the start
+   	 */
+       public boolean reverseToLastWrite(int address) {
+         final Simulator simulator = Simulator.getInstance();
+         Observer watcher = 
+                new Observer() {
+                  public void update(Observable memory, Object notice) {
+                     if (((AccessNotice) notice).getAccessType() == AccessNotice.WRITE) {
+                        lastWrite = time + simulator.getRunSteps();
+                     }
+                  }
+               };
+         Memory memory = Memory.getInstance();
+         int word = address & ~(Memory.WORD_LENGTH_BYTES - 1);
+         int now = time;
+         int found = -1;
+         try {
+            memory.addObserver(watcher, word, word);
+         } 
+             catch (AddressErrorException e) {
+               goTo(0);
+               return false;
+            }
+         try {
+            for (int i = checkpointBefore(now - 1); i >= 0 && now > 0 && found < 0; i--) {
+               // Instructions start..end-1 execute in this interval.
+               int start = checkpoint(i).getSteps();
+               int end = (i + 1 < checkpoints.size()) ? Math.min(checkpoint(i + 1).getSteps(), now) : now;
+               restore(i);
+               lastWrite = -1;
+               while (time < end) {
+                  if (simulate(end - time, null, true) != Simulator.MAX_STEPS) {
+                     break;
+                  }
+               }
+               found = lastWrite;
+            }
+         }
+         finally {
+            memory.deleteObserver(watcher);
+         }
+         goTo(Math.max(found, 0));
+         return found >= 0;
+      }
+   
+   	/**
+   	 * Put the machine in the state it was in at the given time, by restoring
+   	 * a checkpoint and re-executing forward from it.
+   	 *
+   	 * @param target number of instructions executed, from 0 to the horizon
+   	 */
+       public void goTo(int target) {
+         if (target < 0 || target > horizon) {
+            throw new IllegalArgumentException("time "+target+" is outside 0.."+horizon);
+         }
+         int i = checkpointBefore(target);
+         if (target < time || checkpoint(i).getSteps() > time) {
+            restore(i);
+         }
+         while (time < target) {
+            if (simulate(target - time, null, true) != Simulator.MAX_STEPS) {
+               break; // program ended, at the horizon
+            }
+         }
+      }
+   
+      // Run up to maxSteps instructions, replaying or live, and advance the clock.
+       private int simulate(int maxSteps, int[] breakPoints, boolean replaying) {
+         Simulator simulator = Simulator.getInstance();
+         TraceSink trace = TraceSink.getInstance();
+         boolean tracing = trace.isEnabled();
+         int reason;
+         log.prepare(time, replaying);
+         if (replaying) {
+            trace.setEnabled(false); // written the first time round
+         }
+         try {
+            simulator.simulate(program, RegisterFile.getProgramCounter(), maxSteps, breakPoints, null);
+            reason = simulator.getStopReason();
+         } 
+             catch (ProcessingException e) {
+               reason = Simulator.EXCEPTION;
+               if (!replaying) {
+                  exception = e;
+               }
+            }
+         finally {
+            trace.setEnabled(tracing);
+         }
+         time += simulator.getInstructionCount();
+         if (time >= horizon) {
+            horizon = time;
+            if (reason != Simulator.MAX_STEPS && reason != Simulator.BREAKPOINT) {
+               finished = true;
+               endReason = reason;
+            }
+         }
+         return reason;
+      }
+   
+       private void takeCheckpoint() {
+         checkpoints.add(new Checkpoint(time));
+         if (checkpoints.size() > checkpointLimit) {
+            // Keep every other one, starting with the first, and space them twice as far apart.
+            for (int i = 1; i < checkpoints.size(); i++) {
+               checkpoints.remove(i);
+            }
+            interval *= 2;
+         }
+      }
+   
+       private int nextCheckpointTime() {
+         int last = checkpoint(checkpoints.size() - 1).getSteps();
+         return (Integer.MAX_VALUE - last > interval) ? last + interval : Integer.MAX_VALUE;
+      }
+   
+       private void restore(int i) {
+         Checkpoint checkpoint = checkpoint(i);
+         checkpoint.restore();
+         time = checkpoint.getSteps();
+      }
+   
+       private Checkpoint checkpoint(int i) {
+         return (Checkpoint) checkpoints.get(i);
+      }
+   
+      // Index of the last checkpoint taken at or before the given time.
+       private int checkpointBefore(int target) {
+         int low = 0;
+         int high = checkpoints.size() - 1;
+         while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (checkpoint(middle).getSteps() <= target) {
+               low = middle;
+            } 
+            else {
+               high = middle - 1;
+            }
+         }
+         return low;
+      }
+   
+       private static int[] sortedCopy(int[] breakPoints) {
+         if (breakPoints == null) {
+            return null;
+         }
+         int[] sorted = (int[]) breakPoints.clone();
+         Arrays.sort(sorted);
+         return sorted;
+      }
+   }
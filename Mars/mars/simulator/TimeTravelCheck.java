@@ -0,0 +1,256 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.mips.trace.TraceSink;
+   import java.io.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Check of <code>TimeTravel</code> against a live run.  Runs a small program that
+ * takes random numbers (syscall 42) and the system time (syscall 30) one instruction
+ * at a time under a TimeTravel, recording the state after every instruction, then
+ * goes back and forth with <code>goTo</code>, <code>reverseStep</code>,
+ * <code>reverseContinue</code> and <code>reverseToLastWrite</code> and compares the
+ * state each one arrives at with the one recorded at that time.  Checkpoints are
+ * taken often and few are kept, so they are also thinned out along the way.  The
+ * system time keeps changing and the random numbers are not seeded, so the states
+ * only match if the input log replays what the live run got.
+ * <p>
+ * Usage: <code>java mars.simulator.TimeTravelCheck</code>.  Prints each check and
+ * exits with status 1 if any fails.
+ *
+ * @version October 2017
+ */
+
+    public class TimeTravelCheck {
+   
+      private static final String PROGRAM =
+         ".data\n" +
+         "sum:  .word 0\n" +
+         "last: .word -1\n" +
+         ".text\n" +
+         "main:\n" +
+         "  li $t0, 0\n" +
+         "loop:\n" +
+         "  li $v0, 42\n" +            // random int in [0, 1000)
+         "  li $a0, 0\n" +
+         "  li $a1, 1000\n" +
+         "  syscall\n" +
+         "  addu $s0, $s0, $a0\n" +
+         "  li $v0, 30\n" +            // system time
+         "  syscall\n" +
+         "  xor $s1, $s1, $a0\n" +
+         "  sw $s0, sum\n" +
+         "  andi $t1, $t0, 7\n" +
+         "  bnez $t1, skip\n" +
+         "  sw $t0, last\n" +          // every eighth time round
+         "skip:\n" +
+         "  addiu $t0, $t0, 1\n" +
+         "  blt $t0, 2000, loop\n" +
+         "  li $v0, 10\n" +
+         "  syscall\n";
+      private static final int INTERVAL = 1000;
+      private static final int CHECKPOINT_LIMIT = 8;
+   
+      private static int failures = 0;
+      private static int sum, last;          // data addresses
+      private static long[] states;          // state hash after each number of instructions
+      private static int[] programCounters;  // program counter after each number of instructions
+      private static int[] lastValues;       // word at last after each number of instructions
+   
+       public static void main(String[] args) throws Exception {
+         File source = File.createTempFile("mars-check", ".asm");
+         source.deleteOnExit();
+         Writer out = new FileWriter(source);
+         out.write(PROGRAM);
+         out.close();
+      
+         Globals.initialize(false);
+         TraceSink.getInstance().setEnabled(false);
+         // Not Globals.program, which would have back stepping record every write.
+         MIPSprogram program = new MIPSprogram();
+         ArrayList files = new ArrayList();
+         files.add(source.getPath());
+         program.assemble(program.prepareFilesForAssembly(files, source.getPath(), null), true, false);
+         RegisterFile.initializeProgramCounter(false);
+         sum = program.getLocalSymbolTable().getAddress("sum");
+         last = program.getLocalSymbolTable().getAddress("last");
+         int skip = program.getLocalSymbolTable().getAddress("skip");
+      
+         TimeTravel travel = new TimeTravel(program, INTERVAL, CHECKPOINT_LIMIT);
+         int horizon = record(travel);
+         check("program ran to the end", travel.isFinished() && travel.getTime() == horizon, 
+               horizon + " instructions");
+         check("checkpoints were thinned out", travel.getInterval() > INTERVAL 
+               && travel.getCheckpointCount() <= CHECKPOINT_LIMIT, 
+               travel.getCheckpointCount() + " checkpoints every " + travel.getInterval());
+      
+         // goTo back from the end and then forward again, to times on either side of checkpoints.
+         int[] times = {horizon, horizon - 1, 20001, 16000, 15999, 8001, 4321, 1000, 999, 5, 1, 0};
+         boolean backward = true;
+         for (int i = 0; i < times.length; i++) {
+            travel.goTo(times[i]);
+            backward &= matches(travel);
+         }
+         check("goTo backward", backward, times.length + " times");
+         boolean forward = true;
+         for (int i = times.length - 1; i >= 0; i--) {
+            travel.goTo(times[i]);
+            forward &= matches(travel);
+         }
+         check("goTo forward", forward, times.length + " times");
+      
+         // reverseStep from the end, across a checkpoint.
+         int checkpointTime = (horizon / travel.getInterval()) * travel.getInterval();
+         travel.goTo(Math.min(horizon, checkpointTime + 3));
+         boolean stepped = true;
+         for (int i = 0; i < 6; i++) {
+            int before = travel.getTime();
+            stepped &= travel.reverseStep() && travel.getTime() == before - 1 && matches(travel);
+         }
+         check("reverseStep", stepped, "to " + travel.getTime());
+      
+         // reverseContinue to the breakpoint at skip, twice, from the end.
+         travel.goTo(horizon);
+         int[] breakPoints = {skip};
+         for (int i = 1; i <= 2; i++) {
+            int expected = previous(programCounters, travel.getTime(), skip);
+            boolean found = travel.reverseContinue(breakPoints);
+            check("reverseContinue " + i, found && travel.getTime() == expected && matches(travel), 
+                  "to " + travel.getTime() + ", expected " + expected);
+         }
+      
+         // reverseToLastWrite of last, from the end and from a time before its first write.
+         travel.goTo(horizon);
+         int lastWrite = lastWriteBefore(horizon);
+         boolean found = travel.reverseToLastWrite(last);
+         check("reverseToLastWrite", found && travel.getTime() == lastWrite && matches(travel), 
+               "to " + travel.getTime() + ", expected " + lastWrite);
+         travel.run(1, null);
+         check("instruction found writes the word", Memory.getInstance().getWord(last) == lastValues[horizon] 
+               && matches(travel), "at " + travel.getTime());
+         travel.goTo(2);
+         found = travel.reverseToLastWrite(last);
+         check("reverseToLastWrite before any write", !found && travel.getTime() == 0 && matches(travel), 
+               "to " + travel.getTime());
+      
+         // And forward from there to the end again, replaying.
+         travel.run(0, null);
+         check("run to the end again", travel.getTime() == horizon && matches(travel), 
+               "to " + travel.getTime());
+         travel.close();
+      
+         if (failures > 0) {
+            System.out.println(failures + " failed");
+            System.exit(1);
+         }
+         System.out.println("all passed");
+      }
+   
+   	// Run the program live one instruction at a time, recording the state after
+   	// each.  Returns the number of instructions it took.
+       private static int record(TimeTravel travel) throws AddressErrorException {
+         ArrayList stateList = new ArrayList();
+         ArrayList counterList = new ArrayList();
+         ArrayList lastList = new ArrayList();
+         while (true) {
+            stateList.add(new Long(state()));
+            counterList.add(new Integer(RegisterFile.getProgramCounter()));
+            lastList.add(new Integer(Memory.getInstance().getWord(last)));
+            if (travel.run(1, null) != Simulator.MAX_STEPS) {
+               break;
+            }
+         }
+         int horizon = travel.getTime();
+         if (stateList.size() == horizon) { // the last instruction ended the program
+            stateList.add(new Long(state()));
+            counterList.add(new Integer(RegisterFile.getProgramCounter()));
+            lastList.add(new Integer(Memory.getInstance().getWord(last)));
+         }
+         states = new long[horizon + 1];
+         programCounters = new int[horizon + 1];
+         lastValues = new int[horizon + 1];
+         for (int t = 0; t <= horizon; t++) {
+            states[t] = ((Long) stateList.get(t)).longValue();
+            programCounters[t] = ((Integer) counterList.get(t)).intValue();
+            lastValues[t] = ((Integer) lastList.get(t)).intValue();
+         }
+         return horizon;
+      }
+   
+   	// Hash of the registers, program counter and data words.
+       private static long state() throws AddressErrorException {
+         long hash = RegisterFile.getProgramCounter();
+         for (int i = 0; i < 32; i++) {
+            hash = hash * 31 + RegisterFile.getValue(i);
+         }
+         hash = hash * 31 + RegisterFile.getValue(33);
+         hash = hash * 31 + RegisterFile.getValue(34);
+         hash = hash * 31 + Memory.getInstance().getWord(sum);
+         hash = hash * 31 + Memory.getInstance().getWord(last);
+         return hash;
+      }
+   
+       private static boolean matches(TimeTravel travel) throws AddressErrorException {
+         return state() == states[travel.getTime()];
+      }
+   
+   	// Last time before the given one that the program counter held the address.
+       private static int previous(int[] counters, int time, int address) {
+         for (int t = time - 1; t >= 0; t--) {
+            if (counters[t] == address) {
+               return t;
+            }
+         }
+         return -1;
+      }
+   
+   	// Last time before the given one at which the next instruction changed last,
+   	// or -1 if none did.
+       private static int lastWriteBefore(int time) {
+         for (int t = time - 1; t >= 0; t--) {
+            if (lastValues[t + 1] != lastValues[t]) {
+               return t;
+            }
+         }
+         return -1;
+      }
+   
+       private static void check(String name, boolean passed, String detail) {
+         if (passed) {
+            System.out.println("ok      " + name + ": " + detail);
+         } 
+         else {
+            System.out.println("FAILED  " + name + ": " + detail);
+            failures++;
+         }
+      }
+   }
@@ -0,0 +1,722 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.mips.instructions.*;
+   import mars.mips.trace.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Fast interpreter for command mode runs.  The general purpose registers,
+ * HI, LO and the PC are kept in plain ints while it runs, and each statement
+ * is carried out by a switch on an operation number assigned the first time
+ * the statement is decoded, instead of through its SimulationCode and the
+ * synchronized, observable <code>RegisterFile</code>.  Memory is still accessed
+ * through <code>Memory</code>, and register and memory writes are traced exactly
+ * as the simulation code would trace them.
+ * <p>
+ * The engine only handles the common integer instructions, and only in their
+ * built-in form (not as replaced from Lua).  It stops in front of any other
+ * statement, in front of one that would raise an exception (arithmetic overflow,
+ * bad address), and when it cannot fetch the next statement, after writing its
+ * registers back into <code>RegisterFile</code>.  The simulator then executes that
+ * statement the usual way, so syscalls, exceptions and everything else behave
+ * exactly as they always have, and comes back here.
+ * <p>
+ * Blocks of statements that are started often are translated into JVM classes
+ * by <code>BlockCompiler</code> and from then on run as compiled code, unless
+ * statements are being counted.  A block is dropped again if any of its
+ * statements is replaced in memory.
+ * <p>
+ * It must only be used when nothing observes memory or registers, back stepping
+ * is disabled and there are no breakpoints; see <code>Simulator</code>.
+ *
+ * @version October 2017
+ */
+
+    public class TurboEngine {
+   
+      // Operation numbers.  UNCLASSIFIED means not yet looked up, FALLBACK means
+   	// the statement has to be executed by its own simulation code.
+      static final int UNCLASSIFIED = -1;
+      static final int FALLBACK = 0;
+      static final int NOP = 1, ADD = 2, SUB = 3, ADDI = 4, ADDU = 5, SUBU = 6, ADDIU = 7,
+              MULT = 8, MULTU = 9, MUL = 10, DIV = 11, DIVU = 12, MFHI = 13, MFLO = 14, MTHI = 15, MTLO = 16,
+              AND = 17, OR = 18, ANDI = 19, ORI = 20, NOR = 21, XOR = 22, XORI = 23,
+              SLL = 24, SLLV = 25, SRL = 26, ROTR = 27, SRA = 28, SRAV = 29, SRLV = 30,
+              LW = 31, SW = 32, LUI = 33, BEQ = 34, BNE = 35, BGEZ = 36, BGEZAL = 37, BGTZ = 38,
+              BLEZ = 39, BLTZ = 40, BLTZAL = 41, SLT = 42, SLTU = 43, SLTI = 44, SLTIU = 45,
+              MOVN = 46, MOVZ = 47, J = 48, JR = 49, JAL = 50, JALR = 51, JALR_RA = 52,
+              LB = 53, LH = 54, LHU = 55, LBU = 56, SB = 57, SH = 58;
+   
+      // Times a block must be started before it is compiled.
+      private static final int HOT_THRESHOLD = 1000;
+   
+      private static final String BUILT_IN_CODE_PREFIX = InstructionSet.class.getName() + "$";
+      private static HashMap operations = null;
+   
+      private final int[] registers = new int[CompiledBlock.REGISTER_ARRAY_LENGTH];
+      private final int[] entryRegisters = new int[32];
+      private int hi, lo;
+      private DecodedInstruction last;
+      private final SimulationStats stats;
+      private final boolean compiling;
+   
+   	/**
+   	 * Create an engine for one run of the simulator.
+   	 *
+   	 * @param stats counters to count executed statements in, null if not counting
+   	 * @param compiling true to compile blocks that are started often
+   	 */
+       public TurboEngine(SimulationStats stats, boolean compiling) {
+         this.stats = stats;
+         this.compiling = compiling && stats == null;
+      }
+   
+   	/**
+   	 * Execute statements starting at the current program counter until reaching
+   	 * one this engine does not handle itself, or until the step limit.  On return
+   	 * the registers and program counter are back in <code>RegisterFile</code>, with
+   	 * the PC addressing the next statement to execute.
+   	 *
+   	 * @param previous the statement executed just before, null if none
+   	 * @param maxSteps maximum number of statements to execute, 0 or less for no limit
+   	 * @return number of statements executed
+   	 */
+       public int run(DecodedInstruction previous, int maxSteps) {
+         boolean delayed = Globals.getSettings().getDelayedBranchingEnabled();
+         Memory memory = Memory.getInstance();
+         InstructionCache cache = memory.getInstructionCache();
+         Register pcRegister = RegisterFile.getProgramCounterRegister();
+         TraceSink trace = TraceSink.getInstance();
+         int pc = RegisterFile.getProgramCounter();
+         int executed = 0;
+         last = previous;
+         DecodedInstruction d;
+         try {
+            d = cache.fetch(pc, previous);
+         } 
+             catch (AddressErrorException e) {
+               d = null;
+            }
+         if (d == null) {
+            return 0;
+         }
+         if (d.operation == UNCLASSIFIED) {
+            d.operation = classify(d.instruction);
+         }
+         if (d.operation == FALLBACK) {
+            return 0; // not worth copying the registers in and out
+         }
+         int[] r = registers;
+         for (int i = 0; i < 32; i++) {
+            r[i] = entryRegisters[i] = RegisterFile.getValue(i);
+         }
+         int entryHi = hi = RegisterFile.getValue(33);
+         int entryLo = lo = RegisterFile.getValue(34);
+         boolean selfModifying = Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED);
+         // A block starts where the run starts and wherever control may have been
+      	// transferred to: after a branch or jump, or after its delay slot.
+         boolean blockStart = compiling;
+         boolean delaySlot = false;
+         execution:
+         while (d != null && (maxSteps <= 0 || executed < maxSteps)) {
+            if (blockStart && d.valid) {
+               CompiledBlock block = d.block;
+               if (block == null && ++d.heat == HOT_THRESHOLD) {
+                  block = d.block = BlockCompiler.compile(cache, d, delayed, selfModifying);
+                  if (block == null) {
+                     d.heat = Integer.MIN_VALUE; // do not try again
+                  }
+               }
+               if (block != null && block.cacheVersion != cache.getVersion() && !isCurrent(block, cache)) {
+                  block = d.block = null;
+                  d.heat = 0;
+               }
+               if (block != null && (maxSteps <= 0 || maxSteps - executed >= block.length()) &&
+                   (!delayed || !DelayedBranch.isRegistered() && !DelayedBranch.isTriggered())) {
+                  r[CompiledBlock.HI] = hi;
+                  r[CompiledBlock.LO] = lo;
+                  pc = block.run(r, memory, trace, pcRegister);
+                  hi = r[CompiledBlock.HI];
+                  lo = r[CompiledBlock.LO];
+                  int count = r[CompiledBlock.EXECUTED];
+                  executed += count;
+                  if (count > 0) {
+                     last = block.statements[count - 1];
+                  }
+                  if (count < block.length()) {
+                     break execution; // stopped in front of an exception, let the simulation code raise it
+                  }
+                  try {
+                     d = cache.fetch(pc, last);
+                  } 
+                      catch (AddressErrorException e) {
+                        d = null;
+                     }
+                  delaySlot = false;
+                  continue execution;
+               }
+            }
+            blockStart = false;
+            int op = d.operation;
+            if (op == UNCLASSIFIED) {
+               op = d.operation = classify(d.instruction);
+            }
+            int next = pc + Instruction.INSTRUCTION_LENGTH;
+            int value;
+            try {
+               switch (op) {
+                  case NOP:
+                     break;
+                  case ADD:
+                     {
+                        int add1 = r[d.op1];
+                        int add2 = r[d.op2];
+                        int sum = add1 + add2;
+                        if ((add1 >= 0 && add2 >= 0 && sum < 0) || (add1 < 0 && add2 < 0 && sum >= 0)) {
+                           break execution; // overflow, let the simulation code raise it
+                        }
+                        trace.registerWrite(pc, d.op0, sum);
+                        if (d.op0 != 0) r[d.op0] = sum;
+                     }
+                     break;
+                  case SUB:
+                     {
+                        int sub1 = r[d.op1];
+                        int sub2 = r[d.op2];
+                        int dif = sub1 - sub2;
+                        if ((sub1 >= 0 && sub2 < 0 && dif < 0) || (sub1 < 0 && sub2 >= 0 && dif >= 0)) {
+                           break execution;
+                        }
+                        trace.registerWrite(pc, d.op0, dif);
+                        if (d.op0 != 0) r[d.op0] = dif;
+                     }
+                     break;
+                  case ADDI:
+                     {
+                        int add1 = r[d.op1];
+                        int add2 = d.op2 << 16 >> 16;
+                        int sum = add1 + add2;
+                        if ((add1 >= 0 && add2 >= 0 && sum < 0) || (add1 < 0 && add2 < 0 && sum >= 0)) {
+                           break execution;
+                        }
+                        trace.registerWrite(pc, d.op0, sum);
+                        if (d.op0 != 0) r[d.op0] = sum;
+                     }
+                     break;
+                  case ADDU:
+                     value = r[d.op1] + r[d.op2];
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case SUBU:
+                     value = r[d.op1] - r[d.op2];
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case ADDIU:
+                     value = r[d.op1] + (d.op2 << 16 >> 16);
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case MULT:
+                     {
+                        long product = (long) r[d.op0] * (long) r[d.op1];
+                        hi = (int) (product >> 32);
+                        lo = (int) ((product << 32) >> 32);
+                     }
+                     break;
+                  case MULTU:
+                     {
+                        long product = (((long) r[d.op0]) << 32 >>> 32) * (((long) r[d.op1]) << 32 >>> 32);
+                        hi = (int) (product >> 32);
+                        lo = (int) ((product << 32) >> 32);
+                     }
+                     break;
+                  case MUL:
+                     {
+                        long product = (long) r[d.op1] * (long) r[d.op2];
+                        value = (int) ((product << 32) >> 32);
+                        trace.registerWrite(pc, d.op0, value);
+                        if (d.op0 != 0) r[d.op0] = value;
+                        hi = (int) (product >> 32);
+                        lo = (int) ((product << 32) >> 32);
+                     }
+                     break;
+                  case DIV:
+                     if (r[d.op1] != 0) {
+                        hi = r[d.op0] % r[d.op1];
+                        lo = r[d.op0] / r[d.op1];
+                     }
+                     break;
+                  case DIVU:
+                     if (r[d.op1] != 0) {
+                        long oper1 = ((long) r[d.op0]) << 32 >>> 32;
+                        long oper2 = ((long) r[d.op1]) << 32 >>> 32;
+                        hi = (int) (((oper1 % oper2) << 32) >> 32);
+                        lo = (int) (((oper1 / oper2) << 32) >> 32);
+                     }
+                     break;
+                  case MFHI:
+                     trace.registerWrite(pc, d.op0, hi);
+                     if (d.op0 != 0) r[d.op0] = hi;
+                     break;
+                  case MFLO:
+                     trace.registerWrite(pc, d.op0, lo);
+                     if (d.op0 != 0) r[d.op0] = lo;
+                     break;
+                  case MTHI:
+                     hi = r[d.op0];
+                     break;
+                  case MTLO:
+                     lo = r[d.op0];
+                     break;
+                  case AND:
+                     value = r[d.op1] & r[d.op2];
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case OR:
+                     value = r[d.op1] | r[d.op2];
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case ANDI:
+                     value = r[d.op1] & (d.op2 & 0x0000FFFF);
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case ORI:
+                     value = r[d.op1] | (d.op2 & 0x0000FFFF);
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case NOR:
+                     value = ~(r[d.op1] | r[d.op2]);
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case XOR:
+                     value = r[d.op1] ^ r[d.op2];
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case XORI:
+                     value = r[d.op1] ^ (d.op2 & 0x0000FFFF);
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case SLL:
+                     value = r[d.op1] << d.op2;
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case SLLV:
+                     value = r[d.op1] << (r[d.op2] & 0x0000001F);
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case SRL:
+                     value = r[d.op1] >>> d.op2;
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case ROTR:
+                     value = (r[d.op1] >>> d.op2) | (r[d.op1] << (32 - d.op2));
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case SRA:
+                     value = r[d.op1] >> d.op2;
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case SRAV:
+                     value = r[d.op1] >> (r[d.op2] & 0x0000001F);
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case SRLV:
+                     value = r[d.op1] >>> (r[d.op2] & 0x0000001F);
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case LW:
+                     value = memory.getWord(r[d.op2] + (d.op1 << 16 >> 16));
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case LB:
+                     value = memory.getByte(r[d.op2] + (d.op1 << 16 >> 16)) << 24 >> 24;
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case LBU:
+                     value = memory.getByte(r[d.op2] + (d.op1 << 16 >> 16)) & 0x000000ff;
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case LH:
+                     value = memory.getHalf(r[d.op2] + (d.op1 << 16 >> 16)) << 16 >> 16;
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case LHU:
+                     value = memory.getHalf(r[d.op2] + (d.op1 << 16 >> 16)) & 0x0000ffff;
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  // Memory traces stores using the program counter, so it must be current.
+                  case SW:
+                     pcRegister.setValue(next);
+                     memory.setWord(r[d.op2] + (d.op1 << 16 >> 16), r[d.op0]);
+                     break;
+                  case SB:
+                     pcRegister.setValue(next);
+                     memory.setByte(r[d.op2] + (d.op1 << 16 >> 16), r[d.op0] & 0x000000ff);
+                     break;
+                  case SH:
+                     pcRegister.setValue(next);
+                     memory.setHalf(r[d.op2] + (d.op1 << 16 >> 16), r[d.op0] & 0x0000ffff);
+                     break;
+                  case LUI:
+                     value = d.op1 << 16;
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case BEQ:
+                     if (r[d.op0] == r[d.op1]) {
+                        next = branch(next, d.op2, delayed);
+                     }
+                     break;
+                  case BNE:
+                     if (r[d.op0] != r[d.op1]) {
+                        next = branch(next, d.op2, delayed);
+                     }
+                     break;
+                  case BGEZ:
+                     if (r[d.op0] >= 0) {
+                        next = branch(next, d.op1, delayed);
+                     }
+                     break;
+                  case BGEZAL:
+                     if (r[d.op0] >= 0) {
+                        value = next + (delayed ? Instruction.INSTRUCTION_LENGTH : 0);
+                        trace.registerWrite(pc, 31, value);
+                        r[31] = value;
+                        next = branch(next, d.op1, delayed);
+                     }
+                     break;
+                  case BGTZ:
+                     if (r[d.op0] > 0) {
+                        next = branch(next, d.op1, delayed);
+                     }
+                     break;
+                  case BLEZ:
+                     if (r[d.op0] <= 0) {
+                        next = branch(next, d.op1, delayed);
+                     }
+                     break;
+                  case BLTZ:
+                     if (r[d.op0] < 0) {
+                        next = branch(next, d.op1, delayed);
+                     }
+                     break;
+                  case BLTZAL:
+                     if (r[d.op0] < 0) {
+                        value = next + (delayed ? Instruction.INSTRUCTION_LENGTH : 0);
+                        trace.registerWrite(pc, 31, value);
+                        r[31] = value;
+                        next = branch(next, d.op1, delayed);
+                     }
+                     break;
+                  case SLT:
+                     value = (r[d.op1] < r[d.op2]) ? 1 : 0;
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case SLTU:
+                     {
+                        int first = r[d.op1];
+                        int second = r[d.op2];
+                        if (first >= 0 && second >= 0 || first < 0 && second < 0) {
+                           value = (first < second) ? 1 : 0;
+                        } 
+                        else {
+                           value = (first >= 0) ? 1 : 0;
+                        }
+                        trace.registerWrite(pc, d.op0, value);
+                        if (d.op0 != 0) r[d.op0] = value;
+                     }
+                     break;
+                  case SLTI:
+                     value = (r[d.op1] < (d.op2 << 16 >> 16)) ? 1 : 0;
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     break;
+                  case SLTIU:
+                     {
+                        int first = r[d.op1];
+                        int second = d.op2 << 16 >> 16;
+                        if (first >= 0 && second >= 0 || first < 0 && second < 0) {
+                           value = (first < second) ? 1 : 0;
+                        } 
+                        else {
+                           value = (first >= 0) ? 1 : 0;
+                        }
+                        trace.registerWrite(pc, d.op0, value);
+                        if (d.op0 != 0) r[d.op0] = value;
+                     }
+                     break;
+                  case MOVN:
+                     if (r[d.op2] != 0) {
+                        value = r[d.op1];
+                        trace.registerWrite(pc, d.op0, value);
+                        if (d.op0 != 0) r[d.op0] = value;
+                     }
+                     break;
+                  case MOVZ:
+                     if (r[d.op2] == 0) {
+                        value = r[d.op1];
+                        trace.registerWrite(pc, d.op0, value);
+                        if (d.op0 != 0) r[d.op0] = value;
+                     }
+                     break;
+                  case J:
+                     next = jump(next, (next & 0xF0000000) | (d.op0 << 2), delayed);
+                     break;
+                  case JR:
+                     next = jump(next, r[d.op0], delayed);
+                     break;
+                  case JAL:
+                     value = next + (delayed ? Instruction.INSTRUCTION_LENGTH : 0);
+                     trace.registerWrite(pc, 31, value);
+                     r[31] = value;
+                     next = jump(next, (next & 0xF0000000) | (d.op0 << 2), delayed);
+                     break;
+                  case JALR:
+                     value = next + (delayed ? Instruction.INSTRUCTION_LENGTH : 0);
+                     trace.registerWrite(pc, d.op0, value);
+                     if (d.op0 != 0) r[d.op0] = value;
+                     next = jump(next, r[d.op1], delayed);
+                     break;
+                  case JALR_RA:
+                     value = next + (delayed ? Instruction.INSTRUCTION_LENGTH : 0);
+                     trace.registerWrite(pc, 31, value);
+                     r[31] = value;
+                     next = jump(next, r[d.op0], delayed);
+                     break;
+                  default:
+                     break execution;
+               }
+            } 
+                catch (AddressErrorException e) {
+                  break execution; // memory unchanged, let the simulation code raise it
+               }
+            if (stats != null) {
+               stats.count(d, next != pc + Instruction.INSTRUCTION_LENGTH ||
+                           (delayed && DelayedBranch.isRegistered()));
+            }
+            if (delayed) {
+               if (DelayedBranch.isTriggered()) {
+                  next = DelayedBranch.getBranchTargetAddress();
+                  DelayedBranch.clear();
+               } 
+               else if (DelayedBranch.isRegistered()) {
+                  DelayedBranch.trigger();
+               }
+            }
+            if (compiling) {
+               if (delaySlot) {
+                  blockStart = true;
+                  delaySlot = false;
+               } 
+               else if (op >= BEQ && op <= BLTZAL || op >= J && op <= JALR_RA) {
+                  blockStart = !delayed;
+                  delaySlot = delayed;
+               }
+            }
+            executed++;
+            last = d;
+            pc = next;
+            try {
+               d = cache.fetch(pc, d);
+            } 
+                catch (AddressErrorException e) {
+                  d = null; // simulator will raise it when it fetches
+               }
+         }
+         // Put everything back where the rest of MARS expects to find it.
+         Register[] regFile = RegisterFile.getRegisters();
+         for (int i = 1; i < 32; i++) {
+            if (r[i] != entryRegisters[i]) {
+               regFile[i].setValue(r[i]);
+            }
+         }
+         if (hi != entryHi) {
+            RegisterFile.updateRegister(33, hi);
+         }
+         if (lo != entryLo) {
+            RegisterFile.updateRegister(34, lo);
+         }
+         pcRegister.setValue(pc);
+         return executed;
+      }
+   
+   	/**
+   	 * @return the last statement executed by <code>run</code>, or the one it was given
+   	 * as previous if it executed none.
+   	 */
+       public DecodedInstruction getLastExecuted() {
+         return last;
+      }
+   
+      // True if every statement of the block is still in the cache, in which case it
+   	// is noted as current for this cache version.
+       private static boolean isCurrent(CompiledBlock block, InstructionCache cache) {
+         int version = cache.getVersion();
+         for (int i = 0; i < block.statements.length; i++) {
+            if (!block.statements[i].valid) {
+               return false;
+            }
+         }
+         block.cacheVersion = version;
+         return true;
+      }
+   
+   	// Operation number of a decoded statement, looked up if not done yet.
+       static int operation(DecodedInstruction d) {
+         if (d.operation == UNCLASSIFIED) {
+            d.operation = classify(d.instruction);
+         }
+         return d.operation;
+      }
+   
+      // Same as InstructionSet.processBranch.  pc has already been incremented.
+       private static int branch(int pc, int displacement, boolean delayed) {
+         int target = pc + ((displacement << 16 >> 16) << 2);
+         if (delayed) {
+            DelayedBranch.register(target);
+            return pc;
+         }
+         return target;
+      }
+   
+      // Same as InstructionSet.processJump.
+       private static int jump(int pc, int target, boolean delayed) {
+         if (delayed) {
+            DelayedBranch.register(target);
+            return pc;
+         }
+         return target;
+      }
+   
+      // Operation number for a basic instruction.  Only the instruction set's own
+   	// simulation code is replaced; instructions from Lua always fall back.
+       private static synchronized int classify(BasicInstruction instruction) {
+         if (instruction == null ||
+             !instruction.getSimulationCode().getClass().getName().startsWith(BUILT_IN_CODE_PREFIX)) {
+            return FALLBACK;
+         }
+         if (operations == null) {
+            defineOperations();
+         }
+         Integer op = (Integer) operations.get(instruction.getName() + " " + instruction.getOperationMask());
+         return (op == null) ? FALLBACK : op.intValue();
+      }
+   
+       private static void define(String name, String mask, int op) {
+         operations.put(name + " " + mask.replaceAll(" ", ""), new Integer(op));
+      }
+   
+      // Keyed by mnemonic and operation mask exactly as in InstructionSet.
+       private static void defineOperations() {
+         operations = new HashMap();
+         define("nop",    "000000 00000 00000 00000 00000 000000", NOP);
+         define("add",    "000000 sssss ttttt fffff 00000 100000", ADD);
+         define("sub",    "000000 sssss ttttt fffff 00000 100010", SUB);
+         define("addi",   "001000 sssss fffff tttttttttttttttt", ADDI);
+         define("addu",   "000000 sssss ttttt fffff 00000 100001", ADDU);
+         define("subu",   "000000 sssss ttttt fffff 00000 100011", SUBU);
+         define("addiu",  "001001 sssss fffff tttttttttttttttt", ADDIU);
+         define("mult",   "000000 fffff sssss 00000 00000 011000", MULT);
+         define("multu",  "000000 fffff sssss 00000 00000 011001", MULTU);
+         define("mul",    "011100 sssss ttttt fffff 00000 000010", MUL);
+         define("div",    "000000 fffff sssss 00000 00000 011010", DIV);
+         define("divu",   "000000 fffff sssss 00000 00000 011011", DIVU);
+         define("mfhi",   "000000 00000 00000 fffff 00000 010000", MFHI);
+         define("mflo",   "000000 00000 00000 fffff 00000 010010", MFLO);
+         define("mthi",   "000000 fffff 00000 00000 00000 010001", MTHI);
+         define("mtlo",   "000000 fffff 00000 00000 00000 010011", MTLO);
+         define("and",    "000000 sssss ttttt fffff 00000 100100", AND);
+         define("or",     "000000 sssss ttttt fffff 00000 100101", OR);
+         define("andi",   "001100 sssss fffff tttttttttttttttt", ANDI);
+         define("ori",    "001101 sssss fffff tttttttttttttttt", ORI);
+         define("nor",    "000000 sssss ttttt fffff 00000 100111", NOR);
+         define("xor",    "000000 sssss ttttt fffff 00000 100110", XOR);
+         define("xori",   "001110 sssss fffff tttttttttttttttt", XORI);
+         define("sll",    "000000 00000 sssss fffff ttttt 000000", SLL);
+         define("sllv",   "000000 ttttt sssss fffff 00000 000100", SLLV);
+         define("srl",    "000000 00000 sssss fffff ttttt 000010", SRL);
+         define("rotr",   "000000 00001 sssss fffff ttttt 000010", ROTR);
+         define("sra",    "000000 00000 sssss fffff ttttt 000011", SRA);
+         define("srav",   "000000 ttttt sssss fffff 00000 000111", SRAV);
+         define("srlv",   "000000 ttttt sssss fffff 00000 000110", SRLV);
+         define("lw",     "100011 ttttt fffff ssssssssssssssss", LW);
+         define("sw",     "101011 ttttt fffff ssssssssssssssss", SW);
+         define("lui",    "001111 00000 fffff ssssssssssssssss", LUI);
+         define("beq",    "000100 fffff sssss tttttttttttttttt", BEQ);
+         define("bne",    "000101 fffff sssss tttttttttttttttt", BNE);
+         define("bgez",   "000001 fffff 00001 ssssssssssssssss", BGEZ);
+         define("bgezal", "000001 fffff 10001 ssssssssssssssss", BGEZAL);
+         define("bgtz",   "000111 fffff 00000 ssssssssssssssss", BGTZ);
+         define("blez",   "000110 fffff 00000 ssssssssssssssss", BLEZ);
+         define("bltz",   "000001 fffff 00000 ssssssssssssssss", BLTZ);
+         define("bltzal", "000001 fffff 10000 ssssssssssssssss", BLTZAL);
+         define("slt",    "000000 sssss ttttt fffff 00000 101010", SLT);
+         define("sltu",   "000000 sssss ttttt fffff 00000 101011", SLTU);
+         define("slti",   "001010 sssss fffff tttttttttttttttt", SLTI);
+         define("sltiu",  "001011 sssss fffff tttttttttttttttt", SLTIU);
+         define("movn",   "000000 sssss ttttt fffff 00000 001011", MOVN);
+         define("movz",   "000000 sssss ttttt fffff 00000 001010", MOVZ);
+         define("j",      "000010 ffffffffffffffffffffffffff", J);
+         define("jr",     "000000 fffff 00000 00000 00000 001000", JR);
+         define("jal",    "000011 ffffffffffffffffffffffffff", JAL);
+         define("jalr",   "000000 sssss 00000 fffff 00000 001001", JALR);
+         define("jalr",   "000000 fffff 00000 11111 00000 001001", JALR_RA);
+         define("lb",     "100000 ttttt fffff ssssssssssssssss", LB);
+         define("lh",     "100001 ttttt fffff ssssssssssssssss", LH);
+         define("lhu",    "100101 ttttt fffff ssssssssssssssss", LHU);
+         define("lbu",    "100100 ttttt fffff ssssssssssssssss", LBU);
+         define("sb",     "101000 ttttt fffff ssssssssssssssss", SB);
+         define("sh",     "101001 ttttt fffff ssssssssssssssss", SH);
+      }
+   }
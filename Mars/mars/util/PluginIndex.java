@@ -0,0 +1,179 @@
+   package mars.util;
+   import java.io.*;
+   import java.lang.reflect.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2017,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Index of the plugin classes MARS finds by looking in a package directory: dump
+ * formats, trace formats, syscalls and tools.  Rather than list the directory
+ * (or the whole jar) and load and instantiate every class in it on each start,
+ * the loaders read a <code>plugins.index</code> file from the same directory,
+ * which names each plugin class along with the keys the loader looks plugins up
+ * by, so that a plugin class need not be loaded until it is used.  Each line is a
+ * class name followed by its keys, separated by spaces: the command descriptor
+ * of a dump or trace format, the service number and name of a syscall, nothing
+ * for a tool.  Blank lines and lines starting with # are ignored.
+ * <p>
+ * The index files are generated when MARS is built (see CreateMarsJar.bat) by
+ * running this class:
+ * <code>java mars.util.PluginIndex [classes-directory [index-directory]]</code>,
+ * both "." by default.  Run it again after adding a plugin class; if a directory
+ * has no index, its loader goes back to finding the classes itself, and a plugin
+ * looked up by key that its index does not list is searched for the same way,
+ * with a warning.
+ *
+ * @version October 2017
+ */
+
+    public class PluginIndex {
+   
+      /** Name of the index file in each plugin directory */
+      public static final String INDEX_FILE = "plugins.index";
+   
+      // Plugin directory, interface plugins implement, and the methods giving
+   	// the keys written after each class name.
+      private static final String[][] PLUGINS = {
+         {"mars/mips/dump", "mars.mips.dump.DumpFormat", "getCommandDescriptor"},
+         {"mars/mips/trace", "mars.mips.trace.TraceFormat", "getCommandDescriptor"},
+         {"mars/mips/instructions/syscalls", "mars.mips.instructions.syscalls.Syscall", "getNumber getName"},
+         {"mars/tools", "mars.tools.MarsTool", ""},  // tools are Swing components, so not created here
+         };
+   
+   	/**
+   	 * Read the index of a plugin directory.
+   	 *
+   	 * @param classLoader class loader to find the index with
+   	 * @param directoryPath plugin directory, with "/" as separator and no
+   	 * starting or ending "/" (e.g. mars/tools)
+   	 * @return list with a String array for each plugin: its class name, then its
+   	 * keys.  Null if the directory has no index or it cannot be read.
+   	 */
+       public static ArrayList read(ClassLoader classLoader, String directoryPath) {
+         InputStream stream = classLoader.getResourceAsStream(directoryPath + "/" + INDEX_FILE);
+         if (stream == null) {
+            return null;
+         }
+         ArrayList entries = new ArrayList();
+         try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+            try {
+               for (String line = in.readLine(); line != null; line = in.readLine()) {
+                  line = line.trim();
+                  if (line.length() > 0 && !line.startsWith("#")) {
+                     entries.add(line.split("\\s+"));
+                  }
+               }
+            } 
+            finally {
+               in.close();
+            }
+         } 
+             catch (IOException e) {
+               return null;
+            }
+         return entries;
+      }
+   
+   	/**
+   	 * Create a plugin named in an index.
+   	 *
+   	 * @param className name of the plugin class, as given in the index
+   	 * @param pluginInterface interface the plugin must implement
+   	 * @return new instance of the class
+   	 * @throws Exception if the class cannot be loaded or instantiated, or it
+   	 * does not implement the interface
+   	 */
+       public static Object create(String className, Class pluginInterface) throws Exception {
+         Class clas = Class.forName(className);
+         if (!pluginInterface.isAssignableFrom(clas)) {
+            throw new ClassCastException(className + " does not implement " + pluginInterface.getName());
+         }
+         return clas.newInstance();
+      }
+   
+   	/**
+   	 * Report a plugin that was found by looking through its directory after its
+   	 * index did not list it, which means the index is out of date.
+   	 *
+   	 * @param directoryPath plugin directory, as for read()
+   	 * @param plugin class name, or the key it was looked up by
+   	 */
+       public static void reportMissing(String directoryPath, String plugin) {
+         System.out.println("Warning: " + plugin + " is not listed in " + directoryPath + "/" + INDEX_FILE
+                              + "; run mars.util.PluginIndex to bring the index up to date");
+      }
+   
+   	/**
+   	 * Write the index file of every plugin directory.
+   	 *
+   	 * @param args directory the compiled classes are in, then directory to write
+   	 * the index files under, created if need be; both "." if not given.  The
+   	 * classes must also be on the class path.
+   	 */
+       public static void main(String[] args) throws Exception {
+         String classes = (args.length > 0) ? args[0] : ".";
+         String output = (args.length > 1) ? args[1] : classes;
+         for (int i = 0; i < PLUGINS.length; i++) {
+            String directoryPath = PLUGINS[i][0];
+            Class pluginInterface = Class.forName(PLUGINS[i][1]);
+            String[] keyMethods = (PLUGINS[i][2].length() == 0) ? new String[0] : PLUGINS[i][2].split(" ");
+            ArrayList files = FilenameFinder.getFilenameList(new File(classes, directoryPath).getPath(), "class");
+            Collections.sort(files);
+            File index = new File(new File(output, directoryPath), INDEX_FILE);
+            index.getParentFile().mkdirs(); // the index directory may be a new one
+            PrintStream out = new PrintStream(new FileOutputStream(index), false, "UTF-8");
+            out.println("# Plugins in " + directoryPath + ", implementing " + pluginInterface.getName() + ".");
+            out.println("# Generated by mars.util.PluginIndex; see there before editing.");
+            for (int f = 0; f < files.size(); f++) {
+               String name = new File((String) files.get(f)).getName();
+               if (name.indexOf('$') >= 0) {
+                  continue;
+               }
+               Class clas = Class.forName(directoryPath.replace('/', '.') + "." + name.substring(0, name.length() - ".class".length()));
+               if (!pluginInterface.isAssignableFrom(clas) || 
+                   Modifier.isAbstract(clas.getModifiers()) ||
+                   Modifier.isInterface(clas.getModifiers())) {
+                  continue;
+               }
+               StringBuffer line = new StringBuffer(clas.getName());
+               if (keyMethods.length > 0) {
+                  Object plugin = clas.newInstance();
+                  for (int k = 0; k < keyMethods.length; k++) {
+                     line.append(' ').append(clas.getMethod(keyMethods[k], new Class[0]).invoke(plugin, new Object[0]));
+                  }
+               }
+               out.println(line);
+            }
+            out.close();
+            System.out.println("Wrote " + index);
+         }
+      }
+   }
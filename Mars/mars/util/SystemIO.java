@@ -1,5 +1,7 @@
    package mars.util;
    import mars.*;
+   import mars.mips.trace.TraceSink;
+   import mars.simulator.InputLog;
    import java.io.*;
    import javax.swing.*;
    import java.util.*;
@@ -37,7 +39,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * routines.  These methods will detect whether the simulator is being
  * run from the command line or through the GUI, then do I/O to
  * System.in and System.out in the former situation, and interact with
- * the GUI in the latter.
+ * the GUI in the latter.  More precisely, command line I/O goes to the
+ * standard streams of the current <code>MachineContext</code>, which are
+ * System.in and System.out unless the context was given others, and each
+ * context has its own table of open files.
  *
  * @author Pete Sanderson and Ken Vollmar
  * @version August 2003-2005
@@ -49,7 +54,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     /** Maximum number of files that can be open */
       public static final int SYSCALL_MAXFILES = 32;
     /** String used for description of file error */
-      public static String fileErrorString = new String("File operation OK");
+      private String fileErrorString = new String("File operation OK");
    
       private static final int O_RDONLY = 0x00000000;
       private static final int O_WRONLY = 0x00000001;
@@ -66,7 +71,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
       // Will use one buffered reader for all keyboard/redirected/piped input.
    	// Added by DPS 28 Feb 2008.  See getInputReader() below.
-      private static BufferedReader inputReader = null;
+      private BufferedReader inputReader = null;
+      private final FileIOData files = new FileIOData();
+   
+    /**
+     * Creates a separate file table, for use by a <code>MachineContext</code>.
+     * Everyone else should use the static methods, which work on the current
+     * context's files and standard streams.
+     */
+       public SystemIO() {
+      }
+   
+       private static SystemIO current() {
+         return MachineContext.getCurrent().getSystemIO();
+      }
    
     /**
      * Implements syscall to read an integer value.  
@@ -77,27 +95,34 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
        public static int readInteger(int serviceNumber)
       {
-         String input = "0";
-         if (Globals.getGui() == null)
+         String input = (String) InputLog.replay(); // same line again if replaying
+         if (input == null)
          {
-            try
-            {  
-               input = getInputReader().readLine();
-            } 
-                catch (IOException e)
-               {}
-         } 
-         else
-         {
-            if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
-               input = Globals.getGui().getMessagesPane().getInputString(
-                    "Enter an integer value (syscall "+serviceNumber+")");
+            input = "0";
+            if (Globals.getGui() == null)
+            {
+               try
+               {  
+                  input = getInputReader().readLine();
+               } 
+                   catch (IOException e)
+                  {}
             } 
-            else {
-               input = Globals.getGui().getMessagesPane().getInputString(-1);
+            else
+            {
+               if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
+                  input = Globals.getGui().getMessagesPane().getInputString(
+                       "Enter an integer value (syscall "+serviceNumber+")");
+               } 
+               else {
+                  input = Globals.getGui().getMessagesPane().getInputString(-1);
+               }
+            }
+            if (input != null)
+            {
+               InputLog.record(input);
             }
          }
-      
         // Client is responsible for catching NumberFormatException
          return new Integer(input.trim()).intValue();
       }
@@ -112,24 +137,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static float readFloat(int serviceNumber)
       {
-         String input = "0";
-         if (Globals.getGui() == null)
+         String input = (String) InputLog.replay(); // same line again if replaying
+         if (input == null)
          {
-            try
+            input = "0";
+            if (Globals.getGui() == null)
             {
-               input = getInputReader().readLine();
-            } 
-                catch (IOException e)
-               {}
-         } 
-         else
-         {
-            if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
-               input = Globals.getGui().getMessagesPane().getInputString(
-                    "Enter a float value (syscall "+serviceNumber+")");
+               try
+               {
+                  input = getInputReader().readLine();
+               } 
+                   catch (IOException e)
+                  {}
             } 
-            else {
-               input = Globals.getGui().getMessagesPane().getInputString(-1);
+            else
+            {
+               if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
+                  input = Globals.getGui().getMessagesPane().getInputString(
+                       "Enter a float value (syscall "+serviceNumber+")");
+               } 
+               else {
+                  input = Globals.getGui().getMessagesPane().getInputString(-1);
+               }
+            }
+            if (input != null)
+            {
+               InputLog.record(input);
             }
          }
          return new Float(input.trim()).floatValue();
@@ -146,24 +179,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static double readDouble(int serviceNumber)
       {
-         String input = "0";
-         if (Globals.getGui() == null)
+         String input = (String) InputLog.replay(); // same line again if replaying
+         if (input == null)
          {
-            try
+            input = "0";
+            if (Globals.getGui() == null)
             {
-               input = getInputReader().readLine();
-            } 
-                catch (IOException e)
-               {}
-         } 
-         else
-         {
-            if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
-               input = Globals.getGui().getMessagesPane().getInputString(
-                    "Enter a double value (syscall "+serviceNumber+")");
+               try
+               {
+                  input = getInputReader().readLine();
+               } 
+                   catch (IOException e)
+                  {}
             } 
-            else {
-               input = Globals.getGui().getMessagesPane().getInputString(-1);
+            else
+            {
+               if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
+                  input = Globals.getGui().getMessagesPane().getInputString(
+                       "Enter a double value (syscall "+serviceNumber+")");
+               } 
+               else {
+                  input = Globals.getGui().getMessagesPane().getInputString(-1);
+               }
+            }
+            if (input != null)
+            {
+               InputLog.record(input);
             }
          }
          return new Double(input.trim()).doubleValue();
@@ -176,9 +217,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static void printString(String string)
       {
+         if (InputLog.isReplaying())
+         {
+            return; // printed the first time round
+         }
+         TraceSink.getInstance().flush(); // keep program output in order with the trace
          if (Globals.getGui() == null)
          {
-            System.out.print(string);
+            MachineContext.getCurrent().getStandardOutput().print(string);
          } 
          else
          {
@@ -194,9 +240,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static void logString(String string)
       {
+         if (InputLog.isReplaying())
+         {
+            return;
+         }
+         TraceSink.getInstance().flush();
          if (Globals.getGui() == null)
          {
-            System.out.print(string);
+            MachineContext.getCurrent().getStandardOutput().print(string);
          } 
          else
          {
@@ -214,29 +265,37 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static String readString(int serviceNumber, int maxLength)
       {
-         String input = "";
-         if (Globals.getGui() == null)
+         String input = (String) InputLog.replay(); // same line again if replaying
+         if (input == null)
          {
-            try
+            input = "";
+            if (Globals.getGui() == null)
             {
-               input = getInputReader().readLine();
-            } 
-                catch (IOException e)
-               {}
-         } 
-         else
-         {
-            if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
-               input = Globals.getGui().getMessagesPane().getInputString(
-                    "Enter a string of maximum length " + maxLength
-                    + " (syscall "+serviceNumber+")");            
+               try
+               {
+                  input = getInputReader().readLine();
+               } 
+                   catch (IOException e)
+                  {}
             } 
-            else {
-               input = Globals.getGui().getMessagesPane().getInputString(maxLength);
-               if (input.endsWith("\n")) {
-                  input = input.substring(0, input.length() - 1);
+            else
+            {
+               if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
+                  input = Globals.getGui().getMessagesPane().getInputString(
+                       "Enter a string of maximum length " + maxLength
+                       + " (syscall "+serviceNumber+")");            
+               } 
+               else {
+                  input = Globals.getGui().getMessagesPane().getInputString(maxLength);
+                  if (input.endsWith("\n")) {
+                     input = input.substring(0, input.length() - 1);
+                  }
                }
             }
+            if (input != null)
+            {
+               InputLog.record(input);
+            }
          }
       	
          if (input.length() > maxLength) {
@@ -256,25 +315,33 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static int readChar(int serviceNumber)
       {
-         String input = "0";
          int returnValue = 0;
-         if (Globals.getGui() == null)
+         String input = (String) InputLog.replay(); // same line again if replaying
+         if (input == null)
          {
-            try
+            input = "0";
+            if (Globals.getGui() == null)
             {
-               input = getInputReader().readLine();
-            } 
-                catch (IOException e)
-               {}
-         } 
-         else
-         {
-            if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
-               input = Globals.getGui().getMessagesPane().getInputString(
-                    "Enter a character value (syscall "+serviceNumber+")");				
+               try
+               {
+                  input = getInputReader().readLine();
+               } 
+                   catch (IOException e)
+                  {}
             } 
-            else {			
-               input = Globals.getGui().getMessagesPane().getInputString(1);
+            else
+            {
+               if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
+                  input = Globals.getGui().getMessagesPane().getInputString(
+                       "Enter a character value (syscall "+serviceNumber+")");				
+               } 
+               else {			
+                  input = Globals.getGui().getMessagesPane().getInputString(1);
+               }
+            }
+            if (input != null)
+            {
+               InputLog.record(input);
             }
          }
          // The whole try-catch is not really necessary in this case since I'm
@@ -304,8 +371,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
        public static int writeToFile(int fd, byte[] myBuffer, int lengthRequested)
       {
+         SystemIO io = current();
        /////////////// DPS 8-Jan-2013  ////////////////////////////////////////////////////
        /// Write to STDOUT or STDERR file descriptor while using IDE - write to Messages pane. 
+         if (fd==STDOUT || fd==STDERR) {
+            if (InputLog.isReplaying()) {
+               return lengthRequested; // written the first time round
+            }
+            TraceSink.getInstance().flush();
+         }
          if ((fd==STDOUT || fd==STDERR) && Globals.getGui() != null) {
             String data = new String(myBuffer);
             Globals.getGui().getMessagesPane().postRunMessage(data);
@@ -314,14 +388,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        ///////////////////////////////////////////////////////////////////////////////////
        //// When running in command mode, code below works for either regular file or STDOUT/STDERR
       
-         if (!FileIOData.fdInUse(fd, 1)) // Check the existence of the "write" fd
+         if (!io.files.fdInUse(fd, 1)) // Check the existence of the "write" fd
          {
-            fileErrorString = new String(
+            io.fileErrorString = new String(
                     "File descriptor " + fd + " is not open for writing");
             return -1;
          }
          // retrieve FileOutputStream from storage
-         OutputStream outputStream = (OutputStream) FileIOData.getStreamInUse(fd);
+         OutputStream outputStream = (OutputStream) io.files.getStreamInUse(fd);
          try
          {
             // Oct. 9 2005 Ken Vollmar
@@ -344,13 +418,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          } 
              catch (IOException e)
             {
-               fileErrorString = new String(
+               io.fileErrorString = new String(
                     "IO Exception on write of file with fd " + fd);
                return -1;
             } 
              catch (IndexOutOfBoundsException e)
             {
-               fileErrorString = new String(
+               io.fileErrorString = new String(
                     "IndexOutOfBoundsException on write of file with fd" + fd);
                return -1;
             }
@@ -369,6 +443,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static int readFromFile(int fd, byte[] myBuffer, int lengthRequested)
       {
+         if (fd != STDIN)
+         {
+            return readFromStream(fd, myBuffer, lengthRequested);
+         }
+         // Standard input cannot be read again, so it is replayed from the log.
+         Object[] logged = (Object[]) InputLog.replay();
+         if (logged != null)
+         {
+            byte[] bytes = (byte[]) logged[1];
+            System.arraycopy(bytes, 0, myBuffer, 0, bytes.length);
+            return ((Integer) logged[0]).intValue();
+         }
+         int retValue = readFromStream(fd, myBuffer, lengthRequested);
+         InputLog.record(new Object[] { new Integer(retValue), myBuffer.clone() });
+         return retValue;
+      }
+   
+       private static int readFromStream(int fd, byte[] myBuffer, int lengthRequested)
+      {
+         SystemIO io = current();
          int retValue = -1;  
        /////////////// DPS 8-Jan-2013  //////////////////////////////////////////////////
        /// Read from STDIN file descriptor while using IDE - get input from Messages pane. 
@@ -383,14 +477,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        ////////////////////////////////////////////////////////////////////////////////////
        //// When running in command mode, code below works for either regular file or STDIN
        
-         if (!FileIOData.fdInUse(fd, 0)) // Check the existence of the "read" fd
+         if (!io.files.fdInUse(fd, 0)) // Check the existence of the "read" fd
          {
-            fileErrorString = new String(
+            io.fileErrorString = new String(
                     "File descriptor " + fd + " is not open for reading");
             return -1;
          }
         // retrieve FileInputStream from storage
-         InputStream InputStream = (InputStream) FileIOData.getStreamInUse(fd);
+         InputStream InputStream = (InputStream) io.files.getStreamInUse(fd);
          try
          {
             // Reads up to lengthRequested bytes of data from this Input stream into an array of bytes.
@@ -403,13 +497,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          } 
              catch (IOException e)
             {
-               fileErrorString = new String(
+               io.fileErrorString = new String(
                     "IO Exception on read of file with fd " + fd);
                return -1;
             } 
              catch (IndexOutOfBoundsException e)
             {
-               fileErrorString = new String(
+               io.fileErrorString = new String(
                     "IndexOutOfBoundsException on read of file with fd" + fd);
                return -1;
             }
@@ -429,6 +523,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     */
        public static int openFile(String filename, int flags)
       {
+         SystemIO io = current();
         // Internally, a "file descriptor" is an index into a table
         // of the filename, flag, and the File???putStream associated with
         // that file descriptor.
@@ -440,7 +535,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          int fdToUse;
       
         // Check internal plausibility of opening this file
-         fdToUse = FileIOData.nowOpening(filename, flags);
+         fdToUse = io.files.nowOpening(filename, flags);
          retValue = fdToUse; // return value is the fd
          if (fdToUse < 0)
          { 
@@ -454,11 +549,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             {
                 // Set up input stream from disk file
                inputStream = new FileInputStream(filename);
-               FileIOData.setStreamInUse(fdToUse, inputStream); // Save stream for later use
+               io.files.setStreamInUse(fdToUse, inputStream); // Save stream for later use
             } 
                 catch (FileNotFoundException e)
                {
-                  fileErrorString = new String(
+                  io.fileErrorString = new String(
                         "File " + filename + " not found, open for input.");
                   retValue = -1;
                }
@@ -469,11 +564,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             try
             { 
                outputStream = new FileOutputStream(filename, ((flags & O_APPEND) != 0) );
-               FileIOData.setStreamInUse(fdToUse, outputStream); // Save stream for later use
+               io.files.setStreamInUse(fdToUse, outputStream); // Save stream for later use
             } 
                 catch (FileNotFoundException e)
                {
-                  fileErrorString = new String(
+                  io.fileErrorString = new String(
                         "File " + filename + " not found, open for output.");
                   retValue = -1;
                }
@@ -488,7 +583,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static void closeFile(int fd)
       {
-         FileIOData.close(fd);
+         current().files.close(fd);
       }
    
     /** 
@@ -496,7 +591,44 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static void resetFiles()
       {
-         FileIOData.resetFiles();
+         current().files.resetFiles();
+      }
+   
+    /**
+     * Record which files are open, and how far reading or writing has got in each,
+     * so the file descriptor table can be put back by restoreFiles.  Standard input,
+     * output and error are not part of it.
+     *
+     * @return the state of the file descriptor table
+     */
+       public static FileState saveFiles()
+      {
+         return current().files.save();
+      }
+   
+    /**
+     * Put the file descriptor table back the way it was.  Files opened since are
+     * closed, files closed since are opened again, and every file is positioned where
+     * it was.  Files being written are cut back to their length at the time, so
+     * output written since disappears.  A file that cannot be reopened is left closed.
+     * Standard input, output and error are set up again from the machine context.
+     *
+     * @param state state returned by saveFiles
+     */
+       public static void restoreFiles(FileState state)
+      {
+         current().files.restore(state);
+      }
+   
+    /**
+     * State of the file descriptor table, from saveFiles.
+     */
+       public static class FileState
+      {
+         private final String[] fileNames = new String[ SYSCALL_MAXFILES ];
+         private final int[] fileFlags = new int[ SYSCALL_MAXFILES ];
+         private final Object[] streams = new Object[ SYSCALL_MAXFILES ];
+         private final long[] positions = new long[ SYSCALL_MAXFILES ];
       }
    
      /**
@@ -506,7 +638,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	*/
        public static String getFileErrorMessage()
       {
-         return fileErrorString;
+         return current().fileErrorString;
       }
    
       ///////////////////////////////////////////////////////////////////////
@@ -516,10 +648,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// transparent to it.  Lazy instantiation.  DPS.  28 Feb 2008
    	
        private static BufferedReader getInputReader() {
-         if (inputReader == null) {
-            inputReader = new BufferedReader(new InputStreamReader(System.in));  
+         SystemIO io = current();
+         TraceSink.getInstance().flush(); // show the trace so far before blocking on input
+         if (io.inputReader == null) {
+            io.inputReader = new BufferedReader(new InputStreamReader(MachineContext.getCurrent().getStandardInput()));  
          }
-         return inputReader;
+         return io.inputReader;
       }
    	
    	
@@ -527,14 +661,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // Maintain information on files in use. The index to the arrays is the "file descriptor."
     // Ken Vollmar, August 2005
     
-       private static class FileIOData
+       private class FileIOData
       {
-         private static String[] fileNames = new String[ SYSCALL_MAXFILES ]; // The filenames in use. Null if file descriptor i is not in use.
-         private static int[] fileFlags = new int[ SYSCALL_MAXFILES ]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
-         private static Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
+         private String[] fileNames = new String[ SYSCALL_MAXFILES ]; // The filenames in use. Null if file descriptor i is not in use.
+         private int[] fileFlags = new int[ SYSCALL_MAXFILES ]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
+         private Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
       
         // Reset all file information. Closes any open files and resets the arrays
-          private static void resetFiles()
+          private void resetFiles()
          {
             for (int i = 0; i < SYSCALL_MAXFILES; i++)
             {
@@ -543,36 +677,37 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             setupStdio();
          }
       	// DPS 8-Jan-2013
-          private static void setupStdio() {
+          private void setupStdio() {
             fileNames[STDIN]  = "STDIN";
             fileNames[STDOUT] = "STDOUT";
             fileNames[STDERR] = "STDERR";
             fileFlags[STDIN]  = SystemIO.O_RDONLY;
             fileFlags[STDOUT] = SystemIO.O_WRONLY;
             fileFlags[STDERR] = SystemIO.O_WRONLY;
-            streams[STDIN]  = System.in;
-            streams[STDOUT] = System.out;
-            streams[STDERR] = System.err;
-            System.out.flush();
-            System.err.flush();
+            MachineContext context = MachineContext.getCurrent();
+            streams[STDIN]  = context.getStandardInput();
+            streams[STDOUT] = context.getStandardOutput();
+            streams[STDERR] = context.getStandardError();
+            context.getStandardOutput().flush();
+            context.getStandardError().flush();
          }
       
         // Preserve a stream that is in use
-          private static void setStreamInUse(int fd, Object s)
+          private void setStreamInUse(int fd, Object s)
          {
             streams[fd] = s;
          
          }
       
         // Retrieve a stream for use
-          private static Object getStreamInUse(int fd)
+          private Object getStreamInUse(int fd)
          {
             return streams[fd];
          
          }
       
         // Determine whether a given filename is already in use.
-          private static boolean filenameInUse(String requestedFilename)
+          private boolean filenameInUse(String requestedFilename)
          {
             for (int i = 0; i < SYSCALL_MAXFILES; i++)
             {
@@ -590,7 +725,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
       
         // Determine whether a given fd is already in use with the given flag.
-          private static boolean fdInUse(int fd, int flag)
+          private boolean fdInUse(int fd, int flag)
          {
             if (fd < 0 || fd >= SYSCALL_MAXFILES)
             {
@@ -610,7 +745,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
         // Close the file with file descriptor fd. No errors are recoverable -- if the user's
         // made an error in the call, it will come back to him.
-          private static void close(int fd)
+          private void close(int fd)
          {
             // Can't close STDIN, STDOUT, STDERR, or invalid fd
             if (fd <= STDERR || fd >= SYSCALL_MAXFILES) 
@@ -639,10 +774,78 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }
          }
       
+        // Record the files in use past STDERR, and their positions.
+          private FileState save()
+         {
+            FileState state = new FileState();
+            for (int i = STDERR + 1; i < SYSCALL_MAXFILES; i++)
+            {
+               if (fileNames[i] != null && streams[i] != null)
+               {
+                  state.fileNames[i] = fileNames[i];
+                  state.fileFlags[i] = fileFlags[i];
+                  state.streams[i] = streams[i];
+                  try
+                  {
+                     state.positions[i] = channel(streams[i]).position();
+                  } 
+                      catch (IOException e)
+                     {
+                        state.positions[i] = 0;
+                     }
+               }
+            }
+            return state;
+         }
+      
+        // Put back the files recorded by save(), reopening any closed since.
+          private void restore(FileState state)
+         {
+            setupStdio();
+            for (int i = STDERR + 1; i < SYSCALL_MAXFILES; i++)
+            {
+               if (streams[i] != null && streams[i] != state.streams[i])
+               {
+                  close(i); // opened since
+               }
+               if (state.fileNames[i] == null)
+               {
+                  continue;
+               }
+               try
+               {
+                  if (streams[i] == null)
+                  {
+                     streams[i] = (state.fileFlags[i] == O_RDONLY)
+                        ? (Object) new FileInputStream(state.fileNames[i])
+                        : (Object) new FileOutputStream(state.fileNames[i], true);
+                  }
+                  fileNames[i] = state.fileNames[i];
+                  fileFlags[i] = state.fileFlags[i];
+                  if (fileFlags[i] != O_RDONLY)
+                  {
+                     channel(streams[i]).truncate(state.positions[i]);
+                  }
+                  channel(streams[i]).position(state.positions[i]);
+               } 
+                   catch (IOException e)
+                  {
+                     close(i); // also closes the stream if it was opened
+                  }
+            }
+         }
+      
+          private java.nio.channels.FileChannel channel(Object stream)
+         {
+            return (stream instanceof FileInputStream)
+               ? ((FileInputStream) stream).getChannel()
+               : ((FileOutputStream) stream).getChannel();
+         }
+      
         // Attempt to open a new file with the given flag, using the lowest available file descriptor.
         // Check that filename is not in use, flag is reasonable, and there is an available file descriptor.
         // Return: file descriptor in 0...(SYSCALL_MAXFILES-1), or -1 if error
-          private static int nowOpening(String filename, int flag)
+          private int nowOpening(String filename, int flag)
          {
             int i = 0;
             if (filenameInUse(filename))
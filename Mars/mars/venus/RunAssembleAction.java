@@ -76,6 +76,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                mainUI.editor.save();
             }
             try{
+               if (Globals.program != null) {
+                  Globals.program.closeBackStepper();
+               }
                Globals.program = new MIPSprogram();
                ArrayList filesToAssemble;
                if (Globals.getSettings().getAssembleAllEnabled()) {// setting calls for multiple file assembly 
@@ -100,9 +100,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     *  of the JAR file (using toString, not getName).  Extract that name, open it
     *  as a ZipFile, get the ZipEntry enumeration, find the class files in the tools
     *  folder, then continue as before.
+    *
+    *  The tools directory is only searched if it has no plugin index (see PluginIndex).
     */
        private ArrayList loadMarsTools() {
          ArrayList toolList = new ArrayList();
+         // Tools listed in the plugin index, if there is one, so there is
+         // no looking through the tools directory.
+         ArrayList entries = PluginIndex.read(this.getClass().getClassLoader(), TOOLS_DIRECTORY_PATH);
+         if (entries != null) {
+            for (int i = 0; i < entries.size(); i++) {
+               String toolClassName = ((String[]) entries.get(i))[0];
+               try {
+                  MarsTool tool = (MarsTool) PluginIndex.create(toolClassName, MarsTool.class);
+                  toolList.add(new MarsToolClassAndInstance(tool.getClass(), tool));
+               } 
+                   catch (Exception e) {
+                     System.out.println("Error instantiating MarsTool " + toolClassName + ": "+e);
+                  }
+            }
+            return toolList;
+         }
          ArrayList candidates = FilenameFinder.getFilenameList(this.getClass( ).getClassLoader(),
                                               TOOLS_DIRECTORY_PATH, CLASS_EXTENSION);
       	// Add any tools stored externally, as listed in Config.properties file.